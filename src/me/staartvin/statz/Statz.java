@@ -1,21 +1,36 @@
 package me.staartvin.statz;
 
-import java.util.ArrayList;
-import java.util.Random;
-import java.util.UUID;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.logging.Level;
 
 import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.RegisteredListener;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
 
 import me.staartvin.statz.api.API;
+import me.staartvin.statz.commands.CommandsManager;
 import me.staartvin.statz.config.ConfigHandler;
 import me.staartvin.statz.database.DatabaseConnector;
 import me.staartvin.statz.database.MySQLConnector;
 import me.staartvin.statz.database.SQLiteConnector;
 import me.staartvin.statz.datamanager.DataManager;
 import me.staartvin.statz.datamanager.DataPoolManager;
+import me.staartvin.statz.datamanager.FlushManager;
+import me.staartvin.statz.datamanager.LeaderboardManager;
+import me.staartvin.statz.datamanager.MovementManager;
+import me.staartvin.statz.datamanager.PlayerCacheManager;
 import me.staartvin.statz.datamanager.PlayerStat;
-import me.staartvin.statz.datamanager.player.PlayerInfo;
+import me.staartvin.statz.datamanager.TimePlayedManager;
 import me.staartvin.statz.hooks.Dependency;
 import me.staartvin.statz.hooks.DependencyManager;
 import me.staartvin.statz.listeners.CraftItemListener;
@@ -23,6 +38,7 @@ import me.staartvin.statz.listeners.EatFoodListener;
 import me.staartvin.statz.listeners.EntityDeathListener;
 import me.staartvin.statz.listeners.PlayerBlockBreakListener;
 import me.staartvin.statz.listeners.PlayerBlockPlaceListener;
+import me.staartvin.statz.listeners.PlayerCacheListener;
 import me.staartvin.statz.listeners.PlayerDeathListener;
 import me.staartvin.statz.listeners.PlayerFishListener;
 import me.staartvin.statz.listeners.PlayerGainXPListener;
@@ -31,8 +47,11 @@ import me.staartvin.statz.listeners.PlayerMoveListener;
 import me.staartvin.statz.listeners.PlayerShearListener;
 import me.staartvin.statz.listeners.PlayerTakeDamageListener;
 import me.staartvin.statz.listeners.PlayerVoteListener;
+import me.staartvin.statz.listeners.TimePlayedListener;
 import me.staartvin.statz.listeners.VehicleMoveListener;
-import me.staartvin.statz.util.StatzUtil;
+import me.staartvin.statz.metrics.Histogram;
+import me.staartvin.statz.metrics.MetricsRegistry;
+import me.staartvin.statz.metrics.PrometheusExporter;
 
 public class Statz extends JavaPlugin {
 
@@ -40,8 +59,30 @@ public class Statz extends JavaPlugin {
 	private DataManager dataManager;
 	private API statzAPI;
 	private DataPoolManager dataPoolManager;
+	private PlayerCacheManager cacheManager;
+	private MovementManager movementManager;
+	private TimePlayedManager timePlayedManager;
+	private LeaderboardManager leaderboardManager;
+	private FlushManager flushManager;
 	private DependencyManager depManager;
 	private ConfigHandler configHandler;
+	private MetricsRegistry metricsRegistry;
+	private PrometheusExporter metricsExporter;
+
+	public Statz() {
+		super();
+	}
+
+	/**
+	 * Create Statz outside of a server, e.g. to benchmark it. The server is only what the loader gives it.
+	 * @param loader Loader of the plugin
+	 * @param description Description of the plugin
+	 * @param dataFolder Folder to store the config, database and journal in
+	 * @param file Jar file of the plugin
+	 */
+	protected Statz(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder, File file) {
+		super(loader, description, dataFolder, file);
+	}
 
 	@Override
 	public void onEnable() {
@@ -52,6 +93,9 @@ public class Statz extends JavaPlugin {
 		// Load config with default values
 		this.getConfigHandler().loadConfig();
 
+		// Keep track of what Statz costs
+		this.setMetricsRegistry(new MetricsRegistry(this));
+
 		// Load hooks
 		this.setDependencyManager(new DependencyManager(this));
 
@@ -67,30 +111,65 @@ public class Statz extends JavaPlugin {
 		// Set up Data Pool Manager
 		this.setDataPoolManager(new DataPoolManager(this));
 
+		// Set up cache of player stats
+		this.setCacheManager(new PlayerCacheManager(this));
+
+		// Set up collecting of movement
+		this.setMovementManager(new MovementManager(this));
+
+		// Set up counting of time played
+		this.setTimePlayedManager(new TimePlayedManager(this));
+
+		// Set up leaderboards
+		this.setLeaderboardManager(new LeaderboardManager(this));
+
+		// Set up deciding when the pool is sent
+		this.setFlushManager(new FlushManager(this));
+
 		// Load tables into hashmap
 		this.getSqlConnector().loadTables();
 
 		// Create and load database
 		this.getSqlConnector().load();
 
+		// Add the updates that were not saved before the last shutdown (e.g. a crash) to the pool
+		this.getDataPoolManager().recoverJournal();
+
 		// Register listeners
 		this.registerListeners();
 
+		// Register '/statz'
+		this.getCommand("statz").setExecutor(new CommandsManager(this));
+
 		// Load data manager as database is loaded!
 		this.setDataManager(new DataManager(this));
 
 		// Load API
 		this.setStatzAPI(new API(this));
 
-		// Send pool update every 10 seconds
-		this.getServer().getScheduler().runTaskTimerAsynchronously(this, new Runnable() {
-			public void run() {
-				getDataPoolManager().sendPool();
+		// Load players that are already online (in case of a reload)
+		this.getCacheManager().loadOnlinePlayers();
+
+		// Fill the leaderboards with the highest totals in the database
+		this.getLeaderboardManager().seedLeaderboards();
+
+		// Add collected movement to the pool every second
+		this.getMovementManager().startPublishing();
+
+		// Add time played to the pool, counting players that are already online (in case of a reload)
+		if (this.getConfigHandler().getStatsTracking()) {
+			for (Player player : this.getServer().getOnlinePlayers()) {
+				this.getTimePlayedManager().startSession(player);
 			}
-		}, 20, 20 * this.getConfigHandler().getPeriodicSaveTime());
+		}
+
+		this.getTimePlayedManager().startSweeping();
+
+		// Send the pool when it is full or its interval has passed. The update itself is done on a database thread.
+		this.getFlushManager().startFlushing();
 
-		// Do performance test
-		//this.doPerformanceTest();
+		// Serve the metrics to Prometheus, if enabled
+		this.startMetricsExporter();
 
 		// Do a check on all present hooks
 		this.getDependencyManager().loadDependencies();
@@ -101,36 +180,113 @@ public class Statz extends JavaPlugin {
 	@Override
 	public void onDisable() {
 
+		if (this.getMetricsExporter() != null) {
+			this.getMetricsExporter().stop();
+		}
+
 		debugMessage(ChatColor.RED + "Saving updates to database!");
 
+		// Add the movement and time played that were not published yet.
+		this.getMovementManager().publishAll();
+		this.getTimePlayedManager().endAllSessions();
+
+		// Let queued reads and writes finish first.
+		this.getSqlConnector().shutdown(10);
+
 		// Send the complete pool.
 		this.getDataPoolManager().forceSendPool();
 
+		// Whatever could not be sent (e.g. because the database is down) is kept on disk.
+		this.getDataPoolManager().spillPool();
+
+		// Nothing has to be recovered when the pool was sent.
+		this.getDataPoolManager().closeJournal();
+
+		// Close all connections to the database.
+		this.getSqlConnector().close();
+
 		this.getLogger().info(this.getDescription().getFullName() + " has been disabled!");
 	}
 
+	private void startMetricsExporter() {
+		final int port = this.getConfigHandler().getMetricsPort();
+
+		if (port <= 0) {
+			return;
+		}
+
+		final PrometheusExporter exporter = new PrometheusExporter(this, this.getMetricsRegistry());
+
+		try {
+			exporter.start(this.getConfigHandler().getMetricsAddress(), port);
+		} catch (final IOException e) {
+			this.getLogger().log(Level.SEVERE, "Could not serve metrics on port " + port + ": " + e.getMessage());
+			return;
+		}
+
+		this.setMetricsExporter(exporter);
+	}
+
 	private void registerListeners() {
+		// Always keep the cache up to date, even when we are not tracking stats.
+		this.registerListener(new PlayerCacheListener(this));
+
 		if (!this.getConfigHandler().getStatsTracking()) {
 			this.debugMessage(ChatColor.GOLD + "Statz won't track stats of any player!");
 			return; // We don't track stats, so we don't register listeners
 		}
 
-		this.getServer().getPluginManager().registerEvents(new PlayerDeathListener(this), this);
-		this.getServer().getPluginManager().registerEvents(new PlayerJoinListener(this), this);
-		this.getServer().getPluginManager().registerEvents(new PlayerFishListener(this), this);
-		this.getServer().getPluginManager().registerEvents(new PlayerBlockPlaceListener(this), this);
-		this.getServer().getPluginManager().registerEvents(new PlayerBlockBreakListener(this), this);
-		this.getServer().getPluginManager().registerEvents(new EntityDeathListener(this), this);
-		this.getServer().getPluginManager().registerEvents(new EatFoodListener(this), this);
-		this.getServer().getPluginManager().registerEvents(new PlayerTakeDamageListener(this), this);
-		this.getServer().getPluginManager().registerEvents(new PlayerShearListener(this), this);
-		this.getServer().getPluginManager().registerEvents(new PlayerMoveListener(this), this);
-		this.getServer().getPluginManager().registerEvents(new VehicleMoveListener(this), this);
-		this.getServer().getPluginManager().registerEvents(new CraftItemListener(this), this);
-		this.getServer().getPluginManager().registerEvents(new PlayerGainXPListener(this), this);
+		this.registerListener(new PlayerDeathListener(this));
+		this.registerListener(new PlayerJoinListener(this));
+		this.registerListener(new TimePlayedListener(this));
+		this.registerListener(new PlayerFishListener(this));
+		this.registerListener(new PlayerBlockPlaceListener(this));
+		this.registerListener(new PlayerBlockBreakListener(this));
+		this.registerListener(new EntityDeathListener(this));
+		this.registerListener(new EatFoodListener(this));
+		this.registerListener(new PlayerTakeDamageListener(this));
+		this.registerListener(new PlayerShearListener(this));
+		this.registerListener(new PlayerMoveListener(this));
+		this.registerListener(new VehicleMoveListener(this));
+		this.registerListener(new CraftItemListener(this));
+		this.registerListener(new PlayerGainXPListener(this));
 
 		if (this.getDependencyManager().isAvailable(Dependency.VOTIFIER)) {
-			this.getServer().getPluginManager().registerEvents(new PlayerVoteListener(this), this);
+			this.registerListener(new PlayerVoteListener(this));
+		}
+	}
+
+	/**
+	 * Register the event handlers of a listener. When 'metrics.time listeners' is true, the time every handler takes is recorded
+	 * in the 'listener.time' histogram of the listener.
+	 * @param listener Listener to register
+	 */
+	private void registerListener(final Listener listener) {
+		if (!this.getConfigHandler().isListenerTimingEnabled()) {
+			this.getServer().getPluginManager().registerEvents(listener, this);
+			return;
+		}
+
+		final Histogram handleTime = this.getMetricsRegistry()
+				.getHistogram(MetricsRegistry.name("listener.time", "listener", listener.getClass().getSimpleName()));
+
+		for (Entry<Class<? extends Event>, Set<RegisteredListener>> entry : this.getPluginLoader()
+				.createRegisteredListeners(listener, this).entrySet()) {
+			for (final RegisteredListener handler : entry.getValue()) {
+				// The handler still checks the type of the event and whether it ignores cancelled events.
+				this.getServer().getPluginManager().registerEvent(entry.getKey(), listener, handler.getPriority(),
+						new EventExecutor() {
+							public void execute(Listener listener, Event event) throws EventException {
+								long start = System.nanoTime();
+
+								try {
+									handler.callEvent(event);
+								} finally {
+									handleTime.recordSince(start);
+								}
+							}
+						}, this, false);
+			}
 		}
 	}
 
@@ -139,116 +295,6 @@ public class Statz extends JavaPlugin {
 				.sendMessage(ChatColor.translateAlternateColorCodes('&', "[Statz debug] " + message));
 	}
 
-	public void doPerformanceTest() {
-		this.getServer().getScheduler().runTaskTimerAsynchronously(this, new Runnable() {
-			public void run() {
-
-				debugMessage("Start stresstest");
-
-				// 38 random players
-				ArrayList<UUID> uuids = new ArrayList<UUID>();
-				uuids.add(UUID.fromString("cb58fd93-567f-45f0-8a60-171f15b66e5f"));
-				uuids.add(UUID.fromString("d44fe94f-6c26-408c-b05e-6746b3b79b7e"));
-				uuids.add(UUID.fromString("48e11f72-2310-406f-ae47-1117e8d08547"));
-				uuids.add(UUID.fromString("9f6ddfae-7398-4973-82a0-d1fb67635956"));
-				uuids.add(UUID.fromString("0bec5711-4316-4a8f-b61b-2a119e652082"));
-				uuids.add(UUID.fromString("5169e667-c43c-41cb-80b3-9b127ad1d64a"));
-				uuids.add(UUID.fromString("54db3bd8-b206-411d-900f-ba56698a049e"));
-				uuids.add(UUID.fromString("6b831421-b03b-45d6-bbee-c660c1ef3abf"));
-				uuids.add(UUID.fromString("dcdaa593-6b01-43ea-9792-372f6ca4a646"));
-				uuids.add(UUID.fromString("7747121e-1d51-44e3-8c7c-98deaf2d0f41"));
-				uuids.add(UUID.fromString("311959d1-038f-4e82-9f28-d7fdc06b917e"));
-				uuids.add(UUID.fromString("dee81da3-5d11-4630-964b-66cde2c3a50c"));
-				uuids.add(UUID.fromString("ec9e8bd0-cdad-46b1-9da7-0d187a187d4a"));
-				uuids.add(UUID.fromString("cc41ffa3-2f70-4b18-9ca8-c1e9af9f5041"));
-				uuids.add(UUID.fromString("0f42c47b-5c9e-4b8c-a21d-9fa83239dad0"));
-				uuids.add(UUID.fromString("d0853e6e-30d8-421b-b86b-bd5e635f01e1"));
-				uuids.add(UUID.fromString("3c7db14d-ac4b-4e35-b2c6-3b2237f382be"));
-				uuids.add(UUID.fromString("86464dd9-9a02-4cd0-895e-4c60b5766108"));
-				uuids.add(UUID.fromString("2361ca08-44dc-4541-8fb1-4f02f3f9f222"));
-				uuids.add(UUID.fromString("e8441bb2-2fa8-498c-919d-8aaba24bc414"));
-				uuids.add(UUID.fromString("3c166720-24ea-4f0a-8630-04c7ee222c86"));
-				uuids.add(UUID.fromString("6128dc3e-e826-4fe7-94df-6d6a2b3b4d38"));
-				uuids.add(UUID.fromString("b1adf2ec-eed6-46d6-a770-40f409651913"));
-				uuids.add(UUID.fromString("4de3afa2-b921-472a-93d5-a077ffdc40a9"));
-				uuids.add(UUID.fromString("4c607d4b-3816-40de-b384-389f3b6ea8c4"));
-				uuids.add(UUID.fromString("8112554c-ef4a-46bd-bb21-61ac3a7b30a2"));
-				uuids.add(UUID.fromString("2c757641-1213-4a23-8285-5d3e578a525c"));
-				uuids.add(UUID.fromString("d2feb792-e293-456e-8f65-d2c6557a3475"));
-				uuids.add(UUID.fromString("67ac9634-44f4-481e-b6c9-7a6a9d03d041"));
-				uuids.add(UUID.fromString("3e14a919-2e96-447e-a0c1-095123073c3e"));
-				uuids.add(UUID.fromString("66869715-7435-4e87-b8a2-3bfafb166428"));
-				uuids.add(UUID.fromString("9c68ddca-a37b-4873-936d-dc4160d4a155"));
-				uuids.add(UUID.fromString("9935c756-b677-4769-a54c-78406c9954f1"));
-				uuids.add(UUID.fromString("44359973-2977-4a96-bdd3-3ceaea6eb301"));
-				uuids.add(UUID.fromString("eb37de95-404b-43ef-81cc-84f22b9d5d7f"));
-				uuids.add(UUID.fromString("e373fd60-a1fb-41a1-95d0-df9c0ffb77c9"));
-				uuids.add(UUID.fromString("8e1edca1-cc02-4d19-8226-366530ac649b"));
-				uuids.add(UUID.fromString("0d0523ca-89c7-4ac8-94c5-da279091a6a2"));
-
-				ArrayList<String> move = new ArrayList<>();
-				move.add("WALK");
-				move.add("FLY");
-				move.add("MINECART");
-				move.add("PIG IN MINECART");
-				move.add("HORSE IN MINECART");
-				move.add("PIG");
-				move.add("BOAT");
-
-				long startTime = System.currentTimeMillis();
-
-				// 100 million interations
-				for (int i = 0; i < 10000; i++) {
-					// Send 100 million updates
-
-					//debugMessage("--------------------------");
-					// Get a random UUID
-					Random randomizer = new Random();
-					UUID random = uuids.get(randomizer.nextInt(uuids.size()));
-
-					//debugMessage("i: " + i + ", UUID: " + random);
-
-					final PlayerStat stat = PlayerStat.DISTANCE_TRAVELLED;
-
-					String movementType = move.get(new Random().nextInt(move.size()));
-
-					int distTravelled = new Random().nextInt(5);
-
-					//debugMessage("Dist value: " + distTravelled);
-
-					if (distTravelled == 0) {
-						continue;
-					}
-
-					// Get player info.
-					final PlayerInfo info = getDataManager().getPlayerInfo(random, stat,
-							StatzUtil.makeQuery("world", "world", "moveType", movementType));
-
-					// Get current value of stat.
-					int currentValue = 0;
-
-					// Check if it is valid!
-					if (info.isValid()) {
-						currentValue += info.getTotalValue();
-					}
-
-					//debugMessage("Current value: " + currentValue);
-
-					// Update value to new stat.
-					getDataManager().setPlayerInfo(random, stat, StatzUtil.makeQuery("uuid", random, "value",
-							(currentValue + distTravelled), "moveType", movementType, "world", "world"));
-				}
-
-				long totalTime = System.currentTimeMillis() - startTime;
-
-				debugMessage("End of stresstest");
-				debugMessage("Took " + totalTime + " ms");
-				//getDataPoolManager().printPool();
-
-			}
-		}, 20 * 10, 20 * 90);
-	}
-
 	public DatabaseConnector getSqlConnector() {
 		return connector;
 	}
@@ -281,6 +327,46 @@ public class Statz extends JavaPlugin {
 		this.dataPoolManager = dataPoolManager;
 	}
 
+	public PlayerCacheManager getCacheManager() {
+		return cacheManager;
+	}
+
+	public void setCacheManager(PlayerCacheManager cacheManager) {
+		this.cacheManager = cacheManager;
+	}
+
+	public MovementManager getMovementManager() {
+		return movementManager;
+	}
+
+	public void setMovementManager(MovementManager movementManager) {
+		this.movementManager = movementManager;
+	}
+
+	public TimePlayedManager getTimePlayedManager() {
+		return timePlayedManager;
+	}
+
+	public void setTimePlayedManager(TimePlayedManager timePlayedManager) {
+		this.timePlayedManager = timePlayedManager;
+	}
+
+	public LeaderboardManager getLeaderboardManager() {
+		return leaderboardManager;
+	}
+
+	public void setLeaderboardManager(LeaderboardManager leaderboardManager) {
+		this.leaderboardManager = leaderboardManager;
+	}
+
+	public FlushManager getFlushManager() {
+		return flushManager;
+	}
+
+	public void setFlushManager(FlushManager flushManager) {
+		this.flushManager = flushManager;
+	}
+
 	public DependencyManager getDependencyManager() {
 		return depManager;
 	}
@@ -296,4 +382,20 @@ public class Statz extends JavaPlugin {
 	public void setConfigHandler(ConfigHandler configHandler) {
 		this.configHandler = configHandler;
 	}
+
+	public MetricsRegistry getMetricsRegistry() {
+		return metricsRegistry;
+	}
+
+	public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+		this.metricsRegistry = metricsRegistry;
+	}
+
+	public PrometheusExporter getMetricsExporter() {
+		return metricsExporter;
+	}
+
+	public void setMetricsExporter(PrometheusExporter metricsExporter) {
+		this.metricsExporter = metricsExporter;
+	}
 }
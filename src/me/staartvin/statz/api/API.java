@@ -1,14 +1,17 @@
 package me.staartvin.statz.api;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import org.bukkit.Statistic;
 
 import me.staartvin.statz.Statz;
-import me.staartvin.statz.database.datatype.Query;
 import me.staartvin.statz.database.datatype.RowRequirement;
 import me.staartvin.statz.datamanager.PlayerStat;
+import me.staartvin.statz.datamanager.leaderboard.LeaderboardEntry;
 import me.staartvin.statz.datamanager.player.PlayerInfo;
 import me.staartvin.statz.hooks.Dependency;
 import me.staartvin.statz.hooks.DependencyHandler;
@@ -24,6 +27,9 @@ public class API {
 	/**
 	 * Get the total count for a stat of a specific player on a specific world.
 	 * <br>The worldName can also be omitted to get the total of all worlds.
+	 * <br><br>This method only reads data that is in memory, so it is safe to call on the main thread. Online players are always in memory.
+	 * For other players, the data is loaded in the background and this method may only count the data that has not been saved yet.
+	 * Use {@link #getTotalOfAsync(PlayerStat, UUID, String)} to be sure to get all data of a player.
 	 * <br><br><b>This method will return null if Statz does not have info about this player regarding the specific stat.</b>
 	 * @param statType the {@link PlayerStat} to get info of.
 	 * @param uuid The UUID of the Player.
@@ -31,35 +37,35 @@ public class API {
 	 * @return the total count of a stat. E.g. the total amount of killed players on a world (or on all worlds).
 	 */
 	public Object getTotalOf(PlayerStat statType, UUID uuid, String worldName) {
+		return getTotal(plugin.getDataManager().getCachedPlayerInfo(uuid, statType), getWorldRequirements(worldName));
+	}
 
-		PlayerInfo info = plugin.getDataManager().getPlayerInfo(uuid, statType);
-
-		if (!info.isValid()) {
-			return null;
-		}
-
-		double value = 0;
-
-		List<Query> results = info.getResults();
-
-		if (results == null || results.isEmpty())
-			return value;
-
-		if (worldName != null) {
-			// Add every value that is in the proper world
-			for (Query result : results) {
-				if (result.getValue("world") != null && result.getValue("world").toString().equalsIgnoreCase(worldName)) {
-					value += Double.parseDouble(result.getValue("value").toString());
-				}
-			}
-		} else {
-			// Add every value regardless of the world
-			for (Query result : results) {
-				value += Double.parseDouble(result.getValue("value").toString());
-			}
-		}
+	/**
+	 * Get the total count for a stat of a specific player on a specific world, without blocking the calling thread.
+	 * <br>See {@link #getTotalOf(PlayerStat, UUID, String)}. When the player is not in memory, the database is read on a database
+	 * thread and the future is completed on that thread. Don't use the Bukkit API when handling the result; schedule a task on the main
+	 * thread instead.
+	 * @param statType the {@link PlayerStat} to get info of.
+	 * @param uuid The UUID of the Player.
+	 * @param worldName Name of the world to get the info from, can also be null to find the total on all worlds.
+	 * @return a future that completes with the total count of a stat, or with null if Statz does not have info about this player
+	 *         regarding the specific stat. It completes exceptionally when the database could not be read.
+	 */
+	public CompletableFuture<Double> getTotalOfAsync(PlayerStat statType, UUID uuid, String worldName) {
+		return plugin.getDataManager().getTotalAsync(uuid, statType, getWorldRequirements(worldName));
+	}
 
-		return value;
+	/**
+	 * Get the total count for a stat of a group of players (on all worlds), without blocking the calling thread.
+	 * <br>This is useful for showing a stat of all online players, e.g. on a scoreboard. Players that are not in memory
+	 * are added up by the database in a single query. See {@link #getTotalOfAsync(PlayerStat, UUID, String)} for more info.
+	 * @param uuids UUIDs of the players
+	 * @param statType the {@link PlayerStat} to get info of.
+	 * @return a future that completes with the total count of every player, in the order of the given UUIDs. The total is null
+	 *         for a player that Statz has no info about. It completes exceptionally when the database could not be read.
+	 */
+	public CompletableFuture<Map<UUID, Double>> getTotalsAsync(Collection<UUID> uuids, PlayerStat statType) {
+		return plugin.getDataManager().getTotalsAsync(uuids, statType);
 	}
 
 	/**
@@ -70,47 +76,64 @@ public class API {
 	 * <br>
 	 * <br>Another example: how much XP did a player get in total on world 'ravioli'?
 	 * <br><code>getSpecificData(PlayerStat.XP_GAINED, uuid of player, new RowRequirement("world", "ravioli"));</code>
+	 * <br><br>Like {@link #getTotalOf(PlayerStat, UUID, String)}, this only reads data that is in memory. 
+	 * Use {@link #getSpecificDataAsync(PlayerStat, UUID, RowRequirement...)} to be sure to get all data of a player.
 	 * @param statType The stat to get info of
 	 * @param uuid UUID of the Player
 	 * @param conditions Extra conditions that need to be met. If no conditions are given, this method will act the same as {@link #getTotalOf(PlayerStat, UUID, String)}.
 	 * @return the total count taking the given conditions in consideration or null if no data for the given player was found.
 	 */
 	public Object getSpecificData(PlayerStat statType, UUID uuid, RowRequirement... conditions) {
-		PlayerInfo info = plugin.getDataManager().getPlayerInfo(uuid, statType);
+		return getTotal(plugin.getDataManager().getCachedPlayerInfo(uuid, statType), conditions);
+	}
 
-		if (!info.isValid()) {
-			return null;
+	/**
+	 * Get specific data of a specific statType for a given player, without blocking the calling thread.
+	 * <br>See {@link #getSpecificData(PlayerStat, UUID, RowRequirement...)} and {@link #getTotalOfAsync(PlayerStat, UUID, String)}.
+	 * @param statType The stat to get info of
+	 * @param uuid UUID of the Player
+	 * @param conditions Extra conditions that need to be met.
+	 * @return a future that completes with the total count taking the given conditions in consideration, or with null if no data for
+	 *         the given player was found.
+	 */
+	public CompletableFuture<Double> getSpecificDataAsync(PlayerStat statType, UUID uuid,
+			RowRequirement... conditions) {
+		return plugin.getDataManager().getTotalAsync(uuid, statType, conditions);
+	}
+
+	private static RowRequirement[] getWorldRequirements(String worldName) {
+		if (worldName == null) {
+			return new RowRequirement[0];
 		}
 
-		double value = 0;
-
-		List<Query> results = info.getResults();
-
-		if (results == null || results.isEmpty())
-			return value;
-
-		for (Query result : results) {
-			boolean isValid = true;
-			
-			for (int i=0;i<conditions.length;i++) {
-				
-				RowRequirement req = conditions[i];
-				// Check if each condition that was given is true.
-				if (result.getValue(req.getColumnName()) == null || !result.getValue(req.getColumnName()).toString().equalsIgnoreCase(req.getColumnValue())) {
-					isValid = false;
-					break;
-				}
-			}
-			
-			// All conditions were met, so we add this value.
-			if (isValid) {
-				value += Double.parseDouble(result.getValue("value").toString());
-			}
+		return new RowRequirement[] { new RowRequirement("world", worldName) };
+	}
+
+	/**
+	 * Add up the values of all rows that meet the given conditions.
+	 * @return the total, or null if the player info is not valid.
+	 */
+	private static Double getTotal(PlayerInfo info, RowRequirement... conditions) {
+		if (!info.isValid()) {
+			return null;
 		}
 
-		return value;
+		return info.getTotalValue(conditions);
 	}
 	
+	/**
+	 * Get the players with the highest total of a stat, e.g. the top 10 players that broke the most blocks.
+	 * <br>Leaderboards are kept in memory and updated as stats change, so this is safe to call on the main thread. The number of
+	 * players on a leaderboard can be set in the config.
+	 * <br>The leaderboard of a world is loaded the first time it is asked for, so it is empty until it has been loaded.
+	 * @param statType the {@link PlayerStat} to get the leaderboard of.
+	 * @param worldName Name of the world to get the leaderboard of, can also be null to get the leaderboard of all worlds.
+	 * @return a list of players and their total, highest total first.
+	 */
+	public List<LeaderboardEntry> getLeaderboard(PlayerStat statType, String worldName) {
+		return plugin.getLeaderboardManager().getLeaderboard(statType, worldName);
+	}
+
 	/**
 	 * Get a dependency handler of Statz. Since Statz also 'tracks' data of other plugins (in reality it provides a way to connect to other plugins,
 	 * but does not actually store the information in its database). 
@@ -0,0 +1,47 @@
+package me.staartvin.statz.commands;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+
+import me.staartvin.statz.Statz;
+
+/**
+ * Handles the '/statz' command and passes it on to the sub command that was used, e.g. '/statz perf'.
+ * <br>A sub command gets the arguments that come after its own name.
+ *
+ * @author Staartvin
+ *
+ */
+public class CommandsManager implements CommandExecutor {
+
+	// Sub commands by name
+	private final Map<String, CommandExecutor> commands = new HashMap<>();
+
+	public CommandsManager(Statz plugin) {
+		commands.put("perf", new PerfCommand(plugin));
+	}
+
+	public boolean onCommand(CommandSender sender, Command cmd, String label, String[] args) {
+		if (args.length == 0) {
+			return false;
+		}
+
+		CommandExecutor command = commands.get(args[0].toLowerCase());
+
+		if (command == null) {
+			sender.sendMessage(ChatColor.RED + "Unknown command '" + args[0] + "'. Use one of " + commands.keySet() + ".");
+			return true;
+		}
+
+		String[] subArgs = new String[args.length - 1];
+
+		System.arraycopy(args, 1, subArgs, 0, subArgs.length);
+
+		return command.onCommand(sender, cmd, label, subArgs);
+	}
+}
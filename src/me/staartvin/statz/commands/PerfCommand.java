@@ -0,0 +1,108 @@
+package me.staartvin.statz.commands;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map.Entry;
+import java.util.logging.Level;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+
+import me.staartvin.statz.Statz;
+import me.staartvin.statz.metrics.Gauge;
+import me.staartvin.statz.metrics.Histogram;
+import me.staartvin.statz.metrics.MetricsRegistry;
+
+/**
+ * '/statz perf' shows what Statz costs right now: the size of the pool, how long flushes and database calls take, how well
+ * the cache works and how long every listener takes.
+ * <br>'/statz perf dump' writes every metric to a file (see {@link MetricsRegistry#writeSnapshot()}).
+ *
+ * @author Staartvin
+ *
+ */
+public class PerfCommand implements CommandExecutor {
+
+	private final Statz plugin;
+
+	public PerfCommand(Statz plugin) {
+		this.plugin = plugin;
+	}
+
+	public boolean onCommand(CommandSender sender, Command cmd, String label, String[] args) {
+		if (!sender.hasPermission("statz.perf")) {
+			sender.sendMessage(ChatColor.RED + "You are not allowed to use this command.");
+			return true;
+		}
+
+		MetricsRegistry metrics = plugin.getMetricsRegistry();
+
+		if (args.length > 0 && args[0].equalsIgnoreCase("dump")) {
+			try {
+				File file = metrics.writeSnapshot();
+
+				sender.sendMessage(ChatColor.GREEN + "Metrics have been written to " + file.getPath());
+			} catch (IOException e) {
+				plugin.getLogger().log(Level.SEVERE, "Could not write metrics:", e);
+				sender.sendMessage(ChatColor.RED + "Could not write metrics: " + e.getMessage());
+			}
+
+			return true;
+		}
+
+		sender.sendMessage(ChatColor.GOLD + "---- Statz performance ----");
+
+		sender.sendMessage(ChatColor.YELLOW + "Pool: " + ChatColor.WHITE + gauge(metrics, "pool.rows") + " rows, "
+				+ gauge(metrics, "pool.in_flight_rows") + " being written, " + gauge(metrics, "spill.spilled_rows")
+				+ " spilled to disk");
+
+		sender.sendMessage(ChatColor.YELLOW + "Flushes: " + ChatColor.WHITE + "every " + gauge(metrics, "flush.interval")
+				+ "s, " + gauge(metrics, "flush.batch_size") + " rows per batch, took "
+				+ times(metrics.getHistogram("pool.flush_time")));
+
+		sender.sendMessage(ChatColor.YELLOW + "Database: " + ChatColor.WHITE
+				+ (gauge(metrics, "database.available").equals("1") ? "available" : ChatColor.RED + "down" + ChatColor.WHITE)
+				+ ", " + metrics.getCounter("database.rows_written").getCount() + " rows written, "
+				+ metrics.getCounter("database.errors").getCount() + " errors");
+
+		sender.sendMessage(ChatColor.YELLOW + "  Reads: " + ChatColor.WHITE + times(metrics.getHistogram("database.read_time")));
+		sender.sendMessage(ChatColor.YELLOW + "  Writes: " + ChatColor.WHITE + times(metrics.getHistogram("database.write_time")));
+
+		sender.sendMessage(ChatColor.YELLOW + "Cache: " + ChatColor.WHITE + gauge(metrics, "cache.players") + " players, "
+				+ String.format("%.1f", plugin.getCacheManager().getHitRatio() * 100) + "% hits");
+
+		sender.sendMessage(ChatColor.YELLOW + "Listeners:");
+
+		for (Entry<String, Histogram> entry : metrics.getHistograms().subMap("listener.time{", "listener.time|").entrySet()) {
+			String name = entry.getKey().substring(entry.getKey().indexOf('=') + 1, entry.getKey().length() - 1);
+
+			sender.sendMessage(ChatColor.YELLOW + "  " + name + ": " + ChatColor.WHITE + times(entry.getValue()));
+		}
+
+		sender.sendMessage(ChatColor.GRAY + "Use '/" + label + " perf dump' to write all metrics to a file.");
+
+		return true;
+	}
+
+	private static String gauge(MetricsRegistry metrics, String name) {
+		Gauge gauge = metrics.getGauges().get(name);
+
+		if (gauge == null) {
+			return "?";
+		}
+
+		double value = gauge.getValue();
+
+		return value == Math.rint(value) ? Long.toString((long) value) : String.format("%.1f", value);
+	}
+
+	// Percentiles of a histogram of nanoseconds, in milliseconds.
+	private static String times(Histogram histogram) {
+		Histogram.Snapshot snapshot = histogram.getSnapshot();
+
+		return String.format("p50 %.3f ms, p99 %.3f ms, max %.3f ms (%d times)", snapshot.getPercentile(50) / 1000000.0,
+				snapshot.getPercentile(99) / 1000000.0, snapshot.getMax() / 1000000.0, snapshot.getCount());
+	}
+}
@@ -1,6 +1,7 @@
 package me.staartvin.statz.config;
 
 import me.staartvin.statz.Statz;
+import me.staartvin.statz.database.datatype.Table.UUIDStorage;
 
 public class ConfigHandler {
 	
@@ -20,7 +21,33 @@ public class ConfigHandler {
 				+ "\nThe 'show database save message' option allows you to toggle the visibility of the 'Save message'. Every few minutes, the database of Statz is saved. If you"
 				+ "set this option to false, Statz will still save the database, but won't show the message."
 				+ "\nThe 'periodic save time' value represents the time (in seconds) after an update is sent to the database. The default is 10 seconds and I don't recommend changing it."
-				+ "\nYou can experiment with it and see whether it improves performance for your server. A lower value means the database is updated more often, resulting in a decrement of performance.");
+				+ "\nYou can experiment with it and see whether it improves performance for your server. A lower value means the database is updated more often, resulting in a decrement of performance."
+				+ "\nThe 'sqlite.cache size' value is the amount of memory (in KB) SQLite may use to cache pages of the database. The 'sqlite.mmap size' value is the part of the database (in MB)"
+				+ "\nthat SQLite reads through memory-mapped I/O. Set it to 0 to turn memory-mapped I/O off. Both options are only used when MySQL is disabled."
+				+ "\nThe 'database.pool size' value is the maximum number of connections Statz opens to its database, and the number of threads that read from and write to it."
+				+ "\nThe 'database.connection timeout' value is the time (in seconds) Statz waits for a free connection. A connection that has not been used for a while is checked first, which may take"
+				+ "\nat most 'database.validation timeout' seconds. Connections that have not been used for 'database.idle timeout' seconds are closed."
+				+ "\nThe 'database.queue size' value is the maximum number of database tasks that can wait for a free thread. When the queue is full, new tasks are dropped and a warning is shown."
+				+ "\nPooled updates are written in transactions of at most 'database.transaction rows' rows, which are sent in batches of at most 'database.batch rows' rows."
+				+ "\nA transaction that fails is tried again 'database.batch retries' times. Updates that still could not be written are put back in the pool and saved later."
+				+ "\nWhen connecting to the database fails 'database.breaker failures' times in a row, Statz stops using it until it is back. Statz tries again after 'database.min backoff' seconds,"
+				+ "\nand waits twice as long after every attempt that fails, up to 'database.max backoff' seconds. In the meantime, updates are kept in the pool. When the pool is full (see 'flush.max pool rows'),"
+				+ "\nit is moved to disk (in the 'spill' folder) if 'database.spill to disk' is true. Updates on disk are written to the database first when it is back."
+				+ "\nThe 'database.uuid storage' option sets how uuids are stored: 'text' (as before), 'char' (exactly 36 characters) or 'binary' (16 bytes, the smallest)."
+				+ "\nWhen 'database.compact storage' is true, uuids are always stored as binary and the names of worlds, mobs, items, causes and ways of moving are stored as a number."
+				+ "\nThe names themselves are stored once, in the 'statz_worlds' and 'statz_dims' tables. This makes tables about half as big."
+				+ "\nExisting tables are migrated when Statz is enabled, which may take a while for large tables. Make a backup first!"
+				+ "\nThe 'leaderboards.size' value is the number of players that Statz keeps on the leaderboard of each stat."
+				+ "\nWhen 'journal.enabled' is true, every update is also written to a journal (in the 'journal' folder), so updates that were not saved to the database yet"
+				+ "\nare not lost when the server crashes. This makes it safe to use a longer 'periodic save time'."
+				+ "\nThe pool of updates is sent every 'periodic save time' seconds at first. After that, the time between saves adapts itself, between 'flush.min interval'"
+				+ "\nand 'flush.max interval' seconds: it grows when fewer than 'flush.small pool rows' updates were pooled, and shrinks when a lot were."
+				+ "\nThe pool is saved right away when it holds 'flush.max pool rows' updates or takes (roughly) 'flush.max pool memory' MB."
+				+ "\nUpdates are written in batches of 'flush.min batch size' to 'flush.max batch size' rows. Batches get smaller when they take longer than 'flush.slow batch time' milliseconds."
+				+ "\nStatz keeps track of how long its listeners, flushes and database calls take, which can be seen with '/statz perf'. When 'metrics.time listeners' is false,"
+				+ "\nlisteners are not timed, which saves a little time on every event."
+				+ "\nWhen 'metrics.http port' is not 0, the metrics can be scraped by Prometheus at http://<metrics.http address>:<metrics.http port>/metrics."
+				+ "\nThe default address only allows scrapes from the machine the server runs on.");
 		
 		plugin.getConfig().addDefault("track stats", true);
 		plugin.getConfig().addDefault("show database save message", true);
@@ -34,6 +61,41 @@ public class ConfigHandler {
 		
 		plugin.getConfig().addDefault("periodic save time", 10);
 		
+		plugin.getConfig().addDefault("sqlite.cache size", 8192);
+		plugin.getConfig().addDefault("sqlite.mmap size", 64);
+		
+		plugin.getConfig().addDefault("database.pool size", 4);
+		plugin.getConfig().addDefault("database.connection timeout", 30);
+		plugin.getConfig().addDefault("database.validation timeout", 5);
+		plugin.getConfig().addDefault("database.idle timeout", 600);
+		plugin.getConfig().addDefault("database.queue size", 1000);
+		plugin.getConfig().addDefault("database.batch rows", 1000);
+		plugin.getConfig().addDefault("database.transaction rows", 5000);
+		plugin.getConfig().addDefault("database.batch retries", 2);
+		plugin.getConfig().addDefault("database.breaker failures", 3);
+		plugin.getConfig().addDefault("database.min backoff", 1);
+		plugin.getConfig().addDefault("database.max backoff", 300);
+		plugin.getConfig().addDefault("database.spill to disk", true);
+		plugin.getConfig().addDefault("database.uuid storage", "text");
+		plugin.getConfig().addDefault("database.compact storage", false);
+		
+		plugin.getConfig().addDefault("leaderboards.size", 10);
+		
+		plugin.getConfig().addDefault("journal.enabled", true);
+		
+		plugin.getConfig().addDefault("flush.min interval", 5);
+		plugin.getConfig().addDefault("flush.max interval", 120);
+		plugin.getConfig().addDefault("flush.small pool rows", 1000);
+		plugin.getConfig().addDefault("flush.max pool rows", 50000);
+		plugin.getConfig().addDefault("flush.max pool memory", 32);
+		plugin.getConfig().addDefault("flush.min batch size", 250);
+		plugin.getConfig().addDefault("flush.max batch size", 5000);
+		plugin.getConfig().addDefault("flush.slow batch time", 500);
+		
+		plugin.getConfig().addDefault("metrics.time listeners", true);
+		plugin.getConfig().addDefault("metrics.http port", 0);
+		plugin.getConfig().addDefault("metrics.http address", "127.0.0.1");
+		
 		plugin.getConfig().options().copyDefaults(true);
 
 		this.saveConfig();
@@ -88,4 +150,235 @@ public class ConfigHandler {
 	public int getPeriodicSaveTime() {
 		return plugin.getConfig().getInt("periodic save time", 10);
 	}
+	
+	/**
+	 * Get the size of the page cache of SQLite.
+	 * @return the size of the cache in KB.
+	 */
+	public int getSQLiteCacheSize() {
+		return plugin.getConfig().getInt("sqlite.cache size", 8192);
+	}
+	
+	/**
+	 * Get the maximum part of the SQLite database that is accessed with memory-mapped I/O.
+	 * @return the size in MB, 0 if memory-mapped I/O should not be used.
+	 */
+	public int getSQLiteMmapSize() {
+		return plugin.getConfig().getInt("sqlite.mmap size", 64);
+	}
+	
+	/**
+	 * Get the maximum number of connections to the database, which is also the number of database threads.
+	 * @return the size of the connection pool.
+	 */
+	public int getDatabasePoolSize() {
+		return plugin.getConfig().getInt("database.pool size", 4);
+	}
+	
+	/**
+	 * Get the time to wait for a free connection to the database.
+	 * @return the timeout in seconds.
+	 */
+	public int getDatabaseConnectionTimeout() {
+		return plugin.getConfig().getInt("database.connection timeout", 30);
+	}
+	
+	/**
+	 * Get the time a connection may take to respond when it is checked before it is used.
+	 * @return the timeout in seconds.
+	 */
+	public int getDatabaseValidationTimeout() {
+		return plugin.getConfig().getInt("database.validation timeout", 5);
+	}
+	
+	/**
+	 * Get the time after which an unused connection to the database is closed.
+	 * @return the timeout in seconds.
+	 */
+	public int getDatabaseIdleTimeout() {
+		return plugin.getConfig().getInt("database.idle timeout", 600);
+	}
+	
+	/**
+	 * Get the maximum number of database tasks that can wait for a free database thread.
+	 * @return the size of the queue.
+	 */
+	public int getDatabaseQueueSize() {
+		return plugin.getConfig().getInt("database.queue size", 1000);
+	}
+	
+	/**
+	 * Get the maximum number of rows that are sent to the database in one batch.
+	 * @return the maximum size of a batch.
+	 */
+	public int getBatchRows() {
+		return plugin.getConfig().getInt("database.batch rows", 1000);
+	}
+	
+	/**
+	 * Get the maximum number of rows that are written in one transaction.
+	 * @return the maximum size of a transaction.
+	 */
+	public int getTransactionRows() {
+		return plugin.getConfig().getInt("database.transaction rows", 5000);
+	}
+	
+	/**
+	 * Get the number of times a transaction that failed is tried again.
+	 * @return the number of retries.
+	 */
+	public int getBatchRetries() {
+		return plugin.getConfig().getInt("database.batch retries", 2);
+	}
+	
+	/**
+	 * Get the number of failed connections in a row after which the database is considered to be down.
+	 * @return the failure threshold of the circuit breaker.
+	 */
+	public int getBreakerFailures() {
+		return plugin.getConfig().getInt("database.breaker failures", 3);
+	}
+	
+	/**
+	 * Get the time to wait before connecting again, after the database went down.
+	 * @return the minimum backoff time (in seconds).
+	 */
+	public int getMinBackoff() {
+		return plugin.getConfig().getInt("database.min backoff", 1);
+	}
+	
+	/**
+	 * Get the longest time to wait between two attempts to connect, while the database is down.
+	 * @return the maximum backoff time (in seconds).
+	 */
+	public int getMaxBackoff() {
+		return plugin.getConfig().getInt("database.max backoff", 300);
+	}
+	
+	/**
+	 * Check whether a full pool is moved to disk while the database is down.
+	 * @return true if the pool may be spilled to disk, false if it is kept in memory.
+	 */
+	public boolean isSpillEnabled() {
+		return plugin.getConfig().getBoolean("database.spill to disk", true);
+	}
+	
+	/**
+	 * Get how uuids should be stored in the database. Compact storage always stores them as binary.
+	 * @return the storage of uuids, or {@link UUIDStorage#TEXT} if the option is not valid.
+	 */
+	public UUIDStorage getUUIDStorage() {
+		if (this.isCompactStorage()) {
+			return UUIDStorage.BINARY;
+		}
+
+		String storage = plugin.getConfig().getString("database.uuid storage", "text");
+
+		try {
+			return UUIDStorage.valueOf(storage.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			plugin.getLogger().warning("'" + storage + "' is not a valid uuid storage, using 'text' instead.");
+			return UUIDStorage.TEXT;
+		}
+	}
+	
+	/**
+	 * Check whether names of worlds, mobs, items, etc. should be stored as ids in a dictionary, instead of on every row.
+	 * @return true if compact storage is used, false otherwise.
+	 */
+	public boolean isCompactStorage() {
+		return plugin.getConfig().getBoolean("database.compact storage", false);
+	}
+	
+	/**
+	 * Get the number of players on each leaderboard.
+	 * @return the size of a leaderboard.
+	 */
+	public int getLeaderboardSize() {
+		return plugin.getConfig().getInt("leaderboards.size", 10);
+	}
+	
+	/**
+	 * Check whether updates in the pool should be written to a journal, so they can be recovered after a crash.
+	 * @return true if the journal is enabled, false otherwise.
+	 */
+	public boolean isJournalEnabled() {
+		return plugin.getConfig().getBoolean("journal.enabled", true);
+	}
+	
+	/**
+	 * Get the shortest time between two saves of the pool.
+	 * @return the minimum flush interval (in seconds).
+	 */
+	public int getMinFlushInterval() {
+		return plugin.getConfig().getInt("flush.min interval", 5);
+	}
+	
+	/**
+	 * Get the longest time between two saves of the pool.
+	 * @return the maximum flush interval (in seconds).
+	 */
+	public int getMaxFlushInterval() {
+		return plugin.getConfig().getInt("flush.max interval", 120);
+	}
+	
+	/**
+	 * Get the number of pooled updates below which the pool is saved less often.
+	 * @return the number of rows of a small pool.
+	 */
+	public int getSmallPoolRows() {
+		return plugin.getConfig().getInt("flush.small pool rows", 1000);
+	}
+	
+	/**
+	 * Get the number of pooled updates at which the pool is saved right away.
+	 * @return the maximum number of rows in the pool.
+	 */
+	public int getMaxPoolRows() {
+		return plugin.getConfig().getInt("flush.max pool rows", 50000);
+	}
+	
+	/**
+	 * Get the (estimated) memory the pool may take before it is saved right away.
+	 * @return the maximum memory of the pool (in MB).
+	 */
+	public int getMaxPoolMemory() {
+		return plugin.getConfig().getInt("flush.max pool memory", 32);
+	}
+	
+	public int getMinBatchSize() {
+		return plugin.getConfig().getInt("flush.min batch size", 250);
+	}
+	
+	public int getMaxBatchSize() {
+		return plugin.getConfig().getInt("flush.max batch size", 5000);
+	}
+	
+	/**
+	 * Get the time a batch may take before batches are made smaller.
+	 * @return the slow batch time (in milliseconds).
+	 */
+	public int getSlowBatchTime() {
+		return plugin.getConfig().getInt("flush.slow batch time", 500);
+	}
+	
+	/**
+	 * Check whether the time every listener takes is recorded (see {@link me.staartvin.statz.metrics.MetricsRegistry}).
+	 * @return true if listeners are timed, false otherwise.
+	 */
+	public boolean isListenerTimingEnabled() {
+		return plugin.getConfig().getBoolean("metrics.time listeners", true);
+	}
+	
+	/**
+	 * Get the port the metrics are served on for Prometheus (see {@link me.staartvin.statz.metrics.PrometheusExporter}).
+	 * @return the port, or 0 if the metrics are not served.
+	 */
+	public int getMetricsPort() {
+		return plugin.getConfig().getInt("metrics.http port", 0);
+	}
+	
+	public String getMetricsAddress() {
+		return plugin.getConfig().getString("metrics.http address", "127.0.0.1");
+	}
 }
@@ -0,0 +1,187 @@
+package me.staartvin.statz.database;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bukkit.ChatColor;
+
+import me.staartvin.statz.Statz;
+
+/**
+ * Keeps track of whether the database can be reached, so Statz stops asking it when it is down.
+ * <br><br>The breaker is closed while the database works. After a number of failures in a row, it opens: no connections are
+ * made anymore and {@link DatabaseConnector#getConnection()} returns null right away, instead of waiting for a timeout on every call.
+ * <br>Once the backoff time has passed, a single request is let through to see whether the database is back (the breaker is
+ * half open). If it works, the breaker closes again. If not, it opens again and the backoff time is doubled, up to a maximum.
+ *
+ * @author Staartvin
+ *
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final Statz plugin;
+
+	private final int failureThreshold;
+
+	private final long minBackoff, maxBackoff;
+
+	private volatile State state = State.CLOSED;
+
+	// Failures in a row since the last success.
+	private volatile int failures = 0;
+
+	// Time (in milliseconds) to wait before the next attempt.
+	private long backoff;
+
+	// When the next attempt may be done.
+	private long retryAt;
+
+	// When the breaker was opened, to report how long the database was down.
+	private long openedAt;
+
+	private final AtomicLong timesOpened = new AtomicLong();
+	private final AtomicLong rejectedRequests = new AtomicLong();
+
+	/**
+	 * Create a closed circuit breaker.
+	 * @param plugin Plugin to report to
+	 * @param failureThreshold Number of failures in a row after which the breaker opens
+	 * @param minBackoff Time (in milliseconds) before the first attempt after opening
+	 * @param maxBackoff Maximum time (in milliseconds) between two attempts
+	 */
+	public CircuitBreaker(Statz plugin, int failureThreshold, long minBackoff, long maxBackoff) {
+		this.plugin = plugin;
+		this.failureThreshold = Math.max(1, failureThreshold);
+		this.minBackoff = Math.max(1, minBackoff);
+		this.maxBackoff = Math.max(this.minBackoff, maxBackoff);
+		this.backoff = this.minBackoff;
+	}
+
+	/**
+	 * Check whether a request to the database may be done. When the breaker is open and the backoff time has passed, this
+	 * lets a single request through. Its outcome has to be reported with {@link #recordSuccess()} or {@link #recordFailure()},
+	 * or with {@link #cancelProbe()} when it ended without telling whether the database is back.
+	 * @return true if the database may be asked, false otherwise.
+	 */
+	public boolean allowRequest() {
+		// Most of the time, the database just works.
+		if (state == State.CLOSED) {
+			return true;
+		}
+
+		synchronized (this) {
+			if (state == State.OPEN && System.currentTimeMillis() >= retryAt) {
+				state = State.HALF_OPEN;
+				return true;
+			}
+
+			if (state == State.CLOSED) {
+				return true;
+			}
+		}
+
+		rejectedRequests.incrementAndGet();
+
+		return false;
+	}
+
+	/**
+	 * Check whether the database is (probably) available, without doing a request. This is the case when the breaker is
+	 * closed, or when it is open and the next attempt is due.
+	 * @return true if the database is worth asking, false otherwise.
+	 */
+	public synchronized boolean isAvailable() {
+		return state == State.CLOSED || (state == State.OPEN && System.currentTimeMillis() >= retryAt);
+	}
+
+	/**
+	 * Report that a request to the database worked.
+	 * @return true if this closed the breaker, i.e. the database is back after it was down.
+	 */
+	public boolean recordSuccess() {
+		if (state == State.CLOSED && failures == 0) {
+			return false;
+		}
+
+		synchronized (this) {
+			failures = 0;
+
+			if (state == State.CLOSED) {
+				return false;
+			}
+
+			state = State.CLOSED;
+			backoff = minBackoff;
+
+			plugin.getLogger().info("The database is available again, after " + (System.currentTimeMillis() - openedAt) / 1000
+					+ " seconds.");
+
+			return true;
+		}
+	}
+
+	/**
+	 * Report that a request to the database failed because it could not be reached.
+	 */
+	public synchronized void recordFailure() {
+		failures++;
+
+		long now = System.currentTimeMillis();
+
+		if (state == State.HALF_OPEN) {
+			// Still down, so wait longer before trying again.
+			backoff = Math.min(maxBackoff, backoff * 2);
+			state = State.OPEN;
+			retryAt = now + backoff;
+
+			plugin.debugMessage(ChatColor.RED + "The database is still not available, trying again in " + backoff / 1000.0
+					+ " seconds.");
+		} else if (state == State.CLOSED && failures >= failureThreshold) {
+			backoff = minBackoff;
+			state = State.OPEN;
+			retryAt = now + backoff;
+			openedAt = now;
+
+			timesOpened.incrementAndGet();
+
+			plugin.getLogger().warning("The database is not available. Updates are kept in memory (and on disk) until it is back.");
+		}
+	}
+
+	/**
+	 * Report that the request that was let through while the breaker was half open ended without a result, e.g. because no
+	 * connection was free. The breaker opens again and the next attempt is done after the same backoff time. Nothing happens
+	 * when the breaker is not half open.
+	 */
+	public synchronized void cancelProbe() {
+		if (state != State.HALF_OPEN) {
+			return;
+		}
+
+		state = State.OPEN;
+		retryAt = System.currentTimeMillis() + backoff;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * Get the time to wait before the next attempt, when the breaker is open.
+	 * @return the current backoff time (in milliseconds).
+	 */
+	public synchronized long getBackoff() {
+		return backoff;
+	}
+
+	public long getTimesOpened() {
+		return timesOpened.get();
+	}
+
+	public long getRejectedRequests() {
+		return rejectedRequests.get();
+	}
+}
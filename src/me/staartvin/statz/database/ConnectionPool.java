@@ -0,0 +1,276 @@
+package me.staartvin.statz.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded pool of connections to the database of a {@link DatabaseConnector}.
+ * <br>At most a fixed number of connections are handed out at the same time. A borrowed connection is returned to the pool
+ * by closing it, so it can be used like any other connection:
+ * <br><code>Connection conn = pool.getConnection(); try { ... } finally { conn.close(); }</code>
+ * <br><br>Connections that have been idle for a while are validated before they are handed out again, and connections that
+ * have been idle longer than the idle timeout are closed.
+ *
+ * @author Staartvin
+ *
+ */
+public class ConnectionPool {
+
+	// Connections that were used less than this many milliseconds ago are not validated.
+	private static final long VALIDATION_INTERVAL = 500;
+
+	private final DatabaseConnector connector;
+
+	private final int maximumSize;
+	private final long connectionTimeout;
+	private final int validationTimeout;
+	private final long idleTimeout;
+
+	// One permit per connection that can be handed out.
+	private final Semaphore permits;
+
+	// Connections that are not in use, the most recently used one first.
+	private final LinkedBlockingDeque<IdleConnection> idle = new LinkedBlockingDeque<>();
+
+	private volatile boolean closed = false;
+
+	/**
+	 * Create a new pool. Connections are only opened when they are needed.
+	 * @param connector Connector that opens new connections
+	 * @param maximumSize Maximum number of connections that can be used at the same time
+	 * @param connectionTimeout Time (in seconds) to wait for a connection when all connections are in use
+	 * @param validationTimeout Time (in seconds) a connection may take to respond when it is validated
+	 * @param idleTimeout Time (in seconds) after which an unused connection is closed
+	 */
+	public ConnectionPool(DatabaseConnector connector, int maximumSize, int connectionTimeout, int validationTimeout,
+			int idleTimeout) {
+		this.connector = connector;
+		this.maximumSize = Math.max(1, maximumSize);
+		this.connectionTimeout = TimeUnit.SECONDS.toMillis(connectionTimeout);
+		this.validationTimeout = validationTimeout;
+		this.idleTimeout = TimeUnit.SECONDS.toMillis(idleTimeout);
+		this.permits = new Semaphore(this.maximumSize, true);
+	}
+
+	/**
+	 * Borrow a connection from the pool. If all connections are in use, this waits until one is returned.
+	 * <br>The connection has to be closed to return it to the pool.
+	 * @return a connection to the database.
+	 * @throws SQLException when no connection became available in time or a new connection could not be opened.
+	 */
+	public Connection getConnection() throws SQLException {
+		if (closed) {
+			throw new SQLException("The connection pool has been closed.");
+		}
+
+		try {
+			if (!permits.tryAcquire(connectionTimeout, TimeUnit.MILLISECONDS)) {
+				// Not a problem of the database itself, so it is not reported to the circuit breaker (see DatabaseConnector#getConnection()).
+				throw new SQLTimeoutException("Timed out while waiting for a database connection. All " + maximumSize
+						+ " connections are in use.");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a database connection.", e);
+		}
+
+		try {
+			Connection connection = this.takeIdleConnection();
+
+			if (connection == null) {
+				connection = connector.createConnection();
+			}
+
+			return this.wrap(connection);
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	private Connection takeIdleConnection() {
+		IdleConnection candidate;
+
+		while ((candidate = idle.pollFirst()) != null) {
+			long idleTime = System.currentTimeMillis() - candidate.since;
+
+			if (idleTime > idleTimeout) {
+				closeQuietly(candidate.connection);
+				continue;
+			}
+
+			if (idleTime > VALIDATION_INTERVAL && !this.isValid(candidate.connection)) {
+				closeQuietly(candidate.connection);
+				continue;
+			}
+
+			return candidate.connection;
+		}
+
+		return null;
+	}
+
+	private boolean isValid(Connection connection) {
+		try {
+			return connection.isValid(validationTimeout);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private void release(Connection connection) {
+		try {
+			// Don't let an unfinished transaction leak to the next user of this connection.
+			if (!connection.isClosed() && !connection.getAutoCommit()) {
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+
+			if (closed || connection.isClosed()) {
+				closeQuietly(connection);
+			} else {
+				idle.offerFirst(new IdleConnection(connection));
+			}
+		} catch (SQLException e) {
+			closeQuietly(connection);
+		} finally {
+			permits.release();
+		}
+
+		this.evictIdleConnections();
+	}
+
+	// Close connections at the end of the idle queue that have not been used for too long.
+	private void evictIdleConnections() {
+		IdleConnection oldest;
+
+		while ((oldest = idle.peekLast()) != null && System.currentTimeMillis() - oldest.since > idleTimeout) {
+			if (idle.removeLastOccurrence(oldest)) {
+				closeQuietly(oldest.connection);
+			}
+		}
+	}
+
+	private Connection wrap(final Connection connection) {
+		return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new PooledConnection(connection));
+	}
+
+	private static void closeQuietly(Connection connection) {
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			// The connection is thrown away anyway.
+		}
+	}
+
+	/**
+	 * Close all idle connections and stop handing out connections. Connections that are still in use are closed when they are returned.
+	 */
+	public void close() {
+		closed = true;
+
+		IdleConnection connection;
+
+		while ((connection = idle.pollFirst()) != null) {
+			closeQuietly(connection.connection);
+		}
+	}
+
+	/**
+	 * Get the number of connections that are currently borrowed from this pool.
+	 * @return the number of connections in use.
+	 */
+	public int getActiveConnections() {
+		return maximumSize - permits.availablePermits();
+	}
+
+	/**
+	 * Get the number of open connections that are not in use.
+	 * @return the number of idle connections.
+	 */
+	public int getIdleConnections() {
+		return idle.size();
+	}
+
+	/**
+	 * Get the number of threads that are waiting for a connection.
+	 * @return the number of waiting threads.
+	 */
+	public int getWaitingThreads() {
+		return permits.getQueueLength();
+	}
+
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	private static class IdleConnection {
+		private final Connection connection;
+		private final long since = System.currentTimeMillis();
+
+		private IdleConnection(Connection connection) {
+			this.connection = connection;
+		}
+	}
+
+	/**
+	 * Handles the calls to a borrowed connection. Closing it returns the connection to the pool, after which it can't be used anymore.
+	 */
+	private class PooledConnection implements InvocationHandler {
+
+		private final Connection connection;
+
+		private boolean returned = false;
+
+		private PooledConnection(Connection connection) {
+			this.connection = connection;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+
+			if (name.equals("close")) {
+				synchronized (this) {
+					if (!returned) {
+						returned = true;
+						release(connection);
+					}
+				}
+
+				return null;
+			}
+
+			if (name.equals("isClosed") && returned) {
+				return true;
+			}
+
+			if (name.equals("equals")) {
+				return proxy == args[0];
+			}
+
+			if (name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			}
+
+			if (returned) {
+				throw new SQLException("This connection has already been returned to the pool.");
+			}
+
+			try {
+				return method.invoke(connection, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
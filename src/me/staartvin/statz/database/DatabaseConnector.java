@@ -1,16 +1,46 @@
 package me.staartvin.statz.database;
 
+import java.nio.ByteBuffer;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
 import java.util.logging.Level;
 
 import org.bukkit.ChatColor;
 
 import me.staartvin.statz.Statz;
+import me.staartvin.statz.database.datatype.Column;
+import me.staartvin.statz.database.datatype.Index;
 import me.staartvin.statz.database.datatype.Query;
+import me.staartvin.statz.database.datatype.RowRequirement;
+import me.staartvin.statz.database.datatype.StatRow;
 import me.staartvin.statz.database.datatype.Table;
+import me.staartvin.statz.database.datatype.Table.SQLDataType;
+import me.staartvin.statz.database.datatype.Table.UUIDStorage;
+import me.staartvin.statz.database.datatype.TableSchema;
 import me.staartvin.statz.database.datatype.sqlite.SQLiteTable;
+import me.staartvin.statz.datamanager.PlayerStat;
+import me.staartvin.statz.metrics.Counter;
+import me.staartvin.statz.metrics.Gauge;
+import me.staartvin.statz.metrics.Histogram;
+import me.staartvin.statz.metrics.MetricsRegistry;
 
 public abstract class DatabaseConnector {
 	private final Statz plugin;
@@ -23,89 +53,1217 @@ public abstract class DatabaseConnector {
 
 	public static String databaseName = "statz";
 
-	public Connection connection;
+	// How many players are summed up in a single query, so we stay below the maximum number of parameters of a statement.
+	private static final int MAX_PLAYERS_PER_QUERY = 500;
+
+	// Connections to the database are borrowed from this pool.
+	private final ConnectionPool connectionPool;
+
+	// All reads and writes are run on these threads.
+	private final DatabaseExecutor executor;
+
+	// Stops asking the database for connections while it is down.
+	private final CircuitBreaker circuitBreaker;
+
+	// How uuids should be stored. Tables that store them differently are migrated when the database is loaded.
+	private final UUIDStorage uuidStorage;
+
+	// Whether names of worlds, mobs, items, etc. are stored as ids of a dictionary. Tables that store them differently are migrated too.
+	private final boolean compactStorage;
+
+	public static final String WORLDS_DICTIONARY = "worlds";
+	public static final String DIMENSIONS_DICTIONARY = "dims";
+
+	// Names of the dictionaries, by the name of the columns that use them.
+	private static final Map<String, String> DICTIONARY_COLUMNS = new HashMap<>();
+
+	static {
+		DICTIONARY_COLUMNS.put("world", WORLDS_DICTIONARY);
+
+		for (final String columnName : new String[] { "mob", "moveType", "cause", "foodEaten", "item", "caught" }) {
+			DICTIONARY_COLUMNS.put(columnName.toLowerCase(), DIMENSIONS_DICTIONARY);
+		}
+	}
+
+	// Dictionaries by name, see #addDictionary(Table).
+	private final Map<String, Dictionary> dictionaries = new HashMap<>();
+
+	// Released when the tables have been created and migrated, see #load().
+	private final CountDownLatch loaded = new CountDownLatch(1);
+
+	// How many rows are copied at once when a table is migrated.
+	private static final int MIGRATION_BATCH_SIZE = 1000;
+
+	// Time it takes to read rows and to write them (including retries).
+	private final Histogram readTime, writeTime;
+
+	private final Counter rowsWritten, rowsFailed, errors;
 
 	public DatabaseConnector(final Statz instance) {
 		plugin = instance;
+
+		connectionPool = new ConnectionPool(this, plugin.getConfigHandler().getDatabasePoolSize(),
+				plugin.getConfigHandler().getDatabaseConnectionTimeout(),
+				plugin.getConfigHandler().getDatabaseValidationTimeout(),
+				plugin.getConfigHandler().getDatabaseIdleTimeout());
+
+		executor = new DatabaseExecutor(plugin, plugin.getConfigHandler().getDatabasePoolSize(),
+				plugin.getConfigHandler().getDatabaseQueueSize());
+
+		circuitBreaker = new CircuitBreaker(plugin, plugin.getConfigHandler().getBreakerFailures(),
+				plugin.getConfigHandler().getMinBackoff() * 1000L, plugin.getConfigHandler().getMaxBackoff() * 1000L);
+
+		uuidStorage = plugin.getConfigHandler().getUUIDStorage();
+
+		compactStorage = plugin.getConfigHandler().isCompactStorage();
+
+		final MetricsRegistry metrics = plugin.getMetricsRegistry();
+
+		readTime = metrics.getHistogram("database.read_time");
+		writeTime = metrics.getHistogram("database.write_time");
+
+		rowsWritten = metrics.getCounter("database.rows_written");
+		rowsFailed = metrics.getCounter("database.rows_failed");
+		errors = metrics.getCounter("database.errors");
+
+		metrics.registerGauge("database.available", new Gauge() {
+			public double getValue() {
+				return isAvailable() ? 1 : 0;
+			}
+		});
+
+		metrics.registerGauge("database.breaker_opened", new Gauge() {
+			public double getValue() {
+				return circuitBreaker.getTimesOpened();
+			}
+		});
+
+		metrics.registerGauge("database.rejected_requests", new Gauge() {
+			public double getValue() {
+				return circuitBreaker.getRejectedRequests();
+			}
+		});
+	}
+
+	/**
+	 * Loads all tables into memory. This has to be run before
+	 * {@linkplain #load()}
+	 */
+	public abstract void loadTables();
+
+	/**
+	 * Get a {@linkplain SQLiteTable} object by table name.
+	 * 
+	 * @param tableName Name of the table
+	 * @return SQLiteTable object represented by that name or NULL if none was
+	 *         found.
+	 */
+	public Table getTable(String tableName) {
+
+		tableName = SQLiteConnector.prefix + tableName;
+
+		for (final Table table : tables) {
+			if (table.getTableName().equals(tableName)) {
+				return table;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Borrows a connection to the database from the connection pool. The connection has to be closed when it is not
+	 * needed anymore, which returns it to the pool.
+	 * <br>When the database is down (see {@link #getCircuitBreaker()}), this returns null right away.
+	 * 
+	 * @return a connection to the database or null if it couldn't connect.
+	 */
+	public Connection getConnection() {
+		if (!circuitBreaker.allowRequest()) {
+			return null;
+		}
+
+		final Connection conn;
+
+		try {
+			conn = connectionPool.getConnection();
+		} catch (final SQLTimeoutException ex) {
+			// The database is busy, not down. If this was an attempt to see whether it is back, it has to be done again later.
+			plugin.getLogger().log(Level.SEVERE, "Could not get a connection to the database: " + ex.getMessage());
+			circuitBreaker.cancelProbe();
+			return null;
+		} catch (final RuntimeException ex) {
+			circuitBreaker.cancelProbe();
+			throw ex;
+		} catch (final SQLException ex) {
+			errors.increment();
+
+			if (circuitBreaker.getState() == CircuitBreaker.State.CLOSED) {
+				plugin.getLogger().log(Level.SEVERE, "Could not get a connection to the database: " + ex.getMessage());
+			}
+
+			circuitBreaker.recordFailure();
+			return null;
+		}
+
+		if (circuitBreaker.recordSuccess()) {
+			// Players that joined while the database was down could not be loaded into the cache.
+			plugin.getCacheManager().scheduleLoadOnlinePlayers();
+		}
+
+		return conn;
+	}
+
+	/**
+	 * Check whether the database is (probably) available. When it is not, reads and writes are not tried and updates
+	 * stay in the pool.
+	 * @return true if the database is worth asking, false if it is down.
+	 */
+	public boolean isAvailable() {
+		return circuitBreaker.isAvailable();
+	}
+
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	/**
+	 * Count a statement that failed, and report it to the circuit breaker if it failed because the connection to the
+	 * database was lost.
+	 * @param e Exception of the statement
+	 */
+	protected void checkConnectionError(final SQLException e) {
+		errors.increment();
+
+		// SQL states of class 08 are connection exceptions.
+		if (e instanceof SQLNonTransientConnectionException || e instanceof SQLTransientConnectionException
+				|| (e.getSQLState() != null && e.getSQLState().startsWith("08"))) {
+			circuitBreaker.recordFailure();
+		}
+	}
+
+	/**
+	 * Opens a new connection to the database. This is used by the {@link ConnectionPool} when it needs another connection.
+	 * 
+	 * @return a new connection to the database.
+	 * @throws SQLException when no connection could be made.
+	 */
+	protected abstract Connection createConnection() throws SQLException;
+
+	/**
+	 * Close a connection that was borrowed with {@link #getConnection()}, returning it to the pool. Nothing happens when it is null.
+	 * @param conn Connection to close
+	 */
+	protected void closeConnection(final Connection conn) {
+		if (conn == null) {
+			return;
+		}
+
+		try {
+			conn.close();
+		} catch (final SQLException e) {
+			plugin.getLogger().log(Level.SEVERE, "Failed to close connection: ", e);
+		}
+	}
+
+	/**
+	 * Connects to sqlite database and automatically creates tables when needed.
+	 * <br>Tables are created with {@link #createTableStatement(Table, String)} and updated with {@link #updateTables(Connection)}.
+	 * Reads and writes wait until this is done (see {@link #awaitLoaded()}), so {@link #setLoaded()} has to be called afterwards, even when
+	 * loading failed.
+	 */
+	public abstract void load();
+
+	/**
+	 * Get the statement that creates a table (if it does not exist yet), with all of its columns and unique constraint.
+	 * Indexes are created by {@link #updateTables(Connection)}.
+	 * @param table Table to create
+	 * @param tableName Name to give the table, which is normally the name of the table itself.
+	 * @return an SQL statement.
+	 */
+	protected abstract String createTableStatement(Table table, String tableName);
+
+	/**
+	 * Get the SQL type of the uuid column.
+	 * @param storage How the uuid is stored
+	 * @return the type that is used when a table is created.
+	 */
+	protected abstract String getUUIDColumnType(UUIDStorage storage);
+
+	/**
+	 * Check whether looking up the rows of a player in a table uses an index, instead of scanning the whole table.
+	 * @param conn Connection to use
+	 * @param query Query that looks up rows by uuid, with the uuid as its only parameter
+	 * @param table Table that is queried
+	 * @return true if the database uses an index for the query, false otherwise.
+	 * @throws SQLException when the query plan could not be read.
+	 */
+	protected abstract boolean usesIndex(Connection conn, String query, Table table) throws SQLException;
+
+	/**
+	 * Get how uuids are stored in tables that are created, see the 'database.uuid storage' option.
+	 * @return how uuids are stored.
+	 */
+	public UUIDStorage getUUIDStorage() {
+		return uuidStorage;
+	}
+
+	/**
+	 * Check whether names in columns with a dictionary (worlds, mobs, items, ...) are stored as ids in tables that are created,
+	 * see the 'database.compact storage' option.
+	 * @return true if names are stored as ids, false otherwise.
+	 */
+	public boolean isCompactStorage() {
+		return compactStorage;
+	}
+
+	/**
+	 * Get the SQL type of a column in tables that are created. Columns with a dictionary store ids when compact storage is used.
+	 * @param column Column to get the type of
+	 * @return the data type of the column, as it is stored.
+	 */
+	protected SQLDataType getStoredDataType(final Column column) {
+		if (compactStorage && column.getDictionary() != null) {
+			return SQLDataType.INT;
+		}
+
+		return column.getDataType();
+	}
+
+	/**
+	 * Bring the tables that already exist up to date with the tables that are loaded (see {@link #loadTables()}):
+	 * <br>- The names of all dictionaries are read into memory.
+	 * <br>- Tables that store uuids differently than {@link #getUUIDStorage()}, or names differently than {@link #isCompactStorage()},
+	 * are copied to a new table that does.
+	 * <br>- Indexes that are missing are created.
+	 * <br>- Every table is checked to make sure that looking up the rows of a player uses an index.
+	 * <br>This is done when the database is loaded, on the connection that created the tables.
+	 * @param conn Connection to use
+	 * @throws SQLException when a table could not be updated.
+	 */
+	protected void updateTables(final Connection conn) throws SQLException {
+		for (final Dictionary dictionary : dictionaries.values()) {
+			dictionary.load(conn);
+		}
+
+		for (final Table table : tables) {
+			if (table.getColumn(TableSchema.UUID_COLUMN) == null) {
+				continue;
+			}
+
+			final Map<String, String> columnTypes = this.getColumnTypes(conn, table);
+
+			final UUIDStorage currentStorage = this.getCurrentUUIDStorage(columnTypes);
+			final boolean currentlyEncoded = this.isDictionaryEncoded(table, columnTypes);
+
+			table.setUUIDStorage(currentStorage);
+			table.setDictionaryEncoded(currentlyEncoded);
+
+			if (currentStorage != uuidStorage || currentlyEncoded != (compactStorage && this.hasDictionary(table))) {
+				this.migrateTable(conn, table);
+			}
+		}
+
+		for (final Table table : tables) {
+			this.createIndexes(conn, table);
+		}
+
+		for (final Table table : tables) {
+			if (table.getColumn(TableSchema.UUID_COLUMN) == null) {
+				continue;
+			}
+
+			// The same statement that loads a player into the cache (see #getRows(Table, Query)).
+			final String query = this.getSelectStatement(table,
+					Collections.singletonList(TableSchema.UUID_COLUMN));
+
+			if (!this.usesIndex(conn, query, table)) {
+				plugin.getLogger().warning("Looking up players in " + table.getTableName()
+						+ " does not use an index, so it scans the whole table!");
+			}
+		}
+	}
+
+	/**
+	 * Get the types of the columns of a table in the database.
+	 * @param conn Connection to use
+	 * @param table Table to check
+	 * @return a map of lower case column names to their (upper case) type, which is empty if the table does not exist.
+	 * @throws SQLException when the columns of the table could not be read.
+	 */
+	private Map<String, String> getColumnTypes(final Connection conn, final Table table) throws SQLException {
+		final Map<String, String> types = new HashMap<>();
+
+		final ResultSet rs = conn.getMetaData().getColumns(null, null, table.getTableName(), null);
+
+		try {
+			while (rs.next()) {
+				types.put(rs.getString("COLUMN_NAME").toLowerCase(), rs.getString("TYPE_NAME").toUpperCase());
+			}
+		} finally {
+			rs.close();
+		}
+
+		return types;
+	}
+
+	/**
+	 * Find out how the uuid column of a table is stored by looking at its type in the database.
+	 * @param columnTypes Types of the columns of the table, see {@link #getColumnTypes(Connection, Table)}
+	 * @return how uuids are stored in the table.
+	 */
+	private UUIDStorage getCurrentUUIDStorage(final Map<String, String> columnTypes) {
+		final String type = columnTypes.get(TableSchema.UUID_COLUMN);
+
+		// The table was just created.
+		if (type == null) {
+			return uuidStorage;
+		}
+
+		if (type.contains("BINARY") || type.contains("BLOB")) {
+			return UUIDStorage.BINARY;
+		}
+
+		if (type.startsWith("CHAR")) {
+			return UUIDStorage.CHAR;
+		}
+
+		return UUIDStorage.TEXT;
+	}
+
+	/**
+	 * Find out whether the columns of a table that have a dictionary store ids, by looking at their type in the database.
+	 * @param table Table to check
+	 * @param columnTypes Types of the columns of the table, see {@link #getColumnTypes(Connection, Table)}
+	 * @return true if the table stores ids of names, false if it stores the names themselves (or has no columns with a dictionary).
+	 */
+	private boolean isDictionaryEncoded(final Table table, final Map<String, String> columnTypes) {
+		for (final Column column : table.getColumns()) {
+			if (column.getDictionary() == null) {
+				continue;
+			}
+
+			final String type = columnTypes.get(column.getColumnName().toLowerCase());
+
+			// The table was just created.
+			if (type == null) {
+				return compactStorage;
+			}
+
+			return type.contains("INT");
+		}
+
+		return false;
+	}
+
+	private boolean hasDictionary(final Table table) {
+		for (final Column column : table.getColumns()) {
+			if (column.getDictionary() != null) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Copy a table to a new table that stores uuids as {@link #getUUIDStorage()} and names as {@link #isCompactStorage()},
+	 * and replace the old table with it.
+	 * <br>The old table is only dropped after all rows have been copied. When something goes wrong, the old table is kept.
+	 * @param conn Connection to use
+	 * @param table Table to migrate
+	 */
+	private void migrateTable(final Connection conn, final Table table) {
+		final String tableName = table.getTableName();
+		final String newTableName = tableName + "_migrating";
+		final String oldTableName = tableName + "_old";
+
+		final boolean encoded = compactStorage && this.hasDictionary(table);
+
+		plugin.getLogger().info("Migrating " + tableName + " to store uuids as " + uuidStorage
+				+ (this.hasDictionary(table) ? " and names as " + (encoded ? "ids" : "text") : "") + "...");
+
+		final StringBuilder columns = new StringBuilder();
+		final StringBuilder parameters = new StringBuilder();
+
+		int uuidIndex = -1;
+
+		for (int i = 0; i < table.getColumns().size(); i++) {
+			final String columnName = table.getColumns().get(i).getColumnName();
+
+			columns.append(i == 0 ? "" : ",").append(columnName);
+			parameters.append(i == 0 ? "?" : ",?");
+
+			if (columnName.equalsIgnoreCase(TableSchema.UUID_COLUMN)) {
+				uuidIndex = i + 1;
+			}
+		}
+
+		Statement statement = null;
+		PreparedStatement select = null;
+		PreparedStatement insert = null;
+
+		int copied = 0;
+
+		try {
+			statement = conn.createStatement();
+
+			statement.executeUpdate("DROP TABLE IF EXISTS " + newTableName);
+			statement.executeUpdate(this.createTableStatement(table, newTableName));
+
+			conn.setAutoCommit(false);
+
+			select = conn.prepareStatement("SELECT " + columns + " FROM " + tableName);
+			insert = conn.prepareStatement(
+					"INSERT INTO " + newTableName + " (" + columns + ") VALUES (" + parameters + ")");
+
+			final ResultSet rs = select.executeQuery();
+
+			try {
+				while (rs.next()) {
+					for (int i = 1; i <= table.getColumns().size(); i++) {
+						final String dictionary = table.getColumns().get(i - 1).getDictionary();
+
+						if (i == uuidIndex) {
+							final String uuid = this.readUUID(rs, i, table.getUUIDStorage());
+
+							this.bindUUID(insert, i, uuid, uuidStorage);
+						} else if (dictionary != null) {
+							final String name = this.readName(rs, i, dictionary, table.isDictionaryEncoded());
+
+							if (name != null && encoded) {
+								insert.setInt(i, dictionaries.get(dictionary).getOrCreateId(conn, name));
+							} else {
+								this.bindName(insert, i, name, dictionary, false);
+							}
+						} else {
+							insert.setObject(i, rs.getObject(i));
+						}
+					}
+
+					insert.addBatch();
+
+					if (++copied % MIGRATION_BATCH_SIZE == 0) {
+						insert.executeBatch();
+					}
+				}
+			} finally {
+				rs.close();
+			}
+
+			insert.executeBatch();
+
+			// Swap the tables in the same transaction (if the database supports transactions for this).
+			this.swapTables(statement, tableName, newTableName, oldTableName);
+			statement.executeUpdate("DROP TABLE " + oldTableName);
+
+			conn.commit();
+
+			table.setUUIDStorage(uuidStorage);
+			table.setDictionaryEncoded(encoded);
+
+			plugin.getLogger().info("Migrated " + copied + " rows of " + tableName + ".");
+		} catch (final SQLException | IllegalArgumentException e) {
+			plugin.getLogger().log(Level.SEVERE, "Could not migrate " + tableName + ", it still stores uuids as "
+					+ table.getUUIDStorage() + (table.isDictionaryEncoded() ? " and names as ids" : "") + ":", e);
+
+			this.rollback(conn);
+
+			// Names that were added to a dictionary during the migration are gone as well.
+			this.reloadDictionaries(conn);
+		} finally {
+			this.closeStatements(select, insert, statement);
+
+			try {
+				conn.setAutoCommit(true);
+			} catch (final SQLException e) {
+				plugin.getLogger().log(Level.SEVERE, "Failed to end transaction: ", e);
+			}
+		}
+	}
+
+	private void reloadDictionaries(final Connection conn) {
+		try {
+			conn.setAutoCommit(true);
+
+			for (final Dictionary dictionary : dictionaries.values()) {
+				dictionary.load(conn);
+			}
+		} catch (final SQLException e) {
+			plugin.getLogger().log(Level.SEVERE, "Failed to reload dictionaries: ", e);
+		}
+	}
+
+	/**
+	 * Replace a table by another table.
+	 * @param statement Statement to use
+	 * @param tableName Name of the table to replace
+	 * @param newTableName Name of the table that replaces it
+	 * @param oldTableName Name to give the table that is replaced
+	 * @throws SQLException when the tables could not be renamed.
+	 */
+	protected void swapTables(final Statement statement, final String tableName, final String newTableName,
+			final String oldTableName) throws SQLException {
+		statement.executeUpdate("ALTER TABLE " + tableName + " RENAME TO " + oldTableName);
+		statement.executeUpdate("ALTER TABLE " + newTableName + " RENAME TO " + tableName);
+	}
+
+	/**
+	 * Create the indexes of a table that don't exist yet.
+	 * @param conn Connection to use
+	 * @param table Table to create the indexes of
+	 * @throws SQLException when an index could not be created.
+	 */
+	private void createIndexes(final Connection conn, final Table table) throws SQLException {
+		if (table.getIndexes().isEmpty()) {
+			return;
+		}
+
+		// Names of indexes are compared case insensitively, as MySQL may change their case.
+		final Set<String> existing = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+		final ResultSet rs = conn.getMetaData().getIndexInfo(null, null, table.getTableName(), false, true);
+
+		try {
+			while (rs.next()) {
+				if (rs.getString("INDEX_NAME") != null) {
+					existing.add(rs.getString("INDEX_NAME"));
+				}
+			}
+		} finally {
+			rs.close();
+		}
+
+		for (final Index index : table.getIndexes()) {
+			if (existing.contains(index.getIndexName())) {
+				continue;
+			}
+
+			final StringBuilder columns = new StringBuilder();
+
+			for (final Column column : index.getColumns()) {
+				columns.append(columns.length() == 0 ? "" : ",").append(column.getColumnName());
+			}
+
+			final Statement statement = conn.createStatement();
+
+			try {
+				statement.executeUpdate(
+						"CREATE INDEX " + index.getIndexName() + " ON " + table.getTableName() + " (" + columns + ")");
+			} finally {
+				statement.close();
+			}
+
+			plugin.debugMessage(ChatColor.BLUE + "Created index '" + index.getIndexName() + "'");
+		}
+	}
+
+	/**
+	 * Let reads and writes continue, after the database has been loaded (see {@link #load()}).
+	 */
+	protected void setLoaded() {
+		loaded.countDown();
+	}
+
+	/**
+	 * Wait until the database has been loaded, as tables may still be created or migrated.
+	 * <br>All database work is queued after loading the database, so this hardly ever waits.
+	 */
+	protected void awaitLoaded() {
+		try {
+			loaded.await();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Bind a uuid to a statement, in the way the uuids of a table are stored.
+	 * @param ps Statement to bind the uuid to
+	 * @param parameterIndex Index of the parameter
+	 * @param uuid UUID to bind, as text
+	 * @param storage How the uuids are stored
+	 * @throws SQLException when the parameter could not be bound.
+	 */
+	protected void bindUUID(final PreparedStatement ps, final int parameterIndex, final String uuid,
+			final UUIDStorage storage) throws SQLException {
+		if (uuid == null) {
+			ps.setNull(parameterIndex, Types.NULL);
+		} else if (storage == UUIDStorage.BINARY) {
+			final UUID value = UUID.fromString(uuid);
+
+			ps.setBytes(parameterIndex, ByteBuffer.allocate(16).putLong(value.getMostSignificantBits())
+					.putLong(value.getLeastSignificantBits()).array());
+		} else {
+			ps.setString(parameterIndex, uuid);
+		}
+	}
+
+	/**
+	 * Read a uuid from a result set, in the way the uuids of a table are stored.
+	 * @param rs Result set to read from
+	 * @param columnIndex Index of the uuid column
+	 * @param storage How the uuids are stored
+	 * @return the uuid as text, or null if it is null.
+	 * @throws SQLException when the column could not be read.
+	 */
+	protected String readUUID(final ResultSet rs, final int columnIndex, final UUIDStorage storage)
+			throws SQLException {
+		if (storage != UUIDStorage.BINARY) {
+			return rs.getString(columnIndex);
+		}
+
+		final byte[] bytes = rs.getBytes(columnIndex);
+
+		if (bytes == null || bytes.length != 16) {
+			return null;
+		}
+
+		final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+		return new UUID(buffer.getLong(), buffer.getLong()).toString();
+	}
+
+	/**
+	 * Read a name from a column with a dictionary, in the way the names of a table are stored.
+	 * @param rs Result set to read from
+	 * @param columnIndex Index of the column
+	 * @param dictionary Name of the dictionary of the column
+	 * @param encoded Whether the table stores ids of names (see {@link Table#isDictionaryEncoded()})
+	 * @return the name, or null if it is null (or its id is not in the dictionary).
+	 * @throws SQLException when the column could not be read.
+	 */
+	protected String readName(final ResultSet rs, final int columnIndex, final String dictionary, final boolean encoded)
+			throws SQLException {
+		if (!encoded) {
+			return rs.getString(columnIndex);
+		}
+
+		final int id = rs.getInt(columnIndex);
+
+		if (rs.wasNull()) {
+			return null;
+		}
+
+		return dictionaries.get(dictionary).getName(rs.getStatement().getConnection(), id);
+	}
+
+	/**
+	 * Bind a name to compare a column with a dictionary to, in the way the names of a table are stored.
+	 * <br>A name that is not in the dictionary is not stored in any table, so an id is bound that matches nothing.
+	 * @param ps Statement to bind the name to
+	 * @param parameterIndex Index of the parameter
+	 * @param name Name to bind
+	 * @param dictionary Name of the dictionary of the column
+	 * @param encoded Whether the table stores ids of names (see {@link Table#isDictionaryEncoded()})
+	 * @throws SQLException when the parameter could not be bound.
+	 */
+	protected void bindName(final PreparedStatement ps, final int parameterIndex, final String name,
+			final String dictionary, final boolean encoded) throws SQLException {
+		if (name == null) {
+			ps.setNull(parameterIndex, Types.NULL);
+		} else if (!encoded) {
+			ps.setString(parameterIndex, name);
+		} else {
+			final Integer id = dictionaries.get(dictionary).findId(ps.getConnection(), name);
+
+			ps.setInt(parameterIndex, id == null ? -1 : id);
+		}
+	}
+
+	/**
+	 * Add the names of rows that are not in their dictionary yet, so the rows can be bound (see {@link #bindRow(PreparedStatement, int, StatRow)}).
+	 * <br>This has to be done before a transaction is started: a name is added for good, even when writing the rows fails later on.
+	 * @param conn Connection to use, which should be in auto-commit mode
+	 * @param rows Rows that are going to be written
+	 * @throws SQLException when a name could not be added.
+	 */
+	protected void addToDictionaries(final Connection conn, final List<StatRow> rows) throws SQLException {
+		for (final StatRow row : rows) {
+			final TableSchema schema = row.getSchema();
+
+			if (!schema.getTable().isDictionaryEncoded()) {
+				continue;
+			}
+
+			for (int i = 0; i < schema.getColumnCount(); i++) {
+				final String key = row.getKey(i);
+
+				if (schema.getDictionary(i) == null || key == null) {
+					continue;
+				}
+
+				final Dictionary dictionary = dictionaries.get(schema.getDictionary(i));
+
+				if (dictionary.getId(key) == null) {
+					dictionary.getOrCreateId(conn, key);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tests whether there is a valid connection available between sqlite
+	 * database.
+	 * <br>
+	 * Will spit errors in the console when it could not properly connect.
+	 */
+	public void initialize() {
+		final Connection conn = getConnection();
+
+		// Something went wrong
+		if (conn == null) {
+			plugin.getLogger().log(Level.SEVERE, "Unable to retrieve connection!");
+			return;
+		}
+
+		closeConnection(conn);
+		
+		plugin.debugMessage(ChatColor.AQUA + "Statz is connected to its database!");
+
+		return;
+	}
+
+	/**
+	 * Stops the database threads, after waiting for all queued database work to finish.
+	 * <br>No work can be run on the {@link #getExecutor()} afterwards, but {@link #setBatchRows(Table, List)} can still
+	 * be called directly (e.g. to save the pool when the plugin is disabled).
+	 * @param timeout Maximum time (in seconds) to wait for queued work
+	 */
+	public void shutdown(final long timeout) {
+		if (!executor.shutdown(timeout)) {
+			plugin.getLogger().log(Level.WARNING, "Not all database tasks finished within " + timeout + " seconds.");
+		}
+	}
+
+	/**
+	 * Close all connections to the database. Call {@link #shutdown(long)} first.
+	 */
+	public void close() {
+		connectionPool.close();
+	}
+
+	/**
+	 * Get the executor that runs all work on the database. Use it instead of the Bukkit scheduler for anything that
+	 * reads from or writes to the database.
+	 * @return the executor of this connector.
+	 */
+	public DatabaseExecutor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Get the pool of connections to the database.
+	 * @return the connection pool of this connector.
+	 */
+	public ConnectionPool getConnectionPool() {
+		return connectionPool;
+	}
+
+	/**
+	 * Gets a complete row of values from a specific table with a specific
+	 * query.
+	 * 
+	 * @param table
+	 *            Name of the table to get info from
+	 * @param queries
+	 *            A hashmap that will specify what queries should be applied.
+	 *            <br>
+	 *            You could call a hashmap with key: 'uuid' and value:
+	 *            'c5f39a1d-3786-46a7-8953-d4efabf8880d'. This will make sure
+	 *            that we only search for the value of <i>columnName</i> with
+	 *            the condition that the 'uuid' column must be equal to
+	 *            'c5f39a1d-3786-46a7-8953-d4efabf8880d'.
+	 * @return a list of hashmaps where every key is a column and a key is the
+	 *         value of
+	 *         that column.
+	 */
+	public List<Query> getObjects(final Table table, final Query queries) {
+		final List<Query> results = new ArrayList<>();
+
+		for (StatRow row : this.getRows(table, queries)) {
+			results.add(row.toQuery());
+		}
+
+		return results;
+	}
+
+	/**
+	 * Gets the rows of a specific table that meet the given conditions. See {@link #getObjects(Table, Query)} for more info.
+	 * @param table Table to get rows from
+	 * @param queries Conditions the rows have to meet
+	 * @return a list of rows, laid out by the schema of the table (see {@link Table#getSchema()}).
+	 */
+	public List<StatRow> getRows(final Table table, final Query queries) {
+		List<StatRow> results = new ArrayList<>();
+
+		if (table == null) {
+			plugin.debugMessage("Tried to get data from a null table! This means some tables are not setup");
+			return results;
+		}
+
+		final List<Entry<String, String>> conditions = new ArrayList<>(queries.getEntrySet());
+		final List<String> columnNames = new ArrayList<>(conditions.size());
+
+		for (final Entry<String, String> condition : conditions) {
+			columnNames.add(condition.getKey());
+		}
+
+		final String statement = this.getSelectStatement(table, columnNames);
+
+		if (statement == null) {
+			return results;
+		}
+
+		awaitLoaded();
+
+		final long startTime = System.nanoTime();
+
+		// Only borrowed once the statement is known to be valid, so it is always returned below.
+		final Connection conn = getConnection();
+
+		if (conn == null) {
+			return results;
+		}
+
+		PreparedStatement ps = null;
+
+		try {
+			ps = conn.prepareStatement(statement);
+
+			for (int i = 0; i < conditions.size(); i++) {
+				final String dictionary = table.getColumn(conditions.get(i).getKey()).getDictionary();
+
+				if (conditions.get(i).getKey().equalsIgnoreCase(TableSchema.UUID_COLUMN)) {
+					this.bindUUID(ps, i + 1, toLowerCase(conditions.get(i).getValue()), table.getUUIDStorage());
+				} else if (dictionary != null) {
+					this.bindName(ps, i + 1, conditions.get(i).getValue(), dictionary, table.isDictionaryEncoded());
+				} else {
+					ps.setString(i + 1, conditions.get(i).getValue());
+				}
+			}
+
+			final ResultSet rs = ps.executeQuery();
+
+			try {
+				results = this.readRows(table.getSchema(), rs);
+			} finally {
+				rs.close();
+			}
+		} catch (final SQLException | IllegalArgumentException ex) {
+			plugin.getLogger().log(Level.SEVERE, "Couldn't read rows of " + table.getTableName() + ":", ex);
+
+			if (ex instanceof SQLException) {
+				checkConnectionError((SQLException) ex);
+			}
+		} finally {
+			this.closeStatements(ps);
+
+			closeConnection(conn);
+
+			readTime.recordSince(startTime);
+		}
+
+		return results;
+	}
+
+	/**
+	 * Get the statement that selects the rows of a table where the given columns have the values of the parameters.
+	 * <br>UUIDs are compared as they are stored (in lower case or as bytes), so the index on them can be used.
+	 * @param table Table to select from
+	 * @param columnNames Names of the columns to compare, in the order of the parameters
+	 * @return a statement with a parameter per column, or null if the table does not have one of the columns.
+	 */
+	private String getSelectStatement(final Table table, final List<String> columnNames) {
+		final StringBuilder statement = new StringBuilder("SELECT * FROM " + table.getTableName());
+
+		for (int i = 0; i < columnNames.size(); i++) {
+			// Names of columns can't be parameters, so only use names the table knows.
+			if (table.getColumn(columnNames.get(i)) == null) {
+				return null;
+			}
+
+			statement.append(i == 0 ? " WHERE " : " AND ").append(columnNames.get(i) + "=?");
+		}
+
+		return statement.toString();
+	}
+
+	private static String toLowerCase(final String uuid) {
+		return uuid == null ? null : uuid.toLowerCase();
+	}
+
+	/**
+	 * Add up the values of the rows of a group of players, without reading the rows themselves. The database does the adding up.
+	 * <br>The conditions work like the ones of {@link StatRow#matches(String, String)}: a row only counts when all of them are met.
+	 * A condition on a column that the table does not have is never met.
+	 * <br>This blocks until the database has responded.
+	 * @param table Table to add up the values of
+	 * @param uuids UUIDs of the players
+	 * @param conditions Conditions the rows have to meet
+	 * @return a map of UUIDs to the total value of the rows of that player that meet the conditions. Players that have no rows in the table
+	 *         at all are left out. Null when the database could not be read.
+	 */
+	public Map<String, Double> getTotals(final Table table, final List<String> uuids, final RowRequirement... conditions) {
+		final Map<String, Double> totals = new HashMap<>();
+
+		awaitLoaded();
+
+		final Connection conn = getConnection();
+
+		if (conn == null) {
+			return null;
+		}
+
+		PreparedStatement ps = null;
+
+		try {
+			for (int start = 0; start < uuids.size(); start += MAX_PLAYERS_PER_QUERY) {
+				final List<String> group = uuids.subList(start, Math.min(uuids.size(), start + MAX_PLAYERS_PER_QUERY));
+
+				// The number of players is different for the last group.
+				if (ps == null || group.size() != MAX_PLAYERS_PER_QUERY) {
+					this.closeStatements(ps);
+
+					ps = conn.prepareStatement(this.getTotalStatement(table.getSchema(), group.size(), conditions));
+				}
+
+				int parameterIndex = this.bindConditions(ps, 1, table.getSchema(), conditions);
+
+				for (final String uuid : group) {
+					this.bindUUID(ps, parameterIndex++, uuid, table.getUUIDStorage());
+				}
+
+				final ResultSet rs = ps.executeQuery();
+
+				try {
+					while (rs.next()) {
+						final String uuid = this.readUUID(rs, 1, table.getUUIDStorage());
+
+						if (uuid != null) {
+							totals.put(uuid.toLowerCase(), rs.getDouble(2));
+						}
+					}
+				} finally {
+					rs.close();
+				}
+			}
+		} catch (final SQLException ex) {
+			plugin.getLogger().log(Level.SEVERE, "Couldn't add up the values of " + table.getTableName() + ":", ex);
+			checkConnectionError(ex);
+			return null;
+		} finally {
+			this.closeStatements(ps);
+
+			closeConnection(conn);
+		}
+
+		return totals;
+	}
+
+	/**
+	 * Get the players with the highest total value of the rows that meet the given conditions. The database does the adding up and sorting.
+	 * <br>This blocks until the database has responded.
+	 * @param table Table to add up the values of
+	 * @param limit Maximum number of players to get
+	 * @param conditions Conditions the rows have to meet
+	 * @return a map of UUIDs to their total, highest total first. Null when the database could not be read.
+	 */
+	public Map<String, Double> getHighestTotals(final Table table, final int limit, final RowRequirement... conditions) {
+		final Map<String, Double> totals = new LinkedHashMap<>();
+
+		final TableSchema schema = table.getSchema();
+
+		if (!schema.hasValue()) {
+			return totals;
+		}
+
+		final StringBuilder statement = new StringBuilder("SELECT " + TableSchema.UUID_COLUMN + ", SUM("
+				+ TableSchema.VALUE_COLUMN + ") AS total FROM " + table.getTableName());
+
+		for (int i = 0; i < conditions.length; i++) {
+			statement.append(i == 0 ? " WHERE " : " AND ").append(this.getCondition(schema, conditions[i]));
+		}
+
+		statement.append(" GROUP BY " + TableSchema.UUID_COLUMN + " ORDER BY total DESC LIMIT ?;");
+
+		awaitLoaded();
+
+		final Connection conn = getConnection();
+
+		if (conn == null) {
+			return null;
+		}
+
+		PreparedStatement ps = null;
+
+		try {
+			ps = conn.prepareStatement(statement.toString());
+
+			final int parameterIndex = this.bindConditions(ps, 1, schema, conditions);
+
+			ps.setInt(parameterIndex, limit);
+
+			final ResultSet rs = ps.executeQuery();
+
+			try {
+				while (rs.next()) {
+					final String uuid = this.readUUID(rs, 1, table.getUUIDStorage());
+
+					if (uuid != null) {
+						totals.put(uuid.toLowerCase(), rs.getDouble(2));
+					}
+				}
+			} finally {
+				rs.close();
+			}
+		} catch (final SQLException ex) {
+			plugin.getLogger().log(Level.SEVERE, "Couldn't get the highest totals of " + table.getTableName() + ":", ex);
+			checkConnectionError(ex);
+			return null;
+		} finally {
+			this.closeStatements(ps);
+
+			closeConnection(conn);
+		}
+
+		return totals;
 	}
 
 	/**
-	 * Loads all tables into memory. This has to be run before
-	 * {@linkplain #load()}
+	 * Get a statement that adds up the values of the rows of a number of players, see {@link #getTotals(Table, List, RowRequirement...)}.
+	 * <br>The conditions are bound first (see {@link #bindConditions(PreparedStatement, int, TableSchema, RowRequirement...)}), followed by the UUIDs.
+	 * <br>Every player with rows gets a single row back, with the UUID and the total. Rows that don't meet the conditions add nothing, so players
+	 * that have rows, but none that meet the conditions, are still returned.
+	 * @param schema Schema of the table
+	 * @param players Number of players
+	 * @param conditions Conditions the rows have to meet
+	 * @return an SQL statement.
 	 */
-	public abstract void loadTables();
+	protected String getTotalStatement(final TableSchema schema, final int players, final RowRequirement... conditions) {
+		final StringBuilder statement = new StringBuilder("SELECT " + TableSchema.UUID_COLUMN + ", SUM(");
 
-	/**
-	 * Get a {@linkplain SQLiteTable} object by table name.
-	 * 
-	 * @param tableName Name of the table
-	 * @return SQLiteTable object represented by that name or NULL if none was
-	 *         found.
-	 */
-	public Table getTable(String tableName) {
+		final String value = (schema.hasValue() ? TableSchema.VALUE_COLUMN : "0");
 
-		tableName = SQLiteConnector.prefix + tableName;
+		if (conditions.length == 0) {
+			statement.append(value);
+		} else {
+			statement.append("CASE WHEN ");
 
-		for (final Table table : tables) {
-			if (table.getTableName().equals(tableName)) {
-				return table;
+			for (int i = 0; i < conditions.length; i++) {
+				if (i > 0) {
+					statement.append(" AND ");
+				}
+
+				statement.append(this.getCondition(schema, conditions[i]));
 			}
+
+			statement.append(" THEN " + value + " ELSE 0 END");
 		}
 
-		return null;
+		statement.append(") FROM " + schema.getTable().getTableName() + " WHERE " + TableSchema.UUID_COLUMN + " IN (");
+
+		for (int i = 0; i < players; i++) {
+			statement.append(i == 0 ? "?" : ",?");
+		}
+
+		return statement.append(") GROUP BY " + TableSchema.UUID_COLUMN + ";").toString();
 	}
 
 	/**
-	 * Sets up a connection between the plugin and the sqlite database.
-	 * 
-	 * @return a connection to the database or null if it couldn't connect.
+	 * Get the SQL predicate of a single condition. Only names of columns of the table end up in the statement; values are parameters.
+	 * @param schema Schema of the table
+	 * @param condition Condition to convert
+	 * @return a predicate with at most one parameter, e.g. 'world=?'.
 	 */
-	public abstract Connection getConnection();
+	private String getCondition(final TableSchema schema, final RowRequirement condition) {
+		if (condition.getColumnName().equalsIgnoreCase(TableSchema.VALUE_COLUMN)) {
+			return schema.hasValue() && parseValue(condition) != null ? TableSchema.VALUE_COLUMN + "=?" : "1=0";
+		}
+
+		final int index = schema.indexOf(condition.getColumnName());
+
+		if (index < 0 || condition.getColumnValue() == null) {
+			return "1=0";
+		}
+
+		// Ids are numbers, the dictionary already compares names case insensitively.
+		if (schema.getDictionary(index) != null && schema.getTable().isDictionaryEncoded()) {
+			return schema.getColumnName(index) + "=?";
+		}
+
+		// UUIDs are bound in lower case (see #bindConditions()). Comparing them case insensitively would keep the
+		// database from using the index on them.
+		if (index == schema.indexOf(TableSchema.UUID_COLUMN)) {
+			return schema.getColumnName(index) + "=?";
+		}
+
+		return this.getKeyCondition(schema.getColumnName(index));
+	}
+
+	private static Double parseValue(final RowRequirement condition) {
+		if (condition.getColumnValue() == null) {
+			return null;
+		}
+
+		try {
+			return Double.parseDouble(condition.getColumnValue());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
 
 	/**
-	 * Connects to sqlite database and automatically creates tables when needed.
+	 * Get the predicate that checks the value of a key column, other than the uuid. Values of columns are compared case
+	 * insensitively (like {@link StatRow#matches(String, String)} does), which is what MySQL does by default.
+	 * @param columnName Name of the column
+	 * @return a predicate with one parameter.
 	 */
-	public abstract void load();
+	protected String getKeyCondition(final String columnName) {
+		return columnName + "=?";
+	}
 
 	/**
-	 * Tests whether there is a valid connection available between sqlite
-	 * database.
-	 * <br>
-	 * Will spit errors in the console when it could not properly connect.
+	 * Bind the values of conditions to a statement, in the order in which their predicates were added to it.
+	 * Conditions that can never be met don't have a parameter.
+	 * @param ps Statement to bind the conditions to
+	 * @param parameterIndex Index of the first parameter to bind
+	 * @param schema Schema of the table
+	 * @param conditions Conditions to bind
+	 * @return the index of the parameter after the last bound parameter.
+	 * @throws SQLException when a parameter could not be bound.
 	 */
-	public void initialize() {
-		connection = getConnection();
+	protected int bindConditions(final PreparedStatement ps, int parameterIndex, final TableSchema schema,
+			final RowRequirement... conditions) throws SQLException {
+		for (final RowRequirement condition : conditions) {
+			final String predicate = this.getCondition(schema, condition);
 
-		// Something went wrong
-		if (connection == null) {
-			plugin.getLogger().log(Level.SEVERE, "Unable to retrieve connection!");
+			if (!predicate.contains("?")) {
+				continue;
+			}
+
+			if (condition.getColumnName().equalsIgnoreCase(TableSchema.VALUE_COLUMN)) {
+				ps.setDouble(parameterIndex++, parseValue(condition));
+				continue;
+			}
+
+			final int index = schema.indexOf(condition.getColumnName());
+			final String dictionary = schema.getDictionary(index);
+
+			if (index == schema.indexOf(TableSchema.UUID_COLUMN)) {
+				this.bindUUID(ps, parameterIndex++, toLowerCase(condition.getColumnValue()),
+						schema.getTable().getUUIDStorage());
+			} else if (dictionary != null) {
+				this.bindName(ps, parameterIndex++, condition.getColumnValue(), dictionary,
+						schema.getTable().isDictionaryEncoded());
+			} else {
+				ps.setString(parameterIndex++, condition.getColumnValue());
+			}
 		}
-		
-		plugin.debugMessage(ChatColor.AQUA + "Statz is connected to its database!");
 
-		return;
+		return parameterIndex;
 	}
 
-	/**
-	 * Gets a complete row of values from a specific table with a specific
-	 * query.
-	 * 
-	 * @param table
-	 *            Name of the table to get info from
-	 * @param queries
-	 *            A hashmap that will specify what queries should be applied.
-	 *            <br>
-	 *            You could call a hashmap with key: 'uuid' and value:
-	 *            'c5f39a1d-3786-46a7-8953-d4efabf8880d'. This will make sure
-	 *            that we only search for the value of <i>columnName</i> with
-	 *            the condition that the 'uuid' column must be equal to
-	 *            'c5f39a1d-3786-46a7-8953-d4efabf8880d'.
-	 * @return a list of hashmaps where every key is a column and a key is the
-	 *         value of
-	 *         that column.
-	 */
-	public abstract List<Query> getObjects(final Table table, final Query queries);
-
 	/**
 	 * @see #getObjects(Table, Query)
 	 * @param tableName Name of the table to get data from
@@ -136,13 +1294,440 @@ public abstract class DatabaseConnector {
 	 *            that we set the value of <i>uuid</i> to
 	 *            'c5f39a1d-3786-46a7-8953-d4efabf8880d'.
 	 */
-	public abstract void setObjects(final Table table, final Query results);
+	public void setObjects(final Table table, final Query results) {
+		this.setRow(table, StatRow.fromQuery(table.getSchema(), results));
+	}
+
+	/**
+	 * Writes a row to a specific table. This is done on a database thread (see {@link #getExecutor()}).
+	 * <br>An incremental row (see {@link StatRow#isIncremental()}) adds its value to the stored value, other rows replace it.
+	 * @param table Table to change values in.
+	 * @param row Row to write
+	 */
+	public void setRow(final Table table, final StatRow row) {
+		executor.execute(new Runnable() {
+			public void run() {
+				requeueRows(table, writeRows(table, Collections.singletonList(row)));
+			}
+		});
+	}
 	
 	/**
 	 * Instead of updating one single row, you can also perform a batch of updates.
 	 * This can drastically improve update time. See {@link #setObjects(Table, Query)} for more info.
 	 */
-	public abstract void setBatchObjects(final Table table, final List<Query> queries);
+	public void setBatchObjects(final Table table, final List<Query> queries) {
+		final List<StatRow> rows = new ArrayList<>();
+
+		for (Query query : queries) {
+			rows.add(StatRow.fromQuery(table.getSchema(), query));
+		}
+
+		this.requeueRows(table, this.writeRows(table, rows));
+	}
+
+	/**
+	 * Write a batch of rows to a specific table. See {@link #writeRows(Table, List)} for more info.
+	 * @param table Table to change values in.
+	 * @param rows Rows to write
+	 * @return true if all rows were written, false if some of them could not be written.
+	 */
+	public boolean setBatchRows(final Table table, final List<StatRow> rows) {
+		return this.writeRows(table, rows).isEmpty();
+	}
+
+	/**
+	 * Write rows to a specific table. See {@link #setRow(Table, StatRow)} for more info.
+	 * <br>Unlike {@link #setRow(Table, StatRow)}, this blocks until the rows are written.
+	 * <br>The rows are written in transactions of at most 'database.transaction rows' rows, which are sent to the database
+	 * in batches of at most 'database.batch rows' rows. So a large number of rows never becomes one huge batch that locks
+	 * the table for a long time. A transaction that fails is retried 'database.batch retries' times. Either all rows of a
+	 * transaction are written or none of them are.
+	 * @param table Table to change values in.
+	 * @param rows Rows to write
+	 * @return the rows that could not be written, which is an empty list if all rows were written.
+	 */
+	public List<StatRow> writeRows(final Table table, final List<StatRow> rows) {
+
+		awaitLoaded();
+
+		final long startTime = System.nanoTime();
+
+		try {
+			final List<StatRow> failed = this.writeTransactions(table, rows);
+
+			rowsWritten.add(rows.size() - failed.size());
+			rowsFailed.add(failed.size());
+
+			return failed;
+		} finally {
+			writeTime.recordSince(startTime);
+		}
+	}
+
+	// Write the rows in transactions, see #writeRows(Table, List).
+	private List<StatRow> writeTransactions(final Table table, final List<StatRow> rows) {
+
+		final int transactionRows = Math.max(1, plugin.getConfigHandler().getTransactionRows());
+		final int batchRows = Math.max(1, plugin.getConfigHandler().getBatchRows());
+		final int retries = Math.max(0, plugin.getConfigHandler().getBatchRetries());
+
+		final List<StatRow> failed = new ArrayList<>();
+
+		for (int start = 0; start < rows.size(); start += transactionRows) {
+			final List<StatRow> transaction = rows.subList(start, Math.min(rows.size(), start + transactionRows));
+
+			boolean written = false;
+
+			for (int attempt = 0; attempt <= retries && !written; attempt++) {
+				final Connection conn = getConnection();
+
+				if (conn == null) {
+					// There is no database to write to (or it is down), so don't bother with the other transactions.
+					failed.addAll(rows.subList(start, rows.size()));
+					return failed;
+				}
+
+				try {
+					// Names have to be in their dictionary before the rows can be bound.
+					addToDictionaries(conn, transaction);
+
+					conn.setAutoCommit(false);
+
+					writeTransaction(conn, table, transaction, batchRows);
+
+					conn.commit();
+
+					written = true;
+				} catch (final SQLException | RuntimeException ex) {
+					// A row that could not be bound fails like a statement that could not be executed.
+					plugin.getLogger().log(attempt < retries ? Level.WARNING : Level.SEVERE, "Couldn't write "
+							+ transaction.size() + " rows to " + table.getTableName() + " (attempt " + (attempt + 1) + " of " + (retries + 1) + "):", ex);
+
+					if (ex instanceof SQLException) {
+						checkConnectionError((SQLException) ex);
+					}
+				} finally {
+					// Turning auto-commit back on commits the open transaction, so anything that was not committed is rolled back first.
+					if (!written) {
+						rollback(conn);
+					}
+
+					try {
+						conn.setAutoCommit(true);
+					} catch (final SQLException e) {
+						// The connection is broken, so it won't be used again anyway.
+					}
+
+					closeConnection(conn);
+				}
+			}
+
+			if (!written) {
+				failed.addAll(transaction);
+			}
+		}
+
+		return failed;
+	}
+
+	/**
+	 * Write rows to a specific table, in the transaction of the given connection. The rows are sent to the database
+	 * in batches of at most the given number of rows (see {@link #executeBatches(PreparedStatement...)}).
+	 * <br>Rows in one call never match each other.
+	 * @param conn Connection to use, which is not in auto-commit mode
+	 * @param table Table to change values in
+	 * @param rows Rows to write
+	 * @param batchRows Maximum number of rows per batch
+	 * @throws SQLException when a batch could not be executed. The transaction is rolled back by the caller.
+	 */
+	protected abstract void writeTransaction(final Connection conn, final Table table, final List<StatRow> rows,
+			final int batchRows) throws SQLException;
+
+	/**
+	 * Execute the batches of statements, in the given order, ignoring the ones that are null.
+	 * @param statements Statements to execute the batch of
+	 * @throws SQLException when a batch could not be executed.
+	 */
+	protected void executeBatches(final PreparedStatement... statements) throws SQLException {
+		for (final PreparedStatement statement : statements) {
+			if (statement != null) {
+				statement.executeBatch();
+			}
+		}
+	}
+
+	/**
+	 * Put rows that could not be written back in the pool of the {@link me.staartvin.statz.datamanager.DataPoolManager},
+	 * so they are written again with the next save.
+	 * @param table Table the rows belong to
+	 * @param rows Rows that could not be written
+	 */
+	private void requeueRows(final Table table, final List<StatRow> rows) {
+		if (rows.isEmpty()) {
+			return;
+		}
+
+		for (final PlayerStat stat : PlayerStat.values()) {
+			// Names of stats don't have the prefix of the tables.
+			if (this.getTable(stat.getTableName()) != table) {
+				continue;
+			}
+
+			for (final StatRow row : rows) {
+				plugin.getDataPoolManager().addRow(stat, row);
+			}
+
+			plugin.debugMessage(ChatColor.RED + "Put " + rows.size() + " rows of " + table.getTableName()
+					+ " back in the pool, they will be written with the next save.");
+			return;
+		}
+
+		plugin.getLogger().warning("Could not write " + rows.size() + " rows to " + table.getTableName() + ".");
+	}
+
+	/**
+	 * Read the rows of a result set. The result set should contain all columns of the given schema.
+	 * @param schema Schema of the table that was queried
+	 * @param rs Result set to read
+	 * @return a list of (non-incremental) rows.
+	 * @throws SQLException when the result set could not be read.
+	 */
+	protected List<StatRow> readRows(final TableSchema schema, final ResultSet rs) throws SQLException {
+		final List<StatRow> results = new ArrayList<>();
+
+		// Look up the columns once, instead of for every row.
+		final int[] columnIndexes = new int[schema.getColumnCount()];
+
+		for (int i = 0; i < columnIndexes.length; i++) {
+			columnIndexes[i] = rs.findColumn(schema.getColumnName(i));
+		}
+
+		final int valueIndex = schema.hasValue() ? rs.findColumn(TableSchema.VALUE_COLUMN) : -1;
+
+		final int uuidIndex = schema.indexOf(TableSchema.UUID_COLUMN);
+
+		final UUIDStorage storage = schema.getTable().getUUIDStorage();
+		final boolean encoded = schema.getTable().isDictionaryEncoded();
+
+		while (rs.next()) {
+			final String[] keys = new String[columnIndexes.length];
+
+			for (int i = 0; i < columnIndexes.length; i++) {
+				final String key;
+
+				if (i == uuidIndex) {
+					key = this.readUUID(rs, columnIndexes[i], storage);
+				} else if (schema.getDictionary(i) != null) {
+					key = this.readName(rs, columnIndexes[i], schema.getDictionary(i), encoded);
+				} else {
+					key = rs.getString(columnIndexes[i]);
+				}
+
+				keys[i] = (key == null ? null : key.intern());
+			}
+
+			final double value = (valueIndex < 0 ? 0 : rs.getDouble(valueIndex));
+
+			results.add(new StatRow(schema, keys, value, false));
+		}
+
+		return results;
+	}
+
+	/**
+	 * Get the columns of a table in the order in which {@link #bindRow(PreparedStatement, int, StatRow)} binds them.
+	 * @param schema Schema of the table
+	 * @return a list of column names, e.g. '(uuid,world,value)'.
+	 */
+	protected String getColumnList(final TableSchema schema) {
+		final StringBuilder columns = new StringBuilder("(");
+
+		for (int i = 0; i < schema.getColumnCount(); i++) {
+			columns.append(schema.getColumnName(i) + ",");
+		}
+
+		if (schema.hasValue()) {
+			columns.append(TableSchema.VALUE_COLUMN + ",");
+		}
+
+		// Replace last comma
+		columns.setCharAt(columns.length() - 1, ')');
+
+		return columns.toString();
+	}
+
+	/**
+	 * Get a list of parameters for all columns of a table, see {@link #getColumnList(TableSchema)}.
+	 * @param schema Schema of the table
+	 * @return a list of parameters, e.g. '(?,?,?)'.
+	 */
+	protected String getParameterList(final TableSchema schema) {
+		final StringBuilder parameters = new StringBuilder("(");
+
+		final int count = schema.getColumnCount() + (schema.hasValue() ? 1 : 0);
+
+		for (int i = 0; i < count; i++) {
+			parameters.append(i == 0 ? "?" : ",?");
+		}
+
+		return parameters.append(")").toString();
+	}
+
+	/**
+	 * Get a condition that matches the row a row belongs to, see {@link TableSchema#getMatchIndexes()}.
+	 * @param schema Schema of the table
+	 * @return a condition with a parameter for every matched column, e.g. 'uuid=? AND world=?'.
+	 */
+	protected String getMatchCondition(final TableSchema schema) {
+		final StringBuilder condition = new StringBuilder();
+
+		for (int index : schema.getMatchIndexes()) {
+			if (condition.length() > 0) {
+				condition.append(" AND ");
+			}
+
+			condition.append(schema.getColumnName(index) + "=?");
+		}
+
+		return condition.toString();
+	}
+
+	/**
+	 * Bind all columns of a row to a statement, in the order of {@link #getColumnList(TableSchema)}.
+	 * @param ps Statement to bind the row to
+	 * @param parameterIndex Index of the first parameter to bind
+	 * @param row Row to bind
+	 * @return the index of the parameter after the last bound parameter.
+	 * @throws SQLException when a parameter could not be bound.
+	 */
+	protected int bindRow(final PreparedStatement ps, int parameterIndex, final StatRow row) throws SQLException {
+		final TableSchema schema = row.getSchema();
+
+		for (int i = 0; i < schema.getColumnCount(); i++) {
+			this.bindKey(ps, parameterIndex++, row, i);
+		}
+
+		if (schema.hasValue()) {
+			this.bindValue(ps, parameterIndex++, row.getValue());
+		}
+
+		return parameterIndex;
+	}
+
+	/**
+	 * Bind the matched columns of a row to a statement, in the order of {@link #getMatchCondition(TableSchema)}.
+	 * @param ps Statement to bind the row to
+	 * @param parameterIndex Index of the first parameter to bind
+	 * @param row Row to bind
+	 * @return the index of the parameter after the last bound parameter.
+	 * @throws SQLException when a parameter could not be bound.
+	 */
+	protected int bindMatch(final PreparedStatement ps, int parameterIndex, final StatRow row) throws SQLException {
+		for (int index : row.getSchema().getMatchIndexes()) {
+			this.bindKey(ps, parameterIndex++, row, index);
+		}
+
+		return parameterIndex;
+	}
+
+	/**
+	 * Bind a key column of a row to a statement, using the data type of the column.
+	 * @param ps Statement to bind the column to
+	 * @param parameterIndex Index of the parameter
+	 * @param row Row to get the value from
+	 * @param index Index of the column in the schema of the row
+	 * @throws SQLException when the parameter could not be bound.
+	 */
+	protected void bindKey(final PreparedStatement ps, final int parameterIndex, final StatRow row, final int index)
+			throws SQLException {
+		final String key = row.getKey(index);
+
+		if (index == row.getSchema().indexOf(TableSchema.UUID_COLUMN)) {
+			this.bindUUID(ps, parameterIndex, key, row.getSchema().getTable().getUUIDStorage());
+			return;
+		}
+
+		if (key == null) {
+			ps.setNull(parameterIndex, Types.NULL);
+			return;
+		}
+
+		final String dictionary = row.getSchema().getDictionary(index);
+
+		if (dictionary != null && row.getSchema().getTable().isDictionaryEncoded()) {
+			final Integer id = dictionaries.get(dictionary).getId(key);
+
+			// See #addToDictionaries(Connection, List).
+			if (id == null) {
+				throw new SQLException("'" + key + "' was not added to the dictionary '" + dictionary + "'");
+			}
+
+			ps.setInt(parameterIndex, id);
+			return;
+		}
+
+		switch (row.getSchema().getDataType(index)) {
+			case INT:
+				ps.setLong(parameterIndex, Long.parseLong(key));
+				break;
+			case DOUBLE:
+			case FLOAT:
+				ps.setDouble(parameterIndex, Double.parseDouble(key));
+				break;
+			default:
+				ps.setString(parameterIndex, key);
+				break;
+		}
+	}
+
+	/**
+	 * Bind the value of a row to a statement. Whole numbers are bound as integers, so they are stored as such.
+	 * @param ps Statement to bind the value to
+	 * @param parameterIndex Index of the parameter
+	 * @param value Value to bind
+	 * @throws SQLException when the parameter could not be bound.
+	 */
+	protected void bindValue(final PreparedStatement ps, final int parameterIndex, final double value)
+			throws SQLException {
+		if (value == Math.rint(value) && Math.abs(value) < Long.MAX_VALUE) {
+			ps.setLong(parameterIndex, (long) value);
+		} else {
+			ps.setDouble(parameterIndex, value);
+		}
+	}
+
+	/**
+	 * Undo the changes of the current transaction of a connection. Nothing happens when the connection is in auto-commit mode.
+	 * @param conn Connection to roll back
+	 */
+	protected void rollback(final Connection conn) {
+		try {
+			if (!conn.getAutoCommit()) {
+				conn.rollback();
+			}
+		} catch (final SQLException e) {
+			plugin.getLogger().log(Level.SEVERE, "Failed to roll back transaction: ", e);
+		}
+	}
+
+	/**
+	 * Close statements, ignoring the ones that are null.
+	 * @param statements Statements to close
+	 */
+	protected void closeStatements(final Statement... statements) {
+		for (final Statement statement : statements) {
+			if (statement == null) {
+				continue;
+			}
+
+			try {
+				statement.close();
+			} catch (final SQLException e) {
+				plugin.getLogger().log(Level.SEVERE, "Failed to close statement: ", e);
+			}
+		}
+	}
 
 //	/**
 //	 * Closes sqlite connection.
@@ -182,6 +1767,40 @@ public abstract class DatabaseConnector {
 	 * @param table Table to add.
 	 */
 	public void addTable(final Table table) {
+		for (final Column column : table.getColumns()) {
+			column.setDictionary(DICTIONARY_COLUMNS.get(column.getColumnName().toLowerCase()));
+		}
+
+		// Rows are looked up by uuid and added up by value. With both in an index, this never has to read the table itself.
+		// The uuid is already indexed when it is the primary key.
+		final Column uuid = table.getColumn(TableSchema.UUID_COLUMN);
+
+		if (uuid != null && !uuid.isPrimaryKey()) {
+			if (table.getColumn(TableSchema.VALUE_COLUMN) != null) {
+				table.addIndex("uuid_value", TableSchema.UUID_COLUMN, TableSchema.VALUE_COLUMN);
+			} else {
+				table.addIndex("uuid", TableSchema.UUID_COLUMN);
+			}
+		}
+
+		tables.add(table);
+	}
+
+	/**
+	 * Add the table of a dictionary to the list of loaded tables. The id and name columns are added to the table.
+	 * <br>Columns that use the dictionary store the ids of their names when compact storage is used (see {@link #isCompactStorage()}).
+	 * @param table Table of the dictionary, named after the dictionary.
+	 */
+	protected void addDictionary(final Table table) {
+		final Column id = new Column(Dictionary.ID_COLUMN, true, SQLDataType.INT, true);
+
+		id.setAutoIncrement(true);
+
+		table.addColumn(id);
+		table.addColumn(new Column(Dictionary.NAME_COLUMN, false, SQLDataType.TEXT, true, true));
+
+		dictionaries.put(table.getTableName().substring(prefix.length()), new Dictionary(this, table));
+
 		tables.add(table);
 	}
 }
@@ -0,0 +1,136 @@
+package me.staartvin.statz.database;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import me.staartvin.statz.Statz;
+
+/**
+ * Runs all work that reads from or writes to the database of Statz.
+ * <br>It has its own threads (one for every connection of the {@link ConnectionPool}), so slow queries never hold up
+ * the async scheduler of Bukkit, and reads don't have to wait for a flush of the pool to finish.
+ * <br>The number of tasks waiting for a thread is bounded. When the queue is full, a task is not run and a warning is logged.
+ *
+ * @author Staartvin
+ *
+ */
+public class DatabaseExecutor {
+
+	private final Statz plugin;
+
+	private final ThreadPoolExecutor executor;
+
+	public DatabaseExecutor(final Statz instance, final int threads, final int queueSize) {
+		this.plugin = instance;
+
+		final int size = Math.max(1, threads);
+
+		executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)), new ThreadFactory() {
+
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable runnable) {
+						final Thread thread = new Thread(runnable, "Statz Database Thread #" + count.incrementAndGet());
+
+						thread.setDaemon(true);
+
+						return thread;
+					}
+				});
+
+		// Don't keep threads around when there is nothing to do.
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Run a task on one of the database threads.
+	 * @param task Task to run
+	 * @return true if the task is queued, false if it was rejected because the queue is full or the executor is shut down.
+	 */
+	public boolean execute(final Runnable task) {
+		try {
+			executor.execute(task);
+			return true;
+		} catch (RejectedExecutionException e) {
+			plugin.getLogger().log(Level.WARNING, "Could not run database task: " + executor.getQueue().size()
+					+ " tasks are already waiting for the database.");
+			return false;
+		}
+	}
+
+	/**
+	 * Run a task on one of the database threads and get its result when it is done.
+	 * <br>The future is completed on the database thread, so anything that is chained to it runs there as well.
+	 * @param task Task to run
+	 * @return a future that completes with the result of the task. It completes exceptionally when the task throws
+	 *         an exception or when it could not be queued (with a {@link RejectedExecutionException}).
+	 */
+	public <T> CompletableFuture<T> supply(final Callable<T> task) {
+		final CompletableFuture<T> future = new CompletableFuture<>();
+
+		boolean queued = this.execute(new Runnable() {
+			public void run() {
+				try {
+					future.complete(task.call());
+				} catch (Throwable t) {
+					future.completeExceptionally(t);
+				}
+			}
+		});
+
+		if (!queued) {
+			future.completeExceptionally(new RejectedExecutionException("The database queue of Statz is full"));
+		}
+
+		return future;
+	}
+
+	/**
+	 * Stop accepting new tasks and wait for the queued tasks to finish.
+	 * @param timeout Maximum time (in seconds) to wait
+	 * @return true if all tasks finished, false if some were still running when the timeout passed.
+	 */
+	public boolean shutdown(final long timeout) {
+		executor.shutdown();
+
+		try {
+			return executor.awaitTermination(timeout, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Get the number of tasks that are waiting for a database thread.
+	 * @return the depth of the queue.
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * Get the number of tasks that are currently running.
+	 * @return the number of busy database threads.
+	 */
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * Get the number of tasks that have been run since the executor was created.
+	 * @return the number of completed tasks.
+	 */
+	public long getCompletedTaskCount() {
+		return executor.getCompletedTaskCount();
+	}
+}
@@ -0,0 +1,217 @@
+package me.staartvin.statz.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import me.staartvin.statz.database.datatype.Table;
+
+/**
+ * A table of names (of worlds, mobs, items, ...) with an id for each name. When compact storage is used, tables store the id
+ * of a name instead of the name itself, which is a lot smaller than repeating the name on every row.
+ * <br><br>All names are kept in memory, so turning a name into an id (and back) hardly ever has to ask the database.
+ * Names are compared case insensitively, so 'World' and 'world' have the same id.
+ *
+ * @author Staartvin
+ *
+ */
+public class Dictionary {
+
+	public static final String ID_COLUMN = "id";
+	public static final String NAME_COLUMN = "name";
+
+	private final DatabaseConnector connector;
+
+	private final Table table;
+
+	// Ids by lower case name.
+	private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap<Integer, String> names = new ConcurrentHashMap<>();
+
+	public Dictionary(DatabaseConnector connector, Table table) {
+		this.connector = connector;
+		this.table = table;
+	}
+
+	public Table getTable() {
+		return table;
+	}
+
+	/**
+	 * Read all names of this dictionary into memory, forgetting the names that were known before.
+	 * @param conn Connection to use
+	 * @throws SQLException when the dictionary could not be read.
+	 */
+	public void load(Connection conn) throws SQLException {
+		ids.clear();
+		names.clear();
+
+		PreparedStatement ps = conn
+				.prepareStatement("SELECT " + ID_COLUMN + ", " + NAME_COLUMN + " FROM " + table.getTableName());
+
+		try {
+			ResultSet rs = ps.executeQuery();
+
+			try {
+				while (rs.next()) {
+					this.remember(rs.getInt(1), rs.getString(2));
+				}
+			} finally {
+				rs.close();
+			}
+		} finally {
+			connector.closeStatements(ps);
+		}
+	}
+
+	/**
+	 * Get the id of a name that is known in memory.
+	 * @param name Name to get the id of
+	 * @return the id of the name, or null if it is not known.
+	 */
+	public Integer getId(String name) {
+		return ids.get(name.toLowerCase());
+	}
+
+	/**
+	 * Get the id of a name. When it is not known in memory, the database is asked (another server may have added it).
+	 * @param conn Connection to use
+	 * @param name Name to get the id of
+	 * @return the id of the name, or null if the dictionary does not have it.
+	 * @throws SQLException when the dictionary could not be read.
+	 */
+	public Integer findId(Connection conn, String name) throws SQLException {
+		Integer id = this.getId(name);
+
+		if (id != null) {
+			return id;
+		}
+
+		PreparedStatement ps = conn.prepareStatement("SELECT " + ID_COLUMN + ", " + NAME_COLUMN + " FROM "
+				+ table.getTableName() + " WHERE " + connector.getKeyCondition(NAME_COLUMN));
+
+		try {
+			ps.setString(1, name);
+
+			ResultSet rs = ps.executeQuery();
+
+			try {
+				if (rs.next()) {
+					id = rs.getInt(1);
+
+					this.remember(id, rs.getString(2));
+				}
+			} finally {
+				rs.close();
+			}
+		} finally {
+			connector.closeStatements(ps);
+		}
+
+		return id;
+	}
+
+	/**
+	 * Get the id of a name, adding the name to the dictionary if it does not have it yet.
+	 * <br>When the connection is in a transaction, the name is only added when the transaction is committed. Call {@link #load(Connection)}
+	 * after rolling it back, so no id is remembered that does not exist.
+	 * @param conn Connection to use
+	 * @param name Name to get the id of
+	 * @return the id of the name.
+	 * @throws SQLException when the name could not be added.
+	 */
+	public synchronized int getOrCreateId(Connection conn, String name) throws SQLException {
+		Integer id = this.findId(conn, name);
+
+		if (id != null) {
+			return id;
+		}
+
+		PreparedStatement ps = conn
+				.prepareStatement("INSERT INTO " + table.getTableName() + " (" + NAME_COLUMN + ") VALUES (?)");
+
+		try {
+			ps.setString(1, name);
+			ps.executeUpdate();
+		} catch (SQLException e) {
+			// Another server that uses the same database may have added it in the meantime.
+			id = this.findId(conn, name);
+
+			if (id == null) {
+				throw e;
+			}
+
+			return id;
+		} finally {
+			connector.closeStatements(ps);
+		}
+
+		id = this.findId(conn, name);
+
+		if (id == null) {
+			throw new SQLException("Could not add '" + name + "' to " + table.getTableName());
+		}
+
+		return id;
+	}
+
+	/**
+	 * Get the name that belongs to an id. When it is not known in memory, the database is asked.
+	 * @param conn Connection to use
+	 * @param id Id to get the name of
+	 * @return the name, or null if the dictionary does not have the id.
+	 * @throws SQLException when the dictionary could not be read.
+	 */
+	public String getName(Connection conn, int id) throws SQLException {
+		String name = names.get(id);
+
+		if (name != null) {
+			return name;
+		}
+
+		PreparedStatement ps = conn.prepareStatement(
+				"SELECT " + NAME_COLUMN + " FROM " + table.getTableName() + " WHERE " + ID_COLUMN + "=?");
+
+		try {
+			ps.setInt(1, id);
+
+			ResultSet rs = ps.executeQuery();
+
+			try {
+				if (rs.next()) {
+					name = rs.getString(1);
+
+					this.remember(id, name);
+				}
+			} finally {
+				rs.close();
+			}
+		} finally {
+			connector.closeStatements(ps);
+		}
+
+		return name;
+	}
+
+	/**
+	 * Get the number of names that are known in memory.
+	 * @return the size of this dictionary.
+	 */
+	public int size() {
+		return names.size();
+	}
+
+	private void remember(int id, String name) {
+		if (name == null) {
+			return;
+		}
+
+		name = name.intern();
+
+		names.put(id, name);
+		ids.putIfAbsent(name.toLowerCase(), id);
+	}
+}
@@ -1,6 +1,5 @@
 package me.staartvin.statz.database;
 
-import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -8,26 +7,32 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 
 import org.bukkit.ChatColor;
 
 import me.staartvin.statz.Statz;
 import me.staartvin.statz.database.datatype.Column;
-import me.staartvin.statz.database.datatype.Query;
+import me.staartvin.statz.database.datatype.StatRow;
 import me.staartvin.statz.database.datatype.Table;
 import me.staartvin.statz.database.datatype.Table.SQLDataType;
+import me.staartvin.statz.database.datatype.Table.UUIDStorage;
+import me.staartvin.statz.database.datatype.TableSchema;
 import me.staartvin.statz.database.datatype.mysql.MySQLTable;
 import me.staartvin.statz.datamanager.PlayerStat;
-import me.staartvin.statz.util.StatzUtil;
 
 public class MySQLConnector extends DatabaseConnector {
 
 	private final Statz plugin;
 
+	// Statements that write rows, generated once per table.
+	private final Map<Table, String> setStatements = new ConcurrentHashMap<>();
+	private final Map<Table, String> addStatements = new ConcurrentHashMap<>();
+
 	public MySQLConnector(final Statz instance) {
 		super(instance);
 		plugin = instance;
@@ -48,37 +53,29 @@ public class MySQLConnector extends DatabaseConnector {
 	private String username = "root";
 
 	/* (non-Javadoc)
-	 * @see me.staartvin.statz.database.Database#getSQLConnection()
+	 * @see me.staartvin.statz.database.DatabaseConnector#createConnection()
 	 */
 	@Override
-	public Connection getConnection() {
-		synchronized (this) {
-			try {
-				if (connection != null && !connection.isClosed()) {
-					return connection;
-				}
-			} catch (SQLException e1) {
-				// TODO Auto-generated catch block
-				e1.printStackTrace();
-			}
+	protected Connection createConnection() throws SQLException {
+		try {
+			Class.forName("com.mysql.jdbc.Driver").newInstance();
+		} catch (final Exception e) {
+			throw new SQLException("MySQL driver could not be loaded", e);
+		}
 
-			try {
-				Class.forName("com.mysql.jdbc.Driver").newInstance();
-
-				final String url = "jdbc:mysql://" + hostname + "/" + DatabaseConnector.databaseName;
-
-				connection = DriverManager.getConnection(url, username, password);
-			} catch (final SQLException ex) {
-				System.out.println("SQLDataStorage.connect");
-				System.out.println("SQLException: " + ex.getMessage());
-				System.out.println("SQLState: " + ex.getSQLState());
-				System.out.println("VendorError: " + ex.getErrorCode());
-				plugin.getLogger().log(Level.SEVERE, "MySQL exception on initialize: " + ex.getMessage());
-				return null;
-			} catch (final Exception e) {
-				e.printStackTrace();
-			}
-			return connection;
+		try {
+			// Let the driver send a batch of inserts as a few multi-row inserts.
+			final String url = "jdbc:mysql://" + hostname + "/" + DatabaseConnector.databaseName
+					+ "?rewriteBatchedStatements=true";
+
+			return DriverManager.getConnection(url, username, password);
+		} catch (final SQLException ex) {
+			System.out.println("SQLDataStorage.connect");
+			System.out.println("SQLException: " + ex.getMessage());
+			System.out.println("SQLState: " + ex.getSQLState());
+			System.out.println("VendorError: " + ex.getErrorCode());
+			plugin.getLogger().log(Level.SEVERE, "MySQL exception on initialize: " + ex.getMessage());
+			throw ex;
 		}
 	}
 
@@ -87,18 +84,19 @@ public class MySQLConnector extends DatabaseConnector {
 	 */
 	@Override
 	public void load() {
-		plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+		this.getExecutor().execute(new Runnable() {
 			public void run() {
-				connection = getConnection();
+				final Connection conn = getConnection();
 
 				// Did not properly connect to database
-				if (connection == null) {
+				if (conn == null) {
 					plugin.debugMessage(ChatColor.RED + "I could not connect to your database! Are your credentials correct?");
+					setLoaded();
 					return;
 				}
 
 				try {
-					final Statement s = connection.createStatement();
+					final Statement s = conn.createStatement();
 
 					// Run all statements to create tables
 					for (final String statement : createTablesStatement()) {
@@ -107,8 +105,15 @@ public class MySQLConnector extends DatabaseConnector {
 					}
 
 					s.close();
+
+					// Migrate tables that store uuids differently and add missing indexes.
+					updateTables(conn);
 				} catch (final SQLException e) {
 					e.printStackTrace();
+				} finally {
+					closeConnection(conn);
+
+					setLoaded();
 				}
 
 				initialize();
@@ -131,70 +136,80 @@ public class MySQLConnector extends DatabaseConnector {
 		final List<String> statements = new ArrayList<String>();
 
 		for (final Table table : this.getTables()) {
-			StringBuilder statement = new StringBuilder("CREATE TABLE IF NOT EXISTS " + table.getTableName() + " (");
-
-			// For each column in the table, add it to the table.
-			for (final Column column : table.getColumns()) {
+			statements.add(this.createTableStatement(table, table.getTableName()));
 
-				//System.out.println("Column: " + column.getColumnName());
-				//System.out.println("Column unique: " + column.isUnique());
-
-				if (column.getDataType().equals(SQLDataType.INT)) {
-					statement.append("" + column.getColumnName() + " BIGINT");
-				} else if (column.getDataType().equals(SQLDataType.TEXT)) {
-					statement.append("" + column.getColumnName() + " VARCHAR(255)");
-				} else {
-					statement.append("" + column.getColumnName() + " " + column.getDataType().toString());
-				}
-
-				if (column.isPrimaryKey()) {
-					statement.append(" PRIMARY KEY");
-				}
+			plugin.debugMessage(ChatColor.BLUE + "Loaded table '" + table.getTableName() + "'");
+		}
 
-				if (column.isAutoIncrement()) {
-					statement.append(" AUTO_INCREMENT");
-				}
+		return statements;
+	}
 
-				if (column.isNotNull()) {
-					statement.append(" NOT NULL");
-				}
+	@Override
+	protected String createTableStatement(final Table table, final String tableName) {
+		StringBuilder statement = new StringBuilder("CREATE TABLE IF NOT EXISTS " + tableName + " (");
+
+		// For each column in the table, add it to the table.
+		for (final Column column : table.getColumns()) {
+
+			//System.out.println("Column: " + column.getColumnName());
+			//System.out.println("Column unique: " + column.isUnique());
+
+			if (column.getColumnName().equals(TableSchema.UUID_COLUMN)) {
+				statement.append("" + column.getColumnName() + " " + getUUIDColumnType(getUUIDStorage()));
+			} else if (column.getDictionary() != null && isCompactStorage()) {
+				// Ids of a dictionary, which never has more names than an INT can count.
+				statement.append("" + column.getColumnName() + " INT");
+			} else if (column.getDataType().equals(SQLDataType.INT)) {
+				statement.append("" + column.getColumnName() + " BIGINT");
+			} else if (column.getDataType().equals(SQLDataType.TEXT)) {
+				statement.append("" + column.getColumnName() + " VARCHAR(255)");
+			} else {
+				statement.append("" + column.getColumnName() + " " + column.getDataType().toString());
+			}
 
-				if (column.isUnique()) {
-					statement.append(" UNIQUE");
-				}
+			if (column.isPrimaryKey()) {
+				statement.append(" PRIMARY KEY");
+			}
 
-				statement.append(",");
+			if (column.isAutoIncrement()) {
+				statement.append(" AUTO_INCREMENT");
+			}
 
+			if (column.isNotNull()) {
+				statement.append(" NOT NULL");
 			}
 
-			/*if (table.getPrimaryKey() == null) {
-				// Remove last comma
-				statement = new StringBuilder(statement.substring(0, statement.lastIndexOf(",")));
-			}*/
+			if (column.isUnique()) {
+				statement.append(" UNIQUE");
+			}
 
-			if (!table.getUniqueMatched().isEmpty()) {
+			statement.append(",");
 
-				statement.append("UNIQUE (");
+		}
 
-				for (Column matched : table.getUniqueMatched()) {
-					statement.append(matched.getColumnName() + ",");
-				}
+		/*if (table.getPrimaryKey() == null) {
+			// Remove last comma
+			statement = new StringBuilder(statement.substring(0, statement.lastIndexOf(",")));
+		}*/
 
-				// Remove last comma
-				statement = new StringBuilder(statement.substring(0, statement.lastIndexOf(",")) + ")");
-			} else {
-				statement = new StringBuilder(statement.substring(0, statement.lastIndexOf(",")));
-			}
+		if (!table.getUniqueMatched().isEmpty()) {
 
-			statement.append(");");
-			//System.out.println("Statement: " + statement.toString());
+			statement.append("UNIQUE (");
 
-			statements.add(statement.toString());
+			for (Column matched : table.getUniqueMatched()) {
+				statement.append(matched.getColumnName() + ",");
+			}
 
-			plugin.debugMessage(ChatColor.BLUE + "Loaded table '" + table.getTableName() + "'");
+			// Remove last comma
+			statement = new StringBuilder(statement.substring(0, statement.lastIndexOf(",")) + ")");
+		} else {
+			statement = new StringBuilder(statement.substring(0, statement.lastIndexOf(",")));
 		}
 
-		return statements;
+		statement.append(");");
+		//System.out.println("Statement: " + statement.toString());
+
+		return statement.toString();
 	}
 
 	@Override
@@ -493,228 +508,172 @@ public class MySQLConnector extends DatabaseConnector {
 
 		this.addTable(newTable);
 
+		// ----------------------------------------------------------
+		// Names of worlds and other names (mobs, items, causes, ...) that are stored as ids when compact storage is used.
+		this.addDictionary(new MySQLTable(WORLDS_DICTIONARY));
+		this.addDictionary(new MySQLTable(DIMENSIONS_DICTIONARY));
+
 	}
 
-	@Override
-	public List<Query> getObjects(Table table, Query queries) {
-		PreparedStatement ps = null;
-		ResultSet rs = null;
+	public String getUsername() {
+		return username;
+	}
+
+	public String getPassword() {
+		return password;
+	}
 
-		final List<Query> results = new ArrayList<>();
+	public String getHostname() {
+		return hostname;
+	}
 
-		if (table == null) {
-			plugin.debugMessage("Tried to get data from a null table! This means some tables are not setup");
-			return results;
-		}
+	@Override
+	protected void writeTransaction(final Connection conn, final Table table, final List<StatRow> rows,
+			final int batchRows) throws SQLException {
+		// A normal row replaces the value of the row it matches. An incremental row (see StatRow#isIncremental()) adds its value
+		// to the value of the row it matches.
+		PreparedStatement set = null;
+		PreparedStatement add = null;
 
 		try {
-			connection = getConnection();
-			ps = connection.prepareStatement(
-					"SELECT * FROM " + table.getTableName() + " WHERE " + StatzUtil.convertQuery(queries) + ";");
+			int batched = 0;
 
-			rs = ps.executeQuery();
-			while (rs.next()) {
+			for (StatRow row : rows) {
+				if (row.isIncremental() && row.getSchema().hasValue()) {
+					if (add == null) {
+						add = conn.prepareStatement(getUpdateStatement(table, true));
+					}
 
-				final HashMap<String, String> result = new HashMap<>();
+					bindRow(add, 1, row);
+					add.addBatch();
+				} else {
+					if (set == null) {
+						set = conn.prepareStatement(getUpdateStatement(table, false));
+					}
 
-				// Populate hashmap
-				for (int i = 0; i < rs.getMetaData().getColumnCount(); i++) {
-					final String columnName = rs.getMetaData().getColumnName(i + 1);
-					final String value = rs.getObject(i + 1).toString();
+					bindRow(set, 1, row);
+					set.addBatch();
+				}
 
-					// Put value in hashmap if not null, otherwise just put
-					// empty string
-					result.put(columnName, (value != null ? value : ""));
+				// The driver rewrites each batch to a few multi-row inserts (see createConnection()), so a batch is never
+				// bigger than a few packets.
+				if (++batched == batchRows) {
+					executeBatches(set, add);
+					batched = 0;
 				}
+			}
 
-				results.add(new Query(result));
+			if (batched > 0) {
+				executeBatches(set, add);
 			}
-		} catch (final SQLException ex) {
-			plugin.getLogger().log(Level.SEVERE, "Couldn't execute MySQL statement:", ex);
-			return results;
 		} finally {
-			try {
-				if (ps != null)
-					ps.close();
-				//if (conn != null)
-				//conn.close();
-			} catch (final SQLException ex) {
-				plugin.getLogger().log(Level.SEVERE, "Failed to close MySQL connection: ", ex);
-			}
+			closeStatements(set, add);
 		}
-		return results;
 	}
 
 	@Override
-	public void setObjects(final Table table, final Query results) {
-		// Run SQLite query async to not disturb the main Server thread
-		plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
-
-			public void run() {
-
-				Connection conn = null;
-				PreparedStatement ps = null;
-
-				StringBuilder columnNames = new StringBuilder("(");
-
-				StringBuilder resultNames = new StringBuilder("(");
-
-				for (final Entry<String, String> result : results.getEntrySet()) {
-					columnNames.append(result.getKey() + ",");
-
-					try {
-						// Try to check if it is an integer
-						Integer.parseInt(result.getValue());
-						resultNames.append(result.getValue() + ",");
-					} catch (final NumberFormatException e) {
-
-						try {
-							// Try to check if it is an double
-							Double.parseDouble(result.getValue());
-							resultNames.append(result.getValue() + ",");
-						} catch (NumberFormatException ev) {
-							resultNames.append("'" + result.getValue() + "',");
-						}
-					}
-
-				}
-
-				// Remove last comma
-				columnNames = new StringBuilder(columnNames.substring(0, columnNames.lastIndexOf(",")) + ")");
-				resultNames = new StringBuilder(resultNames.substring(0, resultNames.lastIndexOf(",")) + ")");
-
-				String update = "INSERT INTO " + table.getTableName() + " " + columnNames.toString() + " VALUES "
-						+ resultNames;
-
-				String onDuplicate = "";
-
-				if (results.hasValue("value")) {
-					onDuplicate = " ON DUPLICATE KEY UPDATE value=" + results.getValue();
-				} else {
-					onDuplicate = " ON DUPLICATE KEY UPDATE playerName='" + results.getValue("playerName") + "'";
-				}
+	protected String getUUIDColumnType(final UUIDStorage storage) {
+		switch (storage) {
+			case BINARY:
+				return "BINARY(16)";
+			case CHAR:
+				// One byte per character is enough for a uuid, which keeps indexes on it small.
+				return "CHAR(36) CHARACTER SET ascii";
+			default:
+				return "VARCHAR(255)";
+		}
+	}
 
-				update += onDuplicate;
+	@Override
+	protected boolean usesIndex(final Connection conn, final String query, final Table table) throws SQLException {
+		final PreparedStatement ps = conn.prepareStatement("EXPLAIN " + query);
 
-				//System.out.println("UPDATE Query: " + update);
+		try {
+			bindUUID(ps, 1, UUID.randomUUID().toString(), table.getUUIDStorage());
 
-				try {
-					conn = getConnection();
-					ps = conn.prepareStatement(update);
-					ps.executeUpdate();
+			final ResultSet rs = ps.executeQuery();
 
-					return;
-				} catch (final SQLException ex) {
-					plugin.getLogger().log(Level.SEVERE, "Couldn't execute MySQL statement:", ex);
-				} finally {
-					try {
-						if (ps != null)
-							ps.close();
-						//if (conn != null)
-						//conn.close();
-					} catch (final SQLException ex) {
-						plugin.getLogger().log(Level.SEVERE, "Failed to close MySQL connection: ", ex);
+			try {
+				// The 'key' column holds the index that is used, or null when the whole table is scanned.
+				while (rs.next()) {
+					if (rs.getString("key") != null) {
+						return true;
 					}
 				}
+			} finally {
+				rs.close();
 			}
-		});
-	}
-
-	public String getUsername() {
-		return username;
-	}
-
-	public String getPassword() {
-		return password;
-	}
+		} finally {
+			closeStatements(ps);
+		}
 
-	public String getHostname() {
-		return hostname;
+		return false;
 	}
 
 	@Override
-	public void setBatchObjects(final Table table, final List<Query> queries) {
-		// Run SQLite query async to not disturb the main Server thread
-
-		Connection conn = getConnection();
-		Statement stmt = null;
-
-		try {
-			conn.setAutoCommit(false);
-			stmt = conn.createStatement();
-
-			for (Query query : queries) {
-				StringBuilder columnNames = new StringBuilder("(");
-
-				StringBuilder resultNames = new StringBuilder("(");
-
-				for (final Entry<String, String> result : query.getEntrySet()) {
-					columnNames.append(result.getKey() + ",");
-
-					try {
-						// Try to check if it is an integer
-						Integer.parseInt(result.getValue());
-						resultNames.append(result.getValue() + ",");
-					} catch (final NumberFormatException e) {
-
-						try {
-							// Try to check if it is an double
-							Double.parseDouble(result.getValue());
-							resultNames.append(result.getValue() + ",");
-						} catch (NumberFormatException ev) {
-							resultNames.append("'" + result.getValue() + "',");
-						}
-					}
-
-				}
+	protected void swapTables(final Statement statement, final String tableName, final String newTableName,
+			final String oldTableName) throws SQLException {
+		// Renaming both tables in one statement is atomic.
+		statement.executeUpdate(
+				"RENAME TABLE " + tableName + " TO " + oldTableName + ", " + newTableName + " TO " + tableName);
+	}
 
-				// Remove last comma
-				columnNames = new StringBuilder(columnNames.substring(0, columnNames.lastIndexOf(",")) + ")");
-				resultNames = new StringBuilder(resultNames.substring(0, resultNames.lastIndexOf(",")) + ")");
+	/**
+	 * Get the statement that writes a row to a table. The statement is generated once per table.
+	 * @param table Table to write to
+	 * @param incremental Whether the value of the row should be added to the stored value
+	 * @return a statement that inserts or updates the row.
+	 */
+	private String getUpdateStatement(final Table table, final boolean incremental) {
+		Map<Table, String> statements = (incremental ? addStatements : setStatements);
 
-				String update = "INSERT INTO " + table.getTableName() + " " + columnNames.toString() + " VALUES "
-						+ resultNames;
+		String statement = statements.get(table);
 
-				String onDuplicate = "";
+		if (statement != null) {
+			return statement;
+		}
 
-				if (query.hasValue("value")) {
-					onDuplicate = " ON DUPLICATE KEY UPDATE value=" + query.getValue();
-				} else {
-					onDuplicate = " ON DUPLICATE KEY UPDATE playerName='" + query.getValue("playerName") + "'";
-				}
+		TableSchema schema = table.getSchema();
 
-				update += onDuplicate;
+		// Columns that are not used to match the row are updated when the row already exists.
+		StringBuilder updatedColumns = new StringBuilder();
 
-				//System.out.println("UPDATE Query: " + update);
+		for (int i = 0; i < schema.getColumnCount(); i++) {
+			if (!isMatched(schema, i)) {
+				updatedColumns.append(schema.getColumnName(i) + "=VALUES(" + schema.getColumnName(i) + "),");
+			}
+		}
 
-				stmt.addBatch(update);
+		if (schema.hasValue()) {
+			if (incremental) {
+				updatedColumns.append("value=value+VALUES(value),");
+			} else {
+				updatedColumns.append("value=VALUES(value),");
 			}
+		}
 
-			stmt.executeBatch();
+		if (updatedColumns.length() == 0) {
+			// Nothing to update, so keep the row as it is.
+			statement = "INSERT IGNORE INTO " + table.getTableName() + " " + getColumnList(schema) + " VALUES "
+					+ getParameterList(schema);
+		} else {
+			statement = "INSERT INTO " + table.getTableName() + " " + getColumnList(schema) + " VALUES "
+					+ getParameterList(schema) + " ON DUPLICATE KEY UPDATE "
+					+ updatedColumns.substring(0, updatedColumns.length() - 1);
+		}
 
-			if (!conn.getAutoCommit()) {
-				conn.commit();
-			}
+		statements.put(table, statement);
 
-		} catch (BatchUpdateException b) {
-			plugin.getLogger().log(Level.SEVERE, "Couldn't execute MySQL statement:", b);
-		} catch (SQLException ex) {
-			plugin.getLogger().log(Level.SEVERE, "Couldn't execute MySQL statement:", ex);
-		} finally {
-			if (stmt != null) {
-				try {
-					stmt.close();
-				} catch (SQLException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-			}
-			try {
-				conn.setAutoCommit(true);
-			} catch (SQLException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+		return statement;
+	}
+
+	private boolean isMatched(TableSchema schema, int index) {
+		for (int matched : schema.getMatchIndexes()) {
+			if (matched == index) {
+				return true;
 			}
 		}
+
+		return false;
 	}
-}
\ No newline at end of file
+}
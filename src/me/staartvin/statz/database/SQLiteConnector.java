@@ -2,7 +2,6 @@ package me.staartvin.statz.database;
 
 import java.io.File;
 import java.io.IOException;
-import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -10,45 +9,43 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 
 import org.bukkit.ChatColor;
 
 import me.staartvin.statz.Statz;
 import me.staartvin.statz.database.datatype.Column;
-import me.staartvin.statz.database.datatype.Query;
+import me.staartvin.statz.database.datatype.StatRow;
 import me.staartvin.statz.database.datatype.Table;
 import me.staartvin.statz.database.datatype.Table.SQLDataType;
+import me.staartvin.statz.database.datatype.Table.UUIDStorage;
+import me.staartvin.statz.database.datatype.TableSchema;
 import me.staartvin.statz.database.datatype.sqlite.SQLiteTable;
 import me.staartvin.statz.datamanager.PlayerStat;
-import me.staartvin.statz.util.StatzUtil;
 
 public class SQLiteConnector extends DatabaseConnector {
 
 	private final Statz plugin;
 
+	// Statements that write rows, generated once per table.
+	private final Map<Table, String> replaceStatements = new ConcurrentHashMap<>();
+	private final Map<Table, String> incrementStatements = new ConcurrentHashMap<>();
+	private final Map<Table, String> insertStatements = new ConcurrentHashMap<>();
+
 	public SQLiteConnector(final Statz instance) {
 		super(instance);
 		plugin = instance;
 	}
 
 	/* (non-Javadoc)
-	 * @see me.staartvin.statz.database.Database#getSQLConnection()
+	 * @see me.staartvin.statz.database.DatabaseConnector#createConnection()
 	 */
 	@Override
-	public Connection getConnection() {
-		try {
-			if (connection != null && !connection.isClosed()) {
-				return connection;
-			}
-		} catch (SQLException e1) {
-			// TODO Auto-generated catch block
-			e1.printStackTrace();
-		}
-
+	protected Connection createConnection() throws SQLException {
 		final File dataFile = new File(plugin.getDataFolder(), databaseName + ".db");
 		if (!dataFile.exists()) {
 			plugin.debugMessage(ChatColor.YELLOW + "Database not found! Creating one for you.");
@@ -63,14 +60,47 @@ public class SQLiteConnector extends DatabaseConnector {
 
 		try {
 			Class.forName("org.sqlite.JDBC");
-			connection = DriverManager.getConnection("jdbc:sqlite:" + dataFile);
-			return connection;
-		} catch (final SQLException ex) {
-			plugin.getLogger().log(Level.SEVERE, "SQLite exception on initialize", ex);
 		} catch (final ClassNotFoundException ex) {
 			plugin.getLogger().log(Level.SEVERE, "You need the SQLite JBDC library. Google it. Put it in /lib folder.");
+			throw new SQLException("SQLite driver not found", ex);
+		}
+
+		final Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dataFile);
+
+		try {
+			this.configureConnection(conn);
+		} catch (final SQLException ex) {
+			conn.close();
+			throw ex;
+		}
+
+		return conn;
+	}
+
+	/**
+	 * Set the pragmas that make SQLite write faster.
+	 * <br>In WAL mode, a transaction is appended to the log instead of rewriting the database file, and with synchronous=NORMAL
+	 * the log is only synced to disk at checkpoints. A crash can lose the last transactions, but never corrupts the database.
+	 * @param conn Connection to configure
+	 * @throws SQLException when the pragmas could not be set.
+	 */
+	private void configureConnection(Connection conn) throws SQLException {
+		Statement stmt = conn.createStatement();
+
+		try {
+			stmt.execute("PRAGMA journal_mode=WAL");
+			stmt.execute("PRAGMA synchronous=NORMAL");
+
+			// A negative cache size is in KB instead of pages.
+			stmt.execute("PRAGMA cache_size=-" + plugin.getConfigHandler().getSQLiteCacheSize());
+			stmt.execute("PRAGMA mmap_size=" + plugin.getConfigHandler().getSQLiteMmapSize() * 1024L * 1024L);
+
+			// Connections of the pool share the database file, so wait for another connection to finish writing
+			// instead of failing right away.
+			stmt.execute("PRAGMA busy_timeout=" + plugin.getConfigHandler().getDatabaseConnectionTimeout() * 1000L);
+		} finally {
+			closeStatements(stmt);
 		}
-		return null;
 	}
 
 	/* (non-Javadoc)
@@ -78,12 +108,17 @@ public class SQLiteConnector extends DatabaseConnector {
 	 */
 	@Override
 	public void load() {
-		plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+		this.getExecutor().execute(new Runnable() {
 			public void run() {
-				connection = getConnection();
+				final Connection conn = getConnection();
+
+				if (conn == null) {
+					setLoaded();
+					return;
+				}
 
 				try {
-					final Statement s = connection.createStatement();
+					final Statement s = conn.createStatement();
 
 					// Run all statements to create tables
 					for (final String statement : createTablesStatement()) {
@@ -91,8 +126,15 @@ public class SQLiteConnector extends DatabaseConnector {
 					}
 
 					s.close();
+
+					// Migrate tables that store uuids differently and add missing indexes.
+					updateTables(conn);
 				} catch (final SQLException e) {
 					e.printStackTrace();
+				} finally {
+					closeConnection(conn);
+
+					setLoaded();
 				}
 
 				initialize();
@@ -115,64 +157,71 @@ public class SQLiteConnector extends DatabaseConnector {
 		final List<String> statements = new ArrayList<String>();
 
 		for (final Table table : this.getTables()) {
-			StringBuilder statement = new StringBuilder("CREATE TABLE IF NOT EXISTS " + table.getTableName() + " (");
+			statements.add(this.createTableStatement(table, table.getTableName()));
 
-			// For each column in the table, add it to the table.
-			for (final Column column : table.getColumns()) {
+			plugin.debugMessage(ChatColor.BLUE + "Loaded table '" + table.getTableName() + "'");
+		}
 
-				if (column.getDataType().equals(SQLDataType.INT)) {
-					statement.append("'" + column.getColumnName() + "' INTEGER");
-				} else {
-					statement.append("'" + column.getColumnName() + "' " + column.getDataType().toString());
-				}
+		return statements;
+	}
 
-				if (column.isPrimaryKey()) {
-					statement.append(" PRIMARY KEY");
-				}
+	@Override
+	protected String createTableStatement(final Table table, final String tableName) {
+		StringBuilder statement = new StringBuilder("CREATE TABLE IF NOT EXISTS " + tableName + " (");
 
-				if (column.isAutoIncrement()) {
-					statement.append(" AUTOINCREMENT");
-				}
+		// For each column in the table, add it to the table.
+		for (final Column column : table.getColumns()) {
 
-				if (column.isNotNull()) {
-					statement.append(" NOT NULL");
-				}
+			if (column.getColumnName().equals(TableSchema.UUID_COLUMN)) {
+				statement.append("'" + column.getColumnName() + "' " + getUUIDColumnType(getUUIDStorage()));
+			} else if (getStoredDataType(column).equals(SQLDataType.INT)) {
+				statement.append("'" + column.getColumnName() + "' INTEGER");
+			} else {
+				statement.append("'" + column.getColumnName() + "' " + getStoredDataType(column).toString());
+			}
 
-				if (column.isUnique()) {
-					statement.append(" UNIQUE");
-				}
+			if (column.isPrimaryKey()) {
+				statement.append(" PRIMARY KEY");
+			}
 
-				statement.append(",");
+			if (column.isAutoIncrement()) {
+				statement.append(" AUTOINCREMENT");
+			}
 
+			if (column.isNotNull()) {
+				statement.append(" NOT NULL");
 			}
 
-			/*if (table.getPrimaryKey() == null) {
-				// Remove last comma
-				statement = new StringBuilder(statement.substring(0, statement.lastIndexOf(",")));
-			}*/
+			if (column.isUnique()) {
+				statement.append(" UNIQUE");
+			}
 
-			if (!table.getUniqueMatched().isEmpty()) {
+			statement.append(",");
 
-				statement.append("UNIQUE (");
+		}
 
-				for (Column matched : table.getUniqueMatched()) {
-					statement.append(matched.getColumnName() + ",");
-				}
+		/*if (table.getPrimaryKey() == null) {
+			// Remove last comma
+			statement = new StringBuilder(statement.substring(0, statement.lastIndexOf(",")));
+		}*/
 
-				// Remove last comma
-				statement = new StringBuilder(statement.substring(0, statement.lastIndexOf(",")) + ")");
-			} else {
-				statement = new StringBuilder(statement.substring(0, statement.lastIndexOf(",")));
-			}
+		if (!table.getUniqueMatched().isEmpty()) {
 
-			statement.append(");");
+			statement.append("UNIQUE (");
 
-			statements.add(statement.toString());
+			for (Column matched : table.getUniqueMatched()) {
+				statement.append(matched.getColumnName() + ",");
+			}
 
-			plugin.debugMessage(ChatColor.BLUE + "Loaded table '" + table.getTableName() + "'");
+			// Remove last comma
+			statement = new StringBuilder(statement.substring(0, statement.lastIndexOf(",")) + ")");
+		} else {
+			statement = new StringBuilder(statement.substring(0, statement.lastIndexOf(",")));
 		}
 
-		return statements;
+		statement.append(");");
+
+		return statement.toString();
 	}
 
 	@Override
@@ -472,179 +521,148 @@ public class SQLiteConnector extends DatabaseConnector {
 
 		this.addTable(newTable);
 
+		// ----------------------------------------------------------
+		// Names of worlds and other names (mobs, items, causes, ...) that are stored as ids when compact storage is used.
+		this.addDictionary(new SQLiteTable(WORLDS_DICTIONARY));
+		this.addDictionary(new SQLiteTable(DIMENSIONS_DICTIONARY));
+
 	}
 
 	@Override
-	public List<Query> getObjects(Table table, Query queries) {
-		Connection conn = null;
-		PreparedStatement ps = null;
-		ResultSet rs = null;
+	protected String getUUIDColumnType(final UUIDStorage storage) {
+		switch (storage) {
+			case BINARY:
+				return "BLOB";
+			case CHAR:
+				return "CHAR(36)";
+			default:
+				return "TEXT";
+		}
+	}
 
-		final List<Query> results = new ArrayList<>();
+	@Override
+	protected boolean usesIndex(final Connection conn, final String query, final Table table) throws SQLException {
+		final PreparedStatement ps = conn.prepareStatement("EXPLAIN QUERY PLAN " + query);
 
 		try {
-			conn = getConnection();
-			ps = conn.prepareStatement(
-					"SELECT * FROM " + table.getTableName() + " WHERE " + StatzUtil.convertQuery(queries) + ";");
+			bindUUID(ps, 1, UUID.randomUUID().toString(), table.getUUIDStorage());
 
-			rs = ps.executeQuery();
-			while (rs.next()) {
+			final ResultSet rs = ps.executeQuery();
 
-				final HashMap<String, String> result = new HashMap<>();
-
-				// Populate hashmap
-				for (int i = 0; i < rs.getMetaData().getColumnCount(); i++) {
-					final String columnName = rs.getMetaData().getColumnName(i + 1);
-					final String value = rs.getObject(i + 1).toString();
-
-					// Put value in hashmap if not null, otherwise just put
-					// empty string
-					result.put(columnName, (value != null ? value : ""));
+			try {
+				// A lookup is a 'SEARCH ... USING (COVERING) INDEX', a full table scan is a 'SCAN ...'.
+				while (rs.next()) {
+					if (rs.getString("detail").startsWith("SEARCH")) {
+						return true;
+					}
 				}
-
-				results.add(new Query(result));
+			} finally {
+				rs.close();
 			}
-		} catch (final SQLException ex) {
-			plugin.getLogger().log(Level.SEVERE, "Couldn't execute SQLite statement:", ex);
-			return results;
 		} finally {
-			try {
-				if (ps != null)
-					ps.close();
-				//if (conn != null)
-				//conn.close();
-			} catch (final SQLException ex) {
-				plugin.getLogger().log(Level.SEVERE, "Failed to close SQLite connection: ", ex);
-			}
+			closeStatements(ps);
 		}
-		return results;
+
+		return false;
 	}
 
 	@Override
-	public void setObjects(final Table table, final Query results) {
-		// Run SQLite query async to not disturb the main Server thread
-		plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
-
-			public void run() {
-
-				Connection conn = null;
-				PreparedStatement ps = null;
-
-				StringBuilder columnNames = new StringBuilder("(");
+	protected String getKeyCondition(final String columnName) {
+		// SQLite compares case sensitively by default.
+		return columnName + "=? COLLATE NOCASE";
+	}
 
-				StringBuilder resultNames = new StringBuilder("(");
+	@Override
+	protected void writeTransaction(final Connection conn, final Table table, final List<StatRow> rows,
+			final int batchRows) throws SQLException {
+		// A normal row replaces the row it matches. An incremental row (see StatRow#isIncremental()) adds its value
+		// to the value of the row it matches: the row is updated first and inserted when it did not exist yet.
+		PreparedStatement replace = null;
+		PreparedStatement increment = null;
+		PreparedStatement insert = null;
 
-				for (final Entry<String, String> result : results.getEntrySet()) {
-					columnNames.append(result.getKey() + ",");
+		try {
+			int batched = 0;
 
-					try {
-						// Try to check if it is an integer
-						Integer.parseInt(result.getValue());
-						resultNames.append(result.getValue() + ",");
-					} catch (final NumberFormatException e) {
-						resultNames.append("'" + result.getValue() + "',");
+			for (StatRow row : rows) {
+				if (!row.isIncremental() || !row.getSchema().hasValue()) {
+					if (replace == null) {
+						replace = conn.prepareStatement(getReplaceStatement(table));
 					}
 
-				}
-
-				// Remove last comma
-				columnNames = new StringBuilder(columnNames.substring(0, columnNames.lastIndexOf(",")) + ")");
-				resultNames = new StringBuilder(resultNames.substring(0, resultNames.lastIndexOf(",")) + ")");
+					bindRow(replace, 1, row);
+					replace.addBatch();
+				} else {
+					if (increment == null) {
+						increment = conn.prepareStatement(getIncrementStatement(table));
+						insert = conn.prepareStatement(getInsertStatement(table));
+					}
 
-				String update = "INSERT OR REPLACE INTO " + table.getTableName() + " " + columnNames.toString()
-						+ " VALUES " + resultNames;
+					bindValue(increment, 1, row.getValue());
+					bindMatch(increment, 2, row);
+					increment.addBatch();
 
-				try {
-					conn = getConnection();
-					ps = conn.prepareStatement(update);
-					ps.executeUpdate();
+					bindRow(insert, 1, row);
+					insert.addBatch();
+				}
 
-					return;
-				} catch (final SQLException ex) {
-					plugin.getLogger().log(Level.SEVERE, "Couldn't execute SQLite statement:", ex);
-				} finally {
-					try {
-						if (ps != null)
-							ps.close();
-						//if (conn != null)
-						//conn.close();
-					} catch (final SQLException ex) {
-						plugin.getLogger().log(Level.SEVERE, "Failed to close SQLite connection: ", ex);
-					}
+				// Rows never match each other, so all increments of a batch can be done before inserting the missing rows.
+				if (++batched == batchRows) {
+					executeBatches(replace, increment, insert);
+					batched = 0;
 				}
 			}
-		});
-	}
 
-	@Override
-	public void setBatchObjects(final Table table, final List<Query> queries) {
-		// Run SQLite query async to not disturb the main Server thread
-
-		Connection conn = getConnection();
-		Statement stmt = null;
+			if (batched > 0) {
+				executeBatches(replace, increment, insert);
+			}
+		} finally {
+			closeStatements(replace, increment, insert);
+		}
+	}
 
-		try {
-			//conn.setAutoCommit(false);
-			stmt = conn.createStatement();
+	private String getReplaceStatement(Table table) {
+		String statement = replaceStatements.get(table);
 
-			for (Query query : queries) {
-				StringBuilder columnNames = new StringBuilder("(");
+		if (statement == null) {
+			TableSchema schema = table.getSchema();
 
-				StringBuilder resultNames = new StringBuilder("(");
+			statement = "INSERT OR REPLACE INTO " + table.getTableName() + " " + getColumnList(schema) + " VALUES "
+					+ getParameterList(schema);
 
-				for (final Entry<String, String> result : query.getEntrySet()) {
-					columnNames.append(result.getKey() + ",");
+			replaceStatements.put(table, statement);
+		}
 
-					try {
-						// Try to check if it is an integer
-						Double.parseDouble(result.getValue());
-						resultNames.append(result.getValue() + ",");
-					} catch (final NumberFormatException e) {
-						resultNames.append("'" + result.getValue() + "',");
-					}
+		return statement;
+	}
 
-				}
+	private String getIncrementStatement(Table table) {
+		String statement = incrementStatements.get(table);
 
-				// Remove last comma
-				columnNames = new StringBuilder(columnNames.substring(0, columnNames.lastIndexOf(",")) + ")");
-				resultNames = new StringBuilder(resultNames.substring(0, resultNames.lastIndexOf(",")) + ")");
+		if (statement == null) {
+			// SQLite versions shipped with Spigot don't support ON CONFLICT DO UPDATE, so add to the row first and
+			// only insert it when it does not exist yet.
+			statement = "UPDATE " + table.getTableName() + " SET value = value + ? WHERE "
+					+ getMatchCondition(table.getSchema());
 
-				String update = "INSERT OR REPLACE INTO " + table.getTableName() + " " + columnNames.toString()
-						+ " VALUES " + resultNames;
+			incrementStatements.put(table, statement);
+		}
 
-				//System.out.println("UPDATE Query: " + update);
+		return statement;
+	}
 
-				stmt.addBatch(update);
-			}
+	private String getInsertStatement(Table table) {
+		String statement = insertStatements.get(table);
 
-			@SuppressWarnings("unused")
-			int[] updateCounts = stmt.executeBatch();
-			//System.out.println("Updated " + updateCounts.length + " rows");
+		if (statement == null) {
+			TableSchema schema = table.getSchema();
 
-			if (!conn.getAutoCommit()) {
-				conn.commit();
-			}
+			statement = "INSERT OR IGNORE INTO " + table.getTableName() + " " + getColumnList(schema) + " VALUES "
+					+ getParameterList(schema);
 
-		} catch (BatchUpdateException b) {
-			plugin.getLogger().log(Level.SEVERE, "Couldn't execute SQLite statement:", b);
-		} catch (SQLException ex) {
-			plugin.getLogger().log(Level.SEVERE, "Couldn't execute SQLite statement:", ex);
-		} finally {
-			if (stmt != null) {
-				try {
-					stmt.close();
-				} catch (SQLException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-			}
-			try {
-				conn.setAutoCommit(true);
-			} catch (SQLException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
+			insertStatements.put(table, statement);
 		}
 
+		return statement;
 	}
-}
\ No newline at end of file
+}
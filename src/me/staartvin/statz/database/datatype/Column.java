@@ -8,6 +8,9 @@ public class Column {
 	private boolean primaryKey = false, notNull = false, isUnique = false, autoIncrement = false;
 	private SQLDataType dataType = SQLDataType.TEXT;
 
+	// Name of the dictionary of this column (see Dictionary), or null if the column always stores its values itself.
+	private String dictionary = null;
+
 	public Column(final String columnName, final boolean primaryKey, final SQLDataType dataType) {
 		this.setColumnName(columnName);
 		this.setPrimaryKey(primaryKey);
@@ -79,4 +82,17 @@ public class Column {
 	public void setAutoIncrement(boolean autoIncrement) {
 		this.autoIncrement = autoIncrement;
 	}
+
+	public String getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * Set the dictionary of this column. When compact storage is used, the column stores the id of a name in this dictionary
+	 * instead of the name itself.
+	 * @param dictionary Name of the dictionary, or null if the column does not use one.
+	 */
+	public void setDictionary(String dictionary) {
+		this.dictionary = dictionary;
+	}
 }
@@ -0,0 +1,34 @@
+package me.staartvin.statz.database.datatype;
+
+import java.util.List;
+
+/**
+ * An index on one or more columns of a {@link Table}, so rows can be looked up by those columns without scanning the whole table.
+ * <br>The order of the columns matters: an index on (uuid, value) can be used to look up rows by uuid, but not by value.
+ * 
+ * @author Staartvin
+ *
+ */
+public class Index {
+
+	private final String indexName;
+
+	private final List<Column> columns;
+
+	public Index(final String indexName, final List<Column> columns) {
+		this.indexName = indexName;
+		this.columns = columns;
+	}
+
+	/**
+	 * Get the name of this index. Index names are unique in the whole database, so they start with the name of the table.
+	 * @return the name of the index.
+	 */
+	public String getIndexName() {
+		return indexName;
+	}
+
+	public List<Column> getColumns() {
+		return columns;
+	}
+}
@@ -10,6 +10,7 @@ import java.util.Set;
  * This class represents a query that is sent or retrieved from the database of Statz.
  * <br>Each query consists of a single row with key-value pairs that hold information.
  * <br>Each key is the column name in the database and the corresponding value is the value of that column in the database.
+ * <br>Statz stores rows as {@link StatRow}s internally. A query is used to specify conditions and as a map view of a row.
  * @author Staartvin
  *
  */
@@ -67,7 +68,7 @@ public class Query {
 	public void setValue(String columnName, Object columnValue) {
 		data.put(columnName, columnValue.toString());
 	}
-	
+
 	/**
 	 * Get queries in the given list of queries that conflict with the given query.
 	 * A query conflicts with another query when they have the same values for the same columns (except for the column 'value').
@@ -0,0 +1,303 @@
+package me.staartvin.statz.database.datatype;
+
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.UUID;
+
+/**
+ * A single row of a stat table, laid out by the {@link TableSchema} of that table.
+ * <br>Instead of a map of strings, a row stores its key columns in an array (in the order of the schema) and its value as a double.
+ * Key values are interned, so rows of the same player or world share their strings.
+ * <br><br>Two rows are equal when they identify the same row in the database, i.e. when their matched columns
+ * (see {@link TableSchema#getMatchIndexes()}) have the same values. The value of a row is not taken into account.
+ * This means a row can be used as a key to find the row it should be merged with.
+ * <br><br>Rows are immutable. {@link Query} is still used as a map view of a row (see {@link #toQuery()}) for code that works with column names.
+ *
+ * @author Staartvin
+ *
+ */
+public final class StatRow {
+
+	private final TableSchema schema;
+
+	private final String[] keys;
+
+	private final double value;
+
+	// Whether the value of this row should be added to the stored value instead of replacing it.
+	private final boolean incremental;
+
+	private final int hash;
+
+	/**
+	 * Create a new row. See {@link TableSchema#createRow(double, boolean, Object...)} for an easier way to create a row.
+	 * @param schema Schema of the table this row belongs to
+	 * @param keys Values of the key columns, in the order of the schema. Values should be interned. The array should not be modified afterwards.
+	 * @param value Value of the row
+	 * @param incremental Whether the value should be added to the stored value (see {@link #isIncremental()})
+	 */
+	public StatRow(TableSchema schema, String[] keys, double value, boolean incremental) {
+		this.schema = schema;
+		this.keys = keys;
+		this.value = value;
+		this.incremental = incremental;
+		this.hash = this.computeHash();
+	}
+
+	public TableSchema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * Get the value of a key column.
+	 * @param index Index of the column in the schema
+	 * @return the value of the column, or null if the row does not have a value for it.
+	 */
+	public String getKey(int index) {
+		return keys[index];
+	}
+
+	/**
+	 * Get the value of a key column.
+	 * @param columnName Name of the column
+	 * @return the value of the column, or null if the row does not have a value for it or the table has no such key column.
+	 */
+	public String getKey(String columnName) {
+		int index = schema.indexOf(columnName);
+
+		return index < 0 ? null : keys[index];
+	}
+
+	/**
+	 * Get the value of the 'value' column.
+	 * @return the value of this row.
+	 */
+	public double getValue() {
+		return value;
+	}
+
+	/**
+	 * Check whether this row is incremental. The value of an incremental row holds the amount that has to be added
+	 * to the value that is already stored, instead of the new value itself.
+	 * @return true if this row is incremental, false otherwise.
+	 */
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	/**
+	 * Check whether this row has a value for every matched column, so it is known to which row in the database it belongs.
+	 * @return true if all matched columns have a value, false otherwise.
+	 */
+	public boolean isComplete() {
+		for (int index : schema.getMatchIndexes()) {
+			if (keys[index] == null) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Check whether this row belongs to the given player.
+	 * @param uuid UUID of the player
+	 * @return true if the uuid column of this row matches the given uuid.
+	 */
+	public boolean isOf(UUID uuid) {
+		String rowUUID = this.getKey(TableSchema.UUID_COLUMN);
+
+		return rowUUID != null && rowUUID.equalsIgnoreCase(uuid.toString());
+	}
+
+	/**
+	 * Check whether this row has the given value for a column.
+	 * @param columnName Name of the column
+	 * @param columnValue Value the column should have (case insensitive)
+	 * @return true if the column of this row has the given value, false otherwise.
+	 */
+	public boolean matches(String columnName, String columnValue) {
+		if (columnName.equalsIgnoreCase(TableSchema.VALUE_COLUMN)) {
+			return schema.hasValue() && formatValue(value).equals(columnValue);
+		}
+
+		String key = this.getKey(columnName);
+
+		return key != null && key.equalsIgnoreCase(columnValue);
+	}
+
+	/**
+	 * Check whether this row meets all the given conditions.
+	 * @param conditions Query with the columns and values this row should have.
+	 * @return true if every column of the conditions matches this row, false otherwise.
+	 */
+	public boolean matches(Query conditions) {
+		for (Entry<String, String> entry : conditions.getEntrySet()) {
+			if (!this.matches(entry.getKey(), entry.getValue())) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Check whether this row meets all the given requirements.
+	 * @param conditions Requirements this row should meet
+	 * @return true if every requirement is met (or none are given), false otherwise.
+	 */
+	public boolean matches(RowRequirement... conditions) {
+		for (RowRequirement condition : conditions) {
+			if (!this.matches(condition.getColumnName(), condition.getColumnValue())) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Apply this row on top of an older version of the same row.
+	 * <br>If this row is not incremental, it simply replaces the older row. If it is incremental, the result is a new row
+	 * with the values of both rows added up. The result is only incremental when the older row was incremental as well.
+	 * @param older Row that was stored before this row, may be null.
+	 * @return the row that represents both rows.
+	 */
+	public StatRow applyTo(StatRow older) {
+		if (!incremental || older == null) {
+			return this;
+		}
+
+		return new StatRow(schema, keys, older.value + value, older.incremental);
+	}
+
+	/**
+	 * Get the part of this (incremental) row that is not in the given row.
+	 * @param sent Part of this row that has already been stored
+	 * @return an incremental row with the difference of both values.
+	 */
+	public StatRow subtract(StatRow sent) {
+		return new StatRow(schema, keys, value - sent.value, true);
+	}
+
+	/**
+	 * Create a {@link Query} with the same columns as this row.
+	 * @return a new query that holds the data of this row.
+	 */
+	public Query toQuery() {
+		LinkedHashMap<String, String> data = new LinkedHashMap<>();
+
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null) {
+				data.put(schema.getColumnName(i), keys[i]);
+			}
+		}
+
+		if (schema.hasValue()) {
+			data.put(TableSchema.VALUE_COLUMN, formatValue(value));
+		}
+
+		return new Query(data);
+	}
+
+	/**
+	 * Create a row from a query. Columns of the query that are not part of the schema are ignored.
+	 * @param schema Schema of the table the query belongs to
+	 * @param query Query to convert
+	 * @return a (non-incremental) row with the data of the query.
+	 */
+	public static StatRow fromQuery(TableSchema schema, Query query) {
+		String[] keys = new String[schema.getColumnCount()];
+
+		for (int i = 0; i < keys.length; i++) {
+			Object key = query.getValue(schema.getColumnName(i));
+
+			if (key != null) {
+				keys[i] = key.toString().intern();
+			}
+		}
+
+		double value = query.hasValue(TableSchema.VALUE_COLUMN) ? query.getValue() : 0;
+
+		return new StatRow(schema, keys, value, false);
+	}
+
+	/**
+	 * Format a value so that whole numbers are stored without decimals.
+	 * @param value Value to format
+	 * @return a string representation of the value.
+	 */
+	public static String formatValue(double value) {
+		if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < Long.MAX_VALUE) {
+			return Long.toString((long) value);
+		}
+
+		return Double.toString(value);
+	}
+
+	private int computeHash() {
+		int result = 1;
+
+		for (int index : schema.getMatchIndexes()) {
+			String key = keys[index];
+
+			result = 31 * result + (key == null ? 0 : hashIgnoreCase(key));
+		}
+
+		return result;
+	}
+
+	// Hash that is equal for strings that are equal ignoring case, without creating a lower case copy.
+	private static int hashIgnoreCase(String key) {
+		int result = 0;
+
+		for (int i = 0; i < key.length(); i++) {
+			result = 31 * result + Character.toLowerCase(Character.toUpperCase(key.charAt(i)));
+		}
+
+		return result;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+
+		if (!(obj instanceof StatRow)) {
+			return false;
+		}
+
+		StatRow other = (StatRow) obj;
+
+		if (hash != other.hash || schema.getTable() != other.schema.getTable()) {
+			return false;
+		}
+
+		for (int index : schema.getMatchIndexes()) {
+			String key = keys[index];
+			String otherKey = other.keys[index];
+
+			// Keys are interned, so equal keys are usually the same object.
+			if (key == otherKey) {
+				continue;
+			}
+
+			if (key == null || otherKey == null || !key.equalsIgnoreCase(otherKey)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return this.toQuery().toString() + (incremental ? " (incremental)" : "");
+	}
+}
@@ -17,12 +17,30 @@ public abstract class Table {
 		TEXT, INT, FLOAT, NONE, DOUBLE
 	}
 
+	/**
+	 * How the uuid column of a table is stored: as text of any length, as text of exactly 36 characters, or as 16 bytes.
+	 */
+	public static enum UUIDStorage {
+		TEXT, CHAR, BINARY
+	}
+
 	private String tableName = "";
 
 	private List<Column> columns = new ArrayList<Column>();
 	
 	private List<Column> uniqueMatched = new ArrayList<Column>();
 
+	private List<Index> indexes = new ArrayList<Index>();
+
+	// How the uuid column is stored in the database right now.
+	private volatile UUIDStorage uuidStorage = UUIDStorage.TEXT;
+
+	// Whether columns with a dictionary store ids (instead of names) in the database right now.
+	private volatile boolean dictionaryEncoded = false;
+
+	// Created when it is first needed, as columns are added after the table is created.
+	private volatile TableSchema schema;
+
 	public Table(final String tableName) {
 		this.setTableName(tableName);
 	}
@@ -33,15 +51,18 @@ public abstract class Table {
 
 	public void setColumns(final List<Column> columns) {
 		this.columns = columns;
+		schema = null;
 	}
 
 	public Table addColumn(final String columnName, final boolean primaryKey, final SQLDataType type) {
 		columns.add(new Column(columnName, primaryKey, type));
+		schema = null;
 		return this; // Return this to allow chaining.
 	}
 
 	public Table addColumn(final Column entry) {
 		columns.add(entry);
+		schema = null;
 		return this;
 	}
 
@@ -80,10 +101,12 @@ public abstract class Table {
 
 	public void setUniqueMatched(List<Column> uniqueMatched) {
 		this.uniqueMatched = uniqueMatched;
+		schema = null;
 	}
 	
 	public void addUniqueMatched(Column entry) {
 		this.uniqueMatched.add(entry);
+		schema = null;
 	}
 	
 	public Column getColumn(String columnName) {
@@ -109,4 +132,74 @@ public abstract class Table {
 		return true;
 	}
 
+	public List<Index> getIndexes() {
+		return indexes;
+	}
+
+	/**
+	 * Add an index on the given columns. The name of the index is prefixed with the name of the table.
+	 * @param indexName Name of the index
+	 * @param columnNames Names of the columns, in the order in which they are indexed
+	 * @return true if the index was added, false if one of the columns does not exist.
+	 */
+	public boolean addIndex(String indexName, String... columnNames) {
+		List<Column> indexed = new ArrayList<Column>();
+
+		for (String columnName : columnNames) {
+			Column entry = this.getColumn(columnName);
+
+			// No entry found. -> Return false
+			if (entry == null) {
+				return false;
+			}
+
+			indexed.add(entry);
+		}
+
+		indexes.add(new Index(this.getTableName() + "_" + indexName, indexed));
+		return true;
+	}
+
+	public UUIDStorage getUUIDStorage() {
+		return uuidStorage;
+	}
+
+	public void setUUIDStorage(UUIDStorage uuidStorage) {
+		this.uuidStorage = uuidStorage;
+	}
+
+	/**
+	 * Check whether the columns of this table that have a dictionary (see {@link Column#getDictionary()}) store
+	 * the ids of their values, instead of the values themselves.
+	 * @return true if the values are stored as ids, false otherwise.
+	 */
+	public boolean isDictionaryEncoded() {
+		return dictionaryEncoded;
+	}
+
+	public void setDictionaryEncoded(boolean dictionaryEncoded) {
+		this.dictionaryEncoded = dictionaryEncoded;
+	}
+
+	/**
+	 * Get the schema of this table, which describes how rows of this table are stored in memory.
+	 * @return the schema of this table.
+	 */
+	public TableSchema getSchema() {
+		TableSchema result = schema;
+
+		if (result == null) {
+			synchronized (this) {
+				result = schema;
+
+				if (result == null) {
+					result = new TableSchema(this);
+					schema = result;
+				}
+			}
+		}
+
+		return result;
+	}
+
 }
@@ -0,0 +1,174 @@
+package me.staartvin.statz.database.datatype;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import me.staartvin.statz.database.datatype.Table.SQLDataType;
+
+/**
+ * The layout of the rows of a {@link Table}, used to create {@link StatRow}s.
+ * <br>A schema consists of the key columns of a table (every column that is not the 'value' column or a numeric primary key)
+ * and whether the table has a 'value' column. The key columns that are used to match rows are the unique matched columns of
+ * the table, or the uuid column if there are none.
+ *
+ * @author Staartvin
+ *
+ */
+public class TableSchema {
+
+	public static final String VALUE_COLUMN = "value";
+	public static final String UUID_COLUMN = "uuid";
+
+	private final Table table;
+
+	private final String[] columnNames;
+	private final SQLDataType[] dataTypes;
+	private final String[] dictionaries;
+
+	// Indexes of the columns (in columnNames) that identify a row.
+	private final int[] matchIndexes;
+
+	private final boolean hasValue;
+
+	public TableSchema(Table table) {
+		this.table = table;
+
+		List<Column> keyColumns = new ArrayList<>();
+		boolean foundValue = false;
+
+		for (Column column : table.getColumns()) {
+			if (column.getColumnName().equalsIgnoreCase(VALUE_COLUMN)) {
+				foundValue = true;
+				continue;
+			}
+
+			// Generated ids are not part of the data of a row.
+			if (column.isPrimaryKey() && column.getDataType() == SQLDataType.INT) {
+				continue;
+			}
+
+			keyColumns.add(column);
+		}
+
+		hasValue = foundValue;
+
+		columnNames = new String[keyColumns.size()];
+		dataTypes = new SQLDataType[keyColumns.size()];
+		dictionaries = new String[keyColumns.size()];
+
+		for (int i = 0; i < keyColumns.size(); i++) {
+			columnNames[i] = keyColumns.get(i).getColumnName().intern();
+			dataTypes[i] = keyColumns.get(i).getDataType();
+			dictionaries[i] = keyColumns.get(i).getDictionary();
+		}
+
+		List<Integer> matched = new ArrayList<>();
+
+		for (Column column : table.getUniqueMatched()) {
+			int index = this.indexOf(column.getColumnName());
+
+			if (index >= 0) {
+				matched.add(index);
+			}
+		}
+
+		// Without unique matched columns, a row is identified by its uuid.
+		if (matched.isEmpty() && this.indexOf(UUID_COLUMN) >= 0) {
+			matched.add(this.indexOf(UUID_COLUMN));
+		}
+
+		matchIndexes = new int[matched.size()];
+
+		for (int i = 0; i < matched.size(); i++) {
+			matchIndexes[i] = matched.get(i);
+		}
+	}
+
+	public Table getTable() {
+		return table;
+	}
+
+	/**
+	 * Get the number of key columns of this schema.
+	 * @return the number of key columns.
+	 */
+	public int getColumnCount() {
+		return columnNames.length;
+	}
+
+	public String getColumnName(int index) {
+		return columnNames[index];
+	}
+
+	public SQLDataType getDataType(int index) {
+		return dataTypes[index];
+	}
+
+	/**
+	 * Get the dictionary of a key column, see {@link Column#getDictionary()}.
+	 * @param index Index of the column
+	 * @return the name of the dictionary, or null if the column does not have one.
+	 */
+	public String getDictionary(int index) {
+		return dictionaries[index];
+	}
+
+	/**
+	 * Get the index of a key column.
+	 * @param columnName Name of the column (case insensitive)
+	 * @return the index of the column or -1 if this schema has no key column with that name.
+	 */
+	public int indexOf(String columnName) {
+		// Column names are interned, so try the quick way first.
+		for (int i = 0; i < columnNames.length; i++) {
+			if (columnNames[i] == columnName) {
+				return i;
+			}
+		}
+
+		for (int i = 0; i < columnNames.length; i++) {
+			if (columnNames[i].equalsIgnoreCase(columnName)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Get the indexes of the key columns that identify a row.
+	 * @return the indexes of the matched columns. The array should not be modified.
+	 */
+	public int[] getMatchIndexes() {
+		return matchIndexes;
+	}
+
+	/**
+	 * Check whether rows of this schema have a value.
+	 * @return true if the table has a 'value' column, false otherwise.
+	 */
+	public boolean hasValue() {
+		return hasValue;
+	}
+
+	/**
+	 * Create a row for this schema.
+	 * @param value Value of the row
+	 * @param incremental Whether the value should be added to the stored value (see {@link StatRow#isIncremental()})
+	 * @param columns Key columns of the row, given as column name followed by column value. Unknown columns are ignored.
+	 * @return a new row.
+	 */
+	public StatRow createRow(double value, boolean incremental, Object... columns) {
+		String[] keys = new String[columnNames.length];
+
+		for (int i = 0; i + 1 < columns.length; i += 2) {
+			int index = this.indexOf(columns[i].toString());
+
+			if (index >= 0 && columns[i + 1] != null) {
+				keys[index] = columns[i + 1].toString().intern();
+			}
+		}
+
+		return new StatRow(this, keys, value, incremental);
+	}
+}
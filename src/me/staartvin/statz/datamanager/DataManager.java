@@ -1,12 +1,30 @@
 package me.staartvin.statz.datamanager;
 
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import org.bukkit.ChatColor;
 
 import me.staartvin.statz.Statz;
 import me.staartvin.statz.database.datatype.Query;
+import me.staartvin.statz.database.datatype.RowRequirement;
+import me.staartvin.statz.database.datatype.StatRow;
+import me.staartvin.statz.database.datatype.Table;
+import me.staartvin.statz.database.datatype.TableSchema;
+import me.staartvin.statz.datamanager.player.CachedPlayer;
 import me.staartvin.statz.datamanager.player.PlayerInfo;
 import me.staartvin.statz.util.StatzUtil;
 
@@ -26,12 +44,19 @@ public class DataManager {
 
 	private final Statz plugin;
 
+	// How many times the database is read before giving up on rows of a stat that keep being written.
+	private static final int MAX_READ_ATTEMPTS = 100;
+
 	public DataManager(final Statz instance) {
 		plugin = instance;
 	}
 
 	/**
-	 * This method will obtain all rows that are in the database table of the specific stat type. 
+	 * Get all rows of the given UUID for a specific stat type. Players are cached by the {@link PlayerCacheManager}, so for online
+	 * players this will never touch the database. When the player is not cached and this is called on the main thread, the player
+	 * is loaded in the background and only the data in the pool is returned.
+	 * <br>
+	 * <br>When called on another thread, this method will obtain all rows that are in the database table of the specific stat type. 
 	 * It will only give the rows of the given UUID. Since Statz uses a pool manager, it will obtain the data from the database
 	 * (which could be outdated if no update has occured yet) and it will match this data with the current queries in the pool.
 	 * When the queries in the pool are more up to date, it will override the outdated results of the database with the new data
@@ -44,108 +69,446 @@ public class DataManager {
 	 * deleted, Statz will give back data from the database, since the pool is empty. The database is not yet updated and so the wrong data is
 	 * returned.
 	 * <br>
-	 * <br>This issue is solved by saving the last written actions (see {@link DataPoolManager#getLatestQueries(PlayerStat)}). This method returns the
-	 * last performed queries on the database. {@link #getPlayerInfo(UUID, PlayerStat)} will try use this info (if it is available) whenever it notices 
-	 * that we are performing a database save. In this way, this method will ensure you'll always get the most recent info. 
+	 * <br>This issue is solved by keeping track of the rows that are in flight (see {@link DataPoolManager#getInFlightRows(PlayerStat)}).
+	 * Rows are only removed from the pool after they are committed, and {@link #getPlayerInfo(UUID, PlayerStat)} reads the database again
+	 * whenever rows of the stat were in flight while it was reading. In this way, this method will ensure you'll always get the most recent info. 
 	 * @param uuid UUID of the player to search for
 	 * @param statType Type of stat to get the data of.
 	 * @return a {@link PlayerInfo} class that contains the results of the performed action on the database.
 	 */
 	public PlayerInfo getPlayerInfo(final UUID uuid, final PlayerStat statType) {
-		//System.out.println("----------------------");
-		final PlayerInfo info = new PlayerInfo(uuid);
+		PlayerCacheManager cacheManager = plugin.getCacheManager();
+
+		if (plugin.getServer().isPrimaryThread()) {
+			// Never read from the database on the main thread.
+			return this.getCachedPlayerInfo(uuid, statType);
+		}
+
+		// The cache always has the most recent data, so use it if we can.
+		CachedPlayer cachedPlayer = cacheManager.getCachedPlayer(uuid);
+
+		if (cachedPlayer != null) {
+			return this.createPlayerInfo(uuid, statType, cachedPlayer.getRows(statType));
+		}
+
+		return this.getUncachedPlayerInfo(uuid, statType);
+	}
+
+	/**
+	 * Get player info of a player that was not cached when it was looked up, off the main thread. The lookup has already been
+	 * counted as a miss of the cache, so the cache is only peeked at here.
+	 */
+	private PlayerInfo getUncachedPlayerInfo(final UUID uuid, final PlayerStat statType) {
+		PlayerCacheManager cacheManager = plugin.getCacheManager();
+
+		// The player may have been loaded since.
+		CachedPlayer cachedPlayer = cacheManager.peekCachedPlayer(uuid);
+
+		// Online players are kept in the cache, so load them while we're not on the main thread anyway.
+		if (cachedPlayer == null && plugin.getServer().getPlayer(uuid) != null) {
+			cacheManager.loadPlayer(uuid);
+
+			cachedPlayer = cacheManager.peekCachedPlayer(uuid);
+		}
+
+		if (cachedPlayer != null) {
+			return this.createPlayerInfo(uuid, statType, cachedPlayer.getRows(statType));
+		}
+
+		return this.getDatabasePlayerInfo(uuid, statType);
+	}
+
+	/**
+	 * Get player info without ever reading the database, so it can safely be called on the main thread.
+	 * <br>When the player is cached, the cached rows are returned. Otherwise the player is loaded into the cache in the background
+	 * and only the rows that are in the pool are returned for now, which may be less than what is stored in the database.
+	 * @param uuid UUID of the player to search for
+	 * @param statType Type of stat to get the data of.
+	 * @return a {@link PlayerInfo} class that contains the data of this player that is in memory.
+	 */
+	public PlayerInfo getCachedPlayerInfo(final UUID uuid, final PlayerStat statType) {
+		PlayerCacheManager cacheManager = plugin.getCacheManager();
 
-		// Get results from database
-		List<Query> results = plugin.getSqlConnector().getObjects(statType.getTableName(),
-				StatzUtil.makeQuery("uuid", uuid.toString()));
+		CachedPlayer cachedPlayer = cacheManager.getCachedPlayer(uuid);
 
-		//		for (HashMap<String, String> map : results) {
-		//			System.out.println("RESULT: " + map);
-		//		}
+		if (cachedPlayer != null) {
+			return this.createPlayerInfo(uuid, statType, cachedPlayer.getRows(statType));
+		}
+
+		// Load the player in the background, so the next call can use the cache.
+		cacheManager.loadPlayerAsync(uuid);
 
-		// Get a list of queries currently in the pool
-		List<Query> pooledQueries = plugin.getDataPoolManager().getStoredQueries(statType);
+		// Offline players only stay cached until the next save.
+		if (plugin.getServer().getPlayer(uuid) == null) {
+			cacheManager.markForEviction(uuid);
+		}
 
-		// If we have queries in the pool, check for conflicting ones.
-		if (pooledQueries != null && !pooledQueries.isEmpty()) {
+		return this.getPooledPlayerInfo(uuid, statType);
+	}
 
-			//			for (HashMap<String, String> store : storedQueries) {
-			//				System.out.println("STORED: "  + store);
-			//			}
+	/**
+	 * Get player info like {@link #getPlayerInfo(UUID, PlayerStat)}, without blocking the calling thread.
+	 * <br>When the player is cached, the returned future is already completed. Otherwise the database is read on a database thread
+	 * and the future is completed there. Don't use the Bukkit API in anything that is chained to the future; schedule a task on
+	 * the main thread instead.
+	 * @param uuid UUID of the player to search for
+	 * @param statType Type of stat to get the data of.
+	 * @return a future that completes with the {@link PlayerInfo} of the player. It completes exceptionally when the database could
+	 *         not be read, e.g. because too many tasks are waiting for it.
+	 */
+	public CompletableFuture<PlayerInfo> getPlayerInfoAsync(final UUID uuid, final PlayerStat statType) {
+		CachedPlayer cachedPlayer = plugin.getCacheManager().getCachedPlayer(uuid);
 
-			// There ARE stored queries and since the pool is more up to date, we have to override the old ones.
-			for (Query pooledQuery : pooledQueries) {
-				// If UUID of query in the pool is not matching with uuid of player, don't add it.
-				if (!pooledQuery.getValue("uuid").toString().equalsIgnoreCase(uuid.toString())) {
-					continue;
+		if (cachedPlayer != null) {
+			return CompletableFuture.completedFuture(this.createPlayerInfo(uuid, statType, cachedPlayer.getRows(statType)));
+		}
+
+		return plugin.getSqlConnector().getExecutor().supply(new Callable<PlayerInfo>() {
+			public PlayerInfo call() {
+				return getUncachedPlayerInfo(uuid, statType);
+			}
+		});
+	}
+
+	/**
+	 * Get player info of a stat for a group of players at once, without blocking the calling thread.
+	 * <br>Cached players are looked up right away. All other players are read from the database in a single task, so a large group of
+	 * players doesn't flood the queue of the database threads. See {@link #getPlayerInfoAsync(UUID, PlayerStat)} for more info.
+	 * @param uuids UUIDs of the players to search for
+	 * @param statType Type of stat to get the data of.
+	 * @return a future that completes with the {@link PlayerInfo} of every player, in the order of the given UUIDs.
+	 */
+	public CompletableFuture<Map<UUID, PlayerInfo>> getPlayerInfoAsync(final Collection<UUID> uuids,
+			final PlayerStat statType) {
+		final Map<UUID, PlayerInfo> results = new LinkedHashMap<>();
+
+		final List<UUID> uncached = new ArrayList<>();
+
+		for (UUID uuid : uuids) {
+			CachedPlayer cachedPlayer = plugin.getCacheManager().getCachedPlayer(uuid);
+
+			if (cachedPlayer != null) {
+				results.put(uuid, this.createPlayerInfo(uuid, statType, cachedPlayer.getRows(statType)));
+			} else {
+				// Reserve a spot, so the results are in the same order as the UUIDs.
+				results.put(uuid, null);
+				uncached.add(uuid);
+			}
+		}
+
+		if (uncached.isEmpty()) {
+			return CompletableFuture.completedFuture(results);
+		}
+
+		return plugin.getSqlConnector().getExecutor().supply(new Callable<Map<UUID, PlayerInfo>>() {
+			public Map<UUID, PlayerInfo> call() {
+				for (UUID uuid : uncached) {
+					results.put(uuid, getUncachedPlayerInfo(uuid, statType));
 				}
 
-				// There is no data of this stat in the database, so storedQueries are always more up to date. (IF the UUIDs match)
-				if (results == null || results.isEmpty()) {
-					//					System.out.println("Stored query " + StatzUtil.printQuery(storedQuery)
-					//							+ " was more up to date since there is no record in database");
-					results.add(pooledQuery);
-					continue;
+				return results;
+			}
+		});
+	}
+
+	/**
+	 * Get the total value of the rows of a stat of a player that meet the given conditions, without blocking the calling thread.
+	 * <br>See {@link #getTotalsAsync(Collection, PlayerStat, RowRequirement...)}.
+	 * @param uuid UUID of the player
+	 * @param statType Stat to add up
+	 * @param conditions Conditions a row has to meet to be counted
+	 * @return a future that completes with the total, or with null when there are no rows of this player at all. It completes
+	 *         exceptionally when the database could not be read.
+	 */
+	public CompletableFuture<Double> getTotalAsync(final UUID uuid, final PlayerStat statType,
+			final RowRequirement... conditions) {
+		return this.getTotalsAsync(Collections.singletonList(uuid), statType, conditions)
+				.thenApply(new Function<Map<UUID, Double>, Double>() {
+					public Double apply(Map<UUID, Double> totals) {
+						return totals.get(uuid);
+					}
+				});
+	}
+
+	/**
+	 * Get the total value of the rows of a stat that meet the given conditions, for a group of players at once, without blocking the calling thread.
+	 * <br>Cached players are added up right away. The totals of all other players are added up by the database (see {@link #getTotals(List, PlayerStat, RowRequirement...)})
+	 * on a database thread, and the future is completed there. Don't use the Bukkit API in anything that is chained to the future.
+	 * @param uuids UUIDs of the players
+	 * @param statType Stat to add up
+	 * @param conditions Conditions a row has to meet to be counted
+	 * @return a future that completes with the total of every player, in the order of the given UUIDs. The total is null for players
+	 *         that have no rows at all. It completes exceptionally when the database could not be read.
+	 */
+	public CompletableFuture<Map<UUID, Double>> getTotalsAsync(final Collection<UUID> uuids, final PlayerStat statType,
+			final RowRequirement... conditions) {
+		final Map<UUID, Double> results = new LinkedHashMap<>();
+
+		final List<UUID> uncached = new ArrayList<>();
+
+		for (UUID uuid : uuids) {
+			CachedPlayer cachedPlayer = plugin.getCacheManager().getCachedPlayer(uuid);
+
+			if (cachedPlayer != null) {
+				PlayerInfo info = this.createPlayerInfo(uuid, statType, cachedPlayer.getRows(statType));
+
+				results.put(uuid, info.isValid() ? info.getTotalValue(conditions) : null);
+			} else {
+				// Reserve a spot, so the results are in the same order as the UUIDs.
+				results.put(uuid, null);
+				uncached.add(uuid);
+			}
+		}
+
+		if (uncached.isEmpty()) {
+			return CompletableFuture.completedFuture(results);
+		}
+
+		return plugin.getSqlConnector().getExecutor().supply(new Callable<Map<UUID, Double>>() {
+			public Map<UUID, Double> call() throws SQLException {
+				Map<UUID, Double> totals = getTotals(uncached, statType, conditions);
+
+				if (totals == null) {
+					throw new SQLException("Could not read the totals of " + statType + " from the database");
 				}
 
-				//System.out.println("Stored query: " + StatzUtil.printQuery(storedQuery));
+				results.putAll(totals);
+
+				return results;
+			}
+		});
+	}
+
+	/**
+	 * Get the total value of the rows of a stat that meet the given conditions, for a group of players.
+	 * <br>Instead of reading every row of a player, the database adds up the values (see {@link me.staartvin.statz.database.DatabaseConnector#getTotals(Table, List, RowRequirement...)}).
+	 * The rows in the pool are added on top of that, just like {@link #getPlayerInfo(UUID, PlayerStat)} does with the rows it reads.
+	 * Only when a player has a row in the pool that replaces a row in the database, the rows of that player are read after all.
+	 * <br>This reads the database and blocks until it has responded, so it should never be called on the main thread.
+	 * @param uuids UUIDs of the players
+	 * @param statType Stat to add up
+	 * @param conditions Conditions a row has to meet to be counted
+	 * @return a map of every given UUID to its total, or to null if the player has no rows at all. Null when the database
+	 *         could not be read, as the rows in the pool alone are not the totals.
+	 */
+	public Map<UUID, Double> getTotals(final List<UUID> uuids, final PlayerStat statType,
+			final RowRequirement... conditions) {
+		Map<UUID, Double> totals = new LinkedHashMap<>();
+
+		for (UUID uuid : uuids) {
+			totals.put(uuid, null);
+		}
+
+		Table table = plugin.getSqlConnector().getTable(statType.getTableName());
+
+		if (table == null) {
+			return totals;
+		}
+
+		List<String> uuidStrings = new ArrayList<>();
+		Map<String, UUID> uuidsByString = new HashMap<>();
+
+		for (UUID uuid : uuids) {
+			uuidStrings.add(uuid.toString());
+			uuidsByString.put(uuid.toString(), uuid);
+		}
+
+		// Players that have a row in the pool that replaces the row in the database.
+		Set<UUID> replaced = new HashSet<>();
+
+		DataPoolManager poolManager = plugin.getDataPoolManager();
+
+		for (int attempt = 1;; attempt++) {
+			boolean lastAttempt = attempt >= MAX_READ_ATTEMPTS;
+
+			int writeSequence = poolManager.getWriteSequence(statType);
+
+			// Rows of this stat are being written right now, so wait until they are committed.
+			if (writeSequence % 2 != 0 && !lastAttempt) {
+				this.waitForWrite();
+				continue;
+			}
+
+			Map<String, Double> databaseTotals = plugin.getSqlConnector().getTotals(table, uuidStrings, conditions);
+
+			// The error is already logged.
+			if (databaseTotals == null) {
+				return null;
+			}
 
-				// Get the queries of the pool that conflict with the 'old' database results.
-				List<Query> conflictingQueries = pooledQuery.findConflicts(results);
+			synchronized (poolManager) {
+				if (poolManager.getWriteSequence(statType) != writeSequence) {
+					if (!lastAttempt) {
+						continue;
+					}
 
-				// No conflicts found, yeah!!
-				if (conflictingQueries == null || conflictingQueries.isEmpty()) {
-					//					System.out.println(
-					//							"No conflicts found between " + StatzUtil.printQuery(storedQuery) + " and " + results);
-					results.add(pooledQuery);
-					continue;
+					plugin.debugMessage(ChatColor.RED + "Totals for " + statType
+							+ " may be inaccurate, as they kept being saved.");
 				}
 
-				// We found conflicting queries.
-				for (Query conflictingQuery : conflictingQueries) {
-					//					System.out.println("Stored query " + StatzUtil.printQuery(storedQuery) + " conflicts with "
-					//							+ StatzUtil.printQuery(conflictingQuery));
-					// Remove old data from results and add new (more updated data) to the results pool.
-					results.remove(conflictingQuery);
-					results.add(pooledQuery);
+				for (Map.Entry<String, Double> entry : databaseTotals.entrySet()) {
+					UUID uuid = uuidsByString.get(entry.getKey());
+
+					if (uuid != null) {
+						totals.put(uuid, entry.getValue());
+					}
 				}
 
+				List<StatRow> pooledRows = poolManager.getStoredRows(statType);
+
+				if (pooledRows != null) {
+					for (StatRow pooledRow : pooledRows) {
+						String rowUUID = pooledRow.getKey(TableSchema.UUID_COLUMN);
+
+						UUID uuid = (rowUUID == null ? null : uuidsByString.get(rowUUID.toLowerCase()));
+
+						if (uuid == null) {
+							continue;
+						}
+
+						// We don't know the value in the database that this row replaces.
+						if (!pooledRow.isIncremental()) {
+							replaced.add(uuid);
+							continue;
+						}
+
+						Double total = totals.get(uuid);
+
+						// The player has rows, even when this one does not meet the conditions.
+						totals.put(uuid, (total == null ? 0 : total)
+								+ (pooledRow.matches(conditions) ? pooledRow.getValue() : 0));
+					}
+				}
+			}
+
+			break;
+		}
+
+		for (UUID uuid : replaced) {
+			PlayerInfo info = this.getDatabasePlayerInfo(uuid, statType);
+
+			totals.put(uuid, info.isValid() ? info.getTotalValue(conditions) : null);
+		}
+
+		return totals;
+	}
+
+	/**
+	 * Get player info by reading the database and merging it with the pool.
+	 * See {@link #getPlayerInfo(UUID, PlayerStat)} for more info. This will block until the database has responded.
+	 * @param uuid UUID of the player to search for
+	 * @param statType Type of stat to get the data of.
+	 * @return a {@link PlayerInfo} class that contains the results of the performed action on the database.
+	 */
+	private PlayerInfo getDatabasePlayerInfo(final UUID uuid, final PlayerStat statType) {
+		Table table = plugin.getSqlConnector().getTable(statType.getTableName());
+
+		if (table == null) {
+			return new PlayerInfo(uuid);
+		}
+
+		DataPoolManager poolManager = plugin.getDataPoolManager();
+
+		for (int attempt = 1;; attempt++) {
+			boolean lastAttempt = attempt >= MAX_READ_ATTEMPTS;
+
+			int writeSequence = poolManager.getWriteSequence(statType);
+
+			// Rows of this stat are being written right now, so wait until they are committed.
+			if (writeSequence % 2 != 0 && !lastAttempt) {
+				this.waitForWrite();
+				continue;
 			}
 
-		} else {
-			// No queries in the pool
+			List<StatRow> databaseRows = plugin.getSqlConnector().getRows(table,
+					StatzUtil.makeQuery("uuid", uuid.toString()));
+
+			// Rows are added to the pool without its lock, so they may still come in while merging. Holding the lock only keeps
+			// a save from starting or finishing. Whether the database rows and the pooled rows fit together is told by the write
+			// sequence: if it did not change, no rows of this stat were written since the database was read.
+			synchronized (poolManager) {
+				if (poolManager.getWriteSequence(statType) != writeSequence) {
+					if (!lastAttempt) {
+						// The database may or may not have the rows that were in flight, so read it again.
+						continue;
+					}
+
+					plugin.debugMessage(ChatColor.RED + "Data of " + uuid + " for " + statType
+							+ " may be inaccurate, as it kept being saved.");
+				}
+
+				// Rows are indexed by the row they represent, so conflicting rows can be found right away.
+				Map<StatRow, StatRow> results = new LinkedHashMap<>();
 
-			// IF query is null, it could be due to a 'just-update', so we look at the last written query to find the most recent data.
-			List<Query> lastQueries = plugin.getDataPoolManager().getLatestQueries(statType);
+				for (StatRow row : databaseRows) {
+					results.put(row, row);
+				}
 
-			// We found old queries that were performed on the database, check if they are of any use.
-			if (lastQueries != null) {
-				for (Query lastQuery : lastQueries) {
-					// By checking for conflicts, we can search for old queries that are useful to use now.
-					List<Query> conflicts = lastQuery.findConflicts(results);
+				// Get a list of rows currently in the pool
+				List<StatRow> pooledRows = poolManager.getStoredRows(statType);
 
-					// We found old queries that are useful, yeah!
-					if (conflicts != null && !conflicts.isEmpty()) {
-						// Use last written query if one conflicts
-						for (Query conflict : conflicts) {
-							// Use last written value as old value
-							conflict.setValue("value", lastQuery.getValue());
+				// If we have rows in the pool, check for conflicting ones.
+				if (pooledRows != null) {
+
+					// There ARE stored rows and since the pool is more up to date, we have to override the old ones.
+					for (StatRow pooledRow : pooledRows) {
+						// If UUID of row in the pool is not matching with uuid of player, don't add it.
+						if (!pooledRow.isOf(uuid)) {
+							continue;
 						}
+
+						// Replace old data with the new (more updated data), or add to it.
+						results.put(pooledRow, pooledRow.applyTo(results.get(pooledRow)));
 					}
 				}
+
+				return this.createPlayerInfo(uuid, statType, new ArrayList<>(results.values()));
 			}
 		}
+	}
 
-		// Result is not null, so this is a valid player info.
-		if (results != null && !results.isEmpty()) {
+	private void waitForWrite() {
+		try {
+			Thread.sleep(10);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Get player info of a player that is not cached yet, without reading the database.
+	 * Only the rows that are in the pool are used.
+	 * @param uuid UUID of the player to search for
+	 * @param statType Type of stat to get the data of.
+	 * @return a {@link PlayerInfo} class that contains the pooled data of this player.
+	 */
+	private PlayerInfo getPooledPlayerInfo(final UUID uuid, final PlayerStat statType) {
+		Map<StatRow, StatRow> rows = new LinkedHashMap<>();
+
+		List<StatRow> pooledRows = plugin.getDataPoolManager().getStoredRows(statType);
+
+		if (pooledRows != null) {
+			for (StatRow row : pooledRows) {
+				if (row.isOf(uuid)) {
+					rows.put(row, row.applyTo(rows.get(row)));
+				}
+			}
+		}
+
+		return this.createPlayerInfo(uuid, statType, new ArrayList<>(rows.values()));
+	}
+
+	private PlayerInfo createPlayerInfo(final UUID uuid, final PlayerStat statType, List<StatRow> rows) {
+		Table table = plugin.getSqlConnector().getTable(statType.getTableName());
+
+		final PlayerInfo info = new PlayerInfo(uuid, table == null ? null : table.getSchema());
+
+		// There is data of this player, so this is a valid player info.
+		if (!rows.isEmpty()) {
 			info.setValid(true);
 
-			info.setResults(results);
+			info.setRows(rows);
 		}
-		//		
-		//		for (HashMap<String, String> map : results) {
-		//			System.out.println("END RESULT: " + map);
-		//		}
 
 		return info;
 	}
@@ -163,36 +526,78 @@ public class DataManager {
 		PlayerInfo info = this.getPlayerInfo(uuid, statType);
 
 		if (info.isValid()) {
-			List<Query> deletedQueries = new ArrayList<>();
-
-			for (Query map : info.getResults()) {
-				for (Entry<String, String> entry : conditions.getEntrySet()) {
-					if (!map.hasValue(entry.getKey())) {
-						deletedQueries.add(map);
-						break;
-					}
-
-					if (!map.getValue(entry.getKey()).equals(entry.getValue())) {
-						deletedQueries.add(map);
-						break;
-					}
+			// Remove rows that are not relevant.
+			for (Iterator<StatRow> iterator = info.getRows().iterator(); iterator.hasNext();) {
+				if (!iterator.next().matches(conditions)) {
+					iterator.remove();
 				}
 			}
-
-			// Remove queries that are not relevant.
-			for (Query q : deletedQueries) {
-				info.removeResult(q);
-			}
 		}
 
 		return info;
 	}
 
+	/**
+	 * Set the data of a row of a stat. The given query replaces the row (matched by its unique columns) that is currently stored.
+	 * <br>To add to a stat, use {@link #incrementStat(UUID, PlayerStat, double, Object...)} instead, as it does not need to know the current value.
+	 * @param uuid UUID of the player
+	 * @param statType Stat to set the row of
+	 * @param results Query containing all columns of the row.
+	 */
 	public void setPlayerInfo(final UUID uuid, final PlayerStat statType, Query results) {
 
 		//System.out.println("Add to query: " + results);
 
-		// Add query to the pool.
-		plugin.getDataPoolManager().addQuery(statType, results);
+		Table table = plugin.getSqlConnector().getTable(statType.getTableName());
+
+		if (table == null) {
+			return;
+		}
+
+		this.addToPool(uuid, statType, StatRow.fromQuery(table.getSchema(), results));
+	}
+
+	/**
+	 * Add a value to a stat of a player, without having to know the current value.
+	 * <br>Increments are added together in the pool and are added to the value in the database when the pool is sent. 
+	 * <br>For example, to count a cow that was killed by a player on world 'world':
+	 * <br><code>incrementStat(uuid, PlayerStat.KILLS_MOBS, 1, "world", "world", "mob", "COW");</code>
+	 * @param uuid UUID of the player
+	 * @param statType Stat to add to
+	 * @param delta Value to add
+	 * @param keyColumns Other columns that identify the row, given as column name followed by column value. 
+	 */
+	public void incrementStat(final UUID uuid, final PlayerStat statType, double delta, Object... keyColumns) {
+		Table table = plugin.getSqlConnector().getTable(statType.getTableName());
+
+		if (table == null) {
+			return;
+		}
+
+		Object[] columns = new Object[keyColumns.length + 2];
+
+		columns[0] = "uuid";
+		columns[1] = uuid.toString();
+
+		System.arraycopy(keyColumns, 0, columns, 2, keyColumns.length);
+
+		this.addToPool(uuid, statType, table.getSchema().createRow(delta, true, columns));
+	}
+
+	private void addToPool(final UUID uuid, final PlayerStat statType, StatRow row) {
+		DataPoolManager poolManager = plugin.getDataPoolManager();
+
+		// The pool and the cache are updated at once, so a player that is being loaded into the cache can't miss this update.
+		// Only updates of players that share a lock wait for each other.
+		synchronized (poolManager.getPlayerLock(uuid)) {
+			// Add query to the pool.
+			poolManager.addRow(statType, row);
+
+			// Keep the cache up to date.
+			plugin.getCacheManager().updateRow(uuid, statType, row);
+
+			// Keep the leaderboards up to date, using the totals in the cache.
+			plugin.getLeaderboardManager().updateRow(uuid, statType, row);
+		}
 	}
 }
@@ -1,16 +1,33 @@
 package me.staartvin.statz.datamanager;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.ConcurrentModificationException;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.logging.Level;
 
 import org.bukkit.ChatColor;
 
 import me.staartvin.statz.Statz;
 import me.staartvin.statz.database.datatype.Query;
+import me.staartvin.statz.database.datatype.StatRow;
 import me.staartvin.statz.database.datatype.Table;
+import me.staartvin.statz.datamanager.journal.JournalSegment;
+import me.staartvin.statz.datamanager.journal.PoolJournal;
+import me.staartvin.statz.metrics.Gauge;
+import me.staartvin.statz.metrics.Histogram;
+import me.staartvin.statz.metrics.MetricsRegistry;
 
 /**
  * Since Statz is event-driven, a lot of queries are made to the database in sequential order. 
@@ -19,6 +36,16 @@ import me.staartvin.statz.database.datatype.Table;
  * the database in a single query. This class handles the pools of queries that will have to be sent to the database.
  * <br><br>Whenever a query is added to the pool, the pool manager checks whether there is already an existing query with the same conditions
  * in the pool. When there is, the old query is removed from the pool and the new one is inserted.
+ * Incremental rows (see {@link StatRow#isIncremental()}) are added to the existing row instead, so the pool holds the sum of all
+ * increments that still have to be added to the database.
+ * <br>Queries are stored as {@link StatRow}s, so the pool does not have to keep a map of strings for every row.
+ * <br><br>When the pool is sent to the database, it is swapped with an empty pool. New queries are added to the empty pool while the
+ * old one is being written, so adding a query never has to wait for the database. Until it is committed, the old pool is kept as the
+ * in-flight pool (see {@link #getInFlightRows(PlayerStat)}), and both pools are used when looking up data.
+ * <br><br>Every row that is added to the pool is also appended to a {@link PoolJournal}, which is read when Statz is enabled (see
+ * {@link #recoverJournal()}). Rows that were never sent to the database because the server crashed are then added to the pool again.
+ * <br><br>While the database is down (see {@link me.staartvin.statz.database.CircuitBreaker}), the pool is not sent. When it gets
+ * too big, it is moved to disk instead (see {@link #spillPool()}). Those rows are written before the pool once the database is back.
  * <br><br>Since we are not updating the database constantly, it will be not up to date (until the latest events have been processed and queried).
  * To solve this issue, the pool manager will first look in the pool and check whether there is an update query that meet the given conditions.
  * If there is, the most recent update query (satisfying the given conditions) will be returned, as it is more up to date compared to the database.
@@ -43,124 +70,350 @@ public class DataPoolManager {
 	private Statz plugin;
 
 	// The PlayerStat key is to distinguish which table the query belongs to.
-	// The List contains all queries for one specific table. A LinkedHashMap is one query to the database.
-	private HashMap<PlayerStat, List<Query>> pool = new HashMap<>();
+	// The inner map contains all rows for one specific table, indexed by the row they write to (see StatRow#equals(Object)).
+	private volatile PoolBuffer pool;
 
-	// What queries were most recently written to the database?
-	private HashMap<PlayerStat, List<Query>> lastWrittenQueries = new HashMap<>();
+	// Journal of the rows in the pool, or null if it is disabled (or could not be opened).
+	private final PoolJournal journal;
+
+	// Whether appending to the journal has failed, so it is only reported once.
+	private final AtomicBoolean journalFailed = new AtomicBoolean();
+
+	// Rows of the pool that were moved to disk while the database was down, or null if that is disabled (see spillPool()).
+	private final PoolJournal spill;
+
+	// Whether there are rows on disk that still have to be written.
+	private volatile boolean hasSpilledRows;
+
+	private final AtomicLong spilledRows = new AtomicLong();
+	private final AtomicLong drainedRows = new AtomicLong();
+
+	// The pool that is being written to the database right now. Rows of a stat are only kept until the transaction that writes
+	// them is committed (or put back in the pool when it fails), so this never holds more than one batch per stat.
+	private HashMap<PlayerStat, Map<StatRow, StatRow>> inFlightRows = new HashMap<>();
+
+	// Odd while rows of a stat are in flight, see getWriteSequence(PlayerStat).
+	private final int[] writeSequences = new int[PlayerStat.values().length];
+
+	// Odd while the pool is being sent to the database, see getSaveSequence().
+	private final AtomicInteger saveSequence = new AtomicInteger();
+
+	// Held while the pool is being sent to the database.
+	private final Object saveLock = new Object();
+
+	// Whether a save is queued on the database executor, but has not started yet.
+	private final AtomicBoolean savePending = new AtomicBoolean();
+
+	// Time it takes to send the pool to the database.
+	private final Histogram flushTime;
+
+	// Adds a new row to the row it conflicts with (see StatRow#applyTo(StatRow)).
+	private static final BiFunction<StatRow, StatRow, StatRow> APPLY_NEWER = new BiFunction<StatRow, StatRow, StatRow>() {
+		@Override
+		public StatRow apply(StatRow current, StatRow newer) {
+			return newer.applyTo(current);
+		}
+	};
+
+	// Adds the rows that were already in the pool to a row that could not be written.
+	private static final BiFunction<StatRow, StatRow, StatRow> APPLY_OLDER = new BiFunction<StatRow, StatRow, StatRow>() {
+		@Override
+		public StatRow apply(StatRow current, StatRow older) {
+			return current.applyTo(older);
+		}
+	};
+
+	// Locks that keep the pool and the cache of a player in sync, see getPlayerLock(UUID).
+	private final Object[] playerLocks = new Object[64];
 
 	public DataPoolManager(Statz plugin) {
 		this.plugin = plugin;
+
+		for (int i = 0; i < playerLocks.length; i++) {
+			playerLocks[i] = new Object();
+		}
+
+		PoolJournal poolJournal = null;
+
+		if (plugin.getConfigHandler().isJournalEnabled()) {
+			try {
+				poolJournal = new PoolJournal(plugin, new File(plugin.getDataFolder(), "journal"));
+			} catch (IOException e) {
+				plugin.getLogger().log(Level.SEVERE, "Could not open the journal, the pool is not journaled:", e);
+			}
+		}
+
+		journal = poolJournal;
+
+		PoolJournal spillJournal = null;
+
+		if (plugin.getConfigHandler().isSpillEnabled()) {
+			try {
+				spillJournal = new PoolJournal(plugin, new File(plugin.getDataFolder(), "spill"));
+			} catch (IOException e) {
+				plugin.getLogger().log(Level.SEVERE, "Could not open the spill folder, the pool is kept in memory:", e);
+			}
+		}
+
+		spill = spillJournal;
+
+		// Rows that were moved to disk during the last run are written with the first save.
+		hasSpilledRows = (spill != null && !spill.getSegments().isEmpty());
+
+		pool = new PoolBuffer(this.createSegment());
+
+		flushTime = plugin.getMetricsRegistry().getHistogram("pool.flush_time");
+
+		this.registerGauges(plugin.getMetricsRegistry());
+	}
+
+	private void registerGauges(MetricsRegistry metrics) {
+		metrics.registerGauge("pool.rows", new Gauge() {
+			public double getValue() {
+				return getPoolSize();
+			}
+		});
+
+		for (final PlayerStat stat : PlayerStat.values()) {
+			metrics.registerGauge(MetricsRegistry.name("pool.rows", "stat", stat.getTableName()), new Gauge() {
+				public double getValue() {
+					return getPoolSize(stat);
+				}
+			});
+		}
+
+		metrics.registerGauge("pool.in_flight_rows", new Gauge() {
+			public double getValue() {
+				return getInFlightCount();
+			}
+		});
+
+		metrics.registerGauge("spill.pending", new Gauge() {
+			public double getValue() {
+				return hasSpilledRows() ? 1 : 0;
+			}
+		});
+
+		metrics.registerGauge("spill.spilled_rows", new Gauge() {
+			public double getValue() {
+				return getSpilledRows();
+			}
+		});
+
+		metrics.registerGauge("spill.drained_rows", new Gauge() {
+			public double getValue() {
+				return getDrainedRows();
+			}
+		});
 	}
 
 	/**
-	 * Add a query to pool.
+	 * Add a query to pool. If there is already a query in the pool that writes to the same row, it is replaced by the given query.
 	 * @param stat Stat of this query
 	 * @param query The actual query
 	 * @return true if the query was successfully added to the pool, false if otherwise.
 	 */
-	public synchronized boolean addQuery(PlayerStat stat, Query query) {
+	public boolean addQuery(PlayerStat stat, Query query) {
+		Table table = plugin.getSqlConnector().getTable(stat.getTableName());
 
-		List<Query> queries = this.getStoredQueries(stat);
-
-		if (queries == null) {
-			queries = new ArrayList<>();
+		if (table == null) {
+			return false;
 		}
 
-		if (queries.isEmpty()) {
-			// Since there are no other queries in the pool, we do not have to check for conflicting ones.
-			queries.add(query);
-			pool.put(stat, queries);
+		return this.addRow(stat, StatRow.fromQuery(table.getSchema(), query));
+	}
+
+	/**
+	 * Add a row to pool. If there is already a row in the pool that writes to the same row, it is replaced by the given row
+	 * (or added to, if the given row is incremental).
+	 * <br>This does not lock the pool, so rows can be added from any thread without waiting for each other or for a save.
+	 * @param stat Stat of this row
+	 * @param row The actual row
+	 * @return true if the row was successfully added to the pool, false if otherwise.
+	 */
+	public boolean addRow(PlayerStat stat, StatRow row) {
 
-			//System.out.println("Add to pool (because empty): " + query);
-			return true;
+		// We don't know where this row belongs to.
+		if (!row.isComplete()) {
+			return false;
 		}
 
-		List<Query> conflictsQuery = this.findConflicts(stat, query);
+		// Any conflicting row is equal to the new row, so it is overwritten (or added to, if the new row is incremental).
+		this.mergeRow(stat, row, APPLY_NEWER, true);
 
-		// No conflicting queries found, so we can just add the given query to the pool without having to worry about conflicts.
-		if (conflictsQuery == null || conflictsQuery.isEmpty()) {
-			queries.add(query);
-			pool.put(stat, queries);
-			//System.out.println("Add to pool (because no conflict): " + query);
-			return true;
-		}
+		return true;
+	}
 
-		// Shit, we found a conflicting query. Remove conflicting ones and add a new query.
-		queries.removeAll(conflictsQuery);
+	private void mergeRow(PlayerStat stat, StatRow row, BiFunction<StatRow, StatRow, StatRow> function,
+			boolean journaled) {
+		while (true) {
+			PoolBuffer buffer = pool;
 
-		// Add new query
-		queries.add(query);
+			buffer.producers.incrementAndGet();
 
-		//System.out.println("Add to pool (after conflict): " + query);
+			try {
+				// The pool was swapped out before we registered, so a save may already be reading it. Use the new pool.
+				if (buffer != pool) {
+					continue;
+				}
 
-		// Update pool with new queries
-		pool.put(stat, queries);
+				// The row goes into the segment of this generation of the pool, so it is committed together with the pool.
+				if (journaled && buffer.segment != null) {
+					this.appendToJournal(buffer.segment, stat, row, function == APPLY_OLDER);
+				}
 
-		return true;
+				buffer.rows.get(stat).merge(row, row, function);
+				return;
+			} finally {
+				buffer.producers.decrementAndGet();
+			}
+		}
 	}
 
-	public synchronized void removeQuery(PlayerStat stat, Query query) {
-		List<Query> queries = this.getStoredQueries(stat);
+	private void appendToJournal(JournalSegment segment, PlayerStat stat, StatRow row, boolean restored) {
+		try {
+			if (restored) {
+				segment.appendRestoredRow(stat, row);
+			} else {
+				segment.appendRow(stat, row);
+			}
+		} catch (IOException e) {
+			if (journalFailed.compareAndSet(false, true)) {
+				plugin.getLogger().log(Level.SEVERE, "Could not append to the journal, rows may be lost on a crash:", e);
+			}
+		}
+	}
 
-		if (queries == null) {
-			queries = new ArrayList<>();
+	private JournalSegment createSegment() {
+		if (journal == null) {
+			return null;
 		}
 
-		if (queries.isEmpty()) {
-			// Since there are no other queries in the pool, we cannot delete any queries.
+		try {
+			return journal.createSegment();
+		} catch (IOException e) {
+			plugin.getLogger().log(Level.SEVERE, "Could not create a journal segment, rows may be lost on a crash:", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Add the rows that were left in the journal by the last run (see {@link PoolJournal#recover()}) to the pool.
+	 * This should be done when Statz is enabled, before any other rows are added to the pool.
+	 * <br>The recovered rows are not journaled again. Their segments are older than the current one, so they are deleted
+	 * with it once the pool has been written.
+	 */
+	public void recoverJournal() {
+		if (journal == null) {
 			return;
 		}
 
-		Query toBeDeleted = null;
+		int recovered = 0;
 
-		for (Query iterateQuery : queries) {
-			if (query.equals(iterateQuery)) {
-				toBeDeleted = iterateQuery;
+		for (Entry<PlayerStat, Map<StatRow, StatRow>> entry : journal.recover().entrySet()) {
+			for (StatRow row : entry.getValue().values()) {
+				this.mergeRow(entry.getKey(), row, APPLY_NEWER, false);
+				recovered++;
 			}
 		}
 
-		// No query found to be deleted
-		if (toBeDeleted == null)
+		if (recovered > 0) {
+			plugin.getLogger().info("Recovered " + recovered + " rows from the journal that were not saved to the database.");
+		}
+	}
+
+	/**
+	 * Close the journal when Statz is disabled. The segment of the pool is deleted when the pool is empty, as there is nothing to recover.
+	 */
+	public void closeJournal() {
+		JournalSegment segment = pool.segment;
+
+		if (segment == null) {
 			return;
+		}
 
-		// Remove query from copy pool
-		queries.remove(toBeDeleted);
+		segment.close();
 
-		// Update pool with removed query
-		pool.put(stat, queries);
+		if (this.getPoolSize() == 0 && this.getInFlightCount() == 0) {
+			journal.deleteSegments(segment.getGeneration());
+		}
+	}
 
-		return;
+	/**
+	 * Get the lock that has to be held while adding a row of a player to the pool and the cache at the same time.
+	 * <br>Players are spread over a fixed number of locks, so players that share a lock wait for each other, but most players don't.
+	 * @param uuid UUID of the player
+	 * @return the lock of the player.
+	 */
+	public Object getPlayerLock(UUID uuid) {
+		return playerLocks[(uuid.hashCode() & 0x7fffffff) % playerLocks.length];
 	}
 
-	public synchronized void removeQueries(PlayerStat stat, List<Query> queries) {
-		for (Query q : queries) {
-			this.removeQuery(stat, q);
+	/**
+	 * Remove the row that the given query writes to from the pool.
+	 * <br>Removals are not journaled, so a removed row comes back if the journal is recovered before the next save.
+	 * @param stat Stat of the query
+	 * @param query Query to remove
+	 */
+	public void removeQuery(PlayerStat stat, Query query) {
+		Table table = plugin.getSqlConnector().getTable(stat.getTableName());
+
+		if (table == null) {
+			return;
+		}
+
+		pool.rows.get(stat).remove(StatRow.fromQuery(table.getSchema(), query));
+	}
+
+	public void removeRow(PlayerStat stat, final StatRow row) {
+		pool.rows.get(stat).computeIfPresent(row, new BiFunction<StatRow, StatRow, StatRow>() {
+			@Override
+			public StatRow apply(StatRow key, StatRow current) {
+				// Only remove the row if it was not replaced by a newer one in the meantime.
+				if (current == row) {
+					return null;
+				}
+
+				if (current.isIncremental() && row.isIncremental()) {
+					// Something was added to the row after it was sent, so only keep what has not been sent yet.
+					return current.subtract(row);
+				}
+
+				return current;
+			}
+		});
+	}
+
+	public void removeRows(PlayerStat stat, List<StatRow> rows) {
+		for (StatRow row : rows) {
+			this.removeRow(stat, row);
 		}
 	}
 
 	/**
 	 * Find conflicts for the current queries in the pool.
 	 * For more info, see {@link Query#findConflicts(List)}.
+	 * <br>Since the pool only holds one row per row in the database, there is at most one conflicting query.
 	 * @param stat Stat to get the queries from
 	 * @param queryCompare Query to compare other queries (currently in the pool) to.
-	 * @return a list of conflicting queries or null if there are no conflicting queries.
+	 * @return a list of conflicting queries or an empty list if there are no conflicting queries.
 	 */
 	public List<Query> findConflicts(PlayerStat stat, Query queryCompare) {
 		List<Query> conflicts = new ArrayList<Query>();
 
-		if (queryCompare == null) {
+		Map<StatRow, StatRow> rows = pool.rows.get(stat);
+		Table table = plugin.getSqlConnector().getTable(stat.getTableName());
+
+		if (queryCompare == null || rows.isEmpty() || table == null) {
 			return conflicts; // Empty list.
 		}
 
-		List<Query> poolQueries = this.getStoredQueries(stat);
+		StatRow conflict = rows.get(StatRow.fromQuery(table.getSchema(), queryCompare));
 
-		if (poolQueries == null || poolQueries.isEmpty()) {
-			return conflicts; // Empty list.
+		if (conflict != null) {
+			conflicts.add(conflict.toQuery());
 		}
 
-		conflicts = queryCompare.findConflicts(poolQueries);
-
 		return conflicts;
 	}
 
@@ -237,14 +490,40 @@ public class DataPoolManager {
 	 * @return a list of queries that are in the pool or null if there are no queries in the pool.
 	 */
 	public List<Query> getStoredQueries(PlayerStat stat) {
-		List<Query> queries = pool.get(stat);
+		return toQueries(this.getStoredRows(stat));
+	}
 
-		if (queries == null || queries.isEmpty()) {
-			return null;
+	/**
+	 * Get the rows that are currently in the pool (and have not been committed to the database yet).
+	 * <br>This includes the rows that are being written right now, combined with the rows that were added to the pool since.
+	 * @param stat Rows of what stat type?
+	 * @return a copy of the rows that are in the pool or null if there are no rows in the pool.
+	 */
+	public synchronized List<StatRow> getStoredRows(PlayerStat stat) {
+		Map<StatRow, StatRow> rows = pool.rows.get(stat);
+		Map<StatRow, StatRow> inFlight = inFlightRows.get(stat);
+
+		if (inFlight == null || inFlight.isEmpty()) {
+			if (rows.isEmpty()) {
+				return null;
+			}
+
+			// Return a copy of the rows
+			return new ArrayList<StatRow>(rows.values());
 		}
 
-		// Return a copy of the list
-		return new ArrayList<Query>(queries);
+		if (rows.isEmpty()) {
+			return new ArrayList<StatRow>(inFlight.values());
+		}
+
+		// Rows in the pool are newer than the ones in flight, so they are added last.
+		Map<StatRow, StatRow> merged = new LinkedHashMap<>(inFlight);
+
+		for (StatRow row : rows.values()) {
+			merged.put(row, row.applyTo(merged.get(row)));
+		}
+
+		return new ArrayList<StatRow>(merged.values());
 	}
 
 	//	// Return exactly the same as getStoredQueries(), except the returned list is not a copy but the real object.
@@ -263,92 +542,470 @@ public class DataPoolManager {
 	 * Send queries that are currently in the pool to the database. This will remove the queries from the pool that are sent to the database.
 	 */
 	public void sendPool() {
-		plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+		// Don't queue another save when the last one hasn't started yet.
+		if (!savePending.compareAndSet(false, true)) {
+			return;
+		}
+
+		boolean queued = plugin.getSqlConnector().getExecutor().execute(new Runnable() {
 
 			public void run() {
+				savePending.set(false);
+
 				forceSendPool();
 			}
 		});
+
+		if (!queued) {
+			savePending.set(false);
+		}
 	}
 
 	/**
 	 * Send queries that are currently in the pool to the database. This will remove the queries from the pool that are sent to the database.
-	 * <br>This will do it on the main thread and is only to be used when the server is shutdown.
+	 * <br>This will do it on the current thread. Use {@link #sendPool()} to do it on a database thread.
 	 */
 	public void forceSendPool() {
+		// Saves can run on several database threads. Only one may send the pool at a time, or rows would be written twice.
+		synchronized (saveLock) {
+			saveSequence.incrementAndGet();
+
+			long start = System.nanoTime();
+
+			try {
+				this.sendQueries();
+			} finally {
+				flushTime.recordSince(start);
+
+				saveSequence.incrementAndGet();
+			}
+		}
+
+		// Players that left the server have now been saved, so they don't need to be cached anymore.
+		plugin.getCacheManager().evictMarkedPlayers();
+	}
+
+	private void sendQueries() {
 
 		printPool();
 
 		if (plugin.getConfigHandler().shouldShowDatabaseSave()) {
-			plugin.debugMessage(ChatColor.BLUE + "Save Statz database.");
+			plugin.debugMessage(ChatColor.BLUE + "Save Statz database. (" + plugin.getSqlConnector().getExecutor().getQueueDepth()
+					+ " database tasks waiting)");
 		}
 
+		// Rows on disk are older than the pool, so they are written first. While the database is down, nothing is written.
+		if (!plugin.getSqlConnector().isAvailable() || !this.drainSpill()) {
+			// Keep the pool in memory, unless it gets too big.
+			if (plugin.getFlushManager().isPoolFull(this.getPoolSize())) {
+				this.spillRows();
+			}
+
+			return;
+		}
+
+		final PoolBuffer frozenPool = this.freezePool();
+
+		// Whether every stat has been committed in the journal, so its segment is not needed anymore.
+		boolean committed = true;
+
 		for (PlayerStat stat : PlayerStat.values()) {
 
-			List<Query> queries = getStoredQueries(stat);
-			List<Query> deletedQueries = new ArrayList<>();
+			Map<StatRow, StatRow> frozenRows = inFlightRows.get(stat);
 
-			Table table = plugin.getSqlConnector().getTable(stat.getTableName());
+			if (frozenRows == null) {
+				continue;
+			}
 
-			if (queries == null || table == null) {
+			if (frozenRows.isEmpty()) {
 				// Pool is empty
+				synchronized (this) {
+					inFlightRows.remove(stat);
+					writeSequences[stat.ordinal()]++;
+				}
+
 				continue;
 			}
 
-			//Update in batch.
-			plugin.getSqlConnector().setBatchObjects(table, queries);
+			List<StatRow> queries = new ArrayList<>(frozenRows.values());
+
+			Table table = plugin.getSqlConnector().getTable(stat.getTableName());
+
+			List<StatRow> failed = new ArrayList<>();
+
+			// Index of the first row that has not been tried yet.
+			int next = 0;
+
+			try {
+				// Write the rows in batches, so a slow database is never held by a single huge batch (see FlushManager).
+				while (next < queries.size()) {
+					List<StatRow> batch = queries.subList(next,
+							Math.min(queries.size(), next + plugin.getFlushManager().getBatchSize()));
+
+					// When a batch fails, the next one would most likely fail as well.
+					if (table == null || !failed.isEmpty()) {
+						failed.addAll(batch);
+						next += batch.size();
+						continue;
+					}
+
+					long startTime = System.nanoTime();
 
-			//System.out.println("In pool: " + queries.size() + " for stat " + stat.getTableName());
+					// Only the transactions that could not be written come back.
+					List<StatRow> notWritten = plugin.getSqlConnector().writeRows(table, batch);
 
-			// Add to last written query
-			List<Query> lastWritten = lastWrittenQueries.get(stat);
+					plugin.getFlushManager().recordBatch(batch.size(), System.nanoTime() - startTime, notWritten.isEmpty());
 
-			// Send to database
-			for (Query query : queries) {
-				// Send query to database. Update: Do not send this directly to database, but use batch update instead.
-				//plugin.getSqlConnector().setObjects(table, query);
+					failed.addAll(notWritten);
 
-				if (lastWritten == null) {
-					lastWritten = new ArrayList<>();
+					// Only now the batch has been tried, so it is put back as a whole when writing it threw.
+					next += batch.size();
 				}
 
-				List<Query> conflicts = query.findConflicts(lastWritten);
+				if (!failed.isEmpty()) {
+					plugin.debugMessage(ChatColor.RED + "Could not save " + failed.size() + " of " + queries.size()
+							+ " rows of " + stat + ", will retry later.");
+				}
+			} finally {
+				// Rows that were never tried (because something went wrong) could not be written either.
+				failed.addAll(queries.subList(next, queries.size()));
 
-				if (conflicts != null && !conflicts.isEmpty()) {
-					// Override last written query if one conflicts
-					for (Query conflict : conflicts) {
-						//System.out.println("Remove from last written: " + conflict);
-						lastWritten.remove(conflict);
-					}
+				synchronized (this) {
+					// Put the rows that were not written back in the pool and try again next time.
+					this.restoreRows(stat, failed);
+
+					inFlightRows.remove(stat);
+					writeSequences[stat.ordinal()]++;
 				}
+			}
+
+			// Every row of this stat is now either written or journaled again, so it doesn't have to be recovered from this segment.
+			committed &= this.commitStat(frozenPool, stat);
+		}
+
+		this.closeSegment(frozenPool, committed);
+	}
+
+	/**
+	 * Swap the pool with an empty one, so rows can be added while the old ones are being written. All stats of the old pool
+	 * are in flight afterwards and have to be released one by one.
+	 * @return the old pool, which nobody is adding rows to anymore.
+	 */
+	private PoolBuffer freezePool() {
+		final PoolBuffer frozenPool;
 
-				//System.out.println("Add to last written: " + query);
-				lastWritten.add(query);
+		synchronized (this) {
+			frozenPool = pool;
 
-				deletedQueries.add(query);
+			pool = new PoolBuffer(this.createSegment());
 
+			// Stats that are empty right now may still get rows that were being added, so they are in flight as well.
+			for (Entry<PlayerStat, ConcurrentHashMap<StatRow, StatRow>> entry : frozenPool.rows.entrySet()) {
+				inFlightRows.put(entry.getKey(), entry.getValue());
+				writeSequences[entry.getKey().ordinal()]++;
 			}
+		}
+
+		// Rows that were being added while the pool was swapped may still end up in the old pool, so wait for them.
+		while (frozenPool.producers.get() > 0) {
+			Thread.yield();
+		}
 
-			lastWrittenQueries.put(stat, lastWritten);
+		return frozenPool;
+	}
+
+	// Append a commit of a stat to the journal segment of a frozen pool. Returns false if that failed, so the segment has to be kept.
+	private boolean commitStat(PoolBuffer frozenPool, PlayerStat stat) {
+		if (frozenPool.segment == null) {
+			return true;
+		}
+
+		try {
+			frozenPool.segment.appendCommit(stat);
+			return true;
+		} catch (IOException e) {
+			plugin.getLogger().log(Level.WARNING, "Could not commit " + stat + " in the journal:", e);
+			return false;
+		}
+	}
+
+	// Close the journal segment of a frozen pool, and delete it (and the ones before it) if every stat was committed.
+	private void closeSegment(PoolBuffer frozenPool, boolean committed) {
+		if (frozenPool.segment == null) {
+			return;
+		}
+
+		frozenPool.segment.close();
+
+		if (committed) {
+			journal.deleteSegments(frozenPool.segment.getGeneration());
+		}
+	}
+
+	/**
+	 * Move the rows of the pool to disk, so they don't take memory while the database is down. They are written to the
+	 * database (before the pool) when it is back. This should be done when Statz is disabled, after sending the pool.
+	 * <br>Nothing happens when spilling to disk is disabled, or the pool is empty.
+	 */
+	public void spillPool() {
+		synchronized (saveLock) {
+			saveSequence.incrementAndGet();
 
 			try {
-				// Remove sent queries from pool
-				//queries.removeAll(deletedQueries);
-				removeQueries(stat, deletedQueries);
-			} catch (ConcurrentModificationException e) {
-				plugin.debugMessage("Some data may not have been removed.");
+				this.spillRows();
+			} finally {
+				saveSequence.incrementAndGet();
+			}
+		}
+	}
+
+	private void spillRows() {
+		if (spill == null || this.getPoolSize() == 0) {
+			return;
+		}
+
+		JournalSegment segment;
+
+		try {
+			segment = spill.createSegment();
+		} catch (IOException e) {
+			plugin.getLogger().log(Level.SEVERE, "Could not move the pool to disk, it is kept in memory:", e);
+			return;
+		}
+
+		final PoolBuffer frozenPool = this.freezePool();
+
+		boolean spilled = true;
+		int rowCount = 0;
+
+		try {
+			for (Entry<PlayerStat, Map<StatRow, StatRow>> entry : inFlightRows.entrySet()) {
+				for (StatRow row : entry.getValue().values()) {
+					segment.appendRow(entry.getKey(), row);
+					rowCount++;
+				}
 			}
 
+			// The rows have to be on disk before they are committed in the journal.
+			segment.force();
+		} catch (IOException e) {
+			plugin.getLogger().log(Level.SEVERE, "Could not move the pool to disk, it is kept in memory:", e);
+
+			spilled = false;
+		} finally {
+			segment.close();
+		}
+
+		if (spilled) {
+			hasSpilledRows = true;
+			spilledRows.addAndGet(rowCount);
+
+			plugin.debugMessage(ChatColor.RED + "Moved " + rowCount + " rows of the pool to disk, as the database is not available.");
+		} else {
+			spill.deleteSegment(segment.getGeneration());
 		}
+
+		boolean committed = true;
+
+		for (PlayerStat stat : PlayerStat.values()) {
+			Map<StatRow, StatRow> frozenRows = inFlightRows.get(stat);
+
+			if (frozenRows == null) {
+				continue;
+			}
+
+			synchronized (this) {
+				if (!spilled) {
+					this.restoreRows(stat, new ArrayList<>(frozenRows.values()));
+				}
+
+				inFlightRows.remove(stat);
+				writeSequences[stat.ordinal()]++;
+			}
+
+			// The rows are either on disk or journaled again.
+			committed &= this.commitStat(frozenPool, stat);
+		}
+
+		this.closeSegment(frozenPool, committed);
 	}
 
 	/**
-	 * Get the queries that were last performed (from the pool) on the database.
-	 * @param stat What statType do we need to get the queries from.
-	 * @return a query in the form of a hashmap.
+	 * Write the rows that were moved to disk (see {@link #spillPool()}) to the database, one segment at a time and oldest first.
+	 * Rows of a segment that could not be written are put back in the pool.
+	 * @return true if no rows are left on disk, false if writing failed.
 	 */
-	public synchronized List<Query> getLatestQueries(PlayerStat stat) {
-		return lastWrittenQueries.get(stat);
+	private boolean drainSpill() {
+		if (!hasSpilledRows) {
+			return true;
+		}
+
+		for (long generation : spill.getSegments()) {
+			boolean written = true;
+			int drained = 0;
+
+			for (Entry<PlayerStat, Map<StatRow, StatRow>> entry : spill.readSegment(generation).entrySet()) {
+				PlayerStat stat = entry.getKey();
+
+				List<StatRow> rows = new ArrayList<>(entry.getValue().values());
+
+				List<StatRow> failed = rows;
+
+				synchronized (this) {
+					writeSequences[stat.ordinal()]++;
+				}
+
+				try {
+					// When a stat fails, the next one would most likely fail as well.
+					if (written) {
+						failed = plugin.getSqlConnector().writeRows(plugin.getSqlConnector().getTable(stat.getTableName()), rows);
+					}
+				} finally {
+					synchronized (this) {
+						// They are older than the rows in the pool, just like the rows that are restored after a failed save.
+						this.restoreRows(stat, failed);
+
+						writeSequences[stat.ordinal()]++;
+					}
+				}
+
+				written &= failed.isEmpty();
+				drained += rows.size() - failed.size();
+			}
+
+			drainedRows.addAndGet(drained);
+
+			// Rows that were not written are journaled in the pool again.
+			spill.deleteSegment(generation);
+
+			plugin.debugMessage(ChatColor.GREEN + "Wrote " + drained + " rows that were moved to disk to the database.");
+
+			if (!written) {
+				return false;
+			}
+		}
+
+		hasSpilledRows = false;
+
+		// Players that joined while rows were on disk could not be loaded into the cache.
+		plugin.getCacheManager().scheduleLoadOnlinePlayers();
+
+		return true;
+	}
+
+	// Put rows that could not be written back in the pool, under the rows that were added since. They are journaled again
+	// in the segment of the current pool, as restored rows.
+	private void restoreRows(PlayerStat stat, List<StatRow> restored) {
+		for (StatRow row : restored) {
+			this.mergeRow(stat, row, APPLY_OLDER, true);
+		}
+	}
+
+	/**
+	 * Get the save sequence of the pool. This number is increased when the pool starts being sent to the database and again when it is done,
+	 * so it is odd while a save is in progress. If the sequence is the same before and after reading something from the database,
+	 * no save has happened in the meantime.
+	 * @return the current save sequence.
+	 */
+	public int getSaveSequence() {
+		return saveSequence.get();
+	}
+
+	/**
+	 * Get the write sequence of a stat. Like {@link #getSaveSequence()}, it is odd while rows of the stat are in flight
+	 * (see {@link #getInFlightRows(PlayerStat)}). If it is even and the same before and after reading the stat from the database,
+	 * the database and the pool did not change in between.
+	 * @param stat Stat to get the write sequence of
+	 * @return the current write sequence of the stat.
+	 */
+	public synchronized int getWriteSequence(PlayerStat stat) {
+		return writeSequences[stat.ordinal()];
+	}
+
+	/**
+	 * Get the rows that are being written to the database right now. Until the write is committed, the database may or may
+	 * not contain them yet.
+	 * @param stat What statType do we need to get the rows from.
+	 * @return a copy of the rows that are being written or null if none are being written for this stat.
+	 */
+	public synchronized List<StatRow> getInFlightRows(PlayerStat stat) {
+		Map<StatRow, StatRow> rows = inFlightRows.get(stat);
+
+		if (rows == null) {
+			return null;
+		}
+
+		return new ArrayList<StatRow>(rows.values());
+	}
+
+	/**
+	 * Get the number of rows that are in the pool, not counting the ones that are being written right now.
+	 * @return the number of rows that have not been sent to the database yet.
+	 */
+	public int getPoolSize() {
+		int count = 0;
+
+		for (Map<StatRow, StatRow> rows : pool.rows.values()) {
+			count += rows.size();
+		}
+
+		return count;
+	}
+
+	/**
+	 * Get the number of rows of a stat that are in the pool, not counting the ones that are being written right now.
+	 * @param stat Stat to count the rows of
+	 * @return the number of rows of the stat that have not been sent to the database yet.
+	 */
+	public int getPoolSize(PlayerStat stat) {
+		Map<StatRow, StatRow> rows = pool.rows.get(stat);
+
+		return rows == null ? 0 : rows.size();
+	}
+
+	/**
+	 * Check whether there are rows on disk that have not been written to the database yet (see {@link #spillPool()}).
+	 * Until they are written, the database is behind on more than just the pool.
+	 * @return true if rows were moved to disk and not written yet, false otherwise.
+	 */
+	public boolean hasSpilledRows() {
+		return hasSpilledRows;
+	}
+
+	public long getSpilledRows() {
+		return spilledRows.get();
+	}
+
+	public long getDrainedRows() {
+		return drainedRows.get();
+	}
+
+	/**
+	 * Get the number of rows that are being written to the database right now.
+	 * @return the number of rows that were sent to the database, but not committed yet.
+	 */
+	public synchronized int getInFlightCount() {
+		int count = 0;
+
+		for (Map<StatRow, StatRow> rows : inFlightRows.values()) {
+			count += rows.size();
+		}
+
+		return count;
+	}
+
+	private static List<Query> toQueries(List<StatRow> rows) {
+		if (rows == null) {
+			return null;
+		}
+
+		List<Query> queries = new ArrayList<>(rows.size());
+
+		for (StatRow row : rows) {
+			queries.add(row.toQuery());
+		}
+
+		return queries;
 	}
 
 	/**
@@ -356,7 +1013,7 @@ public class DataPoolManager {
 	 */
 	public void printPool() {
 
-		if (pool.size() == 0) {
+		if (this.getPoolSize() == 0 && this.getInFlightCount() == 0) {
 			System.out.println("POOL IS EMPTY");
 			return;
 		}
@@ -366,7 +1023,7 @@ public class DataPoolManager {
 
 		for (PlayerStat stat : PlayerStat.values()) {
 
-			List<Query> queries = this.getStoredQueries(stat);
+			List<StatRow> queries = this.getStoredRows(stat);
 
 			if (queries == null || queries.isEmpty()) {
 				System.out.println("[PlayerStat: " + stat + "]: EMPTY");
@@ -376,14 +1033,32 @@ public class DataPoolManager {
 			System.out.println("------------------------");
 			System.out.println("[PlayerStat: " + stat + "] Size: " + queries.size());
 
-			for (Query query : queries) {
+			for (StatRow query : queries) {
 				System.out.println("------------------------");
-				StringBuilder builder = new StringBuilder("{");
-				for (Entry<String, String> entry : query.getEntrySet()) {
-					builder.append(entry.getKey() + ": " + entry.getValue() + ", ");
-				}
-				builder.append("}");
-				System.out.println(builder.toString());
+				System.out.println(query.toString());
+			}
+		}
+	}
+
+	/**
+	 * One generation of the pool. Threads register themselves while they add rows to it, so a save can wait for the last
+	 * of them after swapping it out.
+	 */
+	private static class PoolBuffer {
+
+		private final EnumMap<PlayerStat, ConcurrentHashMap<StatRow, StatRow>> rows = new EnumMap<>(PlayerStat.class);
+
+		private final AtomicInteger producers = new AtomicInteger();
+
+		// Journal segment of this generation, or null if the pool is not journaled.
+		private final JournalSegment segment;
+
+		private PoolBuffer(JournalSegment segment) {
+			this.segment = segment;
+
+			// Every stat has a map from the start, so the maps never have to be created while rows are being added.
+			for (PlayerStat stat : PlayerStat.values()) {
+				rows.put(stat, new ConcurrentHashMap<StatRow, StatRow>());
 			}
 		}
 	}
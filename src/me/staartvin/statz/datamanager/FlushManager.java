@@ -0,0 +1,330 @@
+package me.staartvin.statz.datamanager;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bukkit.ChatColor;
+
+import me.staartvin.statz.Statz;
+import me.staartvin.statz.config.ConfigHandler;
+import me.staartvin.statz.metrics.Gauge;
+import me.staartvin.statz.metrics.MetricsRegistry;
+
+/**
+ * Decides when the pool is sent to the database (see {@link DataPoolManager#sendPool()}) and how many rows are written per batch.
+ * <br><br>The pool is checked every second. It is sent right away when it holds more rows (or, by estimate, more memory) than allowed.
+ * Otherwise it is sent when the flush interval has passed. The interval adapts to the size of the pool: it is doubled when little was
+ * pooled since the last flush and halved when a lot was, staying between the minimum and maximum interval. It starts at the
+ * 'periodic save time'.
+ * <br><br>The time it takes to write a batch is tracked as well. When batches get slow, fewer rows are written per batch, so a
+ * single batch never holds the database for long. When batches are fast again, the batch size grows back.
+ * <br><br>Every decision is counted, see the getters of this class.
+ *
+ * @author Staartvin
+ *
+ */
+public class FlushManager {
+
+	// How often the pool is checked (in ticks).
+	private static final long CHECK_INTERVAL = 20;
+
+	// Rough estimate of the memory a row in the pool takes (in bytes): the row, its keys and its entry in the pool.
+	public static final int ESTIMATED_ROW_SIZE = 128;
+
+	// Weight of the last batch in the average batch time.
+	private static final double LATENCY_WEIGHT = 0.3;
+
+	private final Statz plugin;
+
+	private final int minInterval, maxInterval;
+	private final int maxPoolRows, smallPoolRows;
+	private final long maxPoolMemory;
+	private final int minBatchSize, maxBatchSize;
+	private final long slowBatchTime;
+
+	// Current flush interval (in seconds).
+	private volatile int interval;
+
+	private volatile long lastFlush = System.currentTimeMillis();
+
+	// Current number of rows per batch.
+	private volatile int batchSize;
+
+	// Average time it took to write a batch (in milliseconds), or -1 when no batch was written yet.
+	private volatile double averageBatchTime = -1;
+
+	private final AtomicLong intervalFlushes = new AtomicLong();
+	private final AtomicLong rowLimitFlushes = new AtomicLong();
+	private final AtomicLong memoryLimitFlushes = new AtomicLong();
+	private final AtomicLong intervalIncreases = new AtomicLong();
+	private final AtomicLong intervalDecreases = new AtomicLong();
+	private final AtomicLong batchesWritten = new AtomicLong();
+	private final AtomicLong batchesFailed = new AtomicLong();
+	private final AtomicLong slowBatches = new AtomicLong();
+	private final AtomicLong batchSizeDecreases = new AtomicLong();
+	private final AtomicLong batchSizeIncreases = new AtomicLong();
+
+	public FlushManager(Statz plugin) {
+		this.plugin = plugin;
+
+		ConfigHandler config = plugin.getConfigHandler();
+
+		minInterval = Math.max(1, config.getMinFlushInterval());
+		maxInterval = Math.max(minInterval, config.getMaxFlushInterval());
+		maxPoolRows = Math.max(1, config.getMaxPoolRows());
+		smallPoolRows = config.getSmallPoolRows();
+		maxPoolMemory = config.getMaxPoolMemory() * 1024L * 1024L;
+		minBatchSize = Math.max(1, config.getMinBatchSize());
+		maxBatchSize = Math.max(minBatchSize, config.getMaxBatchSize());
+		slowBatchTime = config.getSlowBatchTime();
+
+		interval = Math.min(maxInterval, Math.max(minInterval, config.getPeriodicSaveTime()));
+		batchSize = maxBatchSize;
+
+		this.registerGauges(plugin.getMetricsRegistry());
+	}
+
+	private void registerGauges(MetricsRegistry metrics) {
+		metrics.registerGauge("flush.interval", new Gauge() {
+			public double getValue() {
+				return getInterval();
+			}
+		});
+
+		metrics.registerGauge("flush.batch_size", new Gauge() {
+			public double getValue() {
+				return getBatchSize();
+			}
+		});
+
+		metrics.registerGauge("flush.average_batch_time", new Gauge() {
+			public double getValue() {
+				return getAverageBatchTime();
+			}
+		});
+
+		metrics.registerGauge("flush.interval_flushes", new Gauge() {
+			public double getValue() {
+				return getIntervalFlushes();
+			}
+		});
+
+		metrics.registerGauge("flush.row_limit_flushes", new Gauge() {
+			public double getValue() {
+				return getRowLimitFlushes();
+			}
+		});
+
+		metrics.registerGauge("flush.memory_limit_flushes", new Gauge() {
+			public double getValue() {
+				return getMemoryLimitFlushes();
+			}
+		});
+
+		metrics.registerGauge("flush.batches_written", new Gauge() {
+			public double getValue() {
+				return getBatchesWritten();
+			}
+		});
+
+		metrics.registerGauge("flush.batches_failed", new Gauge() {
+			public double getValue() {
+				return getBatchesFailed();
+			}
+		});
+
+		metrics.registerGauge("flush.slow_batches", new Gauge() {
+			public double getValue() {
+				return getSlowBatches();
+			}
+		});
+	}
+
+	/**
+	 * Start checking the pool every second. The pool itself is sent on a database thread.
+	 */
+	public void startFlushing() {
+		plugin.getServer().getScheduler().runTaskTimer(plugin, new Runnable() {
+			public void run() {
+				check();
+			}
+		}, CHECK_INTERVAL, CHECK_INTERVAL);
+	}
+
+	/**
+	 * Check whether the pool should be sent to the database, and send it if so.
+	 */
+	public void check() {
+		int poolRows = plugin.getDataPoolManager().getPoolSize();
+
+		long now = System.currentTimeMillis();
+
+		if (poolRows >= maxPoolRows) {
+			rowLimitFlushes.incrementAndGet();
+
+			// The pool fills up quickly, so flush more often.
+			this.setInterval(interval / 2);
+		} else if (this.exceedsMemory(poolRows)) {
+			memoryLimitFlushes.incrementAndGet();
+
+			this.setInterval(interval / 2);
+		} else if (now - lastFlush >= interval * 1000L) {
+			intervalFlushes.incrementAndGet();
+
+			if (poolRows < smallPoolRows) {
+				// Hardly anything happened, so the database can wait longer.
+				this.setInterval(interval * 2);
+			} else if (poolRows >= maxPoolRows / 2) {
+				this.setInterval(interval / 2);
+			}
+		} else {
+			return;
+		}
+
+		lastFlush = now;
+
+		plugin.getDataPoolManager().sendPool();
+	}
+
+	/**
+	 * Check whether a pool is bigger than allowed, by number of rows or by (estimated) memory.
+	 * @param poolRows Number of rows in the pool
+	 * @return true if a pool of this size should not be kept in memory any longer.
+	 */
+	public boolean isPoolFull(int poolRows) {
+		return poolRows >= maxPoolRows || this.exceedsMemory(poolRows);
+	}
+
+	private boolean exceedsMemory(int poolRows) {
+		return (long) poolRows * ESTIMATED_ROW_SIZE >= maxPoolMemory;
+	}
+
+	private void setInterval(int newInterval) {
+		newInterval = Math.min(maxInterval, Math.max(minInterval, newInterval));
+
+		if (newInterval == interval) {
+			return;
+		}
+
+		if (newInterval > interval) {
+			intervalIncreases.incrementAndGet();
+		} else {
+			intervalDecreases.incrementAndGet();
+		}
+
+		plugin.debugMessage(ChatColor.BLUE + "The pool is now sent every " + newInterval + " seconds (was " + interval + ").");
+
+		interval = newInterval;
+	}
+
+	/**
+	 * Get the number of rows that should be written to the database in a single batch.
+	 * @return the current batch size.
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Track how long it took to write a batch, and adapt the batch size to it.
+	 * @param rows Number of rows in the batch
+	 * @param time Time it took to write the batch (in nanoseconds)
+	 * @param written Whether the batch was written
+	 */
+	public synchronized void recordBatch(int rows, long time, boolean written) {
+		if (!written) {
+			batchesFailed.incrementAndGet();
+			return;
+		}
+
+		batchesWritten.incrementAndGet();
+
+		double millis = time / 1000000.0;
+
+		averageBatchTime = (averageBatchTime < 0 ? millis
+				: LATENCY_WEIGHT * millis + (1 - LATENCY_WEIGHT) * averageBatchTime);
+
+		if (millis > slowBatchTime) {
+			slowBatches.incrementAndGet();
+		}
+
+		int newBatchSize = batchSize;
+
+		if (averageBatchTime > slowBatchTime) {
+			newBatchSize = Math.max(minBatchSize, batchSize / 2);
+		} else if (averageBatchTime < slowBatchTime / 4.0 && rows >= batchSize) {
+			// Only grow when full batches are fast, small batches don't say much.
+			newBatchSize = Math.min(maxBatchSize, batchSize + Math.max(1, batchSize / 4));
+		}
+
+		if (newBatchSize == batchSize) {
+			return;
+		}
+
+		if (newBatchSize < batchSize) {
+			batchSizeDecreases.incrementAndGet();
+		} else {
+			batchSizeIncreases.incrementAndGet();
+		}
+
+		plugin.debugMessage(ChatColor.BLUE + "Writing " + newBatchSize + " rows per batch (was " + batchSize
+				+ "), batches take " + Math.round(averageBatchTime) + " ms on average.");
+
+		batchSize = newBatchSize;
+	}
+
+	/**
+	 * Get the current flush interval.
+	 * @return the time (in seconds) between two flushes, unless the pool gets too big.
+	 */
+	public int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Get the average time it took to write a batch.
+	 * @return the average batch time (in milliseconds), or -1 if no batch was written yet.
+	 */
+	public double getAverageBatchTime() {
+		return averageBatchTime;
+	}
+
+	public long getIntervalFlushes() {
+		return intervalFlushes.get();
+	}
+
+	public long getRowLimitFlushes() {
+		return rowLimitFlushes.get();
+	}
+
+	public long getMemoryLimitFlushes() {
+		return memoryLimitFlushes.get();
+	}
+
+	public long getIntervalIncreases() {
+		return intervalIncreases.get();
+	}
+
+	public long getIntervalDecreases() {
+		return intervalDecreases.get();
+	}
+
+	public long getBatchesWritten() {
+		return batchesWritten.get();
+	}
+
+	public long getBatchesFailed() {
+		return batchesFailed.get();
+	}
+
+	public long getSlowBatches() {
+		return slowBatches.get();
+	}
+
+	public long getBatchSizeDecreases() {
+		return batchSizeDecreases.get();
+	}
+
+	public long getBatchSizeIncreases() {
+		return batchSizeIncreases.get();
+	}
+}
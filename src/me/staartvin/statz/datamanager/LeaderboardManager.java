@@ -0,0 +1,326 @@
+package me.staartvin.statz.datamanager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.ChatColor;
+
+import me.staartvin.statz.Statz;
+import me.staartvin.statz.database.datatype.StatRow;
+import me.staartvin.statz.database.datatype.Table;
+import me.staartvin.statz.datamanager.leaderboard.Leaderboard;
+import me.staartvin.statz.datamanager.leaderboard.LeaderboardEntry;
+import me.staartvin.statz.datamanager.player.CachedPlayer;
+
+/**
+ * Keeps a {@link Leaderboard} of the players with the highest totals for every stat, and for every world that is asked for.
+ * <br><br>Leaderboards are seeded once from the database (the database adds up and sorts the totals). From then on, they are
+ * updated every time a row is added to the pool, so reading a leaderboard never touches the database.
+ * <br>Updates are applied to the totals that are known: the totals of players on the leaderboard and the totals of cached players
+ * (which are computed from the cache when they are first needed, and forgotten when the player leaves the cache). Players that are
+ * neither cached nor on a leaderboard can't get on it until they are cached, which happens as soon as they are online.
+ * <br><br>The leaderboard of all worlds is seeded for every stat when Statz is enabled. The leaderboard of a single world is
+ * seeded the first time it is asked for.
+ *
+ * @author Staartvin
+ *
+ */
+public class LeaderboardManager {
+
+	private static final String ALL_WORLDS = "";
+
+	private final Statz plugin;
+
+	private final int size;
+
+	// Leaderboards per stat, by lower case world name (or ALL_WORLDS).
+	private final EnumMap<PlayerStat, ConcurrentHashMap<String, Leaderboard>> leaderboards = new EnumMap<>(
+			PlayerStat.class);
+
+	public LeaderboardManager(Statz plugin) {
+		this.plugin = plugin;
+		this.size = plugin.getConfigHandler().getLeaderboardSize();
+
+		for (PlayerStat stat : PlayerStat.values()) {
+			leaderboards.put(stat, new ConcurrentHashMap<String, Leaderboard>());
+		}
+	}
+
+	/**
+	 * Seed the leaderboards of all worlds for every stat that has a value, on a database thread.
+	 */
+	public void seedLeaderboards() {
+		for (PlayerStat stat : PlayerStat.values()) {
+			Table table = plugin.getSqlConnector().getTable(stat.getTableName());
+
+			if (table != null && table.getSchema().hasValue()) {
+				this.getOrCreateLeaderboard(stat, null);
+			}
+		}
+	}
+
+	/**
+	 * Get the players with the highest total of a stat.
+	 * <br>This only reads memory. When the leaderboard is asked for the first time (for a world), it is seeded in the background
+	 * and an empty list is returned until it is ready.
+	 * @param stat Stat to get the leaderboard of
+	 * @param world World to get the leaderboard of, or null for the total of all worlds.
+	 * @return the players on the leaderboard, highest total first.
+	 */
+	public List<LeaderboardEntry> getLeaderboard(PlayerStat stat, String world) {
+		Leaderboard leaderboard = this.getOrCreateLeaderboard(stat, world);
+
+		if (leaderboard == null) {
+			return new ArrayList<>();
+		}
+
+		return leaderboard.getEntries();
+	}
+
+	/**
+	 * Get the number of players on each leaderboard.
+	 * @return the size of the leaderboards.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	private Leaderboard getOrCreateLeaderboard(PlayerStat stat, String world) {
+		ConcurrentHashMap<String, Leaderboard> boards = leaderboards.get(stat);
+
+		String key = (world == null ? ALL_WORLDS : world.toLowerCase());
+
+		Leaderboard leaderboard = boards.get(key);
+
+		if (leaderboard != null) {
+			return leaderboard;
+		}
+
+		Table table = plugin.getSqlConnector().getTable(stat.getTableName());
+
+		// There is nothing to add up.
+		if (table == null || !table.getSchema().hasValue()) {
+			return null;
+		}
+
+		// Only rows of a table with worlds belong to a world.
+		if (world != null && table.getSchema().indexOf("world") < 0) {
+			return null;
+		}
+
+		leaderboard = new Leaderboard(stat, world, size);
+
+		Leaderboard existing = boards.putIfAbsent(key, leaderboard);
+
+		if (existing != null) {
+			return existing;
+		}
+
+		final Leaderboard seeded = leaderboard;
+
+		plugin.getSqlConnector().getExecutor().execute(new Runnable() {
+			public void run() {
+				seed(seeded);
+			}
+		});
+
+		return leaderboard;
+	}
+
+	/**
+	 * Fill a leaderboard with the highest totals in the database, merged with the pool.
+	 * @param leaderboard Leaderboard to seed
+	 */
+	private void seed(Leaderboard leaderboard) {
+		PlayerStat stat = leaderboard.getStat();
+
+		Table table = plugin.getSqlConnector().getTable(stat.getTableName());
+
+		Map<String, Double> highest = plugin.getSqlConnector().getHighestTotals(table, size, leaderboard.getConditions());
+
+		if (highest == null) {
+			plugin.debugMessage(ChatColor.RED + "Could not seed the leaderboard of " + stat + ".");
+			return;
+		}
+
+		List<UUID> uuids = new ArrayList<>();
+
+		for (String uuid : highest.keySet()) {
+			try {
+				uuids.add(UUID.fromString(uuid));
+			} catch (IllegalArgumentException e) {
+				// Not a player.
+			}
+		}
+
+		Map<UUID, Double> totals = plugin.getDataManager().getTotals(uuids, stat, leaderboard.getConditions());
+
+		if (totals == null) {
+			plugin.debugMessage(ChatColor.RED + "Could not seed the leaderboard of " + stat + ".");
+			return;
+		}
+
+		DataPoolManager poolManager = plugin.getDataPoolManager();
+
+		for (Entry<UUID, Double> entry : totals.entrySet()) {
+			UUID uuid = entry.getKey();
+
+			synchronized (poolManager.getPlayerLock(uuid)) {
+				CachedPlayer cachedPlayer = plugin.getCacheManager().peekCachedPlayer(uuid);
+
+				if (cachedPlayer != null) {
+					// The cache may have updates that happened after the totals were read.
+					Double total = this.getTotal(this.getTotals(cachedPlayer, stat), leaderboard);
+
+					if (total != null) {
+						leaderboard.setTotal(uuid, total, true);
+					}
+				} else if (entry.getValue() != null && leaderboard.getTotal(uuid) == null) {
+					leaderboard.setTotal(uuid, entry.getValue(), false);
+				}
+			}
+		}
+
+		leaderboard.setSeeded();
+
+		plugin.debugMessage(ChatColor.AQUA + "Seeded leaderboard of " + stat
+				+ (leaderboard.getWorld() == null ? "" : " on world " + leaderboard.getWorld()) + ".");
+	}
+
+	/**
+	 * Update the leaderboards of a stat with a row that was added to the pool.
+	 * <br>This should only be called while holding the lock of the player (see {@link DataPoolManager#getPlayerLock(UUID)}),
+	 * right after the same row was added to the pool and the cache.
+	 * @param uuid UUID of the player
+	 * @param stat Stat of the row
+	 * @param row Row that was added
+	 */
+	public void updateRow(UUID uuid, PlayerStat stat, StatRow row) {
+		ConcurrentHashMap<String, Leaderboard> boards = leaderboards.get(stat);
+
+		if (boards.isEmpty()) {
+			return;
+		}
+
+		String world = row.getKey("world");
+
+		this.updateRow(uuid, stat, row, boards.get(ALL_WORLDS));
+
+		if (world != null) {
+			this.updateRow(uuid, stat, row, boards.get(world.toLowerCase()));
+		}
+	}
+
+	private void updateRow(UUID uuid, PlayerStat stat, StatRow row, Leaderboard leaderboard) {
+		if (leaderboard == null) {
+			return;
+		}
+
+		Double known = leaderboard.getTotal(uuid);
+
+		if (known != null && row.isIncremental()) {
+			leaderboard.setTotal(uuid, known + row.getValue(),
+					plugin.getCacheManager().peekCachedPlayer(uuid) != null);
+			return;
+		}
+
+		CachedPlayer cachedPlayer = plugin.getCacheManager().peekCachedPlayer(uuid);
+
+		// We don't know what the total of this player was.
+		if (cachedPlayer == null) {
+			return;
+		}
+
+		double total = 0;
+
+		for (StatRow cachedRow : cachedPlayer.getRows(stat)) {
+			if (cachedRow.matches(leaderboard.getConditions())) {
+				total += cachedRow.getValue();
+			}
+		}
+
+		leaderboard.setTotal(uuid, total, true);
+	}
+
+	/**
+	 * Compute the totals of a player that was just loaded into the cache, so the leaderboards have the most recent totals of this player.
+	 * <br>This should only be called while holding the lock of the player, right after the player was put in the cache.
+	 * @param cachedPlayer Player that was loaded
+	 */
+	public void addPlayer(CachedPlayer cachedPlayer) {
+		for (Entry<PlayerStat, ConcurrentHashMap<String, Leaderboard>> entry : leaderboards.entrySet()) {
+			Collection<Leaderboard> boards = entry.getValue().values();
+
+			if (boards.isEmpty()) {
+				continue;
+			}
+
+			// Add up the rows of this stat only once for all worlds.
+			Map<String, Double> totals = this.getTotals(cachedPlayer, entry.getKey());
+
+			for (Leaderboard leaderboard : boards) {
+				Double total = this.getTotal(totals, leaderboard);
+
+				// The player has no rows that count for this leaderboard.
+				if (total != null) {
+					leaderboard.setTotal(cachedPlayer.getUUID(), total, true);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Forget the totals of a player that is removed from the cache, unless the player is on a leaderboard.
+	 * @param uuid UUID of the player
+	 */
+	public void removePlayer(UUID uuid) {
+		for (ConcurrentHashMap<String, Leaderboard> boards : leaderboards.values()) {
+			for (Leaderboard leaderboard : boards.values()) {
+				leaderboard.forget(uuid);
+			}
+		}
+	}
+
+	/**
+	 * Add up the rows of a stat of a cached player, per world (by lower case name) and for all worlds.
+	 * A world (or all worlds) is left out when the player has no rows on it.
+	 */
+	private Map<String, Double> getTotals(CachedPlayer cachedPlayer, PlayerStat stat) {
+		List<StatRow> rows = cachedPlayer.getRows(stat);
+
+		Map<String, Double> totals = new HashMap<>();
+
+		if (rows.isEmpty()) {
+			return totals;
+		}
+
+		double total = 0;
+
+		for (StatRow row : rows) {
+			total += row.getValue();
+
+			String world = row.getKey("world");
+
+			if (world != null) {
+				Double worldTotal = totals.get(world.toLowerCase());
+
+				totals.put(world.toLowerCase(), (worldTotal == null ? 0 : worldTotal) + row.getValue());
+			}
+		}
+
+		totals.put(ALL_WORLDS, total);
+
+		return totals;
+	}
+
+	private Double getTotal(Map<String, Double> totals, Leaderboard leaderboard) {
+		return totals.get(leaderboard.getWorld() == null ? ALL_WORLDS : leaderboard.getWorld().toLowerCase());
+	}
+}
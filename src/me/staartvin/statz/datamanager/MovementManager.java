@@ -0,0 +1,130 @@
+package me.staartvin.statz.datamanager;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+
+import org.bukkit.Location;
+
+import me.staartvin.statz.Statz;
+import me.staartvin.statz.datamanager.player.PlayerMovement;
+
+/**
+ * Collects the distance players travel before it is added to the pool.
+ * <br><br>Players move up to 20 times per second. Instead of adding every single movement to the pool, the distance is added up per player
+ * (see {@link PlayerMovement}) and published to the pool once per second, or earlier when the player changes worlds or the way they move.
+ * Moving therefore only costs a few field updates.
+ * <br><br>Stats of distance travelled are up to a second behind because of this. Everything is done on the main thread.
+ *
+ * @author Staartvin
+ *
+ */
+public class MovementManager {
+
+	// How often (in ticks) the collected movement is published.
+	public static final long PUBLISH_INTERVAL = 20;
+
+	private final Statz plugin;
+
+	// Only used on the main thread.
+	private final Map<UUID, PlayerMovement> movements = new HashMap<>();
+
+	public MovementManager(Statz plugin) {
+		this.plugin = plugin;
+	}
+
+	/**
+	 * Start publishing the collected movement every {@link #PUBLISH_INTERVAL} ticks.
+	 */
+	public void startPublishing() {
+		plugin.getServer().getScheduler().runTaskTimer(plugin, new Runnable() {
+			public void run() {
+				publishAll();
+			}
+		}, PUBLISH_INTERVAL, PUBLISH_INTERVAL);
+	}
+
+	/**
+	 * Add a movement of a player. If the player moved to another world or moves in another way, the distance collected
+	 * so far is published first.
+	 * @param uuid UUID of the player
+	 * @param from Where the player moved from
+	 * @param to Where the player moved to
+	 * @param moveType Way the player moved
+	 */
+	public void addMovement(UUID uuid, Location from, Location to, String moveType) {
+		// Teleported to another world, so there is no distance.
+		if (from.getWorld() != to.getWorld()) {
+			return;
+		}
+
+		double dx = to.getX() - from.getX();
+		double dy = to.getY() - from.getY();
+		double dz = to.getZ() - from.getZ();
+
+		double distanceSquared = dx * dx + dy * dy + dz * dz;
+
+		if (distanceSquared == 0) {
+			return;
+		}
+
+		PlayerMovement movement = movements.get(uuid);
+
+		if (movement == null) {
+			movement = new PlayerMovement();
+			movements.put(uuid, movement);
+		}
+
+		String world = to.getWorld().getName();
+
+		if (!movement.isTracking(world, moveType)) {
+			this.publish(uuid, movement);
+
+			movement.track(world, moveType);
+		}
+
+		movement.add(Math.sqrt(distanceSquared));
+	}
+
+	/**
+	 * Publish the collected movement of all players to the pool.
+	 */
+	public void publishAll() {
+		for (Iterator<Entry<UUID, PlayerMovement>> iterator = movements.entrySet().iterator(); iterator.hasNext();) {
+			Entry<UUID, PlayerMovement> entry = iterator.next();
+
+			// Nothing happened since last time, so the player is probably not moving (or not online anymore).
+			if (entry.getValue().getDistance() == 0) {
+				iterator.remove();
+				continue;
+			}
+
+			this.publish(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Publish the collected movement of a player and stop collecting it, e.g. when the player leaves.
+	 * @param uuid UUID of the player
+	 */
+	public void removePlayer(UUID uuid) {
+		PlayerMovement movement = movements.remove(uuid);
+
+		if (movement != null) {
+			this.publish(uuid, movement);
+		}
+	}
+
+	private void publish(UUID uuid, PlayerMovement movement) {
+		if (movement.getDistance() == 0) {
+			return;
+		}
+
+		plugin.getDataManager().incrementStat(uuid, PlayerStat.DISTANCE_TRAVELLED, movement.getDistance(), "moveType",
+				movement.getMoveType(), "world", movement.getWorld());
+
+		movement.reset();
+	}
+}
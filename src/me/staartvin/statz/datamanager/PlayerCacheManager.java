@@ -0,0 +1,346 @@
+package me.staartvin.statz.datamanager;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.IllegalPluginAccessException;
+
+import me.staartvin.statz.Statz;
+import me.staartvin.statz.database.datatype.StatRow;
+import me.staartvin.statz.database.datatype.Table;
+import me.staartvin.statz.datamanager.player.CachedPlayer;
+import me.staartvin.statz.metrics.Counter;
+import me.staartvin.statz.metrics.Gauge;
+import me.staartvin.statz.metrics.MetricsRegistry;
+import me.staartvin.statz.util.StatzUtil;
+
+/**
+ * Keeps the stats of online players in memory, so listeners never have to wait for the database on the main thread.
+ * <br><br>The stats of a player are loaded asynchronously when the player logs in. From then on, every update that is sent
+ * to the {@link DataPoolManager} is also written to the cache (write-back), so the cache always holds the most recent data of that player.
+ * <br><br>When a player leaves the server, the player is marked for eviction. After the next time the pool is sent to the database,
+ * the player is removed from the cache, as all of their stats are then stored in the database.
+ *
+ * @author Staartvin
+ *
+ */
+public class PlayerCacheManager {
+
+	private Statz plugin;
+
+	private final ConcurrentHashMap<UUID, CachedPlayer> cache = new ConcurrentHashMap<>();
+
+	// Players that are being loaded from the database right now.
+	private final Set<UUID> loading = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>());
+
+	// How many times loading a player is tried before giving up.
+	private static final int MAX_LOAD_ATTEMPTS = 5;
+
+	// Players that have left the server and can be removed after the next save.
+	private final Set<UUID> pendingEvictions = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>());
+
+	// Lookups of players that were (not) cached.
+	private final Counter hits, misses;
+
+	public PlayerCacheManager(Statz plugin) {
+		this.plugin = plugin;
+
+		MetricsRegistry metrics = plugin.getMetricsRegistry();
+
+		hits = metrics.getCounter("cache.hits");
+		misses = metrics.getCounter("cache.misses");
+
+		metrics.registerGauge("cache.players", new Gauge() {
+			public double getValue() {
+				return getCacheSize();
+			}
+		});
+
+		metrics.registerGauge("cache.hit_ratio", new Gauge() {
+			public double getValue() {
+				return getHitRatio();
+			}
+		});
+	}
+
+	/**
+	 * Get the cached stats of a player, to read them. The lookup counts towards the hit ratio of the cache (see
+	 * {@link #getHitRatio()}), so use {@link #peekCachedPlayer(UUID)} for bookkeeping.
+	 * @param uuid UUID of the player
+	 * @return the cached player, or null if the player is not cached (yet).
+	 */
+	public CachedPlayer getCachedPlayer(UUID uuid) {
+		CachedPlayer cachedPlayer = cache.get(uuid);
+
+		if (cachedPlayer != null) {
+			hits.increment();
+		} else {
+			misses.increment();
+		}
+
+		return cachedPlayer;
+	}
+
+	/**
+	 * Get the cached stats of a player, without counting the lookup towards the hit ratio of the cache.
+	 * @param uuid UUID of the player
+	 * @return the cached player, or null if the player is not cached (yet).
+	 */
+	public CachedPlayer peekCachedPlayer(UUID uuid) {
+		return cache.get(uuid);
+	}
+
+	/**
+	 * Check whether a player is cached (or currently being loaded into the cache).
+	 * @param uuid UUID of the player
+	 * @return true if the player is in the cache, false otherwise.
+	 */
+	public boolean isCached(UUID uuid) {
+		return cache.containsKey(uuid) || loading.contains(uuid);
+	}
+
+	/**
+	 * Load the stats of a player into the cache. This reads from the database and should therefore never be called
+	 * on the main thread. See {@link #loadPlayerAsync(UUID)} instead.
+	 * <br>Nothing will happen if the player is already cached or being loaded by another thread.
+	 * @param uuid UUID of the player to load.
+	 */
+	public void loadPlayer(UUID uuid) {
+		// Somebody else is already loading this player.
+		if (cache.containsKey(uuid) || !loading.add(uuid)) {
+			return;
+		}
+
+		try {
+			for (int attempt = 0; attempt < MAX_LOAD_ATTEMPTS; attempt++) {
+				// The player would be cached without the stats in the database. Online players are loaded when it is back.
+				if (!plugin.getSqlConnector().isAvailable() || plugin.getDataPoolManager().hasSpilledRows()) {
+					plugin.debugMessage(ChatColor.RED + "Could not load " + uuid + " into the cache, as the database is not available.");
+					return;
+				}
+
+				if (this.tryLoadPlayer(uuid)) {
+					return;
+				}
+			}
+
+			plugin.debugMessage(ChatColor.RED + "Could not load " + uuid + " into the cache, as the database kept being saved.");
+		} finally {
+			loading.remove(uuid);
+		}
+	}
+
+	/**
+	 * Try to load a player into the cache. Loading fails when the pool was sent to the database while we were reading it, since
+	 * queries could then be counted twice (or not at all).
+	 * @param uuid UUID of the player to load
+	 * @return true if the player was loaded, false if it has to be tried again.
+	 */
+	private boolean tryLoadPlayer(UUID uuid) {
+		DataPoolManager poolManager = plugin.getDataPoolManager();
+
+		int saveSequence = poolManager.getSaveSequence();
+
+		// The pool is being saved right now.
+		if (saveSequence % 2 != 0) {
+			this.waitForSave();
+			return false;
+		}
+
+		CachedPlayer cachedPlayer = new CachedPlayer(uuid);
+
+		EnumMap<PlayerStat, List<StatRow>> databaseRows = new EnumMap<>(PlayerStat.class);
+
+		// The database is the oldest source of data.
+		for (PlayerStat stat : PlayerStat.values()) {
+			Table table = plugin.getSqlConnector().getTable(stat.getTableName());
+
+			if (table != null) {
+				databaseRows.put(stat, plugin.getSqlConnector().getRows(table, StatzUtil.makeQuery("uuid", uuid.toString())));
+			}
+		}
+
+		// The database went down while reading it, so some rows may be missing.
+		if (!plugin.getSqlConnector().isAvailable()) {
+			return false;
+		}
+
+		// Updates of a player are added to the pool and the cache while holding the lock of the player. By holding it as well,
+		// no update can slip in between reading the pool and putting the player in the cache. The lock of the pool makes sure
+		// no save starts in the meantime.
+		synchronized (poolManager.getPlayerLock(uuid)) {
+			synchronized (poolManager) {
+				if (poolManager.getSaveSequence() != saveSequence) {
+					return false;
+				}
+
+				for (Entry<PlayerStat, List<StatRow>> entry : databaseRows.entrySet()) {
+					PlayerStat stat = entry.getKey();
+
+					for (StatRow row : entry.getValue()) {
+						this.putRow(cachedPlayer, stat, row);
+					}
+
+					// Rows in the pool are more up to date than the database.
+					List<StatRow> pooled = poolManager.getStoredRows(stat);
+
+					if (pooled != null) {
+						for (StatRow row : pooled) {
+							if (row.isOf(uuid)) {
+								this.putRow(cachedPlayer, stat, row);
+							}
+						}
+					}
+				}
+
+				cache.put(uuid, cachedPlayer);
+			}
+
+			plugin.getLeaderboardManager().addPlayer(cachedPlayer);
+		}
+
+		return true;
+	}
+
+	private void waitForSave() {
+		try {
+			Thread.sleep(50);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Load the stats of a player into the cache on a database thread.
+	 * @param uuid UUID of the player to load.
+	 */
+	public void loadPlayerAsync(final UUID uuid) {
+		if (isCached(uuid)) {
+			return;
+		}
+
+		plugin.getSqlConnector().getExecutor().execute(new Runnable() {
+			public void run() {
+				loadPlayer(uuid);
+			}
+		});
+	}
+
+	/**
+	 * Load all players that are currently online into the cache. Used when Statz is (re)loaded while players are online.
+	 */
+	public void loadOnlinePlayers() {
+		for (Player player : plugin.getServer().getOnlinePlayers()) {
+			this.loadPlayerAsync(player.getUniqueId());
+		}
+	}
+
+	/**
+	 * Load all players that are currently online into the cache, starting on the main thread. Can be called from any thread.
+	 * <br>Nothing happens when Statz is being disabled, as tasks can't be scheduled anymore then. Players that are online
+	 * are loaded again when Statz is enabled.
+	 */
+	public void scheduleLoadOnlinePlayers() {
+		if (!plugin.isEnabled()) {
+			return;
+		}
+
+		try {
+			plugin.getServer().getScheduler().runTask(plugin, new Runnable() {
+				public void run() {
+					loadOnlinePlayers();
+				}
+			});
+		} catch (IllegalPluginAccessException e) {
+			// Statz was disabled right after it was checked.
+		}
+	}
+
+	/**
+	 * Update a row of a player in the cache. If the player is not cached, nothing will happen.
+	 * <br>This should only be called while holding the lock of the player (see {@link DataPoolManager#getPlayerLock(UUID)}),
+	 * right after adding the same row to the pool.
+	 * @param uuid UUID of the player
+	 * @param stat Stat of the row
+	 * @param row New data of the row
+	 */
+	public void updateRow(UUID uuid, PlayerStat stat, StatRow row) {
+		CachedPlayer cachedPlayer = cache.get(uuid);
+
+		if (cachedPlayer == null) {
+			return;
+		}
+
+		this.putRow(cachedPlayer, stat, row);
+	}
+
+	/**
+	 * Mark a player to be removed from the cache after the next save to the database.
+	 * @param uuid UUID of the player
+	 */
+	public void markForEviction(UUID uuid) {
+		pendingEvictions.add(uuid);
+	}
+
+	/**
+	 * Keep a player in the cache, even if it was marked for eviction before.
+	 * @param uuid UUID of the player
+	 */
+	public void unmarkForEviction(UUID uuid) {
+		pendingEvictions.remove(uuid);
+	}
+
+	/**
+	 * Remove all players that are marked for eviction from the cache. This should only be called after the pool has been sent
+	 * to the database.
+	 */
+	public void evictMarkedPlayers() {
+		for (UUID uuid : pendingEvictions) {
+			// Wait for the player to be loaded, so it can be removed after the next save.
+			if (loading.contains(uuid)) {
+				continue;
+			}
+
+			pendingEvictions.remove(uuid);
+
+			synchronized (plugin.getDataPoolManager().getPlayerLock(uuid)) {
+				cache.remove(uuid);
+
+				plugin.getLeaderboardManager().removePlayer(uuid);
+			}
+		}
+	}
+
+	/**
+	 * Get the number of players that are currently cached.
+	 * @return the number of cached players.
+	 */
+	public int getCacheSize() {
+		return cache.size();
+	}
+
+	/**
+	 * Get how many reads (see {@link #getCachedPlayer(UUID)}) found the player in the cache.
+	 * @return the fraction of lookups that found the player, between 0 and 1. 0 when there were no lookups yet.
+	 */
+	public double getHitRatio() {
+		long hitCount = hits.getCount();
+		long total = hitCount + misses.getCount();
+
+		return total == 0 ? 0 : hitCount / (double) total;
+	}
+
+	private void putRow(CachedPlayer cachedPlayer, PlayerStat stat, StatRow row) {
+		// We don't know which row this belongs to.
+		if (row.isComplete()) {
+			cachedPlayer.setRow(stat, row);
+		}
+	}
+}
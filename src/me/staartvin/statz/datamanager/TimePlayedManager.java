@@ -0,0 +1,187 @@
+package me.staartvin.statz.datamanager;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.entity.Player;
+
+import me.staartvin.statz.Statz;
+
+/**
+ * Keeps track of how long players have been online, per world.
+ * <br><br>When a player joins, a session is started that remembers when the player joined and in what world. A single task
+ * (running off the main thread) sweeps all sessions every {@link #SWEEP_INTERVAL} ticks and adds the whole minutes that have passed
+ * to the pool. Time that is not a whole minute yet is kept for the next sweep. When a player changes worlds, the time spent in the old world
+ * is kept apart, so it is added to the right world.
+ * <br><br>No data is read from the database: played time is only ever added to the stat.
+ *
+ * @author Staartvin
+ *
+ */
+public class TimePlayedManager {
+
+	// How often (in ticks) the played time of all players is added to the pool.
+	public static final long SWEEP_INTERVAL = 20 * 10;
+
+	private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+	private final Statz plugin;
+
+	private final ConcurrentHashMap<UUID, Session> sessions = new ConcurrentHashMap<>();
+
+	public TimePlayedManager(Statz plugin) {
+		this.plugin = plugin;
+	}
+
+	/**
+	 * Start sweeping the sessions of all players every {@link #SWEEP_INTERVAL} ticks.
+	 */
+	public void startSweeping() {
+		plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, new Runnable() {
+			public void run() {
+				sweep();
+			}
+		}, SWEEP_INTERVAL, SWEEP_INTERVAL);
+	}
+
+	/**
+	 * Start counting the played time of a player. Nothing happens if the player already has a session.
+	 * @param player Player that joined
+	 */
+	public void startSession(Player player) {
+		Session session = new Session(player.getWorld().getName(), System.currentTimeMillis());
+
+		sessions.putIfAbsent(player.getUniqueId(), session);
+	}
+
+	/**
+	 * Start counting time in another world. The time spent in the previous world is added to that world.
+	 * @param player Player that changed worlds
+	 */
+	public void changeWorld(Player player) {
+		Session session = sessions.get(player.getUniqueId());
+
+		if (session == null) {
+			this.startSession(player);
+			return;
+		}
+
+		session.changeWorld(player.getWorld().getName(), System.currentTimeMillis());
+	}
+
+	/**
+	 * Stop counting the played time of a player and add the whole minutes that have not been added yet.
+	 * @param uuid UUID of the player that left
+	 */
+	public void endSession(UUID uuid) {
+		Session session = sessions.remove(uuid);
+
+		if (session != null) {
+			this.credit(uuid, session);
+		}
+	}
+
+	/**
+	 * End the sessions of all players, e.g. when the plugin is disabled.
+	 */
+	public void endAllSessions() {
+		for (UUID uuid : sessions.keySet()) {
+			this.endSession(uuid);
+		}
+	}
+
+	/**
+	 * Add the whole minutes all players have played since the last sweep to the pool.
+	 */
+	public void sweep() {
+		for (Entry<UUID, Session> entry : sessions.entrySet()) {
+			this.credit(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Get the number of players whose played time is being counted.
+	 * @return the number of sessions.
+	 */
+	public int getSessionCount() {
+		return sessions.size();
+	}
+
+	private void credit(UUID uuid, Session session) {
+		Map<String, Long> minutes = session.takeMinutes(System.currentTimeMillis());
+
+		for (Entry<String, Long> entry : minutes.entrySet()) {
+			plugin.getDataManager().incrementStat(uuid, PlayerStat.TIME_PLAYED, entry.getValue(), "world",
+					entry.getKey());
+		}
+	}
+
+	/**
+	 * Time played by a single player that has not been added to the pool yet.
+	 */
+	private static class Session {
+
+		private String world;
+
+		// When the player started playing in the current world, or when that time was last counted.
+		private long since;
+
+		// Milliseconds that have been played per world, but were not added yet as they are not a whole minute.
+		private final Map<String, Long> pending = new HashMap<>();
+
+		private Session(String world, long since) {
+			this.world = world;
+			this.since = since;
+		}
+
+		private synchronized void changeWorld(String world, long now) {
+			this.count(now);
+
+			this.world = world;
+		}
+
+		// Add the time since the last count to the current world.
+		private void count(long now) {
+			Long played = pending.get(world);
+
+			pending.put(world, (played == null ? 0 : played) + Math.max(0, now - since));
+
+			since = now;
+		}
+
+		/**
+		 * Take the whole minutes that were played per world. The rest is kept for the next time.
+		 * @return a map of world names to the minutes played in that world.
+		 */
+		private synchronized Map<String, Long> takeMinutes(long now) {
+			this.count(now);
+
+			Map<String, Long> minutes = new HashMap<>();
+
+			for (Iterator<Entry<String, Long>> iterator = pending.entrySet().iterator(); iterator.hasNext();) {
+				Entry<String, Long> entry = iterator.next();
+
+				long played = entry.getValue();
+
+				if (played >= MINUTE) {
+					minutes.put(entry.getKey(), played / MINUTE);
+
+					played %= MINUTE;
+				}
+
+				if (played == 0) {
+					iterator.remove();
+				} else {
+					entry.setValue(played);
+				}
+			}
+
+			return minutes;
+		}
+	}
+}
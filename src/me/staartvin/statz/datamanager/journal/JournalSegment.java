@@ -0,0 +1,400 @@
+package me.staartvin.statz.datamanager.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.staartvin.statz.database.datatype.StatRow;
+import me.staartvin.statz.database.datatype.TableSchema;
+import me.staartvin.statz.datamanager.PlayerStat;
+
+/**
+ * A single file of the {@link PoolJournal}, holding the rows that were added to one generation of the pool.
+ * <br><br>The file is memory-mapped, so appending a record is a copy to memory. The operating system writes it to disk, even when
+ * the server is killed right after. Only a crash of the machine itself can lose records that were not written to disk yet.
+ * <br><br>Every record starts with its type, followed by the length of the rest of the record. The type is written last, so a record
+ * that was only partly written (or the zeroes after the last record) end the journal. Records are:
+ * <br>- A row: the stat, whether it is incremental, the value and every key. A key is either null, a uuid (16 bytes) or text.
+ * <br>- A restored row: a row that could not be written to the database and was put back in the pool, under the rows that were
+ * added since (see {@link StatRow#applyTo(StatRow)}). It is laid out like a row.
+ * <br>- A commit: the stat of which all rows up to and including this segment have been written to the database (or restored in a later segment).
+ * <br><br>Threads append without waiting for each other: a record is encoded by the thread itself, which then reserves room for it
+ * by moving the end of the segment and copies it there. Only making the segment larger takes a lock. As records are completed
+ * in any order, a crash while a record is being copied also loses the records that were reserved after it.
+ *
+ * @author Staartvin
+ *
+ */
+public class JournalSegment {
+
+	static final byte ROW_RECORD = 1;
+	static final byte COMMIT_RECORD = 2;
+	static final byte RESTORED_ROW_RECORD = 3;
+
+	private static final byte NULL_KEY = 0;
+	private static final byte UUID_KEY = 1;
+	private static final byte TEXT_KEY = 2;
+
+	// Size of the type and length of a record.
+	private static final int HEADER_SIZE = 5;
+
+	// Size of the mapped region of a new segment. It is doubled whenever it is full.
+	private static final int INITIAL_SIZE = 1 << 20;
+
+	private final long generation;
+
+	private final File file;
+
+	private final RandomAccessFile randomAccessFile;
+
+	private final FileChannel channel;
+
+	// Buffer of each appending thread to encode its records in, before they are copied to a segment.
+	private static final ThreadLocal<ByteBuffer> RECORD_BUFFERS = new ThreadLocal<ByteBuffer>() {
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocate(256);
+		}
+	};
+
+	private volatile MappedByteBuffer buffer;
+
+	// Position of the next record.
+	private final AtomicLong position = new AtomicLong();
+
+	private volatile boolean closed = false;
+
+	private JournalSegment(long generation, File file, RandomAccessFile randomAccessFile, MappedByteBuffer buffer) {
+		this.generation = generation;
+		this.file = file;
+		this.randomAccessFile = randomAccessFile;
+		this.channel = randomAccessFile.getChannel();
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Create a new, empty segment.
+	 * @param generation Generation of the segment
+	 * @param file File to write the segment to
+	 * @return a segment that records can be appended to.
+	 * @throws IOException when the file could not be created.
+	 */
+	static JournalSegment create(long generation, File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+
+		try {
+			randomAccessFile.setLength(0);
+
+			return new JournalSegment(generation, file, randomAccessFile,
+					randomAccessFile.getChannel().map(MapMode.READ_WRITE, 0, INITIAL_SIZE));
+		} catch (IOException e) {
+			randomAccessFile.close();
+			throw e;
+		}
+	}
+
+	public long getGeneration() {
+		return generation;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Append a row that was added to the pool.
+	 * @param stat Stat of the row
+	 * @param row Row that was added
+	 * @throws IOException when the segment could not be made larger.
+	 */
+	public void appendRow(PlayerStat stat, StatRow row) throws IOException {
+		this.append(ROW_RECORD, stat, row);
+	}
+
+	/**
+	 * Append a row that could not be written to the database and was put back in the pool.
+	 * @param stat Stat of the row
+	 * @param row Row that was put back
+	 * @throws IOException when the segment could not be made larger.
+	 */
+	public void appendRestoredRow(PlayerStat stat, StatRow row) throws IOException {
+		this.append(RESTORED_ROW_RECORD, stat, row);
+	}
+
+	private void append(byte type, PlayerStat stat, StatRow row) throws IOException {
+		ByteBuffer record = encode(stat, row);
+
+		int size = record.remaining();
+
+		int start = this.reserve(size);
+
+		ByteBuffer target = buffer.duplicate();
+
+		target.putInt(start + 1, size);
+
+		target.position(start + HEADER_SIZE);
+		target.put(record);
+
+		// The record is complete, so it can be read from now on.
+		target.put(start, type);
+	}
+
+	/**
+	 * Encode a row in the buffer of the current thread.
+	 * @return the buffer, holding the record without its header.
+	 */
+	private static ByteBuffer encode(PlayerStat stat, StatRow row) {
+		TableSchema schema = row.getSchema();
+
+		int uuidIndex = schema.indexOf(TableSchema.UUID_COLUMN);
+
+		// Convert the keys first, so the size of the record is known.
+		Object[] keys = new Object[schema.getColumnCount()];
+
+		int size = 1 + 1 + 8 + 1;
+
+		for (int i = 0; i < keys.length; i++) {
+			String key = row.getKey(i);
+
+			if (key == null) {
+				size += 1;
+			} else if (i == uuidIndex && (keys[i] = toUUID(key)) != null) {
+				size += 1 + 16;
+			} else {
+				byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+
+				keys[i] = bytes;
+				size += 1 + 2 + bytes.length;
+			}
+		}
+
+		ByteBuffer record = RECORD_BUFFERS.get();
+
+		if (record.capacity() < size) {
+			record = ByteBuffer.allocate(Math.max(size, record.capacity() * 2));
+
+			RECORD_BUFFERS.set(record);
+		}
+
+		record.clear();
+
+		record.put((byte) stat.ordinal());
+		record.put((byte) (row.isIncremental() ? 1 : 0));
+		record.putDouble(row.getValue());
+		record.put((byte) keys.length);
+
+		for (Object key : keys) {
+			if (key == null) {
+				record.put(NULL_KEY);
+			} else if (key instanceof UUID) {
+				record.put(UUID_KEY);
+				record.putLong(((UUID) key).getMostSignificantBits());
+				record.putLong(((UUID) key).getLeastSignificantBits());
+			} else {
+				byte[] bytes = (byte[]) key;
+
+				record.put(TEXT_KEY);
+				record.putShort((short) bytes.length);
+				record.put(bytes);
+			}
+		}
+
+		record.flip();
+
+		return record;
+	}
+
+	private static UUID toUUID(String key) {
+		if (key.length() != 36) {
+			return null;
+		}
+
+		try {
+			UUID uuid = UUID.fromString(key);
+
+			// Only store it as a uuid when it is read back as exactly the same text.
+			return uuid.toString().equals(key) ? uuid : null;
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Append a commit: all rows of a stat in this segment (and the segments before it) have been written to the database.
+	 * @param stat Stat that was written
+	 * @throws IOException when the segment could not be made larger.
+	 */
+	public void appendCommit(PlayerStat stat) throws IOException {
+		int start = this.reserve(1);
+
+		MappedByteBuffer target = buffer;
+
+		target.putInt(start + 1, 1);
+		target.put(start + HEADER_SIZE, (byte) stat.ordinal());
+
+		target.put(start, COMMIT_RECORD);
+	}
+
+	/**
+	 * Make room for a record at the end of the segment. The segment is made larger when the record does not fit.
+	 * @param size Size of the record, without its header
+	 * @return the position of the record.
+	 */
+	private int reserve(int size) throws IOException {
+		if (closed) {
+			throw new IOException("Journal segment " + file.getName() + " is closed");
+		}
+
+		long start = position.getAndAdd(HEADER_SIZE + size);
+
+		// The zero after the last record marks the end of the segment.
+		long needed = start + HEADER_SIZE + size + 1;
+
+		if (needed > Integer.MAX_VALUE) {
+			throw new IOException("Journal segment " + file.getName() + " is full");
+		}
+
+		if (needed > buffer.capacity()) {
+			this.grow((int) needed);
+		}
+
+		return (int) start;
+	}
+
+	private synchronized void grow(int needed) throws IOException {
+		// Another thread may have made it large enough already.
+		if (needed <= buffer.capacity()) {
+			return;
+		}
+
+		long capacity = buffer.capacity();
+
+		while (capacity < needed) {
+			capacity *= 2;
+		}
+
+		// Records that are still being copied to the old mapping end up in the same file.
+		buffer = channel.map(MapMode.READ_WRITE, 0, Math.min(capacity, Integer.MAX_VALUE));
+	}
+
+	/**
+	 * Write the records of this segment to disk, so they even survive a crash of the machine.
+	 */
+	public synchronized void force() {
+		if (!closed) {
+			buffer.force();
+		}
+	}
+
+	/**
+	 * Close this segment. Records can't be appended anymore, but the file is kept.
+	 */
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+
+		try {
+			randomAccessFile.close();
+		} catch (IOException e) {
+			// The records are in the mapped memory, so nothing is lost.
+		}
+	}
+
+	/**
+	 * Read the records of a segment file.
+	 * @param file File to read
+	 * @param reader Reader that gets every record that was written completely, in the order they were appended
+	 * @throws IOException when the file could not be read.
+	 */
+	static void read(File file, RecordReader reader) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+
+			ByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+
+			while (buffer.remaining() >= HEADER_SIZE) {
+				int start = buffer.position();
+
+				byte type = buffer.get();
+				int size = buffer.getInt();
+
+				// The end of the journal, or a record that was not written completely.
+				if (type == 0 || size <= 0 || size > buffer.remaining()) {
+					break;
+				}
+
+				ByteBuffer record = (ByteBuffer) buffer.slice().limit(size);
+
+				buffer.position(start + HEADER_SIZE + size);
+
+				try {
+					if (type == ROW_RECORD || type == RESTORED_ROW_RECORD) {
+						readRow(record, type == RESTORED_ROW_RECORD, reader);
+					} else if (type == COMMIT_RECORD) {
+						reader.readCommit(statOf(record.get()));
+					}
+				} catch (BufferUnderflowException | BufferOverflowException e) {
+					throw new IOException("Corrupt record in " + file.getName() + " at " + start);
+				}
+			}
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	private static void readRow(ByteBuffer record, boolean restored, RecordReader reader) throws IOException {
+		PlayerStat stat = statOf(record.get());
+		boolean incremental = record.get() != 0;
+		double value = record.getDouble();
+
+		String[] keys = new String[record.get()];
+
+		for (int i = 0; i < keys.length; i++) {
+			byte keyType = record.get();
+
+			if (keyType == UUID_KEY) {
+				keys[i] = new UUID(record.getLong(), record.getLong()).toString();
+			} else if (keyType == TEXT_KEY) {
+				byte[] bytes = new byte[record.getShort() & 0xffff];
+
+				record.get(bytes);
+
+				keys[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+		}
+
+		reader.readRow(stat, keys, value, incremental, restored);
+	}
+
+	private static PlayerStat statOf(byte ordinal) throws IOException {
+		if (ordinal < 0 || ordinal >= PlayerStat.values().length) {
+			throw new IOException("Unknown stat " + ordinal);
+		}
+
+		return PlayerStat.values()[ordinal];
+	}
+
+	/**
+	 * Gets the records of a segment, see {@link JournalSegment#read(File, RecordReader)}.
+	 */
+	interface RecordReader {
+
+		void readRow(PlayerStat stat, String[] keys, double value, boolean incremental, boolean restored);
+
+		void readCommit(PlayerStat stat);
+	}
+}
@@ -0,0 +1,262 @@
+package me.staartvin.statz.datamanager.journal;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+import me.staartvin.statz.Statz;
+import me.staartvin.statz.database.datatype.StatRow;
+import me.staartvin.statz.database.datatype.Table;
+import me.staartvin.statz.database.datatype.TableSchema;
+import me.staartvin.statz.datamanager.DataPoolManager;
+import me.staartvin.statz.datamanager.PlayerStat;
+
+/**
+ * An append-only journal of the rows that are added to the pool of the {@link DataPoolManager}, so the pool can be recovered
+ * when the server stops without sending it to the database (e.g. when it crashes or is killed).
+ * <br><br>Every generation of the pool (see {@link DataPoolManager#sendPool()}) writes its rows to its own {@link JournalSegment}.
+ * When the rows of a stat have been sent to the database, a commit of that stat is appended to the segment of the generation
+ * that was sent. Rows that could not be written are put back in the pool, and journaled again in the segment of the current
+ * generation. Once every stat of a generation has been committed, its segment (and the ones before it) are deleted.
+ * <br><br>When Statz is enabled, the segments that are left are read (see {@link #recover()}). A row is recovered when its stat
+ * was not committed in the same segment or a later one. Rows are merged in the order they were added, exactly like the pool does.
+ * <br>A stat that was written to the database right before a crash, but not committed in the journal yet, is recovered as well.
+ * The rows of that stat are then counted twice, which is a lot better than losing the whole pool.
+ *
+ * @author Staartvin
+ *
+ */
+public class PoolJournal {
+
+	private static final String FILE_PREFIX = "pool-";
+	private static final String FILE_SUFFIX = ".journal";
+
+	private final Statz plugin;
+
+	private final File folder;
+
+	// Generations of the segments that were left by the last run, oldest first.
+	private final List<Long> leftGenerations;
+
+	private long nextGeneration;
+
+	public PoolJournal(Statz plugin, File folder) throws IOException {
+		this.plugin = plugin;
+		this.folder = folder;
+
+		if (!folder.isDirectory() && !folder.mkdirs()) {
+			throw new IOException("Could not create " + folder);
+		}
+
+		leftGenerations = this.getGenerations();
+
+		nextGeneration = (leftGenerations.isEmpty() ? 0 : leftGenerations.get(leftGenerations.size() - 1) + 1);
+	}
+
+	/**
+	 * Create a segment for a new generation of the pool.
+	 * @return a new segment, with a higher generation than all other segments.
+	 * @throws IOException when the segment could not be created.
+	 */
+	public synchronized JournalSegment createSegment() throws IOException {
+		long generation = nextGeneration++;
+
+		return JournalSegment.create(generation, this.getFile(generation));
+	}
+
+	/**
+	 * Read the rows that are left in the segments of the last run, which were never written to the database.
+	 * <br>The segments are not deleted. Once the recovered rows have been added to the pool and written to the database, they are
+	 * deleted together with the segment of that generation (see {@link #deleteSegments(long)}).
+	 * @return the recovered rows of every stat, merged in the order they were added to the pool.
+	 */
+	public EnumMap<PlayerStat, Map<StatRow, StatRow>> recover() {
+		final EnumMap<PlayerStat, Map<StatRow, StatRow>> recovered = new EnumMap<>(PlayerStat.class);
+
+		// A commit of a stat covers the rows of that stat in its own segment and all segments before it.
+		final EnumMap<PlayerStat, Long> committed = new EnumMap<>(PlayerStat.class);
+
+		for (final long generation : leftGenerations) {
+			this.read(generation, new JournalSegment.RecordReader() {
+				public void readRow(PlayerStat stat, String[] keys, double value, boolean incremental,
+						boolean restored) {
+				}
+
+				public void readCommit(PlayerStat stat) {
+					committed.put(stat, generation);
+				}
+			});
+		}
+
+		for (final long generation : leftGenerations) {
+			this.read(generation, new JournalSegment.RecordReader() {
+				public void readRow(PlayerStat stat, String[] keys, double value, boolean incremental,
+						boolean restored) {
+					Long committedGeneration = committed.get(stat);
+
+					if (committedGeneration != null && committedGeneration >= generation) {
+						return;
+					}
+
+					addRow(recovered, stat, keys, value, incremental, restored);
+				}
+
+				public void readCommit(PlayerStat stat) {
+				}
+			});
+		}
+
+		return recovered;
+	}
+
+	/**
+	 * Read the rows of a single segment, ignoring commits.
+	 * @param generation Generation of the segment
+	 * @return the rows of every stat in the segment, merged in the order they were added.
+	 */
+	public EnumMap<PlayerStat, Map<StatRow, StatRow>> readSegment(long generation) {
+		final EnumMap<PlayerStat, Map<StatRow, StatRow>> rows = new EnumMap<>(PlayerStat.class);
+
+		this.read(generation, new JournalSegment.RecordReader() {
+			public void readRow(PlayerStat stat, String[] keys, double value, boolean incremental, boolean restored) {
+				addRow(rows, stat, keys, value, incremental, restored);
+			}
+
+			public void readCommit(PlayerStat stat) {
+			}
+		});
+
+		return rows;
+	}
+
+	private void addRow(EnumMap<PlayerStat, Map<StatRow, StatRow>> rows, PlayerStat stat, String[] keys, double value,
+			boolean incremental, boolean restored) {
+		StatRow row = createRow(stat, keys, value, incremental);
+
+		if (row == null) {
+			return;
+		}
+
+		Map<StatRow, StatRow> statRows = rows.get(stat);
+
+		if (statRows == null) {
+			statRows = new LinkedHashMap<>();
+			rows.put(stat, statRows);
+		}
+
+		StatRow current = statRows.get(row);
+
+		// A restored row is older than the rows that were added before it was restored.
+		if (restored && current != null) {
+			statRows.put(row, current.applyTo(row));
+		} else {
+			statRows.put(row, row.applyTo(current));
+		}
+	}
+
+	private void read(long generation, JournalSegment.RecordReader reader) {
+		try {
+			JournalSegment.read(this.getFile(generation), reader);
+		} catch (IOException e) {
+			// Records before the corrupt one have been read, which is all we can do.
+			plugin.getLogger().log(Level.WARNING, "Could not read all of journal segment " + generation + ":", e);
+		}
+	}
+
+	private StatRow createRow(PlayerStat stat, String[] keys, double value, boolean incremental) {
+		Table table = plugin.getSqlConnector().getTable(stat.getTableName());
+
+		// The table has changed since the row was written.
+		if (table == null || table.getSchema().getColumnCount() != keys.length) {
+			return null;
+		}
+
+		TableSchema schema = table.getSchema();
+
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null) {
+				keys[i] = keys[i].intern();
+			}
+		}
+
+		StatRow row = new StatRow(schema, keys, value, incremental);
+
+		return row.isComplete() ? row : null;
+	}
+
+	/**
+	 * Delete the segments up to and including a generation. Segments that are still open should be closed first.
+	 * @param generation Newest generation to delete
+	 */
+	public synchronized void deleteSegments(long generation) {
+		for (long existing : this.getGenerations()) {
+			if (existing > generation) {
+				break;
+			}
+
+			File file = this.getFile(existing);
+
+			if (!file.delete() && file.exists()) {
+				plugin.getLogger().warning("Could not delete journal segment " + file.getName());
+			}
+		}
+	}
+
+	/**
+	 * Delete a single segment, which should be closed first.
+	 * @param generation Generation of the segment
+	 */
+	public synchronized void deleteSegment(long generation) {
+		File file = this.getFile(generation);
+
+		if (!file.delete() && file.exists()) {
+			plugin.getLogger().warning("Could not delete journal segment " + file.getName());
+		}
+	}
+
+	/**
+	 * Get the generations of the segments that are on disk.
+	 * @return the generations of all segments, oldest first.
+	 */
+	public synchronized List<Long> getSegments() {
+		return this.getGenerations();
+	}
+
+	private File getFile(long generation) {
+		return new File(folder, FILE_PREFIX + generation + FILE_SUFFIX);
+	}
+
+	// Generations of the segments in the folder, oldest first.
+	private List<Long> getGenerations() {
+		List<Long> generations = new ArrayList<>();
+
+		String[] names = folder.list(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+			}
+		});
+
+		if (names == null) {
+			return generations;
+		}
+
+		for (String name : names) {
+			try {
+				generations.add(Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length())));
+			} catch (NumberFormatException e) {
+				// Not a segment.
+			}
+		}
+
+		Collections.sort(generations);
+
+		return generations;
+	}
+}
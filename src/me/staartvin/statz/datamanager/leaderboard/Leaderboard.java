@@ -0,0 +1,206 @@
+package me.staartvin.statz.datamanager.leaderboard;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
+
+import me.staartvin.statz.database.datatype.RowRequirement;
+import me.staartvin.statz.datamanager.PlayerStat;
+
+/**
+ * The players with the highest total of a stat, on all worlds or on a single world.
+ * <br><br>Besides the players on the leaderboard, the totals of other players are kept while they are cached (see
+ * {@link me.staartvin.statz.datamanager.LeaderboardManager}), so a change of their total can be compared with the leaderboard right away.
+ * The leaderboard itself is kept sorted, so reading it only copies its entries.
+ * <br>All methods are thread-safe.
+ *
+ * @author Staartvin
+ *
+ */
+public class Leaderboard {
+
+	private static final Comparator<LeaderboardEntry> HIGHEST_FIRST = new Comparator<LeaderboardEntry>() {
+		public int compare(LeaderboardEntry first, LeaderboardEntry second) {
+			return Double.compare(second.getTotal(), first.getTotal());
+		}
+	};
+
+	private final PlayerStat stat;
+
+	// Null for the leaderboard of all worlds.
+	private final String world;
+
+	private final int size;
+
+	// Known totals: the players on the leaderboard and the players that are kept.
+	private final Map<UUID, Double> totals = new HashMap<>();
+
+	// Players whose total is remembered even when they are not on the leaderboard.
+	private final Set<UUID> kept = new HashSet<>();
+
+	// The highest totals, highest first.
+	private final List<LeaderboardEntry> entries = new ArrayList<>();
+
+	private volatile boolean seeded;
+
+	public Leaderboard(PlayerStat stat, String world, int size) {
+		this.stat = stat;
+		this.world = world;
+		this.size = Math.max(1, size);
+	}
+
+	public PlayerStat getStat() {
+		return stat;
+	}
+
+	/**
+	 * Get the world of this leaderboard.
+	 * @return the name of the world, or null when this leaderboard counts all worlds.
+	 */
+	public String getWorld() {
+		return world;
+	}
+
+	/**
+	 * Get the requirements a row has to meet to count for this leaderboard.
+	 * @return no requirements for the leaderboard of all worlds, or the world of this leaderboard.
+	 */
+	public RowRequirement[] getConditions() {
+		if (world == null) {
+			return new RowRequirement[0];
+		}
+
+		return new RowRequirement[] { new RowRequirement("world", world) };
+	}
+
+	/**
+	 * Get the known total of a player.
+	 * @param uuid UUID of the player
+	 * @return the total, or null if it is not known.
+	 */
+	public synchronized Double getTotal(UUID uuid) {
+		return totals.get(uuid);
+	}
+
+	/**
+	 * Set the total of a player and move the player to the right place on the leaderboard.
+	 * @param uuid UUID of the player
+	 * @param total New total of the player
+	 * @param keep Whether to remember the total when the player is not on the leaderboard, until {@link #forget(UUID)} is called.
+	 */
+	public synchronized void setTotal(UUID uuid, double total, boolean keep) {
+		Double previous = totals.put(uuid, total);
+
+		if (keep) {
+			kept.add(uuid);
+		} else {
+			kept.remove(uuid);
+		}
+
+		int index = this.indexOf(uuid);
+
+		if (index >= 0) {
+			entries.remove(index);
+		}
+
+		// Find the place of the player, going up from the bottom.
+		int place = entries.size();
+
+		while (place > 0 && entries.get(place - 1).getTotal() < total) {
+			place--;
+		}
+
+		if (place < size) {
+			entries.add(place, new LeaderboardEntry(uuid, total));
+
+			if (entries.size() > size) {
+				this.removeUnused(entries.remove(size).getUUID());
+			}
+		}
+
+		// The player went down, so a known player that is not on the leaderboard may now be higher.
+		if (index >= 0 && previous != null && total < previous) {
+			this.rebuild();
+		}
+
+		if (this.indexOf(uuid) < 0) {
+			this.removeUnused(uuid);
+		}
+	}
+
+	/**
+	 * Stop remembering the total of a player, unless the player is on the leaderboard.
+	 * @param uuid UUID of the player
+	 */
+	public synchronized void forget(UUID uuid) {
+		kept.remove(uuid);
+
+		if (this.indexOf(uuid) < 0) {
+			totals.remove(uuid);
+		}
+	}
+
+	/**
+	 * Get the players on this leaderboard.
+	 * @return a copy of the entries, highest total first. Empty while the leaderboard has not been seeded.
+	 */
+	public synchronized List<LeaderboardEntry> getEntries() {
+		return new ArrayList<>(entries);
+	}
+
+	/**
+	 * Check whether the leaderboard has been filled with the totals that are in the database.
+	 * @return true if it has been seeded, false otherwise.
+	 */
+	public boolean isSeeded() {
+		return seeded;
+	}
+
+	/**
+	 * Mark this leaderboard as seeded.
+	 */
+	public void setSeeded() {
+		seeded = true;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	private int indexOf(UUID uuid) {
+		for (int i = 0; i < entries.size(); i++) {
+			if (entries.get(i).getUUID().equals(uuid)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	private void removeUnused(UUID uuid) {
+		if (!kept.contains(uuid)) {
+			totals.remove(uuid);
+		}
+	}
+
+	// Fill the leaderboard again with the highest known totals.
+	private void rebuild() {
+		List<LeaderboardEntry> known = new ArrayList<>();
+
+		for (Entry<UUID, Double> entry : totals.entrySet()) {
+			known.add(new LeaderboardEntry(entry.getKey(), entry.getValue()));
+		}
+
+		Collections.sort(known, HIGHEST_FIRST);
+
+		entries.clear();
+		entries.addAll(known.subList(0, Math.min(size, known.size())));
+	}
+}
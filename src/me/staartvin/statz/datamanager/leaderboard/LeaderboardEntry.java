@@ -0,0 +1,33 @@
+package me.staartvin.statz.datamanager.leaderboard;
+
+import java.util.UUID;
+
+/**
+ * A single place on a {@link Leaderboard}: a player and the total value of the stat of the leaderboard.
+ *
+ * @author Staartvin
+ *
+ */
+public final class LeaderboardEntry {
+
+	private final UUID uuid;
+	private final double total;
+
+	public LeaderboardEntry(UUID uuid, double total) {
+		this.uuid = uuid;
+		this.total = total;
+	}
+
+	public UUID getUUID() {
+		return uuid;
+	}
+
+	public double getTotal() {
+		return total;
+	}
+
+	@Override
+	public String toString() {
+		return uuid + "=" + total;
+	}
+}
@@ -0,0 +1,65 @@
+package me.staartvin.statz.datamanager.player;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import me.staartvin.statz.database.datatype.StatRow;
+import me.staartvin.statz.datamanager.PlayerStat;
+
+/**
+ * All stats of a single player that are kept in memory by the {@link me.staartvin.statz.datamanager.PlayerCacheManager}.
+ * <br>Every stat has its rows indexed by the row they belong to (see {@link StatRow#equals(Object)}),
+ * so a new value for a row replaces the old one (or is added to it, see {@link StatRow#applyTo(StatRow)}).
+ *
+ * @author Staartvin
+ *
+ */
+public class CachedPlayer {
+
+	private final UUID uuid;
+
+	private final EnumMap<PlayerStat, Map<StatRow, StatRow>> rows = new EnumMap<>(PlayerStat.class);
+
+	public CachedPlayer(final UUID uuid) {
+		this.uuid = uuid;
+	}
+
+	public UUID getUUID() {
+		return uuid;
+	}
+
+	/**
+	 * Get the rows of a stat of this player.
+	 * @param stat Stat to get the rows of
+	 * @return a copy of the rows that are cached for this stat. The list is empty if there are none.
+	 */
+	public synchronized List<StatRow> getRows(PlayerStat stat) {
+		Map<StatRow, StatRow> statRows = rows.get(stat);
+
+		if (statRows == null) {
+			return new ArrayList<>();
+		}
+
+		return new ArrayList<>(statRows.values());
+	}
+
+	/**
+	 * Store a row of a stat. The row is applied on top of the cached version of the same row.
+	 * @param stat Stat the row belongs to
+	 * @param row New data of the row
+	 */
+	public synchronized void setRow(PlayerStat stat, StatRow row) {
+		Map<StatRow, StatRow> statRows = rows.get(stat);
+
+		if (statRows == null) {
+			statRows = new LinkedHashMap<>();
+			rows.put(stat, statRows);
+		}
+
+		statRows.put(row, row.applyTo(statRows.get(row)));
+	}
+}
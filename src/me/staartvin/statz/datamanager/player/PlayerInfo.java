@@ -1,10 +1,18 @@
 package me.staartvin.statz.datamanager.player;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map.Entry;
 import java.util.UUID;
 
+import me.staartvin.statz.database.datatype.Column;
 import me.staartvin.statz.database.datatype.Query;
+import me.staartvin.statz.database.datatype.RowRequirement;
+import me.staartvin.statz.database.datatype.StatRow;
+import me.staartvin.statz.database.datatype.Table;
+import me.staartvin.statz.database.datatype.Table.SQLDataType;
+import me.staartvin.statz.database.datatype.TableSchema;
 
 /**
  * Statistics about a player recorded by Statz
@@ -20,12 +28,25 @@ public class PlayerInfo {
 	private UUID uuid;
 	private boolean isValid;
 
-	private List<Query> results = new ArrayList<>();
+	private List<StatRow> rows = new ArrayList<>();
 
+	// Schema of the rows, used to convert queries to rows.
+	private TableSchema schema;
+
+	/**
+	 * Create player info without knowing the table of its rows. The rows get their schema from the first row that is set,
+	 * or else from the columns of the first query that is added (see {@link #addResult(Query)}).
+	 * @param uuid UUID of the player
+	 */
 	public PlayerInfo(final UUID uuid) {
 		this.setUUID(uuid);
 	}
 
+	public PlayerInfo(final UUID uuid, final TableSchema schema) {
+		this.setUUID(uuid);
+		this.schema = schema;
+	}
+
 	public UUID getUUID() {
 		return uuid;
 	}
@@ -68,22 +89,91 @@ public class PlayerInfo {
 	 * <li>Secondly, to get the value of a column name, we need to check if it exists:
 	 * <br>{@code if (map.get("world") != null)}</li>
 	 * <li>Lastly, since map.get() returns an Object, it is recommended to convert it to a primitive type (or string)</li>
+	 * <br><br>The queries are views of the rows of this player info (see {@link #getRows()}), so changing them does not change this player info.
 	 * @return a list of hashmaps containing the data in the database of this specific player.
 	 */
 	public List<Query> getResults() {
+		List<Query> results = new ArrayList<>();
+
+		for (StatRow row : rows) {
+			results.add(row.toQuery());
+		}
+
 		return results;
 	}
 
 	public void setResults(List<Query> result) {
-		this.results = result;
+		this.rows = new ArrayList<>();
+
+		for (Query map : result) {
+			this.addResult(map);
+		}
 	}
 
 	public void addResult(Query map) {
-		this.results.add(map);
+		this.rows.add(StatRow.fromQuery(this.getSchema(map), map));
 	}
 
+	/**
+	 * Remove the first row that has the same columns and value as the given query.
+	 * @param map Query of the row to remove
+	 */
 	public void removeResult(Query map) {
-		this.results.remove(map);
+		StatRow removed = StatRow.fromQuery(this.getSchema(map), map);
+
+		for (Iterator<StatRow> iterator = rows.iterator(); iterator.hasNext();) {
+			StatRow row = iterator.next();
+
+			// Rows are equal when their keys are, whatever their value is.
+			if (row.equals(removed) && row.getValue() == removed.getValue()) {
+				iterator.remove();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Get the rows that are stored about this player. Unlike {@link #getResults()}, this does not copy any data.
+	 * @return a list of rows of this player. Changes to the list change this player info.
+	 */
+	public List<StatRow> getRows() {
+		return rows;
+	}
+
+	public void setRows(List<StatRow> rows) {
+		this.rows = rows;
+	}
+
+	private TableSchema getSchema(Query query) {
+		if (schema == null) {
+			schema = rows.isEmpty() ? createSchema(query) : rows.get(0).getSchema();
+		}
+
+		return schema;
+	}
+
+	/**
+	 * Create a schema for rows of a table that is not known. Every column of the query (other than its value) identifies
+	 * a row, just like {@link Query#findConflicts(List)} compares them.
+	 * @param query Query to get the columns from
+	 * @return a schema with the columns of the query.
+	 */
+	private static TableSchema createSchema(Query query) {
+		Table table = new Table("player_info") {
+		};
+
+		for (Entry<String, String> entry : query.getEntrySet()) {
+			if (entry.getKey().equalsIgnoreCase(TableSchema.VALUE_COLUMN)) {
+				table.addColumn(TableSchema.VALUE_COLUMN, false, SQLDataType.DOUBLE);
+			} else {
+				Column column = new Column(entry.getKey(), false, SQLDataType.TEXT);
+
+				table.addColumn(column);
+				table.addUniqueMatched(column);
+			}
+		}
+
+		return table.getSchema();
 	}
 
 	/**
@@ -93,8 +183,25 @@ public class PlayerInfo {
 	public double getTotalValue() {
 		double value = 0;
 
-		for (Query q : results) {
-			value += q.getValue();
+		for (StatRow row : rows) {
+			value += row.getValue();
+		}
+
+		return value;
+	}
+
+	/**
+	 * Get the total value of the rows that meet all given requirements.
+	 * @param conditions Requirements a row has to meet to be counted
+	 * @return the sum of the values of each row that meets the requirements.
+	 */
+	public double getTotalValue(RowRequirement... conditions) {
+		double value = 0;
+
+		for (StatRow row : rows) {
+			if (row.matches(conditions)) {
+				value += row.getValue();
+			}
 		}
 
 		return value;
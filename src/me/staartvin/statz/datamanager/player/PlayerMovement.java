@@ -0,0 +1,64 @@
+package me.staartvin.statz.datamanager.player;
+
+/**
+ * The distance a player has moved since it was last added to the pool by the {@link me.staartvin.statz.datamanager.MovementManager}.
+ * <br>Only the distance of the current world and movement type is kept. When either of them changes, the distance is published
+ * and counting starts over.
+ * <br>This class is not thread-safe and should only be used on the main thread.
+ *
+ * @author Staartvin
+ *
+ */
+public class PlayerMovement {
+
+	private String world;
+	private String moveType;
+
+	private double distance;
+
+	/**
+	 * Check whether movement in the given world and of the given type can be added to this movement.
+	 * @param world Name of the world the player moved in
+	 * @param moveType Way the player moved (see {@link me.staartvin.statz.util.StatzUtil#getMovementType(org.bukkit.entity.Player)})
+	 * @return true if the world and movement type are the ones that are being tracked, false otherwise.
+	 */
+	public boolean isTracking(String world, String moveType) {
+		// Names of worlds and movement types are mostly the same instances, so compare those first.
+		return (this.world == world || (this.world != null && this.world.equals(world)))
+				&& (this.moveType == moveType || (this.moveType != null && this.moveType.equals(moveType)));
+	}
+
+	/**
+	 * Start tracking movement in another world or of another type. The current distance should be published first.
+	 * @param world Name of the world
+	 * @param moveType Way the player moves
+	 */
+	public void track(String world, String moveType) {
+		this.world = world;
+		this.moveType = moveType;
+		this.distance = 0;
+	}
+
+	public void add(double distance) {
+		this.distance += distance;
+	}
+
+	/**
+	 * Forget the distance, after it has been published.
+	 */
+	public void reset() {
+		this.distance = 0;
+	}
+
+	public double getDistance() {
+		return distance;
+	}
+
+	public String getWorld() {
+		return world;
+	}
+
+	public String getMoveType() {
+		return moveType;
+	}
+}
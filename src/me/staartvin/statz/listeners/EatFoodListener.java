@@ -9,7 +9,6 @@ import org.bukkit.event.player.PlayerItemConsumeEvent;
 
 import me.staartvin.statz.Statz;
 import me.staartvin.statz.datamanager.PlayerStat;
-import me.staartvin.statz.datamanager.player.PlayerInfo;
 import me.staartvin.statz.util.StatzUtil;
 
 public class EatFoodListener implements Listener {
@@ -33,21 +32,9 @@ public class EatFoodListener implements Listener {
 		if (foodName == null)
 			return;
 
-		// Get player info.
-		final PlayerInfo info = plugin.getDataManager().getPlayerInfo(player.getUniqueId(), stat, StatzUtil.makeQuery("world", player.getWorld().getName(), "foodEaten", foodName));
-
-		// Get current value of stat.
-		int currentValue = 0;
-
-		// Check if it is valid!
-		if (info.isValid()) {
-			currentValue += info.getTotalValue();
-		}
-
 		// Update value to new stat.
-		plugin.getDataManager().setPlayerInfo(player.getUniqueId(), stat,
-				StatzUtil.makeQuery("uuid", player.getUniqueId().toString(), "value", (currentValue + 1), "foodEaten",
-						foodName, "world", player.getWorld().getName()));
+		plugin.getDataManager().incrementStat(player.getUniqueId(), stat, 1, "foodEaten", foodName, "world",
+				player.getWorld().getName());
 
 	}
 }
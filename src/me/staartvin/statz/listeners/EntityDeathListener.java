@@ -18,8 +18,6 @@ import org.bukkit.event.entity.EntityDeathEvent;
 
 import me.staartvin.statz.Statz;
 import me.staartvin.statz.datamanager.PlayerStat;
-import me.staartvin.statz.datamanager.player.PlayerInfo;
-import me.staartvin.statz.util.StatzUtil;
 
 public class EntityDeathListener implements Listener {
 
@@ -53,22 +51,9 @@ public class EntityDeathListener implements Listener {
 				
 				Player murderedPlayer = (Player) e;
 				
-				//Get player info.
-				final PlayerInfo info = plugin.getDataManager().getPlayerInfo(player.getUniqueId(), stat, StatzUtil.makeQuery("world", player.getWorld().getName(), "playerKilled", murderedPlayer.getName()));
-
-				// Get current value of stat.
-				int currentValue = 0;
-
-				// Check if it is valid!
-				if (info.isValid()) {
-					currentValue += info.getTotalValue();
-					//currentValue = Integer.parseInt(info.getResults().getValue(0).getValue("value").toString());
-				}
-
 				// Update value to new stat.
-				plugin.getDataManager().setPlayerInfo(player.getUniqueId(), stat,
-						StatzUtil.makeQuery("uuid", player.getUniqueId().toString(), "value", (currentValue + 1),
-								"world", player.getWorld().getName(), "playerKilled", murderedPlayer.getName()));
+				plugin.getDataManager().incrementStat(player.getUniqueId(), stat, 1, "world",
+						player.getWorld().getName(), "playerKilled", murderedPlayer.getName());
 				
 			} else {
 				// Player killed mob		
@@ -113,21 +98,9 @@ public class EntityDeathListener implements Listener {
 					}
 				}
 
-				//Get player info.
-				final PlayerInfo info = plugin.getDataManager().getPlayerInfo(player.getUniqueId(), stat, StatzUtil.makeQuery("world", player.getWorld().getName(), "mob", mobType));
-
-				// Get current value of stat.
-				int currentValue = 0;
-
-				// Check if it is valid!
-				if (info.isValid()) {
-					currentValue += info.getTotalValue();
-				}
-
 				// Update value to new stat.
-				plugin.getDataManager().setPlayerInfo(player.getUniqueId(), stat,
-						StatzUtil.makeQuery("uuid", player.getUniqueId().toString(), "value", (currentValue + 1),
-								"world", player.getWorld().getName(), "mob", mobType));
+				plugin.getDataManager().incrementStat(player.getUniqueId(), stat, 1, "world",
+						player.getWorld().getName(), "mob", mobType);
 
 			}
 		} else {
@@ -0,0 +1,59 @@
+package me.staartvin.statz.listeners;
+
+import java.util.UUID;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import me.staartvin.statz.Statz;
+
+/**
+ * Loads players into the {@link me.staartvin.statz.datamanager.PlayerCacheManager} when they log in and
+ * marks them for eviction when they leave.
+ *
+ * @author Staartvin
+ *
+ */
+public class PlayerCacheListener implements Listener {
+
+	private final Statz plugin;
+
+	public PlayerCacheListener(final Statz plugin) {
+		this.plugin = plugin;
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void onPreLogin(final AsyncPlayerPreLoginEvent event) {
+		if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+			return;
+		}
+
+		UUID uuid = event.getUniqueId();
+
+		// This event is already async, so we can load the player before they actually join.
+		plugin.getCacheManager().loadPlayer(uuid);
+
+		// If the player never makes it to the server, they will be removed again after the next save.
+		plugin.getCacheManager().markForEviction(uuid);
+	}
+
+	@EventHandler(priority = EventPriority.LOWEST)
+	public void onJoin(final PlayerJoinEvent event) {
+		UUID uuid = event.getPlayer().getUniqueId();
+
+		plugin.getCacheManager().unmarkForEviction(uuid);
+
+		// Player was not loaded during login (or was evicted in the meantime)
+		plugin.getCacheManager().loadPlayerAsync(uuid);
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void onQuit(final PlayerQuitEvent event) {
+		// Keep the player cached until their last stats are saved.
+		plugin.getCacheManager().markForEviction(event.getPlayer().getUniqueId());
+	}
+}
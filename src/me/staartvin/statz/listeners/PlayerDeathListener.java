@@ -8,8 +8,6 @@ import org.bukkit.event.entity.PlayerDeathEvent;
 
 import me.staartvin.statz.Statz;
 import me.staartvin.statz.datamanager.PlayerStat;
-import me.staartvin.statz.datamanager.player.PlayerInfo;
-import me.staartvin.statz.util.StatzUtil;
 
 public class PlayerDeathListener implements Listener {
 
@@ -27,20 +25,7 @@ public class PlayerDeathListener implements Listener {
 		// Get player
 		final Player player = event.getEntity();
 
-		// Get player info.
-		final PlayerInfo info = plugin.getDataManager().getPlayerInfo(player.getUniqueId(), stat, StatzUtil.makeQuery("world", player.getWorld().getName()));
-
-		// Get current value of stat.
-		int currentValue = 0;
-
-		// Check if it is valid!
-		if (info.isValid()) {
-			currentValue += info.getTotalValue();
-			//currentValue = Integer.parseInt(info.getResults().getValue(0).getValue("value").toString());
-		}
-
 		// Update value to new stat.
-		plugin.getDataManager().setPlayerInfo(player.getUniqueId(), stat,
-				StatzUtil.makeQuery("uuid", player.getUniqueId().toString(), "value", (currentValue + 1), "world", player.getWorld().getName()));
+		plugin.getDataManager().incrementStat(player.getUniqueId(), stat, 1, "world", player.getWorld().getName());
 	}
 }
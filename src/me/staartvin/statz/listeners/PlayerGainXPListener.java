@@ -8,8 +8,6 @@ import org.bukkit.event.player.PlayerExpChangeEvent;
 
 import me.staartvin.statz.Statz;
 import me.staartvin.statz.datamanager.PlayerStat;
-import me.staartvin.statz.datamanager.player.PlayerInfo;
-import me.staartvin.statz.util.StatzUtil;
 
 public class PlayerGainXPListener implements Listener {
 
@@ -27,21 +25,9 @@ public class PlayerGainXPListener implements Listener {
 		// Get player
 		final Player player = (Player) event.getPlayer();
 
-		// Get player info.
-		final PlayerInfo info = plugin.getDataManager().getPlayerInfo(player.getUniqueId(), stat, StatzUtil.makeQuery("world", player.getWorld().getName()));
-
-		// Get current value of stat.
-		int currentValue = 0;
-
-		// Check if it is valid!
-		if (info.isValid()) {
-			currentValue += info.getTotalValue();
-		}
-
 		// Update value to new stat.
-		plugin.getDataManager().setPlayerInfo(player.getUniqueId(), stat,
-				StatzUtil.makeQuery("uuid", player.getUniqueId().toString(), "value", (currentValue + event.getAmount()), "world",
-						player.getWorld().getName()));
+		plugin.getDataManager().incrementStat(player.getUniqueId(), stat, event.getAmount(), "world",
+				player.getWorld().getName());
 
 	}
 }
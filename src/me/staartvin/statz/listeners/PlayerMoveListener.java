@@ -5,10 +5,9 @@ import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 
 import me.staartvin.statz.Statz;
-import me.staartvin.statz.datamanager.PlayerStat;
-import me.staartvin.statz.datamanager.player.PlayerInfo;
 import me.staartvin.statz.util.StatzUtil;
 
 public class PlayerMoveListener implements Listener {
@@ -22,42 +21,18 @@ public class PlayerMoveListener implements Listener {
 	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
 	public void onMove(final PlayerMoveEvent event) {
 
-		final PlayerStat stat = PlayerStat.DISTANCE_TRAVELLED;
-
 		// Get player
 		final Player player = (Player) event.getPlayer();
 
 		String movementType = StatzUtil.getMovementType(player);
 
-		double distTravelled;
-
-		try {
-			distTravelled = event.getFrom().distance(event.getTo());
-		} catch (IllegalArgumentException e) {
-			// Did not move correctly, so ignore it.
-			return;
-		}
-
-		if (distTravelled == 0) {
-			return;
-		}
-
-		// Get current value of stat.
-		double currentValue = 0;
-
-		// Get player info.
-		final PlayerInfo info = plugin.getDataManager().getPlayerInfo(player.getUniqueId(), stat,
-				StatzUtil.makeQuery("world", player.getWorld().getName(), "moveType", movementType));
-
-		// Check if it is valid!
-		if (info.isValid()) {
-			currentValue = info.getTotalValue();
-		}
-
-		// Update value to new stat.
-		plugin.getDataManager().setPlayerInfo(player.getUniqueId(), stat,
-				StatzUtil.makeQuery("uuid", player.getUniqueId().toString(), "value", (currentValue + distTravelled),
-						"moveType", movementType, "world", player.getWorld().getName()));
+		// Distance is collected and added to the pool once per second.
+		plugin.getMovementManager().addMovement(player.getUniqueId(), event.getFrom(), event.getTo(), movementType);
+	}
 
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void onQuit(final PlayerQuitEvent event) {
+		// Don't lose the last bit of movement.
+		plugin.getMovementManager().removePlayer(event.getPlayer().getUniqueId());
 	}
 }
@@ -8,8 +8,6 @@ import org.bukkit.event.player.PlayerShearEntityEvent;
 
 import me.staartvin.statz.Statz;
 import me.staartvin.statz.datamanager.PlayerStat;
-import me.staartvin.statz.datamanager.player.PlayerInfo;
-import me.staartvin.statz.util.StatzUtil;
 
 public class PlayerShearListener implements Listener {
 
@@ -27,21 +25,8 @@ public class PlayerShearListener implements Listener {
 		// Get player
 		final Player player = (Player) event.getPlayer();
 
-		// Get current value of stat.
-		int currentValue = 0;
-
-		// Get player info.
-		final PlayerInfo info = plugin.getDataManager().getPlayerInfo(player.getUniqueId(), stat,
-				StatzUtil.makeQuery("world", player.getWorld().getName()));
-
-		// Check if it is valid!
-		if (info.isValid()) {
-			currentValue += info.getTotalValue();
-		}
-
 		// Update value to new stat.
-		plugin.getDataManager().setPlayerInfo(player.getUniqueId(), stat, StatzUtil.makeQuery("uuid",
-				player.getUniqueId().toString(), "value", (currentValue + 1), "world", player.getWorld().getName()));
+		plugin.getDataManager().incrementStat(player.getUniqueId(), stat, 1, "world", player.getWorld().getName());
 
 	}
 }
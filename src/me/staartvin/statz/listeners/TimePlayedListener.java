@@ -0,0 +1,41 @@
+package me.staartvin.statz.listeners;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import me.staartvin.statz.Statz;
+
+/**
+ * Starts and ends the sessions of the {@link me.staartvin.statz.datamanager.TimePlayedManager}, which counts the time players play.
+ *
+ * @author Staartvin
+ *
+ */
+public class TimePlayedListener implements Listener {
+
+	private final Statz plugin;
+
+	public TimePlayedListener(final Statz plugin) {
+		this.plugin = plugin;
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void onJoin(final PlayerJoinEvent event) {
+		plugin.getTimePlayedManager().startSession(event.getPlayer());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void onChangedWorld(final PlayerChangedWorldEvent event) {
+		// Time played in the old world is added to that world.
+		plugin.getTimePlayedManager().changeWorld(event.getPlayer());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void onQuit(final PlayerQuitEvent event) {
+		plugin.getTimePlayedManager().endSession(event.getPlayer().getUniqueId());
+	}
+}
@@ -8,8 +8,6 @@ import org.bukkit.event.Listener;
 import org.bukkit.event.vehicle.VehicleMoveEvent;
 
 import me.staartvin.statz.Statz;
-import me.staartvin.statz.datamanager.PlayerStat;
-import me.staartvin.statz.datamanager.player.PlayerInfo;
 import me.staartvin.statz.util.StatzUtil;
 
 public class VehicleMoveListener implements Listener {
@@ -23,8 +21,6 @@ public class VehicleMoveListener implements Listener {
 	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
 	public void onMove(final VehicleMoveEvent event) {
 
-		final PlayerStat stat = PlayerStat.DISTANCE_TRAVELLED;
-
 		Vehicle vehicle = event.getVehicle();
 
 		if (vehicle.getPassenger() == null)
@@ -57,28 +53,7 @@ public class VehicleMoveListener implements Listener {
 		if (player == null || movementType == null)
 			return;
 
-		double distTravelled = event.getFrom().distance(event.getTo());
-
-		if (distTravelled == 0) {
-			return;
-		}
-
-		// Get player info.
-		final PlayerInfo info = plugin.getDataManager().getPlayerInfo(player.getUniqueId(), stat,
-				StatzUtil.makeQuery("world", player.getWorld().getName(), "moveType", movementType));
-
-		// Get current value of stat.
-		double currentValue = 0;
-
-		// Check if it is valid!
-		if (info.isValid()) {
-			currentValue += info.getTotalValue();
-		}
-
-		// Update value to new stat.
-		plugin.getDataManager().setPlayerInfo(player.getUniqueId(), stat,
-				StatzUtil.makeQuery("uuid", player.getUniqueId().toString(), "value", (currentValue + distTravelled),
-						"moveType", movementType, "world", player.getWorld().getName()));
-
+		// Distance is collected and added to the pool once per second.
+		plugin.getMovementManager().addMovement(player.getUniqueId(), event.getFrom(), event.getTo(), movementType);
 	}
 }
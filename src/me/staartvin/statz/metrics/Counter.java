@@ -0,0 +1,27 @@
+package me.staartvin.statz.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A number that only goes up, like the number of rows written to the database.
+ * <br>Threads that increment it at the same time don't wait for each other, so it can be used on the main thread.
+ *
+ * @author Staartvin
+ *
+ */
+public class Counter {
+
+	private final LongAdder count = new LongAdder();
+
+	public void increment() {
+		count.increment();
+	}
+
+	public void add(long amount) {
+		count.add(amount);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+}
@@ -0,0 +1,13 @@
+package me.staartvin.statz.metrics;
+
+/**
+ * A value that is read when the metrics are, like the number of rows in the pool. Reading it should be cheap and should
+ * not lock anything for long.
+ *
+ * @author Staartvin
+ *
+ */
+public interface Gauge {
+
+	double getValue();
+}
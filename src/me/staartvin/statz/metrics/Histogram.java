@@ -0,0 +1,171 @@
+package me.staartvin.statz.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how often values occur, like the time (in nanoseconds) a listener takes, so percentiles can be read without keeping
+ * every value.
+ * <br><br>Values are counted in buckets, like an HDR histogram: every power of two is split into 16 buckets, so a percentile
+ * is off by at most 1/16th (about 6%), whether it is 50 nanoseconds or 5 seconds. Recording a value is a few bit operations
+ * and an atomic increment. It never allocates or locks, so it can be done on the main thread.
+ *
+ * @author Staartvin
+ *
+ */
+public class Histogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	// Number of buckets, which covers every positive long.
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	private final LongAdder sum = new LongAdder();
+
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Record a value.
+	 * @param value Value to record. Negative values are recorded as zero.
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+
+		counts.incrementAndGet(indexOf(value));
+		sum.add(value);
+
+		long currentMax = max.get();
+
+		while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+			currentMax = max.get();
+		}
+	}
+
+	/**
+	 * Record the time that has passed since the given time.
+	 * @param startTime Time at which the timed action started, from {@link System#nanoTime()}
+	 */
+	public void recordSince(long startTime) {
+		this.record(System.nanoTime() - startTime);
+	}
+
+	/**
+	 * Get a copy of the counts, so several percentiles can be read from the same values.
+	 * @return the values that have been recorded so far.
+	 */
+	public Snapshot getSnapshot() {
+		long[] copy = new long[BUCKETS];
+
+		long count = 0;
+
+		for (int i = 0; i < copy.length; i++) {
+			copy[i] = counts.get(i);
+			count += copy[i];
+		}
+
+		return new Snapshot(copy, count, sum.sum(), max.get());
+	}
+
+	static int indexOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+
+		return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	/**
+	 * Get the highest value that is counted in a bucket.
+	 * @param index Index of the bucket
+	 * @return the upper bound of the bucket.
+	 */
+	static long upperBoundOf(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+
+		int shift = (index >> SUB_BUCKET_BITS) - 1;
+
+		long lowerBound = (long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1))) << shift;
+
+		return lowerBound + (1L << shift) - 1;
+	}
+
+	/**
+	 * The values of a {@link Histogram} at one point in time.
+	 */
+	public static class Snapshot {
+
+		private final long[] counts;
+
+		private final long count, sum, max;
+
+		private Snapshot(long[] counts, long count, long sum, long max) {
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		/**
+		 * Get a percentile of the recorded values.
+		 * @param percentile Percentile to get, between 0 and 100
+		 * @return the value below which the given percentage of values fall, or 0 when nothing was recorded.
+		 */
+		public long getPercentile(double percentile) {
+			long rank = Math.max(1, (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100.0));
+
+			long seen = 0;
+
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+
+				if (seen >= rank) {
+					return Math.min(max, upperBoundOf(i));
+				}
+			}
+
+			return max;
+		}
+
+		/**
+		 * Get the number of recorded values that are at most the given value. Values in the bucket of the given value are
+		 * only counted when the whole bucket is at most the given value.
+		 * @param value Highest value to count
+		 * @return the number of values that are at most the given value.
+		 */
+		public long getCountAtOrBelow(long value) {
+			long below = 0;
+
+			for (int i = 0; i < counts.length && upperBoundOf(i) <= value; i++) {
+				below += counts[i];
+			}
+
+			return below;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getSum() {
+			return sum;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		public double getMean() {
+			return count == 0 ? 0 : sum / (double) count;
+		}
+	}
+}
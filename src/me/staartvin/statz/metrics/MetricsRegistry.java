@@ -0,0 +1,183 @@
+package me.staartvin.statz.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import me.staartvin.statz.Statz;
+
+/**
+ * Keeps track of what Statz costs: how long listeners take, how big the pool is, how long flushes and database calls take, etc.
+ * <br><br>There are three kinds of metrics:
+ * <br>- {@link Counter}s count things, like rows written to the database.
+ * <br>- {@link Histogram}s count how long something took (in nanoseconds), so percentiles can be shown.
+ * <br>- {@link Gauge}s are read when the metrics are shown, like the size of the pool.
+ * <br><br>Metrics are created by the parts of Statz that record them, and are looked up by name. A name can have a single
+ * label (see {@link #name(String, String, String)}), for metrics that exist once per listener, stat, etc.
+ * <br>Recording a metric never locks, so it can be done on the main thread. The metrics can be shown with '/statz perf' and
+ * written to a file with '/statz perf dump'.
+ *
+ * @author Staartvin
+ *
+ */
+public class MetricsRegistry {
+
+	private final Statz plugin;
+
+	// Sorted by name, so metrics with the same name but another label are shown together.
+	private final ConcurrentSkipListMap<String, Counter> counters = new ConcurrentSkipListMap<>();
+	private final ConcurrentSkipListMap<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+	private final ConcurrentSkipListMap<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+
+	public MetricsRegistry(Statz plugin) {
+		this.plugin = plugin;
+	}
+
+	/**
+	 * Create the name of a metric with a label, e.g. 'listener.time{listener=PlayerMoveListener}'.
+	 * @param name Name of the metric
+	 * @param label Name of the label
+	 * @param value Value of the label
+	 * @return the full name of the metric.
+	 */
+	public static String name(String name, String label, String value) {
+		return name + "{" + label + "=" + value + "}";
+	}
+
+	/**
+	 * Get a counter, creating it if it does not exist yet.
+	 * @param name Name of the counter
+	 * @return the counter with the given name.
+	 */
+	public Counter getCounter(String name) {
+		Counter counter = counters.get(name);
+
+		if (counter == null) {
+			counters.putIfAbsent(name, new Counter());
+			counter = counters.get(name);
+		}
+
+		return counter;
+	}
+
+	/**
+	 * Get a histogram, creating it if it does not exist yet.
+	 * @param name Name of the histogram
+	 * @return the histogram with the given name.
+	 */
+	public Histogram getHistogram(String name) {
+		Histogram histogram = histograms.get(name);
+
+		if (histogram == null) {
+			histograms.putIfAbsent(name, new Histogram());
+			histogram = histograms.get(name);
+		}
+
+		return histogram;
+	}
+
+	/**
+	 * Add a gauge. A gauge that has the same name is replaced.
+	 * @param name Name of the gauge
+	 * @param gauge Gauge to add
+	 */
+	public void registerGauge(String name, Gauge gauge) {
+		gauges.put(name, gauge);
+	}
+
+	public NavigableMap<String, Counter> getCounters() {
+		return counters;
+	}
+
+	public NavigableMap<String, Histogram> getHistograms() {
+		return histograms;
+	}
+
+	public NavigableMap<String, Gauge> getGauges() {
+		return gauges;
+	}
+
+	/**
+	 * Get the current value of every metric, as lines of text. Times are shown in milliseconds.
+	 * @return a line for every metric, sorted by kind and name.
+	 */
+	public List<String> getSnapshot() {
+		List<String> lines = new ArrayList<>();
+
+		for (Entry<String, Gauge> entry : gauges.entrySet()) {
+			lines.add(entry.getKey() + " = " + formatValue(entry.getValue().getValue()));
+		}
+
+		for (Entry<String, Counter> entry : counters.entrySet()) {
+			lines.add(entry.getKey() + " = " + entry.getValue().getCount());
+		}
+
+		for (Entry<String, Histogram> entry : histograms.entrySet()) {
+			Histogram.Snapshot snapshot = entry.getValue().getSnapshot();
+
+			lines.add(entry.getKey() + ": count " + snapshot.getCount() + ", mean " + formatTime(snapshot.getMean())
+					+ ", p50 " + formatTime(snapshot.getPercentile(50)) + ", p99 " + formatTime(snapshot.getPercentile(99))
+					+ ", max " + formatTime(snapshot.getMax()) + " ms");
+		}
+
+		return lines;
+	}
+
+	/**
+	 * Write the current value of every metric (see {@link #getSnapshot()}) to a new file in the data folder of Statz.
+	 * @return the file that was written.
+	 * @throws IOException when the file could not be written.
+	 */
+	public File writeSnapshot() throws IOException {
+		File folder = new File(plugin.getDataFolder(), "metrics");
+
+		if (!folder.isDirectory() && !folder.mkdirs()) {
+			throw new IOException("Could not create " + folder);
+		}
+
+		Date now = new Date();
+
+		File file = new File(folder, "metrics-" + new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(now) + ".txt");
+
+		PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+
+		try {
+			writer.println("# Metrics of " + plugin.getDescription().getFullName() + " at " + now);
+
+			for (String line : this.getSnapshot()) {
+				writer.println(line);
+			}
+		} finally {
+			writer.close();
+		}
+
+		if (writer.checkError()) {
+			throw new IOException("Could not write " + file);
+		}
+
+		return file;
+	}
+
+	private static String formatValue(double value) {
+		if (value == Math.rint(value) && Math.abs(value) < Long.MAX_VALUE) {
+			return Long.toString((long) value);
+		}
+
+		return String.format("%.3f", value);
+	}
+
+	// Nanoseconds to milliseconds.
+	private static String formatTime(double nanos) {
+		return String.format("%.3f", nanos / 1000000.0);
+	}
+}
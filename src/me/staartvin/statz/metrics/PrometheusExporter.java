@@ -0,0 +1,309 @@
+package me.staartvin.statz.metrics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+
+import org.bukkit.ChatColor;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import me.staartvin.statz.Statz;
+
+/**
+ * Serves the metrics of a {@link MetricsRegistry} over HTTP, at '/metrics', in the text format of Prometheus, so they can
+ * be scraped.
+ * <br><br>Names are prefixed with 'statz_' and dots become underscores. A label of a metric (see
+ * {@link MetricsRegistry#name(String, String, String)}) becomes a Prometheus label, e.g. 'listener.time{listener=PlayerMoveListener}'
+ * becomes 'statz_listener_time_seconds{listener="PlayerMoveListener"}'.
+ * <br>- {@link Counter}s are counters, with '_total' at the end of their name. Rates, like rows written per second, are
+ * left to Prometheus (e.g. 'rate(statz_database_rows_written_total[1m])').
+ * <br>- {@link Gauge}s are gauges.
+ * <br>- {@link Histogram}s are summaries in seconds, with the 0.5, 0.9, 0.99 and 0.999 quantiles, a sum and a count.
+ * <br><br>The response is written to the connection as it is made (in chunks), so a scrape never builds the whole response
+ * in memory. Scrapes are handled one at a time on a thread of their own, never on the main thread.
+ *
+ * @author Staartvin
+ *
+ */
+public class PrometheusExporter {
+
+	private static final String PREFIX = "statz_";
+
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+	private static final String[] QUANTILE_LABELS = new String[QUANTILES.length];
+
+	static {
+		for (int i = 0; i < QUANTILES.length; i++) {
+			QUANTILE_LABELS[i] = "quantile=\"" + QUANTILES[i] + "\"";
+		}
+	}
+
+	private static final double NANOS_PER_SECOND = 1000000000.0;
+
+	private final Statz plugin;
+
+	private final MetricsRegistry metrics;
+
+	// Prometheus name and labels of every metric, by the name it has in the registry. Names are converted only once.
+	private final ConcurrentHashMap<String, String[]> names = new ConcurrentHashMap<>();
+
+	private HttpServer server;
+	private ExecutorService executor;
+
+	public PrometheusExporter(Statz plugin, MetricsRegistry metrics) {
+		this.plugin = plugin;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Start serving the metrics.
+	 * @param address Address to listen on, e.g. '127.0.0.1' to only allow scrapes from the machine itself
+	 * @param port Port to listen on
+	 * @throws IOException when the port could not be used.
+	 */
+	public void start(String address, int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(address, port), 0);
+
+		server.createContext("/metrics", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					handleScrape(exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Statz Metrics Exporter");
+
+				thread.setDaemon(true);
+
+				return thread;
+			}
+		});
+
+		server.setExecutor(executor);
+		server.start();
+
+		plugin.debugMessage(ChatColor.GREEN + "Serving metrics at http://" + address + ":" + port + "/metrics");
+	}
+
+	/**
+	 * Stop serving the metrics. Nothing happens when the exporter was not started.
+	 */
+	public void stop() {
+		if (server == null) {
+			return;
+		}
+
+		server.stop(0);
+		executor.shutdownNow();
+
+		server = null;
+		executor = null;
+	}
+
+	private void handleScrape(HttpExchange exchange) throws IOException {
+		if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+			exchange.getResponseHeaders().set("Allow", "GET");
+			exchange.sendResponseHeaders(405, -1);
+			return;
+		}
+
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+
+		// A length of 0 means the response is sent in chunks, as it is written.
+		exchange.sendResponseHeaders(200, 0);
+
+		Writer writer = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+
+		try {
+			this.write(writer);
+		} catch (IOException | RuntimeException e) {
+			// The response has been started, so the scraper can only notice the error by the response being cut off.
+			plugin.getLogger().log(Level.WARNING, "Could not write metrics:", e);
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Write every metric in the text format of Prometheus.
+	 * @param writer Writer to write to
+	 * @throws IOException when the writer could not be written to.
+	 */
+	public void write(Writer writer) throws IOException {
+		this.writeMetrics(writer, metrics.getCounters(), "_total", "counter");
+		this.writeMetrics(writer, metrics.getGauges(), "", "gauge");
+		this.writeMetrics(writer, metrics.getHistograms(), "_seconds", "summary");
+	}
+
+	/**
+	 * Write metrics of one kind. Prometheus wants all metrics of a name (with any label) right after each other, below a
+	 * single type line. They are not always next to each other in the map, as 'a.b_c' sorts between 'a.b' and 'a.b{x=y}'.
+	 */
+	private void writeMetrics(Writer writer, NavigableMap<String, ?> map, String suffix, String type) throws IOException {
+		for (String key : map.keySet()) {
+			int labelStart = key.indexOf('{');
+
+			String family = labelStart < 0 ? key : key.substring(0, labelStart);
+
+			// The first metric of a name writes the others.
+			if (labelStart >= 0 && (map.containsKey(family) || !key.equals(map.ceilingKey(family + "{")))) {
+				continue;
+			}
+
+			writeType(writer, this.convertName(key)[0], suffix, type);
+
+			Object metric = map.get(family);
+
+			if (metric != null) {
+				this.writeMetric(writer, family, metric);
+			}
+
+			for (Entry<String, ?> entry : map.subMap(family + "{", family + "|").entrySet()) {
+				this.writeMetric(writer, entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	private void writeMetric(Writer writer, String key, Object metric) throws IOException {
+		String[] name = this.convertName(key);
+
+		if (metric instanceof Counter) {
+			writeSample(writer, name[0], "_total", name[1], null, ((Counter) metric).getCount());
+		} else if (metric instanceof Gauge) {
+			writeSample(writer, name[0], "", name[1], null, ((Gauge) metric).getValue());
+		} else if (metric instanceof Histogram) {
+			Histogram.Snapshot snapshot = ((Histogram) metric).getSnapshot();
+
+			for (int i = 0; i < QUANTILES.length; i++) {
+				writeSample(writer, name[0], "_seconds", name[1], QUANTILE_LABELS[i],
+						snapshot.getPercentile(QUANTILES[i] * 100) / NANOS_PER_SECOND);
+			}
+
+			writeSample(writer, name[0], "_seconds_sum", name[1], null, snapshot.getSum() / NANOS_PER_SECOND);
+			writeSample(writer, name[0], "_seconds_count", name[1], null, snapshot.getCount());
+		}
+	}
+
+	/**
+	 * Get the Prometheus name and labels of a metric.
+	 * @return the name, and the labels (without braces) or null if the metric has no label.
+	 */
+	private String[] convertName(String key) {
+		String[] name = names.get(key);
+
+		if (name == null) {
+			int labelStart = key.indexOf('{');
+
+			if (labelStart < 0) {
+				name = new String[] { PREFIX + sanitize(key), null };
+			} else {
+				int valueStart = key.indexOf('=', labelStart);
+
+				name = new String[] { PREFIX + sanitize(key.substring(0, labelStart)),
+						sanitize(key.substring(labelStart + 1, valueStart)) + "=\""
+								+ escape(key.substring(valueStart + 1, key.length() - 1)) + "\"" };
+			}
+
+			names.putIfAbsent(key, name);
+		}
+
+		return name;
+	}
+
+	// Replace characters Prometheus does not allow in names.
+	private static String sanitize(String name) {
+		StringBuilder builder = new StringBuilder(name.length());
+
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+
+			builder.append((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' ? c : '_');
+		}
+
+		return builder.toString();
+	}
+
+	// Escape a label value.
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	private static void writeType(Writer writer, String name, String suffix, String type) throws IOException {
+		writer.write("# TYPE ");
+		writer.write(name);
+		writer.write(suffix);
+		writer.write(' ');
+		writer.write(type);
+		writer.write('\n');
+	}
+
+	private static void writeSample(Writer writer, String name, String suffix, String labels, String extraLabel,
+			double value) throws IOException {
+		writeName(writer, name, suffix, labels, extraLabel);
+
+		if (value == Math.rint(value) && Math.abs(value) < Long.MAX_VALUE) {
+			writer.write(Long.toString((long) value));
+		} else if (Double.isNaN(value)) {
+			writer.write("NaN");
+		} else if (Double.isInfinite(value)) {
+			writer.write(value > 0 ? "+Inf" : "-Inf");
+		} else {
+			writer.write(Double.toString(value));
+		}
+
+		writer.write('\n');
+	}
+
+	private static void writeSample(Writer writer, String name, String suffix, String labels, String extraLabel,
+			long value) throws IOException {
+		writeName(writer, name, suffix, labels, extraLabel);
+		writer.write(Long.toString(value));
+		writer.write('\n');
+	}
+
+	// Write the name of a sample, e.g. 'statz_pool_flush_time_seconds{quantile="0.5"} '.
+	private static void writeName(Writer writer, String name, String suffix, String labels, String extraLabel)
+			throws IOException {
+		writer.write(name);
+		writer.write(suffix);
+
+		if (labels != null || extraLabel != null) {
+			writer.write('{');
+
+			if (labels != null) {
+				writer.write(labels);
+			}
+
+			if (extraLabel != null) {
+				if (labels != null) {
+					writer.write(',');
+				}
+
+				writer.write(extraLabel);
+			}
+
+			writer.write('}');
+		}
+
+		writer.write(' ');
+	}
+}
@@ -0,0 +1,83 @@
+package me.staartvin.statz.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.staartvin.statz.database.DatabaseConnector;
+import me.staartvin.statz.database.datatype.Query;
+import me.staartvin.statz.database.datatype.Table;
+import me.staartvin.statz.datamanager.PlayerStat;
+
+/**
+ * Measures how many rows per second {@link DatabaseConnector#setBatchObjects(Table, List)} writes to an SQLite database,
+ * for different sizes of the batches that are sent to the database ('database.batch rows').
+ * <br>Every call writes the same queries, so after the first call all rows already exist and are overwritten.
+ *
+ * @author Staartvin
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BatchWriteBenchmark {
+
+	private static final int ROWS_PER_CALL = 1000;
+
+	@Param({ "100", "1000" })
+	public int batchRows;
+
+	private BenchmarkPlugin plugin;
+	private DatabaseConnector connector;
+	private Table table;
+
+	private List<Query> queries;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		plugin = BenchmarkPlugin.start("journal.enabled", false, "database.batch rows", batchRows);
+		connector = plugin.getSqlConnector();
+		table = connector.getTable(PlayerStat.DISTANCE_TRAVELLED.getTableName());
+
+		queries = new ArrayList<>(ROWS_PER_CALL);
+
+		String[] uuids = MovementData.createUUIDs(ROWS_PER_CALL / MovementData.MOVE_TYPES.length + 1);
+
+		for (int i = 0; i < ROWS_PER_CALL; i++) {
+			// A row for every move type of a player, in the same world.
+			int row = i % MovementData.MOVE_TYPES.length;
+
+			queries.add(MovementData.createQuery(uuids[i / MovementData.MOVE_TYPES.length], row, i));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		plugin.stop();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS_PER_CALL)
+	public void setBatchObjects() {
+		connector.setBatchObjects(table, queries);
+	}
+}
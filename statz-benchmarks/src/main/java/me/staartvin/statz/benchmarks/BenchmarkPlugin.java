@@ -0,0 +1,111 @@
+package me.staartvin.statz.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.logging.Logger;
+
+import org.bukkit.Server;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPluginLoader;
+import org.bukkit.scheduler.BukkitScheduler;
+
+import me.staartvin.statz.Statz;
+import me.staartvin.statz.config.ConfigHandler;
+import me.staartvin.statz.database.SQLiteConnector;
+import me.staartvin.statz.datamanager.DataManager;
+import me.staartvin.statz.datamanager.DataPoolManager;
+import me.staartvin.statz.datamanager.FlushManager;
+import me.staartvin.statz.datamanager.LeaderboardManager;
+import me.staartvin.statz.datamanager.MovementManager;
+import me.staartvin.statz.datamanager.PlayerCacheManager;
+import me.staartvin.statz.datamanager.TimePlayedManager;
+import me.staartvin.statz.metrics.MetricsRegistry;
+
+/**
+ * Statz without a server, so benchmarks can use the real pool, cache and connector.
+ * <br><br>It is started like {@link Statz#onEnable()} does, with an SQLite database in a temporary folder. No listeners are
+ * registered and no tasks are scheduled: the server has no players and its scheduler never runs anything, so benchmarks
+ * decide themselves when the pool is saved.
+ *
+ * @author Staartvin
+ *
+ */
+public class BenchmarkPlugin extends Statz {
+
+	private BenchmarkPlugin(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder) {
+		super(loader, description, dataFolder, new File(dataFolder, "Statz.jar"));
+	}
+
+	/**
+	 * Start Statz with an empty database.
+	 * @param settings Config options and their values, set before anything is started (e.g. "journal.enabled", false)
+	 * @return a started plugin. Call {@link #stop()} when the benchmark is done.
+	 * @throws IOException when the data folder could not be created.
+	 */
+	public static BenchmarkPlugin start(Object... settings) throws IOException {
+		File dataFolder = Files.createTempDirectory("statz-benchmark").toFile();
+
+		BenchmarkPlugin plugin = new BenchmarkPlugin(new JavaPluginLoader(createServer()),
+				new PluginDescriptionFile("Statz", "benchmark", Statz.class.getName()), dataFolder);
+
+		plugin.setConfigHandler(new ConfigHandler(plugin));
+		plugin.getConfigHandler().loadConfig();
+
+		for (int i = 0; i < settings.length; i += 2) {
+			plugin.getConfig().set(settings[i].toString(), settings[i + 1]);
+		}
+
+		plugin.setMetricsRegistry(new MetricsRegistry(plugin));
+
+		plugin.setSqlConnector(new SQLiteConnector(plugin));
+		plugin.setDataPoolManager(new DataPoolManager(plugin));
+		plugin.setCacheManager(new PlayerCacheManager(plugin));
+		plugin.setMovementManager(new MovementManager(plugin));
+		plugin.setTimePlayedManager(new TimePlayedManager(plugin));
+		plugin.setLeaderboardManager(new LeaderboardManager(plugin));
+		plugin.setFlushManager(new FlushManager(plugin));
+
+		plugin.getSqlConnector().loadTables();
+		plugin.getSqlConnector().load();
+
+		plugin.setDataManager(new DataManager(plugin));
+
+		return plugin;
+	}
+
+	/**
+	 * Stop Statz and delete its data folder. The pool is not saved.
+	 */
+	public void stop() {
+		this.getSqlConnector().shutdown(10);
+		this.getDataPoolManager().closeJournal();
+		this.getSqlConnector().close();
+
+		delete(this.getDataFolder());
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+
+		file.delete();
+	}
+
+	@Override
+	public void debugMessage(String message) {
+		// There is no console to send it to.
+	}
+
+	// A server without players, whose scheduler ignores every task.
+	private static Server createServer() {
+		return Mocks.create(Server.class, "getLogger", Logger.getLogger("Statz benchmark"), "getScheduler",
+				Mocks.create(BukkitScheduler.class), "getOnlinePlayers", Collections.emptyList());
+	}
+}
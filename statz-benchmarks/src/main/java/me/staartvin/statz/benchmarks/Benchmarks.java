@@ -0,0 +1,61 @@
+package me.staartvin.statz.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks, taking the same arguments as JMH itself (see 'java -jar benchmarks.jar -h').
+ * <br>Unless other options are given, every benchmark is reported in operations per second, and the GC profiler adds the
+ * bytes allocated per operation ('gc.alloc.rate.norm'). So results of two builds can be compared directly.
+ *
+ * @author Staartvin
+ *
+ */
+public class Benchmarks {
+
+	public static void main(String[] args) throws RunnerException {
+		CommandLineOptions commandLine;
+
+		try {
+			commandLine = new CommandLineOptions(args);
+		} catch (CommandLineOptionException e) {
+			System.err.println("Error parsing command line: " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+
+		if (commandLine.shouldHelp()) {
+			commandLine.showHelp();
+			return;
+		}
+
+		if (commandLine.shouldList()) {
+			new Runner(commandLine).list();
+			return;
+		}
+
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+
+		if (commandLine.getBenchModes().isEmpty()) {
+			options.mode(Mode.Throughput);
+		}
+
+		if (!commandLine.getTimeUnit().hasValue()) {
+			options.timeUnit(TimeUnit.SECONDS);
+		}
+
+		if (commandLine.getProfilers().isEmpty()) {
+			options.addProfiler(GCProfiler.class);
+		}
+
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,542 @@
+package me.staartvin.statz.benchmarks;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Chicken;
+import org.bukkit.entity.Cow;
+import org.bukkit.entity.Creeper;
+import org.bukkit.entity.Enderman;
+import org.bukkit.entity.HumanEntity;
+import org.bukkit.entity.Item;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Pig;
+import org.bukkit.entity.Player;
+import org.bukkit.entity.Sheep;
+import org.bukkit.entity.Skeleton;
+import org.bukkit.entity.Spider;
+import org.bukkit.entity.Zombie;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.entity.EntityDamageEvent;
+import org.bukkit.event.entity.EntityDamageEvent.DamageCause;
+import org.bukkit.event.entity.EntityDeathEvent;
+import org.bukkit.event.inventory.ClickType;
+import org.bukkit.event.inventory.CraftItemEvent;
+import org.bukkit.event.inventory.InventoryAction;
+import org.bukkit.event.inventory.InventoryType;
+import org.bukkit.event.inventory.InventoryType.SlotType;
+import org.bukkit.event.player.PlayerExpChangeEvent;
+import org.bukkit.event.player.PlayerFishEvent;
+import org.bukkit.event.player.PlayerItemConsumeEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.inventory.EquipmentSlot;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryView;
+import org.bukkit.inventory.ItemStack;
+
+import me.staartvin.statz.datamanager.FlushManager;
+import me.staartvin.statz.listeners.CraftItemListener;
+import me.staartvin.statz.listeners.EatFoodListener;
+import me.staartvin.statz.listeners.EntityDeathListener;
+import me.staartvin.statz.listeners.PlayerBlockBreakListener;
+import me.staartvin.statz.listeners.PlayerBlockPlaceListener;
+import me.staartvin.statz.listeners.PlayerFishListener;
+import me.staartvin.statz.listeners.PlayerGainXPListener;
+import me.staartvin.statz.listeners.PlayerMoveListener;
+import me.staartvin.statz.listeners.PlayerTakeDamageListener;
+import me.staartvin.statz.metrics.Histogram;
+
+/**
+ * Simulates a server full of players, to see how Statz holds up under a given load without running a server.
+ * <br><br>Every tick (20 per second, in real time), the players cause events that are handed to the listeners of Statz,
+ * like Bukkit would on the main thread. Once a second, the collected movement is published and the {@link FlushManager}
+ * decides whether the pool is sent to the database, an SQLite file in a temporary folder.
+ * <br>Events are Bukkit's own event classes, filled with mocked players, worlds, blocks and mobs (see {@link Mocks}).
+ * Only the listener itself is timed, not the creation of the event or the dispatching by Bukkit.
+ * <br><br>Run it with 'java -cp target/benchmarks.jar me.staartvin.statz.benchmarks.LoadGenerator [option=value ...]'.
+ * Options are:
+ * <br>- players: number of players online (500)
+ * <br>- worlds: number of worlds the players are spread over (3)
+ * <br>- seconds: how long to run (60)
+ * <br>- interval: seconds between two lines of the timeline (5)
+ * <br>- journal: whether the pool is journaled (true)
+ * <br>- move, break, place, kill, damage, food, fish, craft, xp: events per player per second of that type
+ * <br><br>At the end, it reports the p50, p99 and maximum time per event type, the duration of every flush, and the size
+ * of the pool and the heap over time.
+ *
+ * @author Staartvin
+ *
+ */
+public class LoadGenerator {
+
+	private static final int TICKS_PER_SECOND = 20;
+	private static final long NANOS_PER_TICK = 1000000000L / TICKS_PER_SECOND;
+
+	/**
+	 * The events players cause, with the number of times per second a player causes them by default.
+	 */
+	private enum EventType {
+		MOVE(10), BREAK(0.3), PLACE(0.3), KILL(0.05), DAMAGE(0.2), FOOD(0.02), FISH(0.01), CRAFT(0.03), XP(0.3);
+
+		private final double defaultRate;
+
+		EventType(double defaultRate) {
+			this.defaultRate = defaultRate;
+		}
+
+		public String getOption() {
+			return this.name().toLowerCase(Locale.ENGLISH);
+		}
+	}
+
+	private static final Class<?>[] MOBS = { Zombie.class, Skeleton.class, Creeper.class, Spider.class, Enderman.class,
+			Cow.class, Pig.class, Sheep.class, Chicken.class };
+
+	private static final int[] BLOCK_TYPES = { 1, 2, 3, 4, 5, 12, 13, 14, 15, 16, 17, 18, 20, 24, 45, 98 };
+
+	private static final Material[] FOODS = { Material.APPLE, Material.BREAD, Material.BAKED_POTATO,
+			Material.COOKED_BEEF, Material.COOKED_CHICKEN, Material.GRILLED_PORK, Material.CARROT_ITEM };
+
+	private static final Material[] CRAFTED_ITEMS = { Material.WORKBENCH, Material.STICK, Material.TORCH,
+			Material.WOOD, Material.FURNACE, Material.CHEST, Material.IRON_PICKAXE, Material.BREAD };
+
+	private static final DamageCause[] DAMAGE_CAUSES = { DamageCause.FALL, DamageCause.ENTITY_ATTACK,
+			DamageCause.PROJECTILE, DamageCause.DROWNING, DamageCause.FIRE_TICK, DamageCause.LAVA };
+
+	private final int players, worlds, seconds, interval;
+	private final boolean journal;
+
+	private final EnumMap<EventType, Double> rates = new EnumMap<>(EventType.class);
+
+	private final EnumMap<EventType, Histogram> latencies = new EnumMap<>(EventType.class);
+
+	// Time of every event, whatever its type.
+	private final Histogram allLatencies = new Histogram();
+
+	// Number of events of every type that are due, but have not been caused yet.
+	private final EnumMap<EventType, Double> dueEvents = new EnumMap<>(EventType.class);
+
+	private final Random random = new Random(42);
+
+	private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+	private BenchmarkPlugin plugin;
+
+	private SimulatedPlayer[] onlinePlayers;
+	private Block[][] blocks;
+
+	private PlayerMoveListener moveListener;
+	private PlayerBlockBreakListener breakListener;
+	private PlayerBlockPlaceListener placeListener;
+	private EntityDeathListener deathListener;
+	private PlayerTakeDamageListener damageListener;
+	private EatFoodListener foodListener;
+	private PlayerFishListener fishListener;
+	private CraftItemListener craftListener;
+	private PlayerGainXPListener xpListener;
+
+	private long lateTicks, peakHeap;
+	private int peakPoolSize;
+
+	public LoadGenerator(Map<String, String> options) {
+		players = Math.max(1, Integer.parseInt(option(options, "players", "500")));
+		worlds = Math.max(1, Integer.parseInt(option(options, "worlds", "3")));
+		seconds = Integer.parseInt(option(options, "seconds", "60"));
+		interval = Math.max(1, Integer.parseInt(option(options, "interval", "5")));
+		journal = Boolean.parseBoolean(option(options, "journal", "true"));
+
+		for (EventType type : EventType.values()) {
+			rates.put(type, Double.parseDouble(option(options, type.getOption(), Double.toString(type.defaultRate))));
+			latencies.put(type, new Histogram());
+		}
+
+		if (!options.isEmpty()) {
+			throw new IllegalArgumentException("Unknown option(s): " + options.keySet());
+		}
+	}
+
+	private static String option(Map<String, String> options, String name, String defaultValue) {
+		String value = options.remove(name);
+
+		return value == null ? defaultValue : value;
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Map<String, String> options = new HashMap<>();
+
+		for (String arg : args) {
+			int split = arg.indexOf('=');
+
+			if (split <= 0) {
+				System.err.println("Options should look like 'players=500', not '" + arg + "'.");
+				System.exit(1);
+			}
+
+			options.put(arg.substring(0, split).toLowerCase(Locale.ENGLISH), arg.substring(split + 1));
+		}
+
+		LoadGenerator generator;
+
+		try {
+			generator = new LoadGenerator(options);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Options are players, worlds, seconds, interval, journal and the rate of every event type "
+					+ "(move, break, place, kill, damage, food, fish, craft, xp).");
+			System.exit(1);
+			return;
+		}
+
+		generator.run();
+	}
+
+	/**
+	 * Start Statz, simulate the players for the configured time and print the results.
+	 * @throws IOException when Statz could not be started.
+	 * @throws InterruptedException when the simulation was interrupted.
+	 */
+	public void run() throws IOException, InterruptedException {
+		plugin = BenchmarkPlugin.start("journal.enabled", journal);
+
+		try {
+			this.setUp();
+
+			System.out.println("Simulating " + players + " players in " + worlds + " world(s) for " + seconds
+					+ " seconds, journal " + (journal ? "on" : "off") + ".");
+			System.out.println(String.format("%8s %12s %12s %10s", "time", "pool rows", "heap (MB)", "flushes"));
+
+			long start = System.nanoTime();
+
+			for (long tick = 0; tick < (long) seconds * TICKS_PER_SECOND; tick++) {
+				this.tick();
+
+				if ((tick + 1) % TICKS_PER_SECOND == 0) {
+					// Tasks that run once a second on the main thread.
+					plugin.getMovementManager().publishAll();
+					plugin.getFlushManager().check();
+
+					this.sample((tick + 1) / TICKS_PER_SECOND);
+				}
+
+				long sleep = start + (tick + 1) * NANOS_PER_TICK - System.nanoTime();
+
+				if (sleep > 0) {
+					Thread.sleep(sleep / 1000000, (int) (sleep % 1000000));
+				} else {
+					lateTicks++;
+				}
+			}
+
+			// Flushes that were done while the players were online.
+			Histogram.Snapshot flushes = this.getFlushTimes();
+
+			// Whatever is left is written when the server stops.
+			long flushStart = System.nanoTime();
+			int leftRows = plugin.getDataPoolManager().getPoolSize();
+
+			plugin.getMovementManager().publishAll();
+			plugin.getDataPoolManager().forceSendPool();
+
+			this.report(flushes, leftRows, System.nanoTime() - flushStart);
+		} finally {
+			plugin.stop();
+		}
+	}
+
+	private void setUp() {
+		moveListener = new PlayerMoveListener(plugin);
+		breakListener = new PlayerBlockBreakListener(plugin);
+		placeListener = new PlayerBlockPlaceListener(plugin);
+		deathListener = new EntityDeathListener(plugin);
+		damageListener = new PlayerTakeDamageListener(plugin);
+		foodListener = new EatFoodListener(plugin);
+		fishListener = new PlayerFishListener(plugin);
+		craftListener = new CraftItemListener(plugin);
+		xpListener = new PlayerGainXPListener(plugin);
+
+		World[] worldMocks = new World[worlds];
+		blocks = new Block[worlds][BLOCK_TYPES.length];
+
+		for (int i = 0; i < worlds; i++) {
+			String name = (i == 0 ? "world" : "world_" + i);
+
+			worldMocks[i] = Mocks.create(World.class, "getName", name, "getUID", UUID.randomUUID());
+
+			for (int j = 0; j < BLOCK_TYPES.length; j++) {
+				blocks[i][j] = Mocks.create(Block.class, "getTypeId", BLOCK_TYPES[j], "getData", (byte) (j % 3),
+						"getWorld", worldMocks[i]);
+			}
+		}
+
+		onlinePlayers = new SimulatedPlayer[players];
+
+		for (int i = 0; i < players; i++) {
+			onlinePlayers[i] = new SimulatedPlayer("Player" + i, worldMocks[i % worlds], i % worlds, i % 10 == 0);
+
+			// Online players are always cached.
+			plugin.getCacheManager().loadPlayer(onlinePlayers[i].uuid);
+		}
+	}
+
+	private void tick() {
+		for (EventType type : EventType.values()) {
+			Double due = dueEvents.get(type);
+
+			double events = (due == null ? 0 : due) + rates.get(type) * players / TICKS_PER_SECOND;
+
+			for (; events >= 1; events--) {
+				this.fire(type, onlinePlayers[random.nextInt(players)]);
+			}
+
+			dueEvents.put(type, events);
+		}
+	}
+
+	private void fire(EventType type, SimulatedPlayer player) {
+		long start;
+
+		switch (type) {
+			case MOVE: {
+				Location from = player.location;
+				Location to = new Location(from.getWorld(), from.getX() + random.nextDouble() * 0.3, from.getY(),
+						from.getZ() + random.nextDouble() * 0.3);
+
+				player.location = to;
+
+				PlayerMoveEvent event = new PlayerMoveEvent(player.player, from, to);
+
+				start = System.nanoTime();
+				moveListener.onMove(event);
+				break;
+			}
+			case BREAK: {
+				BlockBreakEvent event = new BlockBreakEvent(this.randomBlock(player), player.player);
+
+				start = System.nanoTime();
+				breakListener.onBlockBreak(event);
+				break;
+			}
+			case PLACE: {
+				BlockPlaceEvent event = new BlockPlaceEvent(this.randomBlock(player), null, null, null, player.player,
+						true, EquipmentSlot.HAND);
+
+				start = System.nanoTime();
+				placeListener.onBlockPlace(event);
+				break;
+			}
+			case KILL: {
+				EntityDeathEvent event = new EntityDeathEvent(this.createVictim(player), new ArrayList<ItemStack>());
+
+				start = System.nanoTime();
+				deathListener.onDie(event);
+				break;
+			}
+			case DAMAGE: {
+				EntityDamageEvent event = new EntityDamageEvent(player.player,
+						DAMAGE_CAUSES[random.nextInt(DAMAGE_CAUSES.length)], 1.0 + random.nextInt(6));
+
+				start = System.nanoTime();
+				damageListener.onDamage(event);
+				break;
+			}
+			case FOOD: {
+				PlayerItemConsumeEvent event = new PlayerItemConsumeEvent(player.player,
+						new ItemStack(FOODS[random.nextInt(FOODS.length)]));
+
+				start = System.nanoTime();
+				foodListener.onEat(event);
+				break;
+			}
+			case FISH: {
+				Item caught = Mocks.create(Item.class, "getItemStack",
+						new ItemStack(Material.RAW_FISH, 1, (short) random.nextInt(4)));
+
+				PlayerFishEvent event = new PlayerFishEvent(player.player, caught, null, PlayerFishEvent.State.CAUGHT_FISH);
+
+				start = System.nanoTime();
+				fishListener.onFishCaught(event);
+				break;
+			}
+			case CRAFT: {
+				CraftItemEvent event = new CraftItemEvent(null,
+						new CraftingView(player.player, new ItemStack(CRAFTED_ITEMS[random.nextInt(CRAFTED_ITEMS.length)])),
+						SlotType.RESULT, 0, ClickType.LEFT, InventoryAction.PICKUP_ALL);
+
+				start = System.nanoTime();
+				craftListener.onCraft(event);
+				break;
+			}
+			case XP: {
+				PlayerExpChangeEvent event = new PlayerExpChangeEvent(player.player, 1 + random.nextInt(7));
+
+				start = System.nanoTime();
+				xpListener.onXPGain(event);
+				break;
+			}
+			default:
+				return;
+		}
+
+		long time = System.nanoTime() - start;
+
+		latencies.get(type).record(time);
+		allLatencies.record(time);
+	}
+
+	private Block randomBlock(SimulatedPlayer player) {
+		Block[] worldBlocks = blocks[player.worldIndex];
+
+		return worldBlocks[random.nextInt(worldBlocks.length)];
+	}
+
+	// A mob (or now and then another player) that was just killed by the given player.
+	private LivingEntity createVictim(SimulatedPlayer killer) {
+		Map<String, Object> answers;
+		LivingEntity victim;
+
+		if (random.nextInt(10) == 0) {
+			SimulatedPlayer other = onlinePlayers[random.nextInt(players)];
+
+			answers = other.answers;
+			victim = other.player;
+		} else {
+			Class<?> mob = MOBS[random.nextInt(MOBS.length)];
+
+			answers = new HashMap<>();
+			answers.put("getName", mob.getSimpleName());
+
+			victim = (LivingEntity) Mocks.create(mob, answers);
+		}
+
+		answers.put("getLastDamageCause",
+				new EntityDamageByEntityEvent(killer.player, victim, DamageCause.ENTITY_ATTACK, 5.0));
+
+		return victim;
+	}
+
+	// Time every flush took, as recorded by the pool itself.
+	private Histogram.Snapshot getFlushTimes() {
+		return plugin.getMetricsRegistry().getHistogram("pool.flush_time").getSnapshot();
+	}
+
+	private void sample(long second) {
+		int poolSize = plugin.getDataPoolManager().getPoolSize();
+		long heap = memory.getHeapMemoryUsage().getUsed();
+
+		peakPoolSize = Math.max(peakPoolSize, poolSize);
+		peakHeap = Math.max(peakHeap, heap);
+
+		if (second % interval == 0) {
+			System.out.println(String.format("%7ds %12d %12.1f %10d", second, poolSize, heap / (1024.0 * 1024.0),
+					this.getFlushTimes().getCount()));
+		}
+	}
+
+	private void report(Histogram.Snapshot flushes, int leftRows, long lastFlushTime) {
+		System.out.println();
+		System.out.println(String.format("%-8s %10s %10s %10s %10s %10s", "event", "count", "per sec", "p50 (us)",
+				"p99 (us)", "max (us)"));
+
+		for (EventType type : EventType.values()) {
+			System.out.println(this.formatLatencies(type.getOption(), latencies.get(type).getSnapshot()));
+		}
+
+		System.out.println(this.formatLatencies("all", allLatencies.getSnapshot()));
+
+		FlushManager flushManager = plugin.getFlushManager();
+
+		System.out.println();
+		System.out.println(String.format("Flushes: %d, p50 %.1f ms, p99 %.1f ms, max %.1f ms. The last flush wrote %d rows in %.1f ms.",
+				flushes.getCount(), flushes.getPercentile(50) / 1e6, flushes.getPercentile(99) / 1e6,
+				flushes.getMax() / 1e6, leftRows, lastFlushTime / 1e6));
+		System.out.println(String.format("Batches: %d written, %d failed, %.1f ms on average. Flush interval ended at %d seconds.",
+				flushManager.getBatchesWritten(), flushManager.getBatchesFailed(), flushManager.getAverageBatchTime(),
+				flushManager.getInterval()));
+		System.out.println(String.format("Peak pool size: %d rows. Peak heap: %.1f MB. Ticks that ran late: %d of %d.",
+				peakPoolSize, peakHeap / (1024.0 * 1024.0), lateTicks, (long) seconds * TICKS_PER_SECOND));
+	}
+
+	private String formatLatencies(String name, Histogram.Snapshot histogram) {
+		return String.format("%-8s %10d %10.1f %10.2f %10.2f %10.2f", name, histogram.getCount(),
+				histogram.getCount() / (double) Math.max(1, seconds), histogram.getPercentile(50) / 1e3,
+				histogram.getPercentile(99) / 1e3, histogram.getMax() / 1e3);
+	}
+
+	/**
+	 * A player that is online during the whole simulation, walking around in a single world.
+	 */
+	private static class SimulatedPlayer {
+
+		private final UUID uuid = UUID.randomUUID();
+
+		private final Map<String, Object> answers = new HashMap<>();
+
+		private final Player player;
+
+		private final int worldIndex;
+
+		private Location location;
+
+		private SimulatedPlayer(String name, World world, int worldIndex, boolean flying) {
+			answers.put("getUniqueId", uuid);
+			answers.put("getName", name);
+			answers.put("getWorld", world);
+			answers.put("isFlying", flying);
+			answers.put("isOnline", true);
+
+			player = Mocks.create(Player.class, answers);
+
+			this.worldIndex = worldIndex;
+
+			location = new Location(world, 0, 64, 0);
+		}
+	}
+
+	/**
+	 * The crafting table of a player, with the crafted item in the result slot.
+	 */
+	private static class CraftingView extends InventoryView {
+
+		private final Player player;
+		private final Inventory top;
+
+		private CraftingView(Player player, ItemStack result) {
+			this.player = player;
+			this.top = Mocks.create(Inventory.class, "getSize", 10, "getItem", result);
+		}
+
+		@Override
+		public Inventory getTopInventory() {
+			return top;
+		}
+
+		@Override
+		public Inventory getBottomInventory() {
+			return player.getInventory();
+		}
+
+		@Override
+		public HumanEntity getPlayer() {
+			return player;
+		}
+
+		@Override
+		public InventoryType getType() {
+			return InventoryType.WORKBENCH;
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package me.staartvin.statz.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Creates stand-ins for Bukkit interfaces (servers, players, worlds, blocks, ...), so Statz can run without a server.
+ * <br><br>A mock answers a method with the value it was given for the name of that method. Every other method returns
+ * null, false or zero, and does nothing else.
+ *
+ * @author Staartvin
+ *
+ */
+public class Mocks {
+
+	/**
+	 * Create a mock of an interface.
+	 * @param type Interface to mock
+	 * @param answers Names of methods, each followed by the value the method should return
+	 * @return a mock that returns the given answers.
+	 */
+	public static <T> T create(Class<T> type, Object... answers) {
+		Map<String, Object> answerMap = new HashMap<>();
+
+		for (int i = 0; i < answers.length; i += 2) {
+			answerMap.put(answers[i].toString(), answers[i + 1]);
+		}
+
+		return create(type, answerMap);
+	}
+
+	/**
+	 * Create a mock of an interface, whose answers can be changed after it is created.
+	 * @param type Interface to mock
+	 * @param answers Value each method should return, by the name of the method. Changes to the map are seen by the mock.
+	 * @return a mock that returns the answers in the map.
+	 */
+	public static <T> T create(Class<T> type, final Map<String, Object> answers) {
+		return type.cast(Proxy.newProxyInstance(Mocks.class.getClassLoader(), new Class<?>[] { type },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						Object answer = answers.get(method.getName());
+
+						if (answer != null || answers.containsKey(method.getName())) {
+							return answer;
+						}
+
+						return defaultValue(proxy, method, args);
+					}
+				}));
+	}
+
+	private static Object defaultValue(Object proxy, Method method, Object[] args) {
+		if (method.getName().equals("equals") && args != null && args.length == 1) {
+			return proxy == args[0];
+		} else if (method.getName().equals("hashCode") && args == null) {
+			return System.identityHashCode(proxy);
+		} else if (method.getName().equals("toString") && args == null) {
+			return "Mock " + proxy.getClass().getInterfaces()[0].getSimpleName();
+		}
+
+		Class<?> type = method.getReturnType();
+
+		if (type == boolean.class) {
+			return false;
+		} else if (type == int.class) {
+			return 0;
+		} else if (type == long.class) {
+			return 0L;
+		} else if (type == double.class) {
+			return 0.0;
+		} else if (type == float.class) {
+			return 0.0f;
+		} else if (type == short.class) {
+			return (short) 0;
+		} else if (type == byte.class) {
+			return (byte) 0;
+		} else if (type == char.class) {
+			return (char) 0;
+		}
+
+		return null;
+	}
+}
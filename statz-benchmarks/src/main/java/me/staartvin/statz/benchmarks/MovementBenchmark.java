@@ -0,0 +1,199 @@
+package me.staartvin.statz.benchmarks;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.staartvin.statz.database.datatype.TableSchema;
+import me.staartvin.statz.datamanager.DataPoolManager;
+import me.staartvin.statz.datamanager.MovementManager;
+import me.staartvin.statz.datamanager.PlayerStat;
+import me.staartvin.statz.datamanager.player.PlayerMovement;
+import me.staartvin.statz.util.StatzUtil;
+
+/**
+ * Measures the cost of a single move event of a player.
+ * <br>'handler' runs the move listener as it was before movement was collected: it gets the way the player moves, the
+ * {@link Location#distance(Location)} of the move, and adds it through
+ * {@link me.staartvin.statz.datamanager.DataManager#incrementStat(UUID, PlayerStat, double, Object...)} (which updates the
+ * pool, the cache and the leaderboards). 'listener' runs the move listener as it is now: it gets the way the player moves
+ * and hands the move to the {@link MovementManager}, which publishes all players once every
+ * {@link MovementManager#PUBLISH_INTERVAL} events of each player, like its task does for players that move every tick.
+ * <br>'perEvent' and 'collected' only measure the part that changed: adding every movement to the pool, or adding it to a
+ * {@link PlayerMovement} and only publishing it to the pool once every {@link MovementManager#PUBLISH_INTERVAL} events.
+ *
+ * @author Staartvin
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MovementBenchmark {
+
+	private static final int PLAYERS = 100;
+
+	private TableSchema schema;
+	private BenchmarkPlugin plugin;
+	private DataPoolManager poolManager;
+
+	private String[] uuids;
+	private PlayerMovement[] movements;
+
+	private Player[] players;
+
+	// Where a player moves from and to, by step.
+	private Location[] from;
+	private Location[] to;
+
+	// Steps a player takes in a tick.
+	private final double[] steps = { 0.21, 0.0, 0.17, 0.08, 0.0, 0.21, 0.13, 0.0 };
+
+	private int event;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		schema = MovementData.createDistanceTable().getSchema();
+
+		plugin = BenchmarkPlugin.start("journal.enabled", false);
+		poolManager = plugin.getDataPoolManager();
+
+		uuids = new String[PLAYERS];
+		movements = new PlayerMovement[PLAYERS];
+
+		World world = Mocks.create(World.class, "getName", "world");
+
+		players = new Player[PLAYERS];
+
+		for (int i = 0; i < PLAYERS; i++) {
+			uuids[i] = UUID.randomUUID().toString();
+			movements[i] = new PlayerMovement();
+			movements[i].track("world", "WALK");
+
+			players[i] = Mocks.create(Player.class, "getUniqueId", UUID.fromString(uuids[i]), "getWorld", world);
+		}
+
+		from = new Location[steps.length];
+		to = new Location[steps.length];
+
+		for (int i = 0; i < steps.length; i++) {
+			from[i] = new Location(world, 100, 64, 100);
+			to[i] = new Location(world, 100 + steps[i], 64, 100 + steps[(i + 3) & 7]);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		plugin.stop();
+	}
+
+	@Benchmark
+	public boolean handler() {
+		Player player = players[event % PLAYERS];
+		int step = event++ & 7;
+
+		String movementType = StatzUtil.getMovementType(player);
+
+		double distance;
+
+		try {
+			distance = from[step].distance(to[step]);
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+
+		if (distance == 0) {
+			return false;
+		}
+
+		plugin.getDataManager().incrementStat(player.getUniqueId(), PlayerStat.DISTANCE_TRAVELLED, distance, "moveType",
+				movementType, "world", player.getWorld().getName());
+
+		return true;
+	}
+
+	@Benchmark
+	public boolean listener() {
+		Player player = players[event % PLAYERS];
+		int step = event++ & 7;
+
+		String movementType = StatzUtil.getMovementType(player);
+
+		plugin.getMovementManager().addMovement(player.getUniqueId(), from[step], to[step], movementType);
+
+		// Every player is published once every PUBLISH_INTERVAL of their own events.
+		if (event % (PLAYERS * MovementManager.PUBLISH_INTERVAL) != 0) {
+			return false;
+		}
+
+		plugin.getMovementManager().publishAll();
+
+		return true;
+	}
+
+	@Benchmark
+	public boolean perEvent() {
+		int player = event % PLAYERS;
+		double distance = distance(event++);
+
+		if (distance == 0) {
+			return false;
+		}
+
+		return poolManager.addRow(PlayerStat.DISTANCE_TRAVELLED,
+				schema.createRow(distance, true, "uuid", uuids[player], "moveType", "WALK", "world", "world"));
+	}
+
+	@Benchmark
+	public boolean collected() {
+		int player = event % PLAYERS;
+		double distance = distance(event++);
+
+		PlayerMovement movement = movements[player];
+
+		if (distance != 0) {
+			if (!movement.isTracking("world", "WALK")) {
+				movement.track("world", "WALK");
+			}
+
+			movement.add(distance);
+		}
+
+		// Every player is published once every PUBLISH_INTERVAL of their own events.
+		if ((event / PLAYERS) % MovementManager.PUBLISH_INTERVAL != 0 || movement.getDistance() == 0) {
+			return false;
+		}
+
+		boolean added = poolManager.addRow(PlayerStat.DISTANCE_TRAVELLED, schema.createRow(movement.getDistance(),
+				true, "uuid", uuids[player], "moveType", movement.getMoveType(), "world", movement.getWorld()));
+
+		movement.reset();
+
+		return added;
+	}
+
+	private double distance(int event) {
+		double dx = steps[event & 7];
+		double dz = steps[(event + 3) & 7];
+
+		return Math.sqrt(dx * dx + dz * dz);
+	}
+}
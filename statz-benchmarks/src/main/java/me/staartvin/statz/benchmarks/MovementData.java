@@ -0,0 +1,101 @@
+package me.staartvin.statz.benchmarks;
+
+import java.util.UUID;
+
+import me.staartvin.statz.database.datatype.Column;
+import me.staartvin.statz.database.datatype.Query;
+import me.staartvin.statz.database.datatype.StatRow;
+import me.staartvin.statz.database.datatype.Table;
+import me.staartvin.statz.database.datatype.Table.SQLDataType;
+import me.staartvin.statz.database.datatype.TableSchema;
+import me.staartvin.statz.database.datatype.sqlite.SQLiteTable;
+import me.staartvin.statz.util.StatzUtil;
+
+/**
+ * Synthetic DISTANCE_TRAVELLED data that the benchmarks share: the table, and queries and rows of made-up players.
+ * <br><br>Every player has a row per move type per world. Rows are numbered: row i has move type
+ * {@link #getMoveType(int)} and world {@link #getWorld(int)}, so the first {@link #ROWS_PER_PLAYER} rows of a player are
+ * all different, and the first {@code MOVE_TYPES.length} of them are all in the same world.
+ *
+ * @author Staartvin
+ *
+ */
+public class MovementData {
+
+	public static final String[] MOVE_TYPES = { "WALK", "FLY", "MINECART", "PIG IN MINECART", "HORSE IN MINECART",
+			"PIG", "BOAT", "HORSE" };
+
+	public static final String[] WORLDS = { "world", "world_nether", "world_the_end", "creative", "skyblock" };
+
+	// Number of different rows a player can have.
+	public static final int ROWS_PER_PLAYER = MOVE_TYPES.length * WORLDS.length;
+
+	/**
+	 * Create random UUIDs, as strings.
+	 * @param count Number of UUIDs
+	 * @return the UUIDs.
+	 */
+	public static String[] createUUIDs(int count) {
+		String[] uuids = new String[count];
+
+		for (int i = 0; i < uuids.length; i++) {
+			uuids[i] = UUID.randomUUID().toString();
+		}
+
+		return uuids;
+	}
+
+	public static String getMoveType(int row) {
+		return MOVE_TYPES[row % MOVE_TYPES.length];
+	}
+
+	public static String getWorld(int row) {
+		return WORLDS[(row / MOVE_TYPES.length) % WORLDS.length];
+	}
+
+	/**
+	 * Create a query of a row of a player, the way the listeners do.
+	 * @param uuid UUID of the player
+	 * @param row Number of the row, which decides its move type and world
+	 * @param value Value of the row
+	 * @return a query with a uuid, value, move type and world.
+	 */
+	public static Query createQuery(String uuid, int row, Object value) {
+		return StatzUtil.makeQuery("uuid", uuid, "value", value, "moveType", getMoveType(row), "world", getWorld(row));
+	}
+
+	/**
+	 * Create an incremental row of a player, the way the pool stores it.
+	 * @param schema Schema of the table (see {@link #createDistanceTable()})
+	 * @param uuid UUID of the player
+	 * @param row Number of the row, which decides its move type and world
+	 * @param value Value to add
+	 * @return an incremental row.
+	 */
+	public static StatRow createRow(TableSchema schema, String uuid, int row, double value) {
+		return schema.createRow(value, true, "uuid", uuid, "moveType", getMoveType(row), "world", getWorld(row));
+	}
+
+	/**
+	 * Create the DISTANCE_TRAVELLED table the same way {@link me.staartvin.statz.database.SQLiteConnector} does.
+	 */
+	public static Table createDistanceTable() {
+		Table table = new SQLiteTable("distance_travelled");
+
+		Column uuid = new Column("uuid", false, SQLDataType.TEXT, true);
+		Column moveType = new Column("moveType", false, SQLDataType.TEXT, true);
+		Column world = new Column("world", false, SQLDataType.TEXT, true);
+
+		table.addColumn(new Column("id", true, SQLDataType.INT, true));
+		table.addColumn(uuid);
+		table.addColumn("value", false, SQLDataType.DOUBLE);
+		table.addColumn(world);
+		table.addColumn(moveType);
+
+		table.addUniqueMatched(uuid);
+		table.addUniqueMatched(moveType);
+		table.addUniqueMatched(world);
+
+		return table;
+	}
+}
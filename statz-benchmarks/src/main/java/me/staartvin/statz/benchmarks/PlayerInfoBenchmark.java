@@ -0,0 +1,91 @@
+package me.staartvin.statz.benchmarks;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.staartvin.statz.datamanager.DataManager;
+import me.staartvin.statz.datamanager.PlayerStat;
+import me.staartvin.statz.datamanager.player.PlayerInfo;
+
+/**
+ * Measures {@link DataManager#getPlayerInfo(UUID, PlayerStat)} of players that have DISTANCE_TRAVELLED rows in an SQLite
+ * database.
+ * <br>'cached=true' loads every player into the cache first, like online players are. 'cached=false' reads the database on
+ * every call, like it does for offline players.
+ *
+ * @author Staartvin
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PlayerInfoBenchmark {
+
+	private static final int PLAYERS = 256;
+
+	@Param({ "false", "true" })
+	public boolean cached;
+
+	private BenchmarkPlugin plugin;
+	private DataManager dataManager;
+
+	private UUID[] uuids;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		plugin = BenchmarkPlugin.start("journal.enabled", false);
+		dataManager = plugin.getDataManager();
+
+		uuids = new UUID[PLAYERS];
+
+		for (int i = 0; i < uuids.length; i++) {
+			uuids[i] = UUID.randomUUID();
+
+			// A row for every move type, in the same world.
+			for (int row = 0; row < MovementData.MOVE_TYPES.length; row++) {
+				plugin.getDataPoolManager().addQuery(PlayerStat.DISTANCE_TRAVELLED,
+						MovementData.createQuery(uuids[i].toString(), row, 100 + i));
+			}
+		}
+
+		plugin.getDataPoolManager().forceSendPool();
+
+		if (cached) {
+			for (UUID uuid : uuids) {
+				plugin.getCacheManager().loadPlayer(uuid);
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		plugin.stop();
+	}
+
+	@Benchmark
+	public PlayerInfo getPlayerInfo() {
+		UUID uuid = uuids[next];
+		next = (next + 1) % uuids.length;
+
+		return dataManager.getPlayerInfo(uuid, PlayerStat.DISTANCE_TRAVELLED);
+	}
+}
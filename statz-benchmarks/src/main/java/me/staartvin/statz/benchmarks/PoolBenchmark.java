@@ -0,0 +1,106 @@
+package me.staartvin.statz.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.staartvin.statz.database.datatype.Query;
+import me.staartvin.statz.datamanager.DataPoolManager;
+import me.staartvin.statz.datamanager.PlayerStat;
+
+/**
+ * Measures the two ends of the pool: {@link DataPoolManager#addQuery(PlayerStat, Query)}, which listeners call for every
+ * update, and {@link DataPoolManager#forceSendPool()}, which writes the pool to an SQLite database.
+ * <br>'addQuery' is reported in queries per second, 'forceSendPool' in rows written per second. Both are run with and
+ * without the journal.
+ *
+ * @author Staartvin
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PoolBenchmark {
+
+	private static final int PLAYERS = 200;
+
+	// Rows in the pool when it is sent to the database.
+	private static final int POOLED_ROWS = 5000;
+
+	@Param({ "false", "true" })
+	public boolean journal;
+
+	private BenchmarkPlugin plugin;
+	private DataPoolManager poolManager;
+
+	// Incoming queries, spread over the players like the updates of a busy server.
+	private Query[] queries;
+	private int nextQuery;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		plugin = BenchmarkPlugin.start("journal.enabled", journal);
+		poolManager = plugin.getDataPoolManager();
+
+		String[] uuids = MovementData.createUUIDs(PLAYERS);
+
+		queries = new Query[POOLED_ROWS];
+
+		for (int i = 0; i < queries.length; i++) {
+			// Every player gets a row, before any player gets the next one.
+			queries[i] = MovementData.createQuery(uuids[i % PLAYERS], i / PLAYERS, 1);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		plugin.stop();
+	}
+
+	@Benchmark
+	public boolean addQuery() {
+		Query query = queries[nextQuery];
+		nextQuery = (nextQuery + 1) % queries.length;
+
+		return poolManager.addQuery(PlayerStat.DISTANCE_TRAVELLED, query);
+	}
+
+	/**
+	 * Fills the pool before every call of 'forceSendPool', so every call writes the same number of rows.
+	 */
+	@State(Scope.Thread)
+	public static class FilledPool {
+
+		@Setup(Level.Invocation)
+		public void fill(PoolBenchmark benchmark) {
+			for (Query query : benchmark.queries) {
+				benchmark.poolManager.addQuery(PlayerStat.DISTANCE_TRAVELLED, query);
+			}
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POOLED_ROWS)
+	public int forceSendPool(FilledPool pool) {
+		poolManager.forceSendPool();
+
+		return poolManager.getPoolSize();
+	}
+}
@@ -0,0 +1,165 @@
+package me.staartvin.statz.benchmarks;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.staartvin.statz.database.datatype.StatRow;
+import me.staartvin.statz.database.datatype.TableSchema;
+import me.staartvin.statz.datamanager.DataPoolManager;
+import me.staartvin.statz.datamanager.PlayerStat;
+
+/**
+ * Measures how many DISTANCE_TRAVELLED increments per second 1, 4 and 16 threads can add to the pool at the same time.
+ * <br>'pool=synchronized' adds them the way the pool used to (one lock for the whole pool), 'pool=concurrent' uses
+ * {@link DataPoolManager#addRow(PlayerStat, StatRow)} and 'pool=journaled' does the same with the journal enabled, as it is
+ * by default. Every thread adds rows of its own players, like listeners of different players would.
+ * <br>For 'concurrent' and 'journaled', the pool is saved every {@value #SAVE_INTERVAL} ms while the threads add rows, like the
+ * flush task does. That way the journal starts a new segment now and then, instead of growing for the whole run.
+ *
+ * @author Staartvin
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PoolContentionBenchmark {
+
+	private static final int PLAYERS_PER_THREAD = 16;
+
+	// Milliseconds between saves of the pool.
+	private static final long SAVE_INTERVAL = 100;
+
+	@Param({ "synchronized", "concurrent", "journaled" })
+	public String pool;
+
+	private TableSchema schema;
+
+	private BenchmarkPlugin plugin;
+	private DataPoolManager poolManager;
+	private SynchronizedPool synchronizedPool;
+
+	private ScheduledExecutorService saver;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		schema = MovementData.createDistanceTable().getSchema();
+
+		plugin = BenchmarkPlugin.start("journal.enabled", pool.equals("journaled"));
+		poolManager = plugin.getDataPoolManager();
+		synchronizedPool = new SynchronizedPool();
+
+		if (!pool.equals("synchronized")) {
+			saver = Executors.newSingleThreadScheduledExecutor();
+
+			saver.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					poolManager.forceSendPool();
+				}
+			}, SAVE_INTERVAL, SAVE_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws InterruptedException {
+		if (saver != null) {
+			saver.shutdown();
+			saver.awaitTermination(1, TimeUnit.MINUTES);
+		}
+
+		plugin.stop();
+	}
+
+	@State(Scope.Thread)
+	public static class Producer {
+
+		private StatRow[] rows;
+		private int next;
+
+		@Setup(Level.Trial)
+		public void setUp(PoolContentionBenchmark benchmark) {
+			rows = new StatRow[1024];
+
+			String[] uuids = MovementData.createUUIDs(PLAYERS_PER_THREAD);
+
+			for (int i = 0; i < rows.length; i++) {
+				rows[i] = MovementData.createRow(benchmark.schema, uuids[i % uuids.length], i, 1);
+			}
+		}
+
+		private StatRow nextRow() {
+			StatRow row = rows[next];
+			next = (next + 1) & (rows.length - 1);
+			return row;
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public boolean oneThread(Producer producer) {
+		return add(producer.nextRow());
+	}
+
+	@Benchmark
+	@Threads(4)
+	public boolean fourThreads(Producer producer) {
+		return add(producer.nextRow());
+	}
+
+	@Benchmark
+	@Threads(16)
+	public boolean sixteenThreads(Producer producer) {
+		return add(producer.nextRow());
+	}
+
+	private boolean add(StatRow row) {
+		if (pool.equals("synchronized")) {
+			return synchronizedPool.addRow(PlayerStat.DISTANCE_TRAVELLED, row);
+		}
+
+		return poolManager.addRow(PlayerStat.DISTANCE_TRAVELLED, row);
+	}
+
+	/**
+	 * The pool as it used to be: a map per stat, guarded by the lock of the pool.
+	 */
+	private static class SynchronizedPool {
+
+		private final HashMap<PlayerStat, Map<StatRow, StatRow>> pool = new HashMap<>();
+
+		public synchronized boolean addRow(PlayerStat stat, StatRow row) {
+			Map<StatRow, StatRow> rows = pool.get(stat);
+
+			if (rows == null) {
+				rows = new LinkedHashMap<>();
+				pool.put(stat, rows);
+			}
+
+			rows.put(row, row.applyTo(rows.get(row)));
+
+			return true;
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package me.staartvin.statz.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.staartvin.statz.database.datatype.Query;
+import me.staartvin.statz.database.datatype.StatRow;
+import me.staartvin.statz.database.datatype.Table;
+import me.staartvin.statz.database.datatype.TableSchema;
+import me.staartvin.statz.util.StatzUtil;
+
+/**
+ * Compares finding the pooled row of an incoming DISTANCE_TRAVELLED query with a linear scan over a list of queries
+ * (the way the pool used to work) against a lookup of the row in a map (see {@link StatRow#equals(Object)}).
+ *
+ * @author Staartvin
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PoolLookupBenchmark {
+
+	@Param({ "10000", "100000" })
+	public int pooledRows;
+
+	private Table table;
+
+	private List<Query> list;
+	private Map<StatRow, StatRow> index;
+
+	// Incoming queries (and the same data as rows) that each match a row in the pool.
+	private Query[] probes;
+	private StatRow[] rowProbes;
+	private int nextProbe;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		table = MovementData.createDistanceTable();
+
+		list = new ArrayList<>(pooledRows);
+		index = new HashMap<>(pooledRows * 2);
+
+		TableSchema schema = table.getSchema();
+
+		String[] uuids = MovementData.createUUIDs(pooledRows / MovementData.ROWS_PER_PLAYER + 1);
+
+		for (int i = 0; i < pooledRows; i++) {
+			Query query = MovementData.createQuery(uuids[i / MovementData.ROWS_PER_PLAYER], i, i);
+
+			list.add(query);
+			StatRow row = StatRow.fromQuery(schema, query);
+			index.put(row, row);
+		}
+
+		Random random = new Random(42);
+		probes = new Query[1024];
+		rowProbes = new StatRow[probes.length];
+
+		for (int i = 0; i < probes.length; i++) {
+			Query pooled = list.get(random.nextInt(list.size()));
+
+			probes[i] = StatzUtil.makeQuery("uuid", pooled.getValue("uuid"), "value", 1, "moveType",
+					pooled.getValue("moveType"), "world", pooled.getValue("world"));
+			rowProbes[i] = schema.createRow(1, true, "uuid", pooled.getValue("uuid"), "moveType",
+					pooled.getValue("moveType"), "world", pooled.getValue("world"));
+		}
+	}
+
+	@Benchmark
+	public List<Query> listScan() {
+		return probes[nextProbe()].findConflicts(list);
+	}
+
+	@Benchmark
+	public StatRow indexedLookup() {
+		return index.get(rowProbes[nextProbe()]);
+	}
+
+	private int nextProbe() {
+		int probe = nextProbe;
+		nextProbe = (nextProbe + 1) & (probes.length - 1);
+		return probe;
+	}
+}
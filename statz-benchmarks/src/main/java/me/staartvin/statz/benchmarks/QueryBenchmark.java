@@ -0,0 +1,71 @@
+package me.staartvin.statz.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.staartvin.statz.database.datatype.Query;
+import me.staartvin.statz.util.StatzUtil;
+
+/**
+ * Measures building a query the way listeners do ({@link StatzUtil#makeQuery(Object...)}) and turning it into the
+ * conditions of an SQL statement ({@link StatzUtil#convertQuery(Query)}).
+ * <br>Finding the conflicts of a query is measured by {@link PoolLookupBenchmark#listScan()}.
+ *
+ * @author Staartvin
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class QueryBenchmark {
+
+	private String[] uuids;
+	private Query[] queries;
+
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		uuids = MovementData.createUUIDs(1024);
+		queries = new Query[uuids.length];
+
+		for (int i = 0; i < uuids.length; i++) {
+			// The conditions of a row, without its value.
+			queries[i] = StatzUtil.makeQuery("uuid", uuids[i], "moveType", MovementData.getMoveType(i), "world",
+					MovementData.getWorld(i));
+		}
+	}
+
+	@Benchmark
+	public Query makeQuery() {
+		int i = this.next();
+
+		return StatzUtil.makeQuery("uuid", uuids[i], "value", 0.21, "moveType", MovementData.getMoveType(i), "world",
+				MovementData.getWorld(i));
+	}
+
+	@Benchmark
+	public String convertQuery() {
+		return StatzUtil.convertQuery(queries[this.next()]);
+	}
+
+	private int next() {
+		int i = next;
+		next = (next + 1) & (uuids.length - 1);
+		return i;
+	}
+}
@@ -0,0 +1,129 @@
+package me.staartvin.statz.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how many rows per second a flush of the pool writes to SQLite, the way
+ * {@link me.staartvin.statz.database.SQLiteConnector#setBatchRows} does: a batch of increments, followed by a batch of
+ * inserts for the rows that did not exist yet.
+ * <br>'transaction=false, journalMode=DELETE' is how flushes used to be written (every row committed on its own),
+ * 'transaction=true, journalMode=WAL' is how they are written now.
+ *
+ * @author Staartvin
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SQLiteFlushBenchmark {
+
+	private static final int ROWS_PER_FLUSH = 1000;
+
+	@Param({ "false", "true" })
+	public boolean transaction;
+
+	@Param({ "DELETE", "WAL" })
+	public String journalMode;
+
+	private File databaseFile;
+	private Connection connection;
+
+	private String[] uuids;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, SQLException {
+		databaseFile = File.createTempFile("statz-benchmark", ".db");
+
+		connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile);
+
+		Statement stmt = connection.createStatement();
+
+		stmt.execute("PRAGMA journal_mode=" + journalMode);
+
+		if (journalMode.equals("WAL")) {
+			stmt.execute("PRAGMA synchronous=NORMAL");
+			stmt.execute("PRAGMA cache_size=-8192");
+			stmt.execute("PRAGMA mmap_size=" + 64L * 1024L * 1024L);
+		}
+
+		// Same table as SQLiteConnector creates for DISTANCE_TRAVELLED.
+		stmt.execute("CREATE TABLE IF NOT EXISTS statz_distance_travelled ('id' INTEGER PRIMARY KEY NOT NULL UNIQUE,"
+				+ "'uuid' TEXT NOT NULL,'value' INTEGER NOT NULL,'world' TEXT NOT NULL,'moveType' TEXT NOT NULL,"
+				+ "UNIQUE (uuid,moveType,world));");
+		stmt.close();
+
+		uuids = MovementData.createUUIDs(ROWS_PER_FLUSH / MovementData.MOVE_TYPES.length + 1);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		connection.close();
+
+		databaseFile.delete();
+		new File(databaseFile.getPath() + "-wal").delete();
+		new File(databaseFile.getPath() + "-shm").delete();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS_PER_FLUSH)
+	public void flush() throws SQLException {
+		connection.setAutoCommit(!transaction);
+
+		PreparedStatement increment = connection.prepareStatement(
+				"UPDATE statz_distance_travelled SET value = value + ? WHERE uuid=? AND moveType=? AND world=?");
+		PreparedStatement insert = connection.prepareStatement(
+				"INSERT OR IGNORE INTO statz_distance_travelled (uuid,world,moveType,value) VALUES (?,?,?,?)");
+
+		for (int i = 0; i < ROWS_PER_FLUSH; i++) {
+			String uuid = uuids[i / MovementData.MOVE_TYPES.length];
+			String moveType = MovementData.getMoveType(i);
+
+			increment.setLong(1, 3);
+			increment.setString(2, uuid);
+			increment.setString(3, moveType);
+			increment.setString(4, "world");
+			increment.addBatch();
+
+			insert.setString(1, uuid);
+			insert.setString(2, "world");
+			insert.setString(3, moveType);
+			insert.setLong(4, 3);
+			insert.addBatch();
+		}
+
+		increment.executeBatch();
+		insert.executeBatch();
+
+		if (transaction) {
+			connection.commit();
+		}
+
+		increment.close();
+		insert.close();
+	}
+}